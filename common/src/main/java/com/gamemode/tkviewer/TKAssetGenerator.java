@@ -0,0 +1,576 @@
+package com.gamemode.tkviewer;
+
+import com.gamemode.tkviewer.utilities.Utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes a synthetic client (Data directory of .dat archives and a Maps directory of .cmp/.map files) that every
+ * loader and renderer accepts, so benchmarks and load tests can run without the proprietary client.
+ *
+ * Output is deterministic for a seed, each archive draws from its own seeded Random so changing one size doesn't
+ * reshuffle the rest.
+ *
+ * Usage: TKAssetGenerator outputDirectory [seed], sizes with -Dtkassets.tiles, -Dtkassets.objects, -Dtkassets.parts,
+ * -Dtkassets.partFrames, -Dtkassets.mobs, -Dtkassets.mobFrames, -Dtkassets.effects, -Dtkassets.effectFrames,
+ * -Dtkassets.palettes, -Dtkassets.epfFrames, -Dtkassets.maps and -Dtkassets.mapSize.
+ * Point the viewer/server at the output with -Dtkviewer.data=outputDirectory/Data -Dtkviewer.maps=outputDirectory/Maps.
+ */
+public class TKAssetGenerator {
+
+    public static final String DATA_DIRECTORY = "Data";
+    public static final String MAP_DIRECTORY = "Maps";
+    public static final int FIRST_MAP_ID = 1;
+
+    public static final String[] PART_NAMES = {
+            "Body", "Bow", "Coat", "Face", "FaceDec", "Fan", "Hair", "Helmet", "Mantle", "Shield", "Shoes", "Spear", "Sword"
+    };
+
+    private static final int TILE_DIM = 48;
+    private static final int DSC_HEADER = 0x17;
+    // Chunks (animations) of a part or mob are cut from its frames this many at a time
+    private static final int FRAMES_PER_CHUNK = 4;
+    private static final int TBL_MASK = 0x55555555;
+    private static final char[] TBL_KEY = { 75, 82, 77, 80, 74, 67, 79, 67, 16, 89, 74, 91, 70, 81, 87, 74, 67, 69, 77, 86, 74, 75, 85, 72, 75, 78, 71 };
+
+    public long seed;
+
+    public int tileCount = 4096;
+    public int objectTileCount = 4096;
+    public int objectCount = 2048;
+    public int partCount = 16;
+    public int framesPerPart = 48;
+    public int mobCount = 64;
+    public int framesPerMob = 16;
+    public int effectCount = 64;
+    public int framesPerEffect = 8;
+    public int paletteCount = 16;
+    public int framesPerEpf = 1024;
+    public int mapCount = 4;
+    public int mapSize = 256;
+
+    long writtenBytes = 0;
+    int writtenFiles = 0;
+
+    public TKAssetGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Usage: TKAssetGenerator outputDirectory [seed]");
+            return;
+        }
+
+        TKAssetGenerator generator = new TKAssetGenerator(args.length > 1 ? Long.parseLong(args[1]) : 0);
+        generator.tileCount = Integer.getInteger("tkassets.tiles", generator.tileCount);
+        generator.objectTileCount = Integer.getInteger("tkassets.objectTiles", generator.objectTileCount);
+        generator.objectCount = Integer.getInteger("tkassets.objects", generator.objectCount);
+        generator.partCount = Integer.getInteger("tkassets.parts", generator.partCount);
+        generator.framesPerPart = Integer.getInteger("tkassets.partFrames", generator.framesPerPart);
+        generator.mobCount = Integer.getInteger("tkassets.mobs", generator.mobCount);
+        generator.framesPerMob = Integer.getInteger("tkassets.mobFrames", generator.framesPerMob);
+        generator.effectCount = Integer.getInteger("tkassets.effects", generator.effectCount);
+        generator.framesPerEffect = Integer.getInteger("tkassets.effectFrames", generator.framesPerEffect);
+        generator.paletteCount = Integer.getInteger("tkassets.palettes", generator.paletteCount);
+        generator.framesPerEpf = Integer.getInteger("tkassets.epfFrames", generator.framesPerEpf);
+        generator.mapCount = Integer.getInteger("tkassets.maps", generator.mapCount);
+        generator.mapSize = Integer.getInteger("tkassets.mapSize", generator.mapSize);
+
+        long startTime = System.nanoTime();
+        try {
+            generator.generate(new File(args[0]));
+        } catch (IOException ioe) {
+            System.out.println("Unable to generate assets: " + ioe);
+            return;
+        }
+        System.out.println(String.format("Wrote %d files (%.1f MB) to %s in %.1fs", generator.writtenFiles,
+                generator.writtenBytes / (1024.0 * 1024.0), args[0], (System.nanoTime() - startTime) / 1_000_000_000.0));
+    }
+
+    /**
+     * Writes outputDirectory/Data and outputDirectory/Maps (maps are numbered from FIRST_MAP_ID).
+     */
+    public void generate(File outputDirectory) throws IOException {
+        File dataDirectory = new File(outputDirectory, DATA_DIRECTORY);
+        File mapDirectory = new File(outputDirectory, MAP_DIRECTORY);
+        dataDirectory.mkdirs();
+        mapDirectory.mkdirs();
+
+        this.writeTiles(dataDirectory);
+        this.writeParts(dataDirectory);
+        this.writeMobs(dataDirectory);
+        this.writeEffects(dataDirectory);
+        for (int i = 0; i < this.mapCount; i++) {
+            this.writeMap(mapDirectory, FIRST_MAP_ID + i);
+        }
+    }
+
+    /**
+     * tile.dat (palettes, tbls, SObj.tbl) with the tileN.dat ground and tilecN.dat object EPFs.
+     */
+    void writeTiles(File dataDirectory) throws IOException {
+        Random random = this.random("tile");
+        Map<String, byte[]> tileFiles = new LinkedHashMap<String, byte[]>();
+        tileFiles.put("tile.pal", this.createPal(random, this.paletteCount));
+        tileFiles.put("tile.tbl", this.createTileTbl(random, this.tileCount));
+        tileFiles.put("TileC.pal", this.createPal(random, this.paletteCount));
+        tileFiles.put("TILEC.TBL", this.createTileTbl(random, this.objectTileCount));
+        tileFiles.put("SObj.tbl", this.createSObjTbl(random));
+        this.writeDat(new File(dataDirectory, "tile.dat"), tileFiles);
+
+        this.writeEpfDats(dataDirectory, "tile", "tile", this.tileCount, random, TILE_DIM, TILE_DIM, TILE_DIM, TILE_DIM, true);
+        this.writeEpfDats(dataDirectory, "tilec", "tilec", this.objectTileCount, random, TILE_DIM, TILE_DIM, TILE_DIM, TILE_DIM, false);
+    }
+
+    /**
+     * char.dat (a .pal and .dsc per part type) with the PartN.dat EPFs.
+     */
+    void writeParts(File dataDirectory) throws IOException {
+        Map<String, byte[]> charFiles = new LinkedHashMap<String, byte[]>();
+        for (String partName : PART_NAMES) {
+            Random random = this.random(partName);
+            charFiles.put(partName + ".pal", this.createPal(random, this.paletteCount));
+            charFiles.put(partName + ".dsc", this.createDsc(random));
+            this.writeEpfDats(dataDirectory, partName, partName, this.partCount * this.framesPerPart, random, 16, 64, 24, 80, false);
+        }
+        this.writeDat(new File(dataDirectory, "char.dat"), charFiles);
+    }
+
+    /**
+     * mon.dat (monster.pal, monster.dna) with the monN.dat EPFs.
+     */
+    void writeMobs(File dataDirectory) throws IOException {
+        Random random = this.random("mon");
+        Map<String, byte[]> monFiles = new LinkedHashMap<String, byte[]>();
+        monFiles.put("monster.pal", this.createPal(random, this.paletteCount));
+        monFiles.put("monster.dna", this.createDna(random));
+        this.writeDat(new File(dataDirectory, "mon.dat"), monFiles);
+
+        this.writeEpfDats(dataDirectory, "mon", "mon", this.mobCount * this.framesPerMob, random, 24, 96, 24, 96, false);
+    }
+
+    /**
+     * efx.dat (EFFECT.PAL, encoded effect.tbl, EFFECT.FRM) with the efxN.dat EPFs.
+     */
+    void writeEffects(File dataDirectory) throws IOException {
+        Random random = this.random("efx");
+        int frameCount = this.effectCount * this.framesPerEffect;
+        Map<String, byte[]> efxFiles = new LinkedHashMap<String, byte[]>();
+        efxFiles.put("EFFECT.PAL", this.createPal(random, this.paletteCount));
+        efxFiles.put("effect.tbl", encodeTbl(this.createEfxTbl(random), random));
+        efxFiles.put("EFFECT.FRM", this.createFrm(random, frameCount));
+        this.writeDat(new File(dataDirectory, "efx.dat"), efxFiles);
+
+        this.writeEpfDats(dataDirectory, "EFFECT", "efx", frameCount, random, 16, 128, 16, 128, false);
+    }
+
+    /**
+     * TK%06d.cmp and TK%06d.map of the same mapSize x mapSize map.
+     */
+    void writeMap(File mapDirectory, int mapId) throws IOException {
+        Random random = this.random("map" + mapId);
+        int tileCount = this.mapSize * this.mapSize;
+        short[] abTiles = new short[tileCount];
+        short[] passable = new short[tileCount];
+        short[] sObjTiles = new short[tileCount];
+
+        // Ground comes in regions of one terrain (a run of 8 tile frames) so it compresses like real maps
+        int regionSize = 16;
+        int regionsPerRow = (this.mapSize + regionSize - 1) / regionSize;
+        int[] regionTerrain = new int[regionsPerRow * regionsPerRow];
+        for (int i = 0; i < regionTerrain.length; i++) {
+            regionTerrain[i] = 1 + random.nextInt(Math.max(1, (this.tileCount - 9) / 8)) * 8;
+        }
+
+        for (int y = 0; y < this.mapSize; y++) {
+            for (int x = 0; x < this.mapSize; x++) {
+                int i = (y * this.mapSize) + x;
+                int terrain = regionTerrain[((y / regionSize) * regionsPerRow) + (x / regionSize)];
+                // Stored values are the tile/object index + 1, 0 means none
+                abTiles[i] = (short) Math.min(this.tileCount - 1, terrain + random.nextInt(8));
+                if (this.objectCount > 2 && random.nextInt(10) == 0) {
+                    sObjTiles[i] = (short) (2 + random.nextInt(this.objectCount - 2));
+                    passable[i] = 1;
+                }
+            }
+        }
+
+        LittleEndianOutput cmpTiles = new LittleEndianOutput();
+        for (int i = 0; i < tileCount; i++) {
+            cmpTiles.writeShort(abTiles[i]);
+            cmpTiles.writeShort(passable[i]);
+            cmpTiles.writeShort(sObjTiles[i]);
+        }
+        ByteArrayOutputStream cmp = new ByteArrayOutputStream();
+        cmp.write(new byte[] { 'C', 'M', 'A', 'P' });
+        LittleEndianOutput cmpDimensions = new LittleEndianOutput();
+        cmpDimensions.writeInt((this.mapSize << 16) | this.mapSize);
+        cmpDimensions.writeTo(cmp);
+        try (DeflaterOutputStream deflater = new DeflaterOutputStream(cmp)) {
+            cmpTiles.writeTo(deflater);
+        }
+        this.writeFile(new File(mapDirectory, "TK" + Utils.pad(mapId, 6) + ".cmp"), cmp.toByteArray());
+
+        // MAP is big endian and uncompressed
+        ByteBuffer map = ByteBuffer.allocate(4 + (tileCount * 6));
+        map.putInt((this.mapSize << 16) | this.mapSize);
+        for (int i = 0; i < tileCount; i++) {
+            map.putShort(abTiles[i]);
+            map.putShort(passable[i]);
+            map.putShort(sObjTiles[i]);
+        }
+        this.writeFile(new File(mapDirectory, "TK" + Utils.pad(mapId, 6) + ".map"), map.array());
+    }
+
+    /**
+     * Palettes with a DLPalette block each, colors are ramps around a random hue.
+     */
+    byte[] createPal(Random random, int paletteCount) {
+        LittleEndianOutput pal = new LittleEndianOutput();
+        pal.writeInt(paletteCount);
+        for (int i = 0; i < paletteCount; i++) {
+            pal.write("DLPalette".getBytes(), 0, 9);
+            pal.write(new byte[15], 0, 15);
+            pal.write(0); // Animation Color Count
+            pal.write(new byte[7], 0, 7);
+
+            float hue = random.nextFloat();
+            for (int j = 0; j < 256; j++) {
+                int rgb = java.awt.Color.HSBtoRGB(hue + ((j % 16) / 64.0f), 0.3f + ((j / 16) / 24.0f), (j % 16) / 15.0f);
+                pal.write((rgb >> 16) & 0xFF);
+                pal.write((rgb >> 8) & 0xFF);
+                pal.write(rgb & 0xFF);
+                pal.write(0);
+            }
+        }
+
+        return pal.toByteArray();
+    }
+
+    /**
+     * Plain tile tbl, one palette index per frame.
+     */
+    byte[] createTileTbl(Random random, int frameCount) {
+        LittleEndianOutput tbl = new LittleEndianOutput();
+        tbl.writeInt(frameCount);
+        for (int i = 0; i < frameCount; i++) {
+            tbl.writeShort(random.nextInt(this.paletteCount));
+        }
+
+        return tbl.toByteArray();
+    }
+
+    /**
+     * Static objects stacking 1-4 object tiles (object 0 is empty like in the client).
+     */
+    byte[] createSObjTbl(Random random) {
+        LittleEndianOutput sObjTbl = new LittleEndianOutput();
+        sObjTbl.writeInt(this.objectCount);
+        sObjTbl.writeShort(0);
+        for (int i = 0; i < this.objectCount; i++) {
+            int height = i == 0 ? 0 : 1 + random.nextInt(4);
+            sObjTbl.write(new byte[5], 0, 5);
+            sObjTbl.write(random.nextInt(4)); // Movement Direction
+            sObjTbl.write(height);
+            for (int j = 0; j < height; j++) {
+                sObjTbl.writeShort(1 + random.nextInt(this.objectTileCount - 1));
+            }
+        }
+
+        return sObjTbl.toByteArray();
+    }
+
+    /**
+     * partCount parts of framesPerPart consecutive frames, cut into chunks (animations) of FRAMES_PER_CHUNK blocks.
+     */
+    byte[] createDsc(Random random) {
+        LittleEndianOutput dsc = new LittleEndianOutput();
+        dsc.write(Arrays.copyOf("PartDescription".getBytes(), DSC_HEADER), 0, DSC_HEADER);
+        dsc.writeInt(this.partCount);
+        for (int i = 0; i < this.partCount; i++) {
+            int chunkCount = (this.framesPerPart + FRAMES_PER_CHUNK - 1) / FRAMES_PER_CHUNK;
+            dsc.writeInt(i);
+            dsc.writeInt(random.nextInt(this.paletteCount));
+            dsc.writeInt(i * this.framesPerPart);
+            dsc.writeInt(this.framesPerPart);
+            dsc.write(new byte[14], 0, 14);
+            dsc.writeInt(chunkCount);
+            for (int j = 0; j < chunkCount; j++) {
+                int blockCount = Math.min(FRAMES_PER_CHUNK, this.framesPerPart - (j * FRAMES_PER_CHUNK));
+                dsc.writeInt(j);
+                dsc.writeInt(0);
+                dsc.writeInt(blockCount);
+                for (int k = 0; k < blockCount; k++) {
+                    dsc.writeShort((j * FRAMES_PER_CHUNK) + k);
+                    dsc.write(new byte[7], 0, 7);
+                }
+            }
+        }
+
+        return dsc.toByteArray();
+    }
+
+    /**
+     * mobCount mobs of framesPerMob consecutive frames, cut into chunks (animations) of FRAMES_PER_CHUNK blocks.
+     */
+    byte[] createDna(Random random) {
+        LittleEndianOutput dna = new LittleEndianOutput();
+        dna.writeInt(this.mobCount);
+        for (int i = 0; i < this.mobCount; i++) {
+            int chunkCount = Math.min(0xFF, (this.framesPerMob + FRAMES_PER_CHUNK - 1) / FRAMES_PER_CHUNK);
+            dna.writeInt(i * this.framesPerMob);
+            dna.write(chunkCount);
+            dna.write(0);
+            dna.writeShort(random.nextInt(this.paletteCount));
+            for (int j = 0; j < chunkCount; j++) {
+                int blockCount = Math.min(FRAMES_PER_CHUNK, this.framesPerMob - (j * FRAMES_PER_CHUNK));
+                dna.writeShort(blockCount);
+                for (int k = 0; k < blockCount; k++) {
+                    dna.writeShort((j * FRAMES_PER_CHUNK) + k);
+                    dna.writeShort(100 + (random.nextInt(4) * 50)); // Duration
+                    dna.writeShort(-1);
+                    dna.write(0); // Transparency
+                    dna.write(0);
+                    dna.write(0);
+                }
+            }
+        }
+
+        return dna.toByteArray();
+    }
+
+    /**
+     * Plain effect tbl: effectCount effects of framesPerEffect consecutive frames.
+     */
+    byte[] createEfxTbl(Random random) {
+        LittleEndianOutput tbl = new LittleEndianOutput();
+        tbl.writeInt(this.effectCount);
+        for (int i = 0; i < this.effectCount; i++) {
+            tbl.writeInt(i);
+            tbl.writeInt(this.framesPerEffect);
+            tbl.write(new byte[20], 0, 20);
+            for (int j = 0; j < this.framesPerEffect; j++) {
+                tbl.writeInt((i * this.framesPerEffect) + j);
+                tbl.writeInt(50 + (random.nextInt(4) * 25)); // Delay
+                tbl.writeInt(random.nextInt(this.paletteCount));
+                tbl.writeInt(0);
+            }
+        }
+
+        return tbl.toByteArray();
+    }
+
+    byte[] createFrm(Random random, int frameCount) {
+        LittleEndianOutput frm = new LittleEndianOutput();
+        frm.writeInt(frameCount);
+        for (int i = 0; i < frameCount; i++) {
+            frm.writeInt(random.nextInt(this.paletteCount));
+        }
+
+        return frm.toByteArray();
+    }
+
+    /**
+     * Inverse of the tbl decoding in EfxTblFileHandler: each 4 plain bytes become 8 key-XORed bytes, the masked bits
+     * carried by the second int and the rest by the first (the unused bits are filled from random).
+     */
+    public static byte[] encodeTbl(byte[] plainBytes, Random random) {
+        ByteBuffer plain = ByteBuffer.wrap(plainBytes).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer encoded = ByteBuffer.allocate(plainBytes.length * 2);
+        for (int offset = 0; offset < plainBytes.length; offset += 4) {
+            int value = plain.getInt(offset);
+            int first = (value & ~TBL_MASK) | (random.nextInt() & TBL_MASK);
+            int second = (value & TBL_MASK) | (random.nextInt() & ~TBL_MASK);
+
+            int position = offset * 2;
+            encoded.putInt(position, first);
+            encoded.putInt(position + 4, second);
+
+            long keyIndex = ((-0x1234568L - offset) & 0xFFFFFFFFL) % TBL_KEY.length;
+            for (int i = 0; i < 8; i++) {
+                encoded.put(position + i, (byte) (encoded.get(position + i) ^ TBL_KEY[(int) keyIndex]));
+                keyIndex = (keyIndex + 26) % TBL_KEY.length;
+            }
+        }
+
+        return encoded.array();
+    }
+
+    /**
+     * Splits frameCount frames over datPrefixN.dat archives of framesPerEpf frames, each holding epfPrefixN.epf.
+     */
+    void writeEpfDats(File dataDirectory, String epfPrefix, String datPrefix, int frameCount, Random random,
+                      int minWidth, int maxWidth, int minHeight, int maxHeight, boolean opaque) throws IOException {
+        for (int i = 0; i * this.framesPerEpf < frameCount; i++) {
+            int epfFrameCount = Math.min(this.framesPerEpf, frameCount - (i * this.framesPerEpf));
+            Map<String, byte[]> files = new LinkedHashMap<String, byte[]>();
+            files.put(epfPrefix + i + ".epf", this.createEpf(random, epfFrameCount, minWidth, maxWidth, minHeight, maxHeight, opaque));
+            this.writeDat(new File(dataDirectory, datPrefix + i + ".dat"), files);
+        }
+    }
+
+    /**
+     * EPF of frameCount frames, opaque frames are solid, the others an irregular blob with holes so the stencil has
+     * several runs per row.
+     */
+    byte[] createEpf(Random random, int frameCount, int minWidth, int maxWidth, int minHeight, int maxHeight, boolean opaque) {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        LittleEndianOutput toc = new LittleEndianOutput();
+        int epfWidth = 0;
+        int epfHeight = 0;
+        for (int i = 0; i < frameCount; i++) {
+            int width = minWidth + random.nextInt(maxWidth - minWidth + 1);
+            int height = minHeight + random.nextInt(maxHeight - minHeight + 1);
+            epfWidth = Math.max(epfWidth, width);
+            epfHeight = Math.max(epfHeight, height);
+
+            // Sprites hang around their pivot, tiles start at the origin
+            int left = opaque ? 0 : -(width / 2) + random.nextInt(5) - 2;
+            int top = opaque ? 0 : -height + random.nextInt(9);
+
+            boolean[][] mask = opaque ? solidMask(width, height) : blobMask(random, width, height);
+            byte[] pixels = new byte[width * height];
+            int base = random.nextInt(256);
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    if (mask[y][x]) {
+                        pixels[(y * width) + x] = (byte) (base + ((x + y) / 4) + random.nextInt(4));
+                    }
+                }
+            }
+
+            int pixelOffset = data.size();
+            data.write(pixels, 0, pixels.length);
+            int stencilOffset = data.size();
+            for (boolean[] row : mask) {
+                writeStencilRow(data, row);
+            }
+
+            toc.writeShort(top);
+            toc.writeShort(left);
+            toc.writeShort(top + height);
+            toc.writeShort(left + width);
+            toc.writeInt(pixelOffset);
+            toc.writeInt(stencilOffset);
+        }
+
+        LittleEndianOutput epf = new LittleEndianOutput();
+        epf.writeShort(frameCount);
+        epf.writeShort(epfWidth);
+        epf.writeShort(epfHeight);
+        epf.writeShort(0); // bitBLT
+        epf.writeInt(data.size());
+        epf.write(data.toByteArray(), 0, data.size());
+        epf.write(toc.toByteArray(), 0, toc.size());
+
+        return epf.toByteArray();
+    }
+
+    static boolean[][] solidMask(int width, int height) {
+        boolean[][] mask = new boolean[height][width];
+        for (boolean[] row : mask) {
+            Arrays.fill(row, true);
+        }
+
+        return mask;
+    }
+
+    static boolean[][] blobMask(Random random, int width, int height) {
+        boolean[][] mask = new boolean[height][width];
+        double centerY = (height - 1) / 2.0;
+        for (int y = 0; y < height; y++) {
+            double distance = (y - centerY) / (centerY + 1);
+            int halfWidth = (int) ((width / 2.0) * Math.sqrt(1 - (distance * distance)) * (0.75 + (random.nextDouble() * 0.25)));
+            int center = (width / 2) + random.nextInt(3) - 1;
+            for (int x = Math.max(0, center - halfWidth); x < Math.min(width, center + halfWidth); x++) {
+                mask[y][x] = true;
+            }
+            if (halfWidth > 4 && random.nextInt(4) == 0) {
+                int holeStart = center - halfWidth + 1 + random.nextInt(halfWidth);
+                for (int x = holeStart; x < Math.min(width, holeStart + 1 + random.nextInt(4)); x++) {
+                    mask[y][x] = false;
+                }
+            }
+        }
+
+        return mask;
+    }
+
+    /**
+     * Stencil runs as Stencil reads them: 0x80 | n draws n pixels, n skips n pixels (both n < 0x80), 0 ends the row.
+     */
+    static void writeStencilRow(ByteArrayOutputStream stencil, boolean[] row) {
+        int end = row.length;
+        while (end > 0 && !row[end - 1]) {
+            end--;
+        }
+
+        int x = 0;
+        while (x < end) {
+            boolean draw = row[x];
+            int run = 0;
+            while (x < end && row[x] == draw && run < 0x7F) {
+                x++;
+                run++;
+            }
+            stencil.write(draw ? (0x80 | run) : run);
+        }
+        stencil.write(0);
+    }
+
+    /**
+     * DAT archive (same layout as DatFileHandler.writeDatFile): file count + 1, a table of data offsets and 13 byte
+     * names ending with the end offset, then the file data.
+     */
+    void writeDat(File datFile, Map<String, byte[]> files) throws IOException {
+        LittleEndianOutput dat = new LittleEndianOutput();
+        dat.writeInt(files.size() + 1);
+        int dataLocation = 4 + ((files.size() + 1) * 17);
+        for (Map.Entry<String, byte[]> entry : files.entrySet()) {
+            byte[] fileName = Arrays.copyOf(entry.getKey().getBytes(), 13);
+            dat.writeInt(dataLocation);
+            dat.write(fileName, 0, fileName.length);
+            dataLocation += entry.getValue().length;
+        }
+        dat.writeInt(dataLocation);
+        dat.write(new byte[13], 0, 13);
+        for (byte[] fileData : files.values()) {
+            dat.write(fileData, 0, fileData.length);
+        }
+
+        this.writeFile(datFile, dat.toByteArray());
+    }
+
+    void writeFile(File file, byte[] bytes) throws IOException {
+        Files.write(file.toPath(), bytes);
+        this.writtenFiles++;
+        this.writtenBytes += bytes.length;
+    }
+
+    Random random(String archive) {
+        return new Random((this.seed * 31) + archive.hashCode());
+    }
+
+    static class LittleEndianOutput extends ByteArrayOutputStream {
+        void writeShort(int value) {
+            this.write(value & 0xFF);
+            this.write((value >> 8) & 0xFF);
+        }
+
+        void writeInt(int value) {
+            this.writeShort(value);
+            this.writeShort(value >> 16);
+        }
+    }
+}
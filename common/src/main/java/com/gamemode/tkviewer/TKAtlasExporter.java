@@ -0,0 +1,114 @@
+package com.gamemode.tkviewer;
+
+import com.gamemode.tkviewer.render.FrameAtlas;
+import com.gamemode.tkviewer.render.MobRenderer;
+import com.gamemode.tkviewer.render.PartRenderer;
+import com.gamemode.tkviewer.resources.Resources;
+import com.gamemode.tkviewer.utilities.FrameDedupIndex;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Packs every frame of each part type (and mobs) into a few texture atlas pages with a JSON frame index, instead of
+ * one PNG per frame like TKDumper.
+ *
+ * Each type has its own renderer, so types are packed in parallel. Output is outputDirectory/atlas_ntk/Body/Body-0.png,
+ * Body.json...
+ *
+ * Usage: TKAtlasExporter [outputDirectory] [type...] (default TKVIEWER_DIRECTORY/Atlas or -Dtkatlas.output, every
+ * NexusTK part type and "mon"). Page size with -Dtkatlas.pageSize (default 2048), worker count with -Dtkatlas.threads
+ * (default: available processors), -Dtkatlas.baram=true adds the Baram part types. Identical frames (see
+ * FrameDedupIndex) are packed once unless -Dtkatlas.dedup=false.
+ */
+public class TKAtlasExporter {
+
+    public static final String DEFAULT_OUTPUT_DIRECTORY = Resources.TKVIEWER_DIRECTORY + File.separator + "Atlas";
+    public static final String MOB_TYPE = "mon";
+
+    public static void main(String[] args) {
+        String outputDirectory = args.length > 0 ? args[0] : System.getProperty("tkatlas.output", DEFAULT_OUTPUT_DIRECTORY);
+        int pageSize = Integer.getInteger("tkatlas.pageSize", FrameAtlas.DEFAULT_PAGE_SIZE);
+        int threadCount = Integer.getInteger("tkatlas.threads", Runtime.getRuntime().availableProcessors());
+        FrameDedupIndex frameDedupIndex = Boolean.parseBoolean(System.getProperty("tkatlas.dedup", "true")) ? new FrameDedupIndex() : null;
+
+        List<String> ntkTypes = new ArrayList<String>();
+        if (args.length > 1) {
+            ntkTypes.addAll(Arrays.asList(args).subList(1, args.length));
+        } else {
+            ntkTypes.addAll(Arrays.asList(TKDumper.NTK_PARTS));
+            ntkTypes.add(MOB_TYPE);
+        }
+
+        System.out.println("Packing atlases to " + outputDirectory + " with " + threadCount + " workers");
+        long startTime = System.nanoTime();
+
+        ExecutorService workers = Executors.newFixedThreadPool(threadCount);
+        File ntkOutputDirectory = new File(outputDirectory, "atlas_ntk");
+        for (String type : ntkTypes) {
+            workers.execute(() -> exportAtlas(Resources.getNtkDataDirectory(), type, new File(ntkOutputDirectory, type), pageSize, frameDedupIndex));
+        }
+        if (Boolean.getBoolean("tkatlas.baram")) {
+            File baramOutputDirectory = new File(outputDirectory, "atlas_baram");
+            for (String type : TKDumper.BARAM_PARTS) {
+                workers.execute(() -> exportAtlas(Resources.BARAM_DATA_DIRECTORY, type, new File(baramOutputDirectory, type), pageSize, frameDedupIndex));
+            }
+        }
+
+        workers.shutdown();
+        try {
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        System.out.println(String.format("Done in %.1fs", (System.nanoTime() - startTime) / 1_000_000_000.0));
+        if (frameDedupIndex != null) {
+            System.out.print(frameDedupIndex.getReport());
+        }
+    }
+
+    public static void exportAtlas(String dataDirectory, String type, File outputDirectory, int pageSize) {
+        exportAtlas(dataDirectory, type, outputDirectory, pageSize, null);
+    }
+
+    /**
+     * Packs and writes one type's atlas, the renderer is disposed afterwards. Identical frames are packed once when a
+     * FrameDedupIndex is given.
+     */
+    public static void exportAtlas(String dataDirectory, String type, File outputDirectory, int pageSize,
+                                   FrameDedupIndex frameDedupIndex) {
+        long startTime = System.nanoTime();
+        FrameAtlas atlas;
+        try {
+            if (MOB_TYPE.equals(type)) {
+                MobRenderer mobRenderer = new MobRenderer();
+                if (frameDedupIndex != null) {
+                    frameDedupIndex.dedup(mobRenderer);
+                }
+                atlas = FrameAtlas.fromMobs(type, mobRenderer, pageSize);
+                mobRenderer.dispose();
+            } else {
+                PartRenderer partRenderer = new PartRenderer(type, dataDirectory);
+                if (frameDedupIndex != null) {
+                    frameDedupIndex.dedup(partRenderer);
+                }
+                atlas = FrameAtlas.fromParts(type, partRenderer, pageSize);
+                partRenderer.dispose();
+            }
+            atlas.write(outputDirectory);
+        } catch (RuntimeException | IOException e) {
+            System.out.println("Unable to export " + type + " atlas: " + e);
+            return;
+        }
+
+        System.out.println(String.format("%s: %d frames on %d pages (%.0f%% occupancy) in %.1fs", type,
+                atlas.frames.size(), atlas.pages.size(), atlas.getOccupancy() * 100,
+                (System.nanoTime() - startTime) / 1_000_000_000.0));
+    }
+}
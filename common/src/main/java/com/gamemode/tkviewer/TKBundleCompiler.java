@@ -0,0 +1,211 @@
+package com.gamemode.tkviewer;
+
+import com.gamemode.tkviewer.file_handlers.*;
+import com.gamemode.tkviewer.resources.Resources;
+import com.gamemode.tkviewer.utilities.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Compiles a NexusTK data directory into a single asset bundle (see BundleFileHandler), to be re-run after each client
+ * patch. TKViewer tools load their renderers from it with -Dtkviewer.bundle=file.
+ *
+ * Sections are encoded on a worker pool, a few ahead of the writer, and written in order. The bundle is written next
+ * to the target and moved in place, so processes that still have the old one mapped keep reading it.
+ *
+ * Usage: TKBundleCompiler [dataDirectory] [outputFile] (default: the NexusTK data directory and
+ * TKVIEWER_DIRECTORY/tkviewer.tkb), worker count with -Dtkbundle.threads (default: available processors).
+ */
+public class TKBundleCompiler {
+
+    public static final String DEFAULT_OUTPUT_FILE = Resources.TKVIEWER_DIRECTORY + File.separator + "tkviewer.tkb";
+
+    static class Section {
+        String name;
+        int type;
+        Callable<ByteBuffer> encoder;
+
+        Section(String name, int type, Callable<ByteBuffer> encoder) {
+            this.name = name;
+            this.type = type;
+            this.encoder = encoder;
+        }
+    }
+
+    String dataDirectory;
+    List<Section> sections = new ArrayList<Section>();
+
+    public TKBundleCompiler(String dataDirectory) {
+        this.dataDirectory = dataDirectory;
+    }
+
+    public static void main(String[] args) {
+        String dataDirectory = args.length > 0 ? args[0] : Resources.getNtkDataDirectory();
+        File outputFile = new File(args.length > 1 ? args[1] : DEFAULT_OUTPUT_FILE);
+        int threadCount = Integer.getInteger("tkbundle.threads", Runtime.getRuntime().availableProcessors());
+
+        long startTime = System.nanoTime();
+        TKBundleCompiler compiler = new TKBundleCompiler(dataDirectory);
+        compiler.addSections();
+        try {
+            long length = compiler.compile(outputFile, threadCount);
+            System.out.println(String.format("Compiled %d sections (%.1f MB) from %s to %s in %.1fs",
+                    compiler.sections.size(), length / (1024.0 * 1024.0), dataDirectory, outputFile,
+                    (System.nanoTime() - startTime) / 1_000_000_000.0));
+        } catch (IOException ioe) {
+            System.out.println("Unable to write bundle " + outputFile + ": " + ioe);
+        }
+    }
+
+    /**
+     * Queues the tile, static object, part, mob and effect archives of the data directory.
+     */
+    public void addSections() {
+        DatFileHandler tileDat = this.openDat("tile.dat");
+        if (tileDat != null) {
+            this.addTable(tileDat, "tile.pal", BundleFileHandler.TYPE_PAL);
+            this.addTable(tileDat, "TileC.pal", BundleFileHandler.TYPE_PAL);
+            this.addTable(tileDat, "tile.tbl", BundleFileHandler.TYPE_TILE_TBL);
+            this.addTable(tileDat, "TILEC.TBL", BundleFileHandler.TYPE_TILE_TBL);
+            this.addTable(tileDat, "SObj.tbl", BundleFileHandler.TYPE_SOBJ_TBL);
+            this.addEpfs("tile", "tile");
+            this.addEpfs("tilec", "tilec");
+        }
+
+        // Every part with a descriptor
+        DatFileHandler charDat = this.openDat("char.dat");
+        if (charDat != null) {
+            for (String fileName : charDat.files.keySet()) {
+                if (fileName.toLowerCase().endsWith(".dsc")) {
+                    String partName = fileName.substring(0, fileName.length() - 4);
+                    this.addTable(charDat, fileName, BundleFileHandler.TYPE_DSC);
+                    this.addTable(charDat, partName + ".pal", BundleFileHandler.TYPE_PAL);
+                    this.addEpfs(partName, partName);
+                }
+            }
+        }
+
+        DatFileHandler monDat = this.openDat("mon.dat");
+        if (monDat != null) {
+            this.addTable(monDat, "monster.pal", BundleFileHandler.TYPE_PAL);
+            this.addTable(monDat, "monster.dna", BundleFileHandler.TYPE_DNA);
+            this.addEpfs("mon", "mon");
+        }
+
+        DatFileHandler efxDat = this.openDat("efx.dat");
+        if (efxDat != null) {
+            this.addTable(efxDat, "EFFECT.PAL", BundleFileHandler.TYPE_PAL);
+            this.addTable(efxDat, "effect.tbl", BundleFileHandler.TYPE_EFX_TBL);
+            this.addTable(efxDat, "EFFECT.FRM", BundleFileHandler.TYPE_FRM);
+            this.addEpfs("EFFECT", "efx");
+        }
+    }
+
+    /**
+     * Encodes and writes every queued section, returns the bundle's length.
+     */
+    public long compile(File outputFile, int threadCount) throws IOException {
+        File temporaryFile = new File(outputFile.getPath() + ".tmp");
+        if (outputFile.getParentFile() != null) {
+            outputFile.getParentFile().mkdirs();
+        }
+
+        ExecutorService workers = Executors.newFixedThreadPool(threadCount);
+        BundleFileHandler.Writer writer = new BundleFileHandler.Writer(temporaryFile, this.sections.size());
+        try {
+            // Encode at most a couple of sections per worker ahead of the writer
+            int window = threadCount * 2;
+            List<Future<ByteBuffer>> encoded = new ArrayList<Future<ByteBuffer>>();
+            for (int i = 0; i < this.sections.size(); i++) {
+                while (encoded.size() < Math.min(this.sections.size(), i + window)) {
+                    encoded.add(workers.submit(this.sections.get(encoded.size()).encoder));
+                }
+
+                Section section = this.sections.get(i);
+                try {
+                    writer.add(section.name, section.type, encoded.get(i).get());
+                } catch (ExecutionException ee) {
+                    System.out.println("Unable to compile " + section.name + ": " + ee.getCause());
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while compiling " + section.name, ie);
+                }
+                encoded.set(i, null);
+            }
+        } finally {
+            workers.shutdownNow();
+            writer.close();
+        }
+
+        long length = temporaryFile.length();
+        Files.move(temporaryFile.toPath(), outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        return length;
+    }
+
+    DatFileHandler openDat(String datName) {
+        File datFile = new File(this.dataDirectory, datName);
+        if (!datFile.exists()) {
+            System.out.println("Unable to find " + datFile + ", skipping");
+            return null;
+        }
+
+        return new DatFileHandler(datFile);
+    }
+
+    void addTable(DatFileHandler dat, String fileName, int type) {
+        if (dat.getFile(fileName) == null) {
+            System.out.println("Unable to find " + fileName + " in " + dat.filePath + ", skipping");
+            return;
+        }
+
+        this.sections.add(new Section(fileName, type, () -> {
+            ByteBuffer bytes = dat.getFile(fileName);
+            switch (type) {
+                case BundleFileHandler.TYPE_PAL:
+                    return BundleFileHandler.encodePal(new PalFileHandler(bytes));
+                case BundleFileHandler.TYPE_DSC:
+                    return BundleFileHandler.encodeDsc(new DscFileHandler(bytes, false));
+                case BundleFileHandler.TYPE_DNA:
+                    return BundleFileHandler.encodeDna(new DnaFileHandler(bytes));
+                case BundleFileHandler.TYPE_EFX_TBL:
+                    return BundleFileHandler.encodeEfxTbl(new EfxTblFileHandler(bytes));
+                case BundleFileHandler.TYPE_FRM:
+                    return BundleFileHandler.encodeFrm(new FrmFileHandler(bytes));
+                case BundleFileHandler.TYPE_SOBJ_TBL:
+                    return BundleFileHandler.encodeSObjTbl(new SObjTblFileHandler(bytes));
+                case BundleFileHandler.TYPE_TILE_TBL:
+                    return BundleFileHandler.encodeTileTbl(new TileTblFileHandler(bytes));
+                default:
+                    throw new IllegalArgumentException("Not a table type: " + type);
+            }
+        }));
+    }
+
+    /**
+     * epfPrefix0.epf, epfPrefix1.epf... from datPrefix0.dat, datPrefix1.dat..., each dat loaded by the worker encoding it.
+     */
+    void addEpfs(String epfPrefix, String datPrefix) {
+        File[] datFiles = FileUtils.getDats(this.dataDirectory, datPrefix);
+        for (int i = 0; i < datFiles.length; i++) {
+            File datFile = datFiles[i];
+            String epfName = epfPrefix + i + ".epf";
+            this.sections.add(new Section(epfName, BundleFileHandler.TYPE_EPF, () -> {
+                DatFileHandler datFileHandler = new DatFileHandler(datFile);
+                ByteBuffer epfBytes = datFileHandler.getFile(epfName);
+                if (epfBytes == null) {
+                    throw new IllegalStateException(epfName + " not found in " + datFile);
+                }
+
+                return BundleFileHandler.encodeEpf(new EpfFileHandler(epfBytes, epfName));
+            }));
+        }
+    }
+}
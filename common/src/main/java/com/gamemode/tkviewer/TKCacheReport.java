@@ -0,0 +1,49 @@
+package com.gamemode.tkviewer;
+
+import com.gamemode.tkviewer.render.FrameCache;
+import com.gamemode.tkviewer.render.SObjRenderer;
+import com.gamemode.tkviewer.render.TileRenderer;
+
+/**
+ * Preloads every tile, static object tile and static object into the renderer caches, once per cache image mode
+ * (see FrameCache.ImageMode), and prints how many images each cache holds and how much pixel memory they take.
+ *
+ * Usage: TKCacheReport (data directory from -Dtkviewer.data, as usual).
+ */
+public class TKCacheReport {
+
+    public static void main(String[] args) {
+        for (FrameCache.ImageMode imageMode : FrameCache.ImageMode.values()) {
+            long startTime = System.nanoTime();
+            TileRenderer tileRenderer = new TileRenderer("tile", "tile.pal", "tile.tbl");
+            SObjRenderer sObjRenderer = new SObjRenderer();
+            tileRenderer.getFrameCache().imageMode = imageMode;
+            sObjRenderer.getTileRenderer().getFrameCache().imageMode = imageMode;
+            sObjRenderer.getFrameCache().imageMode = imageMode;
+
+            for (int i = 0; i < tileRenderer.getCount(true); i++) {
+                tileRenderer.renderTile(i);
+            }
+            for (int i = 0; i < sObjRenderer.getTileSObjTbl().objects.size(); i++) {
+                if (sObjRenderer.getTileSObjTbl().objects.get(i).getHeight() > 0) {
+                    sObjRenderer.renderSObject(i);
+                }
+            }
+
+            System.out.println(String.format("%s, preloaded in %.1fs:", imageMode, (System.nanoTime() - startTime) / 1_000_000_000.0));
+            printCache("tiles", tileRenderer.getFrameCache());
+            printCache("sobj tiles", sObjRenderer.getTileRenderer().getFrameCache());
+            printCache("sobjs", sObjRenderer.getFrameCache());
+            System.out.println(String.format("  %-12s %8.1f MB", "Total", (tileRenderer.getFrameCache().getImageBytes()
+                    + sObjRenderer.getTileRenderer().getFrameCache().getImageBytes()
+                    + sObjRenderer.getFrameCache().getImageBytes()) / (1024.0 * 1024.0)));
+
+            tileRenderer.dispose();
+            sObjRenderer.dispose();
+        }
+    }
+
+    static void printCache(String name, FrameCache cache) {
+        System.out.println(String.format("  %-12s %7d images, %8.1f MB", name, cache.size(), cache.getImageBytes() / (1024.0 * 1024.0)));
+    }
+}
@@ -0,0 +1,49 @@
+package com.gamemode.tkviewer;
+
+import com.gamemode.tkviewer.file_handlers.EpfFileHandler;
+import com.gamemode.tkviewer.resources.Resources;
+import com.gamemode.tkviewer.utilities.FileUtils;
+import com.gamemode.tkviewer.utilities.FrameDedupIndex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Hashes every frame of the tile, static object, part, mob and effect EPFs into one FrameDedupIndex and prints how many
+ * frames are byte-identical (within and across archives) and how much decoded frame data storing each once saves.
+ *
+ * Usage: TKDedupReport [epfPrefix...] (default: tile, tilec, every NexusTK part type, mon and EFFECT).
+ */
+public class TKDedupReport {
+
+    public static void main(String[] args) {
+        List<String> epfPrefixes = new ArrayList<String>();
+        if (args.length > 0) {
+            epfPrefixes.addAll(Arrays.asList(args));
+        } else {
+            epfPrefixes.addAll(Arrays.asList("tile", "tilec"));
+            epfPrefixes.addAll(Arrays.asList(TKDumper.NTK_PARTS));
+            epfPrefixes.addAll(Arrays.asList("mon", "EFFECT"));
+        }
+
+        long startTime = System.nanoTime();
+        FrameDedupIndex frameDedupIndex = new FrameDedupIndex();
+        for (String epfPrefix : epfPrefixes) {
+            // Effect EPFs live in efx0.dat, efx1.dat...
+            String datPrefix = epfPrefix.equals("EFFECT") ? "efx" : epfPrefix;
+            try {
+                List<EpfFileHandler> epfs = FileUtils.createEpfsFromDats(epfPrefix, datPrefix, false);
+                frameDedupIndex.add(epfPrefix, epfs);
+                for (EpfFileHandler epf : epfs) {
+                    epf.close();
+                }
+            } catch (RuntimeException re) {
+                System.out.println("Unable to index " + epfPrefix + " from " + Resources.getNtkDataDirectory() + ": " + re);
+            }
+        }
+
+        System.out.print(frameDedupIndex.getReport());
+        System.out.println(String.format("Indexed in %.1fs", (System.nanoTime() - startTime) / 1_000_000_000.0));
+    }
+}
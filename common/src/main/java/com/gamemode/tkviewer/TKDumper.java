@@ -1,124 +1,366 @@
 package com.gamemode.tkviewer;
 
 import com.gamemode.tkviewer.file_handlers.DatFileHandler;
+import com.gamemode.tkviewer.render.FrameCache;
 import com.gamemode.tkviewer.render.PartRenderer;
 import com.gamemode.tkviewer.resources.Resources;
+import com.gamemode.tkviewer.utilities.FileUtils;
+import com.gamemode.tkviewer.utilities.FrameDedupIndex;
 
 import javax.imageio.ImageIO;
-import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Dumps Image Frames from TKViewer types
+ *
+ * The main thread enumerates (part, index, frame) jobs, a worker pool renders and PNG-encodes them. Frames whose PNG is
+ * newer than the part's source archives are skipped, so an interrupted dump resumes where it stopped.
+ *
+ * Frames with the same content and palette (see FrameDedupIndex) are rendered and written once, their other PNGs are
+ * hard links to it (copies where the file system has no links). Disable with -Dtkdumper.dedup=false.
+ *
+ * Usage: TKDumper [outputDirectory] (default TKVIEWER_DIRECTORY/Dump, or -Dtkdumper.output), worker count with
+ * -Dtkdumper.threads (default: available processors).
  */
 public class TKDumper {
 
-    private static final String NTK_FRAMES_OUTPUT_DIR = "E:\\Reversing\\NTK\\frames_ntk";
-    private static final String BARAM_FRAMES_OUTPUT_DIR = "E:\\Reversing\\NTK\\frames_baram";
-    private static final String NTK_DAT_OUTPUT_DIR = "E:\\Reversing\\NTK\\dat_files_ntk";
-    private static final String BARAM_DAT_OUTPUT_DIR = "E:\\Reversing\\NTK\\dat_files_baram";
+    public static final String DEFAULT_OUTPUT_DIRECTORY = Resources.TKVIEWER_DIRECTORY + File.separator + "Dump";
+    public static final String DAT_EXTRACTED_MARKER = ".extracted";
+
+    static final String[] NTK_PARTS = {
+            "Sword", "Spear", "Body", "Fan", "Shield", "Bow", "Coat", "Face", "Hair", "Mantle", "Shoes"
+    };
+    static final String[] BARAM_PARTS = {
+            "C_Body", "C_Spear", "C_Sword", "C_Riding", "C_Shield", "C_Fan", "H_Body", "Body", "Bow", "BowF", "Coat",
+            "Face", "Fan", "Hair", "HairB", "Mantle", "MantleF", "MantleB", "Shield", "Shoes", "ShoesB", "ShoesF",
+            "Spear", "Sword", "SwordF", "SwordB"
+    };
+
+    ExecutorService workers;
+    // Bounds the number of queued jobs so the producer can't run ahead of the workers
+    Semaphore queuedJobs;
+
+    AtomicLong writtenFrames = new AtomicLong();
+    AtomicLong skippedFrames = new AtomicLong();
+    AtomicLong failedFrames = new AtomicLong();
+    AtomicLong writtenBytes = new AtomicLong();
+    AtomicLong linkedFrames = new AtomicLong();
+    AtomicLong linkedBytes = new AtomicLong();
+
+    // Null when deduplication is disabled
+    FrameDedupIndex frameDedupIndex;
+
+    public TKDumper(int threadCount) {
+        this.workers = Executors.newFixedThreadPool(threadCount, runnable -> {
+            Thread thread = new Thread(runnable, "TKDumper-Worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.queuedJobs = new Semaphore(threadCount * 16);
+    }
 
     public static void main(String[] args) {
-        (new File(NTK_FRAMES_OUTPUT_DIR)).mkdirs();
-        (new File(BARAM_FRAMES_OUTPUT_DIR)).mkdirs();
-        (new File(NTK_DAT_OUTPUT_DIR)).mkdirs();
-        (new File(BARAM_DAT_OUTPUT_DIR)).mkdirs();
+        String outputDirectory = args.length > 0 ? args[0] : System.getProperty("tkdumper.output", DEFAULT_OUTPUT_DIRECTORY);
+        int threadCount = Integer.getInteger("tkdumper.threads", Runtime.getRuntime().availableProcessors());
+
+        String ntkFramesOutputDirectory = outputDirectory + File.separator + "frames_ntk";
+        String baramFramesOutputDirectory = outputDirectory + File.separator + "frames_baram";
+        String ntkDatOutputDirectory = outputDirectory + File.separator + "dat_files_ntk";
+        String baramDatOutputDirectory = outputDirectory + File.separator + "dat_files_baram";
 
+        System.out.println("Dumping to " + outputDirectory + " with " + threadCount + " workers");
+        long startTime = System.nanoTime();
+
+        TKDumper dumper = new TKDumper(threadCount);
+        if (Boolean.parseBoolean(System.getProperty("tkdumper.dedup", "true"))) {
+            dumper.frameDedupIndex = new FrameDedupIndex();
+        }
         String ntkDataDirectory = Resources.getNtkDataDirectory();
-        extractDats(ntkDataDirectory, NTK_DAT_OUTPUT_DIR, false);
-        extractDats(Resources.BARAM_DATA_DIRECTORY, BARAM_DAT_OUTPUT_DIR, true);
-
-        System.out.println("===============BEGIN TK RENDERING===========");
-        dumpAllImages(new PartRenderer("Sword", ntkDataDirectory), "Sword", NTK_FRAMES_OUTPUT_DIR);
-        dumpAllImages(new PartRenderer("Spear", ntkDataDirectory), "Spear", NTK_FRAMES_OUTPUT_DIR);
-        dumpAllImages(new PartRenderer("Body", ntkDataDirectory), "Body", NTK_FRAMES_OUTPUT_DIR);
-        dumpAllImages(new PartRenderer("Fan", ntkDataDirectory), "Fan", NTK_FRAMES_OUTPUT_DIR);
-        dumpAllImages(new PartRenderer("Shield", ntkDataDirectory), "Shield", NTK_FRAMES_OUTPUT_DIR);
-        dumpAllImages(new PartRenderer("Bow", ntkDataDirectory), "Bow", NTK_FRAMES_OUTPUT_DIR);
-        dumpAllImages(new PartRenderer("Coat", ntkDataDirectory), "Coat", NTK_FRAMES_OUTPUT_DIR);
-        dumpAllImages(new PartRenderer("Face", ntkDataDirectory), "Face", NTK_FRAMES_OUTPUT_DIR);
-        dumpAllImages(new PartRenderer("Hair", ntkDataDirectory), "Hair", NTK_FRAMES_OUTPUT_DIR);
-        dumpAllImages(new PartRenderer("Mantle", ntkDataDirectory), "Mantle", NTK_FRAMES_OUTPUT_DIR);
-        dumpAllImages(new PartRenderer("Shoes", ntkDataDirectory), "Shoes", NTK_FRAMES_OUTPUT_DIR);
-        System.out.println("===============END TK RENDERING===========");
-
-        System.out.println("===============BEGIN BARAM RENDERING===========");
-        dumpAllImages(new PartRenderer("C_Body", Resources.BARAM_DATA_DIRECTORY), "C_Body", BARAM_FRAMES_OUTPUT_DIR);
-        dumpAllImages(new PartRenderer("C_Spear", Resources.BARAM_DATA_DIRECTORY), "C_Spear", BARAM_FRAMES_OUTPUT_DIR);
-        dumpAllImages(new PartRenderer("C_Sword", Resources.BARAM_DATA_DIRECTORY), "C_Sword", BARAM_FRAMES_OUTPUT_DIR);
-        dumpAllImages(new PartRenderer("C_Riding", Resources.BARAM_DATA_DIRECTORY), "C_Riding", BARAM_FRAMES_OUTPUT_DIR);
-        dumpAllImages(new PartRenderer("C_Shield", Resources.BARAM_DATA_DIRECTORY), "C_Shield", BARAM_FRAMES_OUTPUT_DIR);
-        dumpAllImages(new PartRenderer("C_Fan", Resources.BARAM_DATA_DIRECTORY), "C_Fan", BARAM_FRAMES_OUTPUT_DIR);
-        dumpAllImages(new PartRenderer("H_Body", Resources.BARAM_DATA_DIRECTORY), "H_Body", BARAM_FRAMES_OUTPUT_DIR);
-        dumpAllImages(new PartRenderer("Body", Resources.BARAM_DATA_DIRECTORY), "Body", BARAM_FRAMES_OUTPUT_DIR);
-        dumpAllImages(new PartRenderer("Bow", Resources.BARAM_DATA_DIRECTORY), "Bow", BARAM_FRAMES_OUTPUT_DIR);
-        dumpAllImages(new PartRenderer("BowF", Resources.BARAM_DATA_DIRECTORY), "BowF", BARAM_FRAMES_OUTPUT_DIR);
-        dumpAllImages(new PartRenderer("Coat", Resources.BARAM_DATA_DIRECTORY), "Coat", BARAM_FRAMES_OUTPUT_DIR);
-        dumpAllImages(new PartRenderer("Face", Resources.BARAM_DATA_DIRECTORY), "Face", BARAM_FRAMES_OUTPUT_DIR);
-        dumpAllImages(new PartRenderer("Fan", Resources.BARAM_DATA_DIRECTORY), "Fan", BARAM_FRAMES_OUTPUT_DIR);
-        dumpAllImages(new PartRenderer("Hair", Resources.BARAM_DATA_DIRECTORY), "Hair", BARAM_FRAMES_OUTPUT_DIR);
-        dumpAllImages(new PartRenderer("HairB", Resources.BARAM_DATA_DIRECTORY), "HairB", BARAM_FRAMES_OUTPUT_DIR);
-        dumpAllImages(new PartRenderer("Mantle", Resources.BARAM_DATA_DIRECTORY), "Mantle", BARAM_FRAMES_OUTPUT_DIR);
-        dumpAllImages(new PartRenderer("MantleF", Resources.BARAM_DATA_DIRECTORY), "MantleF", BARAM_FRAMES_OUTPUT_DIR);
-        dumpAllImages(new PartRenderer("MantleB", Resources.BARAM_DATA_DIRECTORY), "MantleB", BARAM_FRAMES_OUTPUT_DIR);
-        dumpAllImages(new PartRenderer("Shield", Resources.BARAM_DATA_DIRECTORY), "Shield", BARAM_FRAMES_OUTPUT_DIR);
-        dumpAllImages(new PartRenderer("Shoes", Resources.BARAM_DATA_DIRECTORY), "Shoes", BARAM_FRAMES_OUTPUT_DIR);
-        dumpAllImages(new PartRenderer("ShoesB", Resources.BARAM_DATA_DIRECTORY), "ShoesB", BARAM_FRAMES_OUTPUT_DIR);
-        dumpAllImages(new PartRenderer("ShoesF", Resources.BARAM_DATA_DIRECTORY), "ShoesF", BARAM_FRAMES_OUTPUT_DIR);
-        dumpAllImages(new PartRenderer("Spear", Resources.BARAM_DATA_DIRECTORY), "Spear", BARAM_FRAMES_OUTPUT_DIR);
-        dumpAllImages(new PartRenderer("Sword", Resources.BARAM_DATA_DIRECTORY), "Sword", BARAM_FRAMES_OUTPUT_DIR);
-        dumpAllImages(new PartRenderer("SwordF", Resources.BARAM_DATA_DIRECTORY), "SwordF", BARAM_FRAMES_OUTPUT_DIR);
-        dumpAllImages(new PartRenderer("SwordB", Resources.BARAM_DATA_DIRECTORY), "SwordB", BARAM_FRAMES_OUTPUT_DIR);
-        System.out.println("===============END BARAM RENDERING===========");
+        dumper.extractDats(ntkDataDirectory, ntkDatOutputDirectory, false);
+        dumper.extractDats(Resources.BARAM_DATA_DIRECTORY, baramDatOutputDirectory, true);
 
+        for (String part : NTK_PARTS) {
+            dumper.dumpAllImages(ntkDataDirectory, false, part, ntkFramesOutputDirectory);
+        }
+        for (String part : BARAM_PARTS) {
+            dumper.dumpAllImages(Resources.BARAM_DATA_DIRECTORY, true, part, baramFramesOutputDirectory);
+        }
+
+        dumper.awaitCompletion();
+        dumper.printSummary(System.nanoTime() - startTime);
     }
 
-    private static void extractDats(String dataDirectory, String dumpDirectory, boolean isBaram) {
-        File dataDirectoryFile = new File(dataDirectory);
-        File[] datFiles = dataDirectoryFile.listFiles((dir, name) -> name.contains(".dat"));
+    /**
+     * Queues every dat in dataDirectory for extraction, skipping dats extracted since they were last modified.
+     */
+    public void extractDats(String dataDirectory, String dumpDirectory, boolean isBaram) {
+        File[] datFiles = new File(dataDirectory).listFiles((dir, name) -> name.contains(".dat"));
+        if (datFiles == null) {
+            System.out.println("Unable to list data directory: " + dataDirectory);
+            return;
+        }
+
         for (File datFile : datFiles) {
-            DatFileHandler datFileHandler = new DatFileHandler(datFile.getPath(), isBaram);
             File datDumpDirectory = new File(dumpDirectory + File.separator + datFile.getName());
-            datDumpDirectory.mkdirs();
-            datFileHandler.exportFiles(datDumpDirectory.getPath());
+            File marker = new File(datDumpDirectory, DAT_EXTRACTED_MARKER);
+            if (marker.exists() && marker.lastModified() >= datFile.lastModified()) {
+                continue;
+            }
+
+            this.submit(() -> {
+                DatFileHandler datFileHandler = new DatFileHandler(datFile.getPath(), isBaram);
+                datDumpDirectory.mkdirs();
+                datFileHandler.exportFiles(datDumpDirectory.getPath());
+                datFileHandler.close();
+                try {
+                    Files.write(marker.toPath(), new byte[0]);
+                } catch (IOException ioe) {
+                    System.out.println("Unable to mark " + datFile.getName() + " as extracted: " + ioe);
+                }
+            });
         }
     }
 
-    private static void dumpAllFiles(DatFileHandler datFileHandler, String baseDirectoryString) {
-        System.out.println("Will export extracted dat to: " + baseDirectoryString);
-        File outputDirectory = new File(baseDirectoryString);
-        if (!outputDirectory.exists()) {
-            outputDirectory.mkdirs();
+    /**
+     * Queues one job per unique frame (or per frame without deduplication) of every part in the archive, the renderer
+     * is disposed once its last job finishes.
+     */
+    public void dumpAllImages(String dataDirectory, boolean isBaram, String type, String outputDirectoryString) {
+        PartJobSource source;
+        try {
+            source = new PartJobSource(new PartRenderer(type, dataDirectory), getSourceModified(dataDirectory, type, isBaram));
+        } catch (RuntimeException re) {
+            System.out.println("Unable to load " + type + " from " + dataDirectory + ": " + re);
+            return;
         }
 
-        datFileHandler.exportFiles(baseDirectoryString);
-    }
-
-    private static void dumpAllImages(PartRenderer renderer, String type, String outputDirectoryString) {
         File outputDirectory = new File(outputDirectoryString + File.separator + type);
-        if (!outputDirectory.exists() && outputDirectory.mkdirs()) {
-            System.err.println("Unable to create output directory: " + outputDirectoryString);
+        PartRenderer renderer = source.renderer;
+        int[] canonicalFrames = null;
+        if (this.frameDedupIndex != null) {
+            this.frameDedupIndex.dedup(renderer);
+            canonicalFrames = renderer.getFrameCache().getCanonicalFrames();
         }
 
+        // Frames keyed by (canonical frame, palette), in enumeration order
+        Map<Long, FrameJob> frameJobs = new LinkedHashMap<Long, FrameJob>();
+        long frameCount = 0;
         for (int i = 0; i < renderer.getCount(); i++) {
-            Image[] images = renderer.getFrames(i);
-            String epfName = renderer.getEpfNameForFrame(i);
-            for (int j = 0; j < images.length; j++) {
+            Part part = renderer.partDsc.parts.get(i);
+            int partIndex = i;
+            int frameIndex = (int) part.getFrameIndex();
+            int paletteIndex = (int) part.getPaletteId();
+
+            // One directory per part, created here rather than per frame
+            File partDirectory = new File(outputDirectory + File.separator
+                    + renderer.getEpfNameForFrame(i) + File.separator
+                    + String.format("%05d", i));
+            partDirectory.mkdirs();
+
+            for (int j = 0; j < part.getFrameCount(); j++) {
+                File file = new File(partDirectory, String.format("%05d", j) + ".png");
+                int frame = frameIndex + j;
+                long key = canonicalFrames != null && frame >= 0 && frame < canonicalFrames.length
+                        ? FrameCache.key(canonicalFrames[frame], paletteIndex)
+                        : -1 - frameCount;
+                frameCount++;
+
+                FrameJob frameJob = frameJobs.get(key);
+                if (frameJob == null) {
+                    frameJobs.put(key, new FrameJob(partIndex, frameIndex, j, paletteIndex, file));
+                } else {
+                    frameJob.duplicates.add(file);
+                }
+            }
+        }
+
+        for (FrameJob frameJob : frameJobs.values()) {
+            List<File> staleFiles = new ArrayList<File>();
+            for (File file : frameJob.getFiles()) {
+                if (file.exists() && file.lastModified() >= source.sourceModified) {
+                    this.skippedFrames.incrementAndGet();
+                } else {
+                    staleFiles.add(file);
+                }
+            }
+            if (staleFiles.isEmpty()) {
+                continue;
+            }
+
+            source.pending.incrementAndGet();
+            this.submit(() -> {
                 try {
-                    File file = new File(
-                            outputDirectory + File.separator
-                                    + epfName + File.separator
-                                    + String.format("%05d", i) + File.separator
-                                    + String.format("%05d", j) + ".png");
-                    file.getParentFile().mkdirs();
-                    file.createNewFile();
-                    ImageIO.write((BufferedImage) images[j], "png", file);
-                } catch (IOException ioe) {
-                    ioe.printStackTrace();
+                    File original = frameJob.file;
+                    if (staleFiles.get(0) == original) {
+                        BufferedImage image;
+                        synchronized (renderer) {
+                            image = renderer.renderPart(frameJob.partIndex, frameJob.frameIndex, frameJob.frameOffset,
+                                    frameJob.paletteIndex);
+                        }
+                        if (!this.writePng(image, original)) {
+                            this.failedFrames.addAndGet(staleFiles.size() - 1);
+                            return;
+                        }
+                    }
+                    for (File duplicate : staleFiles) {
+                        if (duplicate != original) {
+                            this.linkPng(original, duplicate);
+                        }
+                    }
+                } finally {
+                    source.release();
+                }
+            });
+        }
+        source.release();
+    }
+
+    public void awaitCompletion() {
+        this.workers.shutdown();
+        try {
+            this.workers.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void printSummary(long elapsedNanos) {
+        double seconds = elapsedNanos / 1_000_000_000.0;
+        long written = this.writtenFrames.get();
+        System.out.println(String.format("Wrote %d frames (%.1f MB), skipped %d up-to-date, %d failed in %.1fs",
+                written, this.writtenBytes.get() / (1024.0 * 1024.0), this.skippedFrames.get(), this.failedFrames.get(), seconds));
+        System.out.println(String.format("Throughput: %.1f frames/s, %.1f MB/s",
+                written / seconds, this.writtenBytes.get() / (1024.0 * 1024.0) / seconds));
+        if (this.frameDedupIndex != null) {
+            System.out.println(String.format("Linked %d duplicate frames instead of rendering them (%.1f MB not written)",
+                    this.linkedFrames.get(), this.linkedBytes.get() / (1024.0 * 1024.0)));
+            System.out.print(this.frameDedupIndex.getReport());
+        }
+    }
+
+    boolean writePng(BufferedImage image, File file) {
+        // Written next to the target and moved in place, so an interrupted dump never leaves a truncated PNG behind
+        File temporaryFile = new File(file.getPath() + ".tmp");
+        try {
+            ImageIO.write(image, "png", temporaryFile);
+            Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            this.writtenFrames.incrementAndGet();
+            this.writtenBytes.addAndGet(file.length());
+            return true;
+        } catch (IOException ioe) {
+            System.out.println("Unable to write " + file + ": " + ioe);
+            temporaryFile.delete();
+            this.failedFrames.incrementAndGet();
+            return false;
+        }
+    }
+
+    void linkPng(File original, File file) {
+        try {
+            Files.deleteIfExists(file.toPath());
+            try {
+                Files.createLink(file.toPath(), original.toPath());
+                this.linkedBytes.addAndGet(original.length());
+            } catch (UnsupportedOperationException | IOException e) {
+                Files.copy(original.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            this.linkedFrames.incrementAndGet();
+        } catch (IOException ioe) {
+            System.out.println("Unable to link " + file + " to " + original + ": " + ioe);
+            this.failedFrames.incrementAndGet();
+        }
+    }
+
+    void submit(Runnable job) {
+        try {
+            this.queuedJobs.acquire();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        this.workers.execute(() -> {
+            try {
+                job.run();
+            } catch (RuntimeException re) {
+                System.out.println("Unable to dump: " + re);
+                this.failedFrames.incrementAndGet();
+            } finally {
+                this.queuedJobs.release();
+            }
+        });
+    }
+
+    /**
+     * Newest modification time of the archives a part is rendered from (char.dat and the part's own dats).
+     */
+    static long getSourceModified(String dataDirectory, String type, boolean isBaram) {
+        long sourceModified = new File(dataDirectory, "char.dat").lastModified();
+        for (File datFile : FileUtils.getDats(type, isBaram)) {
+            sourceModified = Math.max(sourceModified, datFile.lastModified());
+        }
+
+        return sourceModified;
+    }
+
+    /**
+     * A frame to render and the files of the identical frames to link to it.
+     */
+    static class FrameJob {
+        int partIndex;
+        int frameIndex;
+        int frameOffset;
+        int paletteIndex;
+        File file;
+        List<File> duplicates = new ArrayList<File>();
+
+        FrameJob(int partIndex, int frameIndex, int frameOffset, int paletteIndex, File file) {
+            this.partIndex = partIndex;
+            this.frameIndex = frameIndex;
+            this.frameOffset = frameOffset;
+            this.paletteIndex = paletteIndex;
+            this.file = file;
+        }
+
+        List<File> getFiles() {
+            List<File> files = new ArrayList<File>();
+            files.add(this.file);
+            files.addAll(this.duplicates);
+            return files;
+        }
+    }
+
+    /**
+     * A part type's renderer (not thread-safe, so rendering is serialized on it) and its outstanding jobs.
+     */
+    static class PartJobSource {
+        PartRenderer renderer;
+        long sourceModified;
+        // Starts at 1 for the producer, released once every job has been queued
+        AtomicInteger pending = new AtomicInteger(1);
+
+        PartJobSource(PartRenderer renderer, long sourceModified) {
+            this.renderer = renderer;
+            this.sourceModified = sourceModified;
+        }
+
+        void release() {
+            if (this.pending.decrementAndGet() == 0) {
+                synchronized (this.renderer) {
+                    this.renderer.dispose();
                 }
             }
         }
     }
-}
\ No newline at end of file
+}
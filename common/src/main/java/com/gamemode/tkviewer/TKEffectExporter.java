@@ -0,0 +1,50 @@
+package com.gamemode.tkviewer;
+
+import com.gamemode.tkviewer.render.EffectRenderer;
+import com.gamemode.tkviewer.render.EffectTimeline;
+import com.gamemode.tkviewer.resources.Resources;
+import com.gamemode.tkviewer.utilities.IndexedGifWriter;
+
+import java.io.File;
+
+/**
+ * Exports effects as animated GIFs without a display. Each effect is streamed through an EffectTimeline, so only a few
+ * canvases are held however long the effect is.
+ *
+ * Usage: TKEffectExporter [outputDirectory [firstEffect [lastEffect]]] (default TKVIEWER_DIRECTORY/Effects, or
+ * -Dtkeffects.output, every effect).
+ */
+public class TKEffectExporter {
+
+    public static final String DEFAULT_OUTPUT_DIRECTORY = Resources.TKVIEWER_DIRECTORY + File.separator + "Effects";
+
+    public static void main(String[] args) {
+        String outputDirectory = args.length > 0 ? args[0] : System.getProperty("tkeffects.output", DEFAULT_OUTPUT_DIRECTORY);
+        new File(outputDirectory).mkdirs();
+
+        long startTime = System.nanoTime();
+        EffectRenderer effectRenderer = new EffectRenderer();
+        int firstEffect = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+        int lastEffect = args.length > 2 ? Integer.parseInt(args[2]) : effectRenderer.getCount() - 1;
+
+        int exportedCount = 0;
+        long frameCount = 0;
+        for (int i = firstEffect; i <= lastEffect; i++) {
+            try {
+                EffectTimeline timeline = effectRenderer.createTimeline(i);
+                if (timeline.getFrameCount() == 0) {
+                    continue;
+                }
+                IndexedGifWriter.exportGif(timeline, null, outputDirectory + File.separator + "effect-" + i + ".gif");
+                exportedCount++;
+                frameCount += timeline.getFrameCount();
+            } catch (RuntimeException re) {
+                System.out.println("Unable to export effect " + i + ": " + re);
+            }
+        }
+        effectRenderer.dispose();
+
+        System.out.println(String.format("Exported %d effects (%d frames) to %s in %.1fs", exportedCount, frameCount,
+                outputDirectory, (System.nanoTime() - startTime) / 1_000_000_000.0));
+    }
+}
@@ -0,0 +1,63 @@
+package com.gamemode.tkviewer.file_handlers;
+
+import com.gamemode.tkviewer.Frame;
+import com.gamemode.tkviewer.resources.Stencil;
+
+import java.awt.Rectangle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * EPF backed by a memory-mapped bundle section (see BundleFileHandler): frames are built from the fixed frame table as
+ * views of the mapping, pixels and pre-decoded stencil spans included, instead of being copied out and RLE-decoded.
+ */
+public class BundleEpfFileHandler extends EpfFileHandler {
+
+    public BundleEpfFileHandler(ByteBuffer section, String filePath) {
+        // The section starts with the EPF header, so init() reads it as usual
+        super(section.order(ByteOrder.LITTLE_ENDIAN), filePath);
+        // Frames are views of the mapping already, nothing to decode off-heap
+        this.arena = null;
+    }
+
+    @Override
+    protected Rectangle readFrameBounds(int index) {
+        int record = BundleFileHandler.EPF_FRAME_TABLE + (index * BundleFileHandler.EPF_FRAME_SIZE);
+        int top = this.bytes.getShort(record);
+        int left = this.bytes.getShort(record + 2);
+        int bottom = this.bytes.getShort(record + 4);
+        int right = this.bytes.getShort(record + 6);
+
+        return new Rectangle(left, top, right - left, bottom - top);
+    }
+
+    @Override
+    protected Frame decodeFrame(int index) {
+        ByteBuffer section = this.bytes;
+        int record = BundleFileHandler.EPF_FRAME_TABLE + (index * BundleFileHandler.EPF_FRAME_SIZE);
+
+        int top = section.getShort(record);
+        int left = section.getShort(record + 2);
+        int bottom = section.getShort(record + 4);
+        int right = section.getShort(record + 6);
+        long pixelDataOffset = section.getInt(record + 8) & 0xFFFFFFFFL;
+        long stencilDataOffset = section.getInt(record + 12) & 0xFFFFFFFFL;
+        int pixelPosition = section.getInt(record + 16);
+        int spanPosition = section.getInt(record + 20);
+        int rawStencilPosition = section.getInt(record + 24);
+        int rawStencilLength = section.getInt(record + 28);
+
+        int width = (right - left);
+        int height = (bottom - top);
+
+        // Pixels, spans and encoded stencil are read in place from the mapping
+        ByteBuffer rawPixelData = FrameArena.view(section, pixelPosition, Math.max(0, width * height));
+        int rows = Math.max(0, height);
+        int spanCount = section.getInt(spanPosition + (rows * 4));
+        ByteBuffer spans = FrameArena.view(section, spanPosition, ((rows + 1) * 4) + (spanCount * 4));
+        ByteBuffer rawStencilData = FrameArena.view(section, rawStencilPosition, rawStencilLength);
+
+        return new Frame(top, left, bottom, right, width, height, pixelDataOffset, stencilDataOffset, rawPixelData,
+                rawStencilData, new Stencil(spans, rawStencilData, rows));
+    }
+}
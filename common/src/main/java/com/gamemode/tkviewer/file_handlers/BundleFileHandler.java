@@ -0,0 +1,726 @@
+package com.gamemode.tkviewer.file_handlers;
+
+import com.gamemode.tkviewer.*;
+import com.gamemode.tkviewer.Color;
+import com.gamemode.tkviewer.Frame;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Precompiled asset bundle (.tkb): EPFs, palettes and DSC/DNA/EFX/FRM/SObj/tile tables already decoded into fixed
+ * layout little-endian sections, written by TKBundleCompiler.
+ *
+ * Sections are memory-mapped on first use, so opening a bundle only reads its directory, frames are materialized
+ * without any RLE or table parsing and every process using the bundle shares the same page cache.
+ *
+ * Layout: "TKBUNDLE", int version, int entryCount, then entryCount directory entries (name[40], int type, int count,
+ * long offset, long length) and the sections, each 8-byte aligned. Entry names are the original file names
+ * (tile0.epf, Body.dsc...), looked up case-insensitively.
+ */
+public class BundleFileHandler extends FileHandler {
+
+    public static final String MAGIC = "TKBUNDLE";
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 0x10;
+    public static final int ENTRY_SIZE = 0x40;
+    public static final int NAME_SIZE = 0x28;
+    public static final int ALIGNMENT = 0x8;
+
+    public static final int TYPE_EPF = 1;
+    public static final int TYPE_PAL = 2;
+    public static final int TYPE_DSC = 3;
+    public static final int TYPE_DNA = 4;
+    public static final int TYPE_EFX_TBL = 5;
+    public static final int TYPE_FRM = 6;
+    public static final int TYPE_SOBJ_TBL = 7;
+    public static final int TYPE_TILE_TBL = 8;
+
+    // EPF sections start with the EPF header, then one record per frame:
+    // short top, left, bottom, right, int pixelDataOffset, stencilDataOffset (as in the EPF), then section positions
+    // of the pixels, the stencil spans (int rowStarts[height + 1], short x/length pairs of drawn runs) and the raw
+    // stencil
+    public static final int EPF_FRAME_TABLE = 0x10;
+    public static final int EPF_FRAME_SIZE = 0x20;
+
+    public static class Entry {
+        public String name;
+        public int type;
+        public int count;
+        public long offset;
+        public long length;
+    }
+
+    public int version;
+    // Keyed by lower case name
+    public Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+
+    Map<String, ByteBuffer> sections = new ConcurrentHashMap<String, ByteBuffer>();
+
+    public BundleFileHandler(String filePath) {
+        this(new File(filePath));
+    }
+
+    public BundleFileHandler(File file) {
+        super(file);
+        if (this.fileInputStream == null) {
+            throw new IllegalArgumentException("Unable to open asset bundle: " + file);
+        }
+
+        ByteBuffer header = this.readBytes(HEADER_SIZE, true);
+        String magic = new String(header.array(), 0, MAGIC.length(), StandardCharsets.US_ASCII);
+        if (!magic.equals(MAGIC)) {
+            throw new IllegalArgumentException("Not an asset bundle: " + file);
+        }
+        this.version = header.getInt(8);
+        if (this.version != VERSION) {
+            throw new IllegalArgumentException("Unsupported asset bundle version " + this.version + ": " + file);
+        }
+
+        int entryCount = header.getInt(12);
+        ByteBuffer directory = this.readBytes((long) entryCount * ENTRY_SIZE, true);
+        for (int i = 0; i < entryCount; i++) {
+            int position = i * ENTRY_SIZE;
+            Entry entry = new Entry();
+            int nameLength = 0;
+            while (nameLength < NAME_SIZE && directory.get(position + nameLength) != 0) {
+                nameLength++;
+            }
+            entry.name = new String(directory.array(), position, nameLength, StandardCharsets.US_ASCII);
+            entry.type = directory.getInt(position + NAME_SIZE);
+            entry.count = directory.getInt(position + NAME_SIZE + 4);
+            entry.offset = directory.getLong(position + NAME_SIZE + 8);
+            entry.length = directory.getLong(position + NAME_SIZE + 16);
+            this.entries.put(entry.name.toLowerCase(), entry);
+        }
+    }
+
+    public boolean contains(String name) {
+        return this.entries.containsKey(name.toLowerCase());
+    }
+
+    /**
+     * Memory-mapped view of a section with its own position, or null if the bundle has no such entry.
+     */
+    public ByteBuffer getSection(String name) {
+        Entry entry = this.entries.get(name.toLowerCase());
+        if (entry == null) {
+            return null;
+        }
+
+        ByteBuffer section = this.sections.computeIfAbsent(entry.name.toLowerCase(), key -> {
+            try {
+                return this.fileInputStream.getChannel().map(FileChannel.MapMode.READ_ONLY, entry.offset, entry.length);
+            } catch (IOException ioe) {
+                throw new IllegalStateException("Unable to map " + entry.name + " from " + this.file + ": " + ioe, ioe);
+            }
+        });
+
+        return section.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Bytes of the sections mapped so far.
+     */
+    public long getMappedBytes() {
+        long mappedBytes = 0;
+        for (ByteBuffer section : this.sections.values()) {
+            mappedBytes += section.capacity();
+        }
+
+        return mappedBytes;
+    }
+
+    /**
+     * EPFs epfPrefix0.epf, epfPrefix1.epf... in order, like FileUtils.createEpfsFromDats.
+     */
+    public List<EpfFileHandler> getEpfs(String epfPrefix) {
+        List<EpfFileHandler> epfs = new ArrayList<EpfFileHandler>();
+        for (int i = 0; this.contains(epfPrefix + i + ".epf"); i++) {
+            epfs.add(this.getEpf(epfPrefix + i + ".epf"));
+        }
+
+        return epfs;
+    }
+
+    public EpfFileHandler getEpf(String name) {
+        return new BundleEpfFileHandler(this.getSection(name), name);
+    }
+
+    public PalFileHandler getPal(String name) {
+        ByteBuffer section = this.getSection(name);
+        int paletteCount = section.getInt(0);
+        int lutPosition = section.getInt(4);
+
+        List<Palette> palettes = new ArrayList<Palette>();
+        for (int i = 0; i < paletteCount; i++) {
+            int animationColorCount = section.getInt(8 + (i * 8));
+            int animationPosition = section.getInt(12 + (i * 8));
+            List<Integer> animationOffsets = new ArrayList<Integer>();
+            for (int j = 0; j < animationColorCount; j++) {
+                animationOffsets.add(section.getShort(animationPosition + (j * 2)) & 0xFFFF);
+            }
+
+            List<Color> colors = new ArrayList<Color>();
+            for (int j = 0; j < 256; j++) {
+                int argb = section.getInt(lutPosition + (((i * 256) + j) * 4));
+                colors.add(new Color((long) (argb & 0xFFFFFF) << 8));
+            }
+
+            PaletteMetadata paletteMetadata = new PaletteMetadata("DLPalette", ByteBuffer.allocate(15), ByteBuffer.allocate(7));
+            palettes.add(new Palette(animationColorCount, animationOffsets, colors, paletteMetadata));
+        }
+
+        return new PalFileHandler(section, palettes);
+    }
+
+    /**
+     * A palette's 256 colors as opaque ARGB, straight from the mapped section.
+     */
+    public int[] getPaletteLut(String name, int paletteIndex) {
+        ByteBuffer section = this.getSection(name);
+        int lutPosition = section.getInt(4) + (paletteIndex * 256 * 4);
+
+        int[] lut = new int[256];
+        for (int i = 0; i < lut.length; i++) {
+            lut[i] = section.getInt(lutPosition + (i * 4));
+        }
+
+        return lut;
+    }
+
+    public DscFileHandler getDsc(String name) {
+        ByteBuffer section = this.getSection(name);
+        int partCount = section.getInt(0);
+        int chunkCount = section.getInt(4);
+        int chunkTable = 16 + (partCount * 40);
+        int blockTable = chunkTable + (chunkCount * 16);
+
+        List<Part> parts = new ArrayList<Part>();
+        for (int i = 0; i < partCount; i++) {
+            int part = 16 + (i * 40);
+            int firstChunk = section.getInt(part + 32);
+            List<PartChunk> partChunks = new ArrayList<PartChunk>();
+            for (int j = 0; j < section.getInt(part + 36); j++) {
+                int chunk = chunkTable + ((firstChunk + j) * 16);
+                int firstBlock = section.getInt(chunk + 8);
+                List<PartBlock> partBlocks = new ArrayList<PartBlock>();
+                for (int k = 0; k < section.getInt(chunk + 12); k++) {
+                    int block = blockTable + ((firstBlock + k) * 12);
+                    partBlocks.add(new PartBlock(section.getShort(block),
+                            section.get(block + 2) & 0xFF, section.get(block + 3) & 0xFF,
+                            section.get(block + 4) & 0xFF, section.get(block + 5) & 0xFF,
+                            section.get(block + 6) & 0xFF, section.get(block + 7) & 0xFF,
+                            section.get(block + 8) & 0xFF));
+                }
+                partChunks.add(new PartChunk(section.getInt(chunk), section.getInt(chunk + 4), partBlocks));
+            }
+
+            PartMetadata partMetadata = new PartMetadata(section.getShort(part + 16), section.getShort(part + 18),
+                    section.getShort(part + 20), section.getShort(part + 22), section.getShort(part + 24),
+                    section.getShort(part + 26), section.getShort(part + 28));
+            parts.add(new Part(section.getInt(part) & 0xFFFFFFFFL, section.getInt(part + 4) & 0xFFFFFFFFL,
+                    section.getInt(part + 8) & 0xFFFFFFFFL, section.getInt(part + 12) & 0xFFFFFFFFL,
+                    partChunks, partMetadata));
+        }
+
+        return new DscFileHandler(section, parts);
+    }
+
+    public DnaFileHandler getDna(String name) {
+        ByteBuffer section = this.getSection(name);
+        int mobCount = section.getInt(0);
+        int chunkCount = section.getInt(4);
+        int chunkTable = 16 + (mobCount * 16);
+        int blockTable = chunkTable + (chunkCount * 8);
+
+        List<Mob> mobs = new ArrayList<Mob>();
+        for (int i = 0; i < mobCount; i++) {
+            int mob = 16 + (i * 16);
+            int firstChunk = section.getInt(mob + 4);
+            int mobChunkCount = section.getInt(mob + 8);
+            List<MobChunk> mobChunks = new ArrayList<MobChunk>();
+            for (int j = 0; j < mobChunkCount; j++) {
+                int chunk = chunkTable + ((firstChunk + j) * 8);
+                int firstBlock = section.getInt(chunk);
+                int blockCount = section.getInt(chunk + 4);
+                List<MobBlock> mobBlocks = new ArrayList<MobBlock>();
+                for (int k = 0; k < blockCount; k++) {
+                    int block = blockTable + ((firstBlock + k) * 12);
+                    mobBlocks.add(new MobBlock(section.getShort(block), section.getShort(block + 2),
+                            section.getShort(block + 4), section.get(block + 6) & 0xFF,
+                            section.get(block + 7) & 0xFF, section.get(block + 8) & 0xFF));
+                }
+                mobChunks.add(new MobChunk(blockCount, mobBlocks));
+            }
+            mobs.add(new Mob(section.getInt(mob) & 0xFFFFFFFFL, mobChunkCount, section.get(mob + 14),
+                    section.getShort(mob + 12) & 0xFFFF, mobChunks));
+        }
+
+        return new DnaFileHandler(section, mobs);
+    }
+
+    public EfxTblFileHandler getEfxTbl(String name) {
+        ByteBuffer section = this.getSection(name);
+        int effectCount = section.getInt(0);
+        int frameTable = 8 + (effectCount * 12);
+
+        List<Effect> effects = new ArrayList<Effect>();
+        for (int i = 0; i < effectCount; i++) {
+            int effect = 8 + (i * 12);
+            int firstFrame = section.getInt(effect + 4);
+            int frameCount = section.getInt(effect + 8);
+            List<EffectFrame> effectFrames = new ArrayList<EffectFrame>();
+            for (int j = 0; j < frameCount; j++) {
+                int frame = frameTable + ((firstFrame + j) * 16);
+                effectFrames.add(new EffectFrame(section.getInt(frame), section.getInt(frame + 4),
+                        section.getInt(frame + 8), section.getInt(frame + 12)));
+            }
+            effects.add(new Effect(section.getInt(effect), frameCount, effectFrames));
+        }
+
+        return new EfxTblFileHandler(section, effects);
+    }
+
+    public FrmFileHandler getFrm(String name) {
+        ByteBuffer section = this.getSection(name);
+
+        List<Integer> paletteIndices = new ArrayList<Integer>();
+        for (int i = 0; i < section.getInt(0); i++) {
+            paletteIndices.add(section.getInt(4 + (i * 4)));
+        }
+
+        return new FrmFileHandler(section, paletteIndices);
+    }
+
+    public SObjTblFileHandler getSObjTbl(String name) {
+        ByteBuffer section = this.getSection(name);
+        int objectCount = section.getInt(0);
+        int tileTable = 16 + (objectCount * 16);
+
+        List<SObject> objects = new ArrayList<SObject>();
+        for (int i = 0; i < objectCount; i++) {
+            int object = 16 + (i * 16);
+            int tileCount = section.getShort(object + 2) & 0xFFFF;
+            int firstTile = section.getInt(object + 4);
+            List<Integer> tileIndices = new ArrayList<Integer>();
+            for (int j = 0; j < tileCount; j++) {
+                tileIndices.add(section.getInt(tileTable + ((firstTile + j) * 4)));
+            }
+            objects.add(new SObject(section.get(object), section.get(object + 1), tileIndices,
+                    copy(section, object + 8, 5)));
+        }
+
+        return new SObjTblFileHandler(section, copy(section, 8, 2), objects);
+    }
+
+    public TileTblFileHandler getTileTbl(String name) {
+        ByteBuffer section = this.getSection(name);
+
+        List<TblIndex> paletteIndices = new ArrayList<TblIndex>();
+        for (int i = 0; i < section.getInt(0); i++) {
+            paletteIndices.add(new TblIndex(section.getShort(4 + (i * 4)) & 0xFFFF, section.getShort(6 + (i * 4))));
+        }
+
+        return new TileTblFileHandler(section, paletteIndices);
+    }
+
+    static ByteBuffer copy(ByteBuffer section, int position, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer source = section.duplicate();
+        source.position(position);
+        source.get(bytes);
+
+        return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public static ByteBuffer encodeEpf(EpfFileHandler epf) {
+        ByteBuffer table = ByteBuffer.allocate(EPF_FRAME_TABLE + (epf.frameCount * EPF_FRAME_SIZE)).order(ByteOrder.LITTLE_ENDIAN);
+        table.putShort((short) epf.frameCount);
+        table.putShort((short) epf.width);
+        table.putShort((short) epf.height);
+        table.putShort((short) epf.bitBLT);
+        table.putInt((int) epf.pixelDataLength);
+        table.position(EPF_FRAME_TABLE);
+
+        SectionOutput data = new SectionOutput(table.capacity());
+        for (int i = 0; i < epf.frameCount; i++) {
+            Frame frame = epf.getFrame(i);
+            int width = Math.max(0, frame.getWidth());
+            int height = Math.max(0, frame.getHeight());
+
+            table.putShort((short) frame.getTop());
+            table.putShort((short) frame.getLeft());
+            table.putShort((short) frame.getBottom());
+            table.putShort((short) frame.getRight());
+            table.putInt((int) frame.getPixelDataOffset());
+            table.putInt((int) frame.getStencilDataOffset());
+
+            table.putInt(data.position());
+            data.write(frame.getRawPixelData(), width * height);
+
+            // Drawn runs per row
+            List<Integer> rowStarts = new ArrayList<Integer>();
+            List<Integer> spans = new ArrayList<Integer>();
+            boolean[] scratch = new boolean[width];
+            for (int y = 0; y < height; y++) {
+                rowStarts.add(spans.size() / 2);
+                boolean[] row = frame.getStencil().getRow(y, scratch);
+                for (int x = 0; x < row.length; x++) {
+                    if (row[x] && (x == 0 || !row[x - 1])) {
+                        int end = x;
+                        while (end < row.length && row[end]) {
+                            end++;
+                        }
+                        spans.add(x);
+                        spans.add(end - x);
+                    }
+                }
+            }
+            rowStarts.add(spans.size() / 2);
+            data.align(4);
+            table.putInt(data.position());
+            for (int rowStart : rowStarts) {
+                data.writeInt(rowStart);
+            }
+            for (int span : spans) {
+                data.writeShort(span);
+            }
+
+            ByteBuffer rawStencilData = frame.getRawStencilData();
+            table.putInt(data.position());
+            table.putInt(rawStencilData.capacity());
+            data.write(rawStencilData, rawStencilData.capacity());
+        }
+
+        return data.toSection(table);
+    }
+
+    public static ByteBuffer encodePal(PalFileHandler pal) {
+        int paletteCount = pal.palettes.size();
+        int lutPosition = 8 + (paletteCount * 8);
+        ByteBuffer table = ByteBuffer.allocate(lutPosition + (paletteCount * 256 * 4)).order(ByteOrder.LITTLE_ENDIAN);
+        table.putInt(paletteCount);
+        table.putInt(lutPosition);
+
+        SectionOutput data = new SectionOutput(table.capacity());
+        for (Palette palette : pal.palettes) {
+            int animationColorCount = Math.max(0, palette.getAnimationColorCount());
+            table.putInt(animationColorCount);
+            table.putInt(data.position());
+            for (int i = 0; i < animationColorCount; i++) {
+                data.writeShort(palette.getAnimationColorOffsets().get(i));
+            }
+        }
+        for (Palette palette : pal.palettes) {
+            for (int i = 0; i < 256; i++) {
+                Color color = palette.getColors().get(i);
+                table.putInt(0xFF000000 | (color.getRed().intValue() << 16) | (color.getGreen().intValue() << 8)
+                        | color.getBlue().intValue());
+            }
+        }
+
+        return data.toSection(table);
+    }
+
+    public static ByteBuffer encodeDsc(DscFileHandler dsc) {
+        SectionOutput parts = new SectionOutput(16);
+        SectionOutput chunks = new SectionOutput(0);
+        SectionOutput blocks = new SectionOutput(0);
+        for (Part part : dsc.parts) {
+            parts.writeInt((int) part.getId());
+            parts.writeInt((int) part.getPaletteId());
+            parts.writeInt((int) part.getFrameIndex());
+            parts.writeInt((int) part.getFrameCount());
+            PartMetadata partMetadata = part.getPartMetadata();
+            parts.writeShort(partMetadata.getUnknownPart1());
+            parts.writeShort(partMetadata.getUnknownPart2());
+            parts.writeShort(partMetadata.getUnknownPart3());
+            parts.writeShort(partMetadata.getUnknownPart4());
+            parts.writeShort(partMetadata.getUnknownPart5());
+            parts.writeShort(partMetadata.getUnknownPart6());
+            parts.writeShort(partMetadata.getUnknownPart7());
+            parts.writeShort(0);
+            parts.writeInt(chunks.size() / 16);
+            parts.writeInt(part.getChunks().size());
+
+            for (PartChunk chunk : part.getChunks()) {
+                chunks.writeInt(chunk.getBlockCount());
+                chunks.writeInt(chunk.getUnknownId1());
+                chunks.writeInt(blocks.size() / 12);
+                chunks.writeInt(chunk.getBlocks().size());
+
+                for (PartBlock block : chunk.getBlocks()) {
+                    blocks.writeShort(block.getFrameOffset());
+                    blocks.write(block.getUnknownId1());
+                    blocks.write(block.getUnknownId2());
+                    blocks.write(block.getUnknownId3());
+                    blocks.write(block.getUnknownId4());
+                    blocks.write(block.getUnknownId5());
+                    blocks.write(block.getUnknownId6());
+                    blocks.write(block.getUnknownId7());
+                    blocks.write(new byte[3], 0, 3);
+                }
+            }
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(dsc.parts.size());
+        header.putInt(chunks.size() / 16);
+        header.putInt(blocks.size() / 12);
+
+        return concat(header, parts, chunks, blocks);
+    }
+
+    public static ByteBuffer encodeDna(DnaFileHandler dna) {
+        SectionOutput mobs = new SectionOutput(16);
+        SectionOutput chunks = new SectionOutput(0);
+        SectionOutput blocks = new SectionOutput(0);
+        for (Mob mob : dna.mobs) {
+            mobs.writeInt((int) mob.getFrameIndex());
+            mobs.writeInt(chunks.size() / 8);
+            mobs.writeInt(mob.getChunks().size());
+            mobs.writeShort(mob.getPaletteId());
+            mobs.write(mob.getUnknown1());
+            mobs.write(0);
+
+            for (MobChunk chunk : mob.getChunks()) {
+                chunks.writeInt(blocks.size() / 12);
+                chunks.writeInt(chunk.getBlocks().size());
+
+                for (MobBlock block : chunk.getBlocks()) {
+                    blocks.writeShort(block.getFrameOffset());
+                    blocks.writeShort(block.getDuration());
+                    blocks.writeShort(block.getUnknownId1());
+                    blocks.write(block.getTransparency());
+                    blocks.write(block.getUnknownId2());
+                    blocks.write(block.getUnknownId3());
+                    blocks.write(new byte[3], 0, 3);
+                }
+            }
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(dna.mobs.size());
+        header.putInt(chunks.size() / 8);
+        header.putInt(blocks.size() / 12);
+
+        return concat(header, mobs, chunks, blocks);
+    }
+
+    public static ByteBuffer encodeEfxTbl(EfxTblFileHandler efxTbl) {
+        SectionOutput effects = new SectionOutput(8);
+        SectionOutput frames = new SectionOutput(0);
+        for (Effect effect : efxTbl.effects) {
+            effects.writeInt(effect.getEffectIndex());
+            effects.writeInt(frames.size() / 16);
+            effects.writeInt(effect.getEffectFrames().size());
+
+            for (EffectFrame frame : effect.getEffectFrames()) {
+                frames.writeInt(frame.getFrameIndex());
+                frames.writeInt(frame.getFrameDelay());
+                frames.writeInt(frame.getPaletteIndex());
+                frames.writeInt(frame.getUnknown2());
+            }
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(efxTbl.effects.size());
+        header.putInt(frames.size() / 16);
+
+        return concat(header, effects, frames);
+    }
+
+    public static ByteBuffer encodeFrm(FrmFileHandler frm) {
+        ByteBuffer section = ByteBuffer.allocate(4 + (frm.paletteIndices.size() * 4)).order(ByteOrder.LITTLE_ENDIAN);
+        section.putInt(frm.paletteIndices.size());
+        for (int paletteIndex : frm.paletteIndices) {
+            section.putInt(paletteIndex);
+        }
+        section.flip();
+
+        return section;
+    }
+
+    public static ByteBuffer encodeSObjTbl(SObjTblFileHandler sObjTbl) {
+        SectionOutput objects = new SectionOutput(16);
+        SectionOutput tiles = new SectionOutput(0);
+        for (SObject object : sObjTbl.objects) {
+            objects.write(object.getMovementDirection());
+            objects.write(object.getHeight());
+            objects.writeShort(object.getTileIndices().size());
+            objects.writeInt(tiles.size() / 4);
+            objects.write(copy(object.getUnknownBytes(), 0, 5).array(), 0, 5);
+            objects.write(new byte[3], 0, 3);
+
+            for (int tileIndex : object.getTileIndices()) {
+                tiles.writeInt(tileIndex);
+            }
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(sObjTbl.objects.size());
+        header.putInt(tiles.size() / 4);
+        header.put(copy(sObjTbl.unknownBytes, 0, 2));
+
+        return concat(header, objects, tiles);
+    }
+
+    public static ByteBuffer encodeTileTbl(TileTblFileHandler tileTbl) {
+        ByteBuffer section = ByteBuffer.allocate(4 + (tileTbl.paletteIndices.size() * 4)).order(ByteOrder.LITTLE_ENDIAN);
+        section.putInt(tileTbl.paletteIndices.size());
+        for (TblIndex tblIndex : tileTbl.paletteIndices) {
+            section.putShort((short) tblIndex.getPaletteIndex());
+            section.putShort((short) tblIndex.getUnknownFlag());
+        }
+        section.flip();
+
+        return section;
+    }
+
+    static ByteBuffer concat(ByteBuffer header, SectionOutput... tables) {
+        SectionOutput section = new SectionOutput(0);
+        section.write(header.array(), 0, header.capacity());
+        for (SectionOutput table : tables) {
+            section.write(table.toByteArray(), 0, table.size());
+        }
+
+        return ByteBuffer.wrap(section.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Little-endian section data, positions are relative to the section start (base bytes precede it).
+     */
+    static class SectionOutput extends java.io.ByteArrayOutputStream {
+        int base;
+
+        SectionOutput(int base) {
+            this.base = base;
+        }
+
+        int position() {
+            return this.base + this.count;
+        }
+
+        void align(int alignment) {
+            while (this.position() % alignment != 0) {
+                this.write(0);
+            }
+        }
+
+        /**
+         * First length bytes of a buffer (from 0, whatever its position), heap or direct.
+         */
+        void write(ByteBuffer bytes, int length) {
+            ByteBuffer source = bytes.duplicate();
+            source.clear();
+            byte[] chunk = new byte[Math.min(length, 8192)];
+            for (int written = 0; written < length; written += chunk.length) {
+                int count = Math.min(chunk.length, length - written);
+                source.get(chunk, 0, count);
+                this.write(chunk, 0, count);
+            }
+        }
+
+        void writeShort(int value) {
+            this.write(value & 0xFF);
+            this.write((value >> 8) & 0xFF);
+        }
+
+        void writeInt(int value) {
+            this.writeShort(value);
+            this.writeShort(value >> 16);
+        }
+
+        ByteBuffer toSection(ByteBuffer table) {
+            ByteBuffer section = ByteBuffer.allocate(table.capacity() + this.count).order(ByteOrder.LITTLE_ENDIAN);
+            section.put(table.array(), 0, table.capacity());
+            section.put(this.buf, 0, this.count);
+            section.flip();
+
+            return section;
+        }
+    }
+
+    /**
+     * Writes a bundle: the directory is reserved up front for at most maxEntries sections, which are appended as they
+     * are added and indexed on close.
+     */
+    public static class Writer {
+        RandomAccessFile output;
+        int maxEntries;
+        List<Entry> entries = new ArrayList<Entry>();
+
+        public Writer(File file, int maxEntries) throws IOException {
+            file.delete();
+            this.output = new RandomAccessFile(file, "rw");
+            this.maxEntries = maxEntries;
+            this.output.seek(HEADER_SIZE + ((long) maxEntries * ENTRY_SIZE));
+        }
+
+        public void add(String name, int type, ByteBuffer section) throws IOException {
+            if (this.entries.size() == this.maxEntries) {
+                throw new IllegalStateException("Bundle directory is full");
+            }
+            if (name.length() >= NAME_SIZE) {
+                throw new IllegalArgumentException("Entry name too long: " + name);
+            }
+
+            long offset = this.output.getFilePointer();
+            if (offset % ALIGNMENT != 0) {
+                offset += ALIGNMENT - (offset % ALIGNMENT);
+                this.output.seek(offset);
+            }
+            ByteBuffer bytes = section.duplicate();
+            bytes.clear();
+            this.output.getChannel().write(bytes, offset);
+            this.output.seek(offset + section.capacity());
+
+            Entry entry = new Entry();
+            entry.name = name;
+            entry.type = type;
+            // Every section starts with its frame/palette/part... count
+            entry.count = type == TYPE_EPF ? section.getShort(0) & 0xFFFF : section.getInt(0);
+            entry.offset = offset;
+            entry.length = section.capacity();
+            this.entries.add(entry);
+        }
+
+        public long getLength() throws IOException {
+            return this.output.length();
+        }
+
+        public void close() throws IOException {
+            ByteBuffer directory = ByteBuffer.allocate(HEADER_SIZE + (this.entries.size() * ENTRY_SIZE)).order(ByteOrder.LITTLE_ENDIAN);
+            directory.put(MAGIC.getBytes(StandardCharsets.US_ASCII));
+            directory.putInt(VERSION);
+            directory.putInt(this.entries.size());
+            for (Entry entry : this.entries) {
+                byte[] name = Arrays.copyOf(entry.name.getBytes(StandardCharsets.US_ASCII), NAME_SIZE);
+                directory.put(name);
+                directory.putInt(entry.type);
+                directory.putInt(entry.count);
+                directory.putLong(entry.offset);
+                directory.putLong(entry.length);
+            }
+            directory.flip();
+
+            this.output.getChannel().write(directory, 0);
+            this.output.close();
+        }
+    }
+
+    @Override
+    public ByteBuffer toByteBuffer() {
+        // Sections are mapped individually
+        return null;
+    }
+}
@@ -1,6 +1,7 @@
 package com.gamemode.tkviewer.file_handlers;
 
 import com.gamemode.tkviewer.Tile;
+import com.gamemode.tkviewer.management.FlightEvents;
 
 import java.io.File;
 import java.nio.ByteBuffer;
@@ -21,6 +22,8 @@ public class CmpFileHandler extends FileHandler {
     public CmpFileHandler(File file) {
         super(file);
 
+        Object event = FlightEvents.beginMapLoad();
+
         // CMAP
         this.seek(4, true);
 
@@ -41,6 +44,9 @@ public class CmpFileHandler extends FileHandler {
         }
 
         this.close();
+
+        FlightEvents.commitMapLoad(event, file.getPath(), "cmp", this.mapWidth, this.mapHeight, file.length(),
+                data.capacity());
     }
 
     public int getIndex(int x, int y) {
@@ -134,16 +134,51 @@ public class DatFileHandler extends FileHandler {
         }
     }
 
+    /**
+     * Bytes of entries held on the Java heap.
+     */
+    public long getHeapBytes() {
+        long heapBytes = 0;
+        for (ByteBuffer fileData : this.files.values()) {
+            if (!fileData.isDirect()) {
+                heapBytes += fileData.capacity();
+            }
+        }
+
+        return heapBytes;
+    }
+
+    /**
+     * Bytes of entries backed by direct (memory-mapped or off-heap) buffers.
+     */
+    public long getMappedBytes() {
+        long mappedBytes = 0;
+        for (ByteBuffer fileData : this.files.values()) {
+            if (fileData.isDirect()) {
+                mappedBytes += fileData.capacity();
+            }
+        }
+
+        return mappedBytes;
+    }
+
+    public boolean isBaram() {
+        return this.isBaram;
+    }
+
     public ByteBuffer getFile(String key) {
         return this.getFile(key, true);
     }
 
+    /**
+     * Returns a view of the entry with its own position, so handlers built from a shared archive don't interfere.
+     */
     public ByteBuffer getFile(String key, boolean caseInsensitive) {
         for (Map.Entry<String, ByteBuffer> entry : this.files.entrySet()) {
             if (caseInsensitive && entry.getKey().toLowerCase().equals(key.toLowerCase())) {
-                return entry.getValue();
+                return entry.getValue().duplicate().order(entry.getValue().order());
             } else if (!caseInsensitive && entry.getKey().equals(key)) {
-                return entry.getValue();
+                return entry.getValue().duplicate().order(entry.getValue().order());
             }
         }
 
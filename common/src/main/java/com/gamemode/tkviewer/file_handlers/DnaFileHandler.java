@@ -29,6 +29,22 @@ public class DnaFileHandler extends FileHandler {
         init();
     }
 
+    /**
+     * Mobs parsed ahead of time (see BundleFileHandler), fileSize is recomputed for toByteBuffer.
+     */
+    public DnaFileHandler(ByteBuffer bytes, List<Mob> mobs) {
+        super(bytes);
+        this.mobCount = mobs.size();
+        this.mobs = mobs;
+        this.fileSize = 4;
+        for (Mob mob : mobs) {
+            this.fileSize += 8;
+            for (MobChunk chunk : mob.getChunks()) {
+                this.fileSize += 2 + (chunk.getBlocks().size() * 9);
+            }
+        }
+    }
+
     public void init() {
         this.mobCount = this.readInt(true, true);
 
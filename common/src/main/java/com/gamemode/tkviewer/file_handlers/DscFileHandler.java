@@ -32,6 +32,15 @@ public class DscFileHandler extends FileHandler {
         init(isBaram);
     }
 
+    /**
+     * Parts parsed ahead of time (see BundleFileHandler).
+     */
+    public DscFileHandler(ByteBuffer bytes, List<Part> parts) {
+        super(bytes);
+        this.partCount = parts.size();
+        this.parts = parts;
+    }
+
     public void init(boolean isBaram) {
         // Seek past header
         this.seek(DscFileHandler.HEADER, true);
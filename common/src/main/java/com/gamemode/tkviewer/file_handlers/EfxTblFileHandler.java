@@ -41,6 +41,15 @@ public class EfxTblFileHandler extends FileHandler {
         init(decode);
     }
 
+    /**
+     * Effects parsed (and decoded) ahead of time (see BundleFileHandler).
+     */
+    public EfxTblFileHandler(ByteBuffer bytes, List<Effect> effects) {
+        super(bytes);
+        this.effectCount = effects.size();
+        this.effects = effects;
+    }
+
     public void init(boolean decode) {
         byte[] bytes;
         if (decode) {
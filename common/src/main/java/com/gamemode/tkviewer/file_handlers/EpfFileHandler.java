@@ -1,6 +1,7 @@
 package com.gamemode.tkviewer.file_handlers;
 
 import com.gamemode.tkviewer.Frame;
+import com.gamemode.tkviewer.management.FlightEvents;
 import com.gamemode.tkviewer.resources.Stencil;
 
 import java.awt.*;
@@ -23,7 +24,13 @@ public class EpfFileHandler extends FileHandler {
     public int bitBLT;
     public long pixelDataLength;
     public Map<Integer, Frame> frames_map;
+    // Pixel, stencil and stencil row (or span) bytes of the decoded frames
+    public long decodedBytes = 0;
     public String filePath;
+    // Archive this EPF was read from (see FileUtils.createEpfsFromDats), null otherwise
+    public DatFileHandler archive;
+    // Off-heap storage of decoded pixel and stencil data, null to keep them on the heap (see FrameArena)
+    public FrameArena arena;
 
     public EpfFileHandler(String filePath) {
         this(new File(filePath), false);
@@ -64,6 +71,10 @@ public class EpfFileHandler extends FileHandler {
         this.bitBLT = this.readShort(true, false);
         this.pixelDataLength = this.readInt(true, true);
 
+        if (FrameArena.isEnabled()) {
+            this.arena = new FrameArena(this.pixelDataLength, this.frameCount);
+        }
+
         if (loadAllFrames) {
             this.loadAllFrames();
         }
@@ -71,10 +82,68 @@ public class EpfFileHandler extends FileHandler {
 
     public Frame getFrame(int index) {
         // Return Frame if Cached
-        if (this.frames_map.containsKey(index)) {
+        if (this.arena != null) {
+            Frame frame = this.arena.getFrame(index);
+            if (frame != null) {
+                return frame;
+            }
+        } else if (this.frames_map.containsKey(index)) {
             return this.frames_map.get(index);
         }
 
+        Object event = FlightEvents.beginFrameDecode();
+
+        Frame frame;
+        if (this.arena != null) {
+            frame = this.decodeFrameOffHeap(index);
+        } else {
+            frame = this.decodeFrame(index);
+            this.frames_map.put(index, frame);
+        }
+        Stencil stencil = frame.getStencil();
+        dataSize += frame.getRawPixelData().capacity() + frame.getRawStencilData().capacity();
+        this.decodedBytes += frame.getRawPixelData().capacity() + frame.getRawStencilData().capacity()
+                + (stencil.spans != null ? stencil.spans.capacity() : (frame.getWidth() * frame.getHeight()));
+
+        FlightEvents.commitFrameDecode(event, this.filePath, index, frame.getWidth(), frame.getHeight(),
+                frame.getRawPixelData().capacity(), frame.getRawStencilData().capacity());
+
+        return frame;
+    }
+
+    /**
+     * Frames decoded so far.
+     */
+    public int getDecodedFrameCount() {
+        return this.arena != null ? this.arena.decodedFrames : this.frames_map.size();
+    }
+
+    /**
+     * Frame's bounds (left, top, width, height) read from the frame table, without decoding its pixels or stencil.
+     */
+    public Rectangle getFrameBounds(int index) {
+        Frame frame = this.arena != null ? this.arena.getFrame(index) : this.frames_map.get(index);
+        if (frame != null) {
+            return new Rectangle(frame.getLeft(), frame.getTop(), frame.getWidth(), frame.getHeight());
+        }
+
+        return this.readFrameBounds(index);
+    }
+
+    protected Rectangle readFrameBounds(int index) {
+        this.seek((HEADER_SIZE + this.pixelDataLength + (index * FRAME_SIZE)), true);
+        int top = this.readShort(true, false);
+        int left = this.readShort(true, false);
+        int bottom = this.readShort(true, false);
+        int right = this.readShort(true, false);
+
+        return new Rectangle(left, top, right - left, bottom - top);
+    }
+
+    /**
+     * Reads and decodes a Frame (uncached).
+     */
+    protected Frame decodeFrame(int index) {
         // Seek to Frame and read
         this.seek((HEADER_SIZE + this.pixelDataLength + (index * FRAME_SIZE)), true);
         int top = this.readShort(true, false);
@@ -91,20 +160,113 @@ public class EpfFileHandler extends FileHandler {
         // Seek to Pixel Data and Stencil Data
         this.seek(HEADER_SIZE + pixelDataOffset, true);
         ByteBuffer rawPixelData = this.readBytes((width * height), true);
-        dataSize += rawPixelData.capacity();
 
         Stencil stencil = new Stencil(this, stencilDataOffset, new Dimension(width, height));
         ByteBuffer rawStencilData = stencil.toByteBuffer();
-        dataSize += rawStencilData.capacity();
 
-        Frame frame = new Frame(top, left, bottom, right, width, height, pixelDataOffset, stencilDataOffset, rawPixelData, rawStencilData, stencil);
-        this.frames_map.put(index, frame);
+        return new Frame(top, left, bottom, right, width, height, pixelDataOffset, stencilDataOffset, rawPixelData, rawStencilData, stencil);
+    }
+
+    /**
+     * Reads and decodes a Frame straight into the arena: the pixels are read into its record and the stencil is kept
+     * encoded and as spans, without decoding rows.
+     */
+    protected Frame decodeFrameOffHeap(int index) {
+        this.seek((HEADER_SIZE + this.pixelDataLength + (index * FRAME_SIZE)), true);
+        int top = this.readShort(true, false);
+        int left = this.readShort(true, false);
+        int bottom = this.readShort(true, false);
+        int right = this.readShort(true, false);
+        long pixelDataOffset = this.readInt(true, true);
+        long stencilDataOffset = this.readInt(true, true);
+
+        int width = Math.max(0, right - left);
+        int height = Math.max(0, bottom - top);
+        int pixelLength = width * height;
+
+        // Each encoded stencil byte covers at least a pixel, plus a 0x00 per row
+        ByteBuffer record = this.arena.reserve(FrameArena.RECORD_HEADER + pixelLength + (height * (width + 1)));
+        record.putShort((short) top);
+        record.putShort((short) left);
+        record.putShort((short) bottom);
+        record.putShort((short) right);
+        record.putInt((int) pixelDataOffset);
+        record.putInt((int) stencilDataOffset);
+
+        this.seek(HEADER_SIZE + pixelDataOffset, true);
+        record.position(FrameArena.RECORD_HEADER);
+        record.limit(FrameArena.RECORD_HEADER + pixelLength);
+        this.readInto(record);
+        record.limit(record.capacity());
+
+        // Encoded stencil, counting the drawn runs (adjacent ones merged)
+        this.seek(HEADER_SIZE + stencilDataOffset, true);
+        int spanCount = 0;
+        for (int y = 0; y < height; y++) {
+            int x = 0;
+            int drawnEnd = -1;
+            while (true) {
+                int stencilValue = this.readUnsignedByte();
+                record.put((byte) stencilValue);
+                if (stencilValue == 0) {
+                    break;
+                }
+
+                int length = stencilValue > Stencil.MASK ? stencilValue ^ Stencil.MASK : stencilValue;
+                if (stencilValue > Stencil.MASK && x < width) {
+                    if (x != drawnEnd) {
+                        spanCount++;
+                    }
+                    drawnEnd = Math.min(width, x + length);
+                }
+                x += length;
+            }
+        }
+        int rawStencilLength = record.position() - FrameArena.RECORD_HEADER - pixelLength;
+        record.putInt(16, rawStencilLength);
+        long location = this.arena.commit(record.position());
+
+        // Spans, from the encoded stencil now in the record
+        ByteBuffer spans = this.arena.reserve(((height + 1) * 4) + (spanCount * 4));
+        int spanTable = (height + 1) * 4;
+        int position = FrameArena.RECORD_HEADER + pixelLength;
+        int span = 0;
+        for (int y = 0; y < height; y++) {
+            spans.putInt(y * 4, span);
+            int x = 0;
+            int drawnEnd = -1;
+            while (true) {
+                int stencilValue = record.get(position++) & 0xFF;
+                if (stencilValue == 0) {
+                    break;
+                }
+
+                int length = stencilValue > Stencil.MASK ? stencilValue ^ Stencil.MASK : stencilValue;
+                if (stencilValue > Stencil.MASK && x < width) {
+                    int end = Math.min(width, x + length);
+                    if (x == drawnEnd) {
+                        // Extends the previous run
+                        int previous = spanTable + ((span - 1) * 4);
+                        spans.putShort(previous + 2, (short) (end - (spans.getShort(previous) & 0xFFFF)));
+                    } else {
+                        spans.putShort(spanTable + (span * 4), (short) x);
+                        spans.putShort(spanTable + (span * 4) + 2, (short) (end - x));
+                        span++;
+                    }
+                    drawnEnd = end;
+                }
+                x += length;
+            }
+        }
+        spans.putInt(height * 4, span);
+        record.putLong(24, this.arena.commit(spans.capacity()));
+        this.arena.putFrame(index, location);
 
-        return this.frames_map.get(index);
+        return this.arena.getFrame(index);
     }
 
     /*
-     * Loads all Frames in the EPF to frames_map.
+     * Decodes all Frames in the EPF.
      */
     public void loadAllFrames() {
         for (int i = 0; i < this.frameCount; i++) {
@@ -113,6 +275,36 @@ public class EpfFileHandler extends FileHandler {
         allFramesLoaded = true;
     }
 
+    /**
+     * Drops every decoded Frame, they are decoded again on next use. Frames handed out before stay usable, off-heap
+     * ones included (their slabs are left to the GC).
+     */
+    public void clearFrames() {
+        this.frames_map.clear();
+        this.decodedBytes = 0;
+        if (this.arena != null) {
+            this.arena.reset();
+        }
+    }
+
+    /**
+     * Drops every decoded Frame and frees their off-heap data now, Frames handed out before must not be used anymore.
+     */
+    public void releaseFrames() {
+        this.frames_map.clear();
+        this.decodedBytes = 0;
+        if (this.arena != null) {
+            this.arena.release();
+        }
+    }
+
+    /**
+     * Direct bytes reserved for decoded frames, dropped ones not freed yet included (0 when they are on the heap).
+     */
+    public long getOffHeapBytes() {
+        return this.arena == null ? 0 : this.arena.reservedBytes + this.arena.forgottenBytes.get();
+    }
+
     public ByteBuffer toByteBuffer() {
         if (!allFramesLoaded) {
             this.loadAllFrames();
@@ -129,15 +321,15 @@ public class EpfFileHandler extends FileHandler {
         epfBytes.putInt((int) this.pixelDataLength);
 
         // Frames (Pixel Data)
-        for (int i = 0; i < this.frames_map.size(); i++) {
-            Frame frame = this.frames_map.get(i);
+        for (int i = 0; i < this.frameCount; i++) {
+            Frame frame = this.getFrame(i);
             epfBytes.put(frame.getRawPixelData());
             epfBytes.put(frame.getRawStencilData());
         }
 
         // Frames (TOC)
-        for (int i = 0; i < this.frames_map.size(); i++) {
-            Frame frame = this.frames_map.get(i);
+        for (int i = 0; i < this.frameCount; i++) {
+            Frame frame = this.getFrame(i);
 
             epfBytes.putShort((short) frame.getTop());
             epfBytes.putShort((short) frame.getLeft());
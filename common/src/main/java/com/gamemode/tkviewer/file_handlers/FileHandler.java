@@ -5,6 +5,7 @@ import com.gamemode.tkviewer.resources.Resources;
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.util.zip.InflaterInputStream;
 
 public abstract class FileHandler {
@@ -263,6 +264,31 @@ public abstract class FileHandler {
         return byteBuffer;
     }
 
+    /**
+     * Reads destination.remaining() bytes straight into destination (e.g. a direct buffer), without a heap copy.
+     */
+    public void readInto(ByteBuffer destination) {
+        int length = destination.remaining();
+        if (this.file != null) {
+            try {
+                FileChannel channel = this.fileInputStream.getChannel();
+                while (destination.hasRemaining()) {
+                    if (channel.read(destination, this.filePosition + (length - destination.remaining())) < 0) {
+                        throw new EOFException();
+                    }
+                }
+                this.seekFile(length, false);
+            } catch (IOException ioe) {
+                System.out.println("Unable to read from file: " + ioe);
+            }
+        } else if (this.bytes != null) {
+            ByteBuffer source = this.bytes.duplicate();
+            source.limit(source.position() + length);
+            destination.put(source);
+            this.seekBytes(length, false);
+        }
+    }
+
     public Long readInt(boolean littleEndian, boolean unsigned) {
         Long returnInt = null;
 
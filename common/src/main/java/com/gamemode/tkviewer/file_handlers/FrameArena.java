@@ -0,0 +1,272 @@
+package com.gamemode.tkviewer.file_handlers;
+
+import com.gamemode.tkviewer.Frame;
+import com.gamemode.tkviewer.resources.Stencil;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Off-heap storage for one EPF's decoded frames (-Dtkviewer.offheap=true).
+ *
+ * EpfFileHandler decodes frames straight into large direct slabs: a record per frame (header, pixels and encoded
+ * stencil) and its stencil as pre-decoded spans (see Stencil), located by a long per frame. Nothing per frame stays on
+ * the heap: getFrame builds a short-lived Frame of slab views, so a render server that decodes every part and mob EPF
+ * doesn't keep millions of small objects for the GC to trace. Slabs are sized after the EPF's pixel data section, up
+ * to -Dtkviewer.offheap.slab bytes.
+ *
+ * reset() forgets the slabs, so frames handed out before stay readable: the GC frees each one once no view of it is
+ * reachable, and they stay counted in forgottenBytes until then. release() frees every slab (forgotten ones too) right
+ * away, frames decoded from them must not be read anymore (renderers call it from dispose(), under their lock).
+ */
+public class FrameArena {
+
+    public static final int DEFAULT_SLAB_BYTES = 4 * 1024 * 1024;
+    static final int MIN_SLAB_BYTES = 16 * 1024;
+
+    // Frame record: top, left, bottom, right (short), pixel data offset, stencil data offset, encoded stencil length
+    // (int), spans location (long), then the pixels and encoded stencil
+    public static final int RECORD_HEADER = 32;
+
+    // Direct bytes reserved by every arena, forgotten slabs included until they are freed
+    static final AtomicLong RESERVED_BYTES = new AtomicLong();
+
+    // Slabs forgotten by reset(), enqueued once the GC clears them
+    static final ReferenceQueue<ByteBuffer> FORGOTTEN_QUEUE = new ReferenceQueue<ByteBuffer>();
+    static final Set<ForgottenSlab> FORGOTTEN_SLABS = ConcurrentHashMap.newKeySet();
+
+    int slabBytes;
+    long expectedBytes;
+    List<ByteBuffer> slabs = new ArrayList<ByteBuffer>();
+    Set<ForgottenSlab> forgottenSlabs = ConcurrentHashMap.newKeySet();
+    ByteBuffer slab;
+    int slabPosition;
+    // Slab index (high int) and offset (low int) of each frame's record, -1 until decoded
+    long[] locations;
+
+    public int decodedFrames = 0;
+    public long usedBytes = 0;
+    public long reservedBytes = 0;
+    // Slabs forgotten by reset() and not freed yet
+    public final AtomicLong forgottenBytes = new AtomicLong();
+
+    public FrameArena(long expectedBytes, int frameCount) {
+        this(expectedBytes, frameCount, Integer.getInteger("tkviewer.offheap.slab", DEFAULT_SLAB_BYTES));
+    }
+
+    public FrameArena(long expectedBytes, int frameCount, int slabBytes) {
+        this.expectedBytes = expectedBytes;
+        this.slabBytes = slabBytes;
+        this.locations = new long[frameCount];
+        Arrays.fill(this.locations, -1);
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.getBoolean("tkviewer.offheap");
+    }
+
+    /**
+     * Direct bytes reserved by every arena of the process.
+     */
+    public static long getTotalReservedBytes() {
+        purgeForgottenSlabs();
+        return RESERVED_BYTES.get();
+    }
+
+    /**
+     * Writable view of maxLength bytes at the end of the current slab (a new one if they don't fit). Only the first
+     * bytes given to commit() are kept, one reservation at a time.
+     */
+    public synchronized ByteBuffer reserve(int maxLength) {
+        purgeForgottenSlabs();
+        if (this.slab == null || this.slab.capacity() - this.slabPosition < maxLength) {
+            // Sized for what's left of the EPF, records bigger than a slab get their own
+            long remainingBytes = Math.max(MIN_SLAB_BYTES, this.expectedBytes - this.usedBytes);
+            int capacity = (int) Math.max(maxLength, Math.min(this.slabBytes, remainingBytes));
+            this.slab = ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN);
+            this.slabs.add(this.slab);
+            this.slabPosition = 0;
+            this.reservedBytes += capacity;
+            RESERVED_BYTES.addAndGet(capacity);
+        }
+
+        return view(this.slab, this.slabPosition, maxLength);
+    }
+
+    /**
+     * Keeps the first length bytes of the reservation, returns their location.
+     */
+    public synchronized long commit(int length) {
+        long location = ((long) (this.slabs.size() - 1) << 32) | this.slabPosition;
+        this.slabPosition += length;
+        this.usedBytes += length;
+
+        return location;
+    }
+
+    /**
+     * Records a decoded frame, once its record (at location) has the location of its spans.
+     */
+    public synchronized void putFrame(int index, long location) {
+        if (this.locations[index] < 0) {
+            this.decodedFrames++;
+        }
+        this.locations[index] = location;
+    }
+
+    /**
+     * Frame of slab views (pixels, encoded stencil and spans), null if it wasn't decoded.
+     */
+    public synchronized Frame getFrame(int index) {
+        long location = this.locations[index];
+        if (location < 0) {
+            return null;
+        }
+
+        ByteBuffer record = this.slabs.get((int) (location >>> 32));
+        int offset = (int) location;
+        int top = record.getShort(offset);
+        int left = record.getShort(offset + 2);
+        int bottom = record.getShort(offset + 4);
+        int right = record.getShort(offset + 6);
+        long pixelDataOffset = record.getInt(offset + 8) & 0xFFFFFFFFL;
+        long stencilDataOffset = record.getInt(offset + 12) & 0xFFFFFFFFL;
+        int rawStencilLength = record.getInt(offset + 16);
+        long spansLocation = record.getLong(offset + 24);
+
+        int width = right - left;
+        int height = bottom - top;
+        int pixelLength = Math.max(0, width) * Math.max(0, height);
+        ByteBuffer rawPixelData = view(record, offset + RECORD_HEADER, pixelLength);
+        ByteBuffer rawStencilData = view(record, offset + RECORD_HEADER + pixelLength, rawStencilLength);
+
+        ByteBuffer spanSlab = this.slabs.get((int) (spansLocation >>> 32));
+        int spansOffset = (int) spansLocation;
+        int rows = Math.max(0, height);
+        int spanCount = spanSlab.getInt(spansOffset + (rows * 4));
+        ByteBuffer spans = view(spanSlab, spansOffset, ((rows + 1) * 4) + (spanCount * 4));
+
+        return new Frame(top, left, bottom, right, width, height, pixelDataOffset, stencilDataOffset, rawPixelData,
+                rawStencilData, new Stencil(spans, rawStencilData, rows));
+    }
+
+    /**
+     * Forgets every frame and slab, the GC frees the slabs once no frame uses them.
+     */
+    public synchronized void reset() {
+        for (ByteBuffer slab : this.slabs) {
+            ForgottenSlab forgottenSlab = new ForgottenSlab(slab, this);
+            this.forgottenSlabs.add(forgottenSlab);
+            FORGOTTEN_SLABS.add(forgottenSlab);
+        }
+        this.forgottenBytes.addAndGet(this.reservedBytes);
+        this.clearSlabs();
+    }
+
+    /**
+     * Frees every slab now, forgotten ones included. Frames decoded from them must not be read anymore.
+     */
+    public synchronized void release() {
+        for (ByteBuffer slab : this.slabs) {
+            free(slab);
+        }
+        RESERVED_BYTES.addAndGet(-this.reservedBytes);
+        for (ForgottenSlab forgottenSlab : this.forgottenSlabs) {
+            ByteBuffer slab = forgottenSlab.get();
+            if (slab != null) {
+                free(slab);
+            }
+            forgottenSlab.clear();
+            forgottenSlab.uncount();
+        }
+        this.clearSlabs();
+    }
+
+    private void clearSlabs() {
+        this.slabs.clear();
+        this.slab = null;
+        this.slabPosition = 0;
+        Arrays.fill(this.locations, -1);
+        this.decodedFrames = 0;
+        this.reservedBytes = 0;
+        this.usedBytes = 0;
+    }
+
+    /**
+     * Stops counting the forgotten slabs the GC has freed.
+     */
+    static void purgeForgottenSlabs() {
+        Reference<? extends ByteBuffer> reference;
+        while ((reference = FORGOTTEN_QUEUE.poll()) != null) {
+            ((ForgottenSlab) reference).uncount();
+        }
+    }
+
+    static void free(ByteBuffer directBuffer) {
+        try {
+            // Java 9+
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            invokeCleaner.invoke(theUnsafe.get(null), directBuffer);
+        } catch (NoSuchMethodException nsme) {
+            try {
+                // Java 8
+                Method cleaner = directBuffer.getClass().getMethod("cleaner");
+                cleaner.setAccessible(true);
+                Object bufferCleaner = cleaner.invoke(directBuffer);
+                bufferCleaner.getClass().getMethod("clean").invoke(bufferCleaner);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // Restricted, left to the GC
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Restricted, left to the GC
+        }
+    }
+
+    static ByteBuffer view(ByteBuffer slab, int offset, int length) {
+        ByteBuffer window = slab.duplicate();
+        window.limit(offset + length);
+        window.position(offset);
+
+        return window.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Slab forgotten by reset(), counted in RESERVED_BYTES and its arena's forgottenBytes until the GC clears it or
+     * release() frees it.
+     */
+    static class ForgottenSlab extends WeakReference<ByteBuffer> {
+        final FrameArena arena;
+        final AtomicInteger capacity;
+
+        ForgottenSlab(ByteBuffer slab, FrameArena arena) {
+            super(slab, FORGOTTEN_QUEUE);
+            this.arena = arena;
+            this.capacity = new AtomicInteger(slab.capacity());
+        }
+
+        void uncount() {
+            int bytes = this.capacity.getAndSet(0);
+            if (bytes > 0) {
+                FORGOTTEN_SLABS.remove(this);
+                this.arena.forgottenSlabs.remove(this);
+                this.arena.forgottenBytes.addAndGet(-bytes);
+                RESERVED_BYTES.addAndGet(-bytes);
+            }
+        }
+    }
+}
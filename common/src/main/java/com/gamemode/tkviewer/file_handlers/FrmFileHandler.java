@@ -28,6 +28,15 @@ public class FrmFileHandler extends FileHandler {
         init();
     }
 
+    /**
+     * Palette indices parsed ahead of time (see BundleFileHandler).
+     */
+    public FrmFileHandler(ByteBuffer bytes, List<Integer> paletteIndices) {
+        super(bytes);
+        this.effectCount = paletteIndices.size();
+        this.paletteIndices = paletteIndices;
+    }
+
     public void init() {
         this.effectCount = this.readInt(true, true);
 
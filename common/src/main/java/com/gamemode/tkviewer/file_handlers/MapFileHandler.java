@@ -1,6 +1,7 @@
 package com.gamemode.tkviewer.file_handlers;
 
 import com.gamemode.tkviewer.Tile;
+import com.gamemode.tkviewer.management.FlightEvents;
 
 import java.io.File;
 import java.nio.ByteBuffer;
@@ -21,6 +22,8 @@ public class MapFileHandler extends FileHandler {
     public MapFileHandler(File file) {
         super(file);
 
+        Object event = FlightEvents.beginMapLoad();
+
         long dimensions = this.readInt(false, true);
         this.mapWidth = (int) dimensions >> 0x10;
         this.mapHeight = (int) dimensions & 0x0000FFFF;
@@ -46,6 +49,9 @@ public class MapFileHandler extends FileHandler {
         }
 
         this.close();
+
+        FlightEvents.commitMapLoad(event, file.getPath(), "map", this.mapWidth, this.mapHeight, file.length(),
+                dataLength);
     }
 
     @Override
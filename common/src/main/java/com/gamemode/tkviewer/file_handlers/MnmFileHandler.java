@@ -1,46 +1,152 @@
 package com.gamemode.tkviewer.file_handlers;
 
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
 
 public class MnmFileHandler extends FileHandler {
 
+    public static final int JPEG_OFFSET = 0x300;
+
     public String mapName;
 
+    // Embedded minimap JPEG (JPEG_OFFSET up to and including FF D9)
+    public int jpegLength;
+    public ByteBuffer jpegBytes;
+
+    // Raw, unparsed bytes after the map name (NPCs and Warps, structure unknown)
+    public ByteBuffer npcWarpData;
+
+    BufferedImage miniMap;
+
     public MnmFileHandler(String filepath) {
         this(new File(filepath));
     }
 
+    public MnmFileHandler(ByteBuffer bytes) {
+        super(bytes);
+        init(bytes);
+    }
+
     public MnmFileHandler(File file) {
         super(file);
 
-        // Seek into JPEG
-        this.seek(0x300, true);
-
-        // Find end of JPEG
-        while (true) {
-            Integer fileByte = this.readUnsignedByte();
-            if (fileByte == 0xFF) {
-                Integer nextByte = this.readUnsignedByte();
-                if (nextByte == 0xD9) {
-                    // End of JPEG (FF D9)
-                    break;
-                } else {
-                    this.seek(-1, false);
-                }
-            }
+        // Map the whole file once and scan it in memory, rather than a read per byte
+        ByteBuffer mappedBytes = null;
+        try {
+            mappedBytes = this.fileInputStream.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, this.fileInputStream.length());
+        } catch (IOException ioe) {
+            System.out.println("Unable to map file: " + ioe);
+        }
+
+        init(mappedBytes);
+    }
+
+    public void init(ByteBuffer mnmBytes) {
+        if (mnmBytes == null) {
+            this.close();
+            return;
+        }
 
+        mnmBytes = mnmBytes.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int limit = mnmBytes.limit();
+
+        // Find end of JPEG (FF D9)
+        int position = JPEG_OFFSET;
+        while (position < limit - 1) {
+            if ((mnmBytes.get(position) & 0xFF) == 0xFF && (mnmBytes.get(position + 1) & 0xFF) == 0xD9) {
+                position += 2;
+                break;
+            }
+            position++;
         }
 
-        // Map Name
-        int mapNameLength = this.readInt(true, false).intValue();
-        mapName = this.readString(mapNameLength, true, true);
+        this.jpegLength = position - JPEG_OFFSET;
+        mnmBytes.limit(position);
+        mnmBytes.position(JPEG_OFFSET);
+        this.jpegBytes = mnmBytes.slice();
+        mnmBytes.limit(limit);
+
+        // Map Name (UTF-16, low bytes)
+        if (position + 4 <= limit) {
+            int mapNameLength = mnmBytes.getInt(position);
+            position += 4;
+
+            StringBuilder stringBuilder = new StringBuilder();
+            for (int i = 0; i < mapNameLength && position + 1 < limit; i++) {
+                stringBuilder.append((char) mnmBytes.get(position));
+                position += 2;
+            }
+            mapName = stringBuilder.toString();
+        }
 
-        // TODO: Read in NPCs and Warps
+        mnmBytes.position(Math.min(position, limit));
+        this.npcWarpData = mnmBytes.slice();
 
         this.close();
     }
 
+    /**
+     * Decodes the embedded minimap on first use.
+     */
+    public BufferedImage getMiniMap() {
+        if (this.miniMap == null) {
+            this.miniMap = this.decodeMiniMap(1);
+        }
+
+        return this.miniMap;
+    }
+
+    /**
+     * Decodes the embedded minimap keeping only every subsampling'th pixel in each direction (not cached).
+     */
+    public BufferedImage getThumbnail(int subsampling) {
+        if (subsampling <= 1) {
+            return this.getMiniMap();
+        }
+
+        return this.decodeMiniMap(subsampling);
+    }
+
+    private BufferedImage decodeMiniMap(int subsampling) {
+        if (this.jpegBytes == null || this.jpegLength <= 0) {
+            return null;
+        }
+
+        byte[] jpeg = new byte[this.jpegLength];
+        this.jpegBytes.duplicate().get(jpeg);
+
+        BufferedImage image = null;
+        Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName("jpeg");
+        if (!readers.hasNext()) {
+            System.out.println("No JPEG Image Readers Exist");
+            return null;
+        }
+
+        ImageReader reader = readers.next();
+        try (ImageInputStream imageInputStream = ImageIO.createImageInputStream(new ByteArrayInputStream(jpeg))) {
+            reader.setInput(imageInputStream, true, true);
+            ImageReadParam readParam = reader.getDefaultReadParam();
+            readParam.setSourceSubsampling(subsampling, subsampling, 0, 0);
+            image = reader.read(0, readParam);
+        } catch (IOException ioe) {
+            System.out.println("Unable to decode minimap: " + ioe);
+        } finally {
+            reader.dispose();
+        }
+
+        return image;
+    }
+
     @Override
     public ByteBuffer toByteBuffer() {
         // Not implemented
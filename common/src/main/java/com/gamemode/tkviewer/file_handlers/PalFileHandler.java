@@ -35,6 +35,16 @@ public class PalFileHandler extends FileHandler {
         init();
     }
 
+    /**
+     * Palettes parsed ahead of time (see BundleFileHandler), bytes is the data they came from.
+     */
+    public PalFileHandler(ByteBuffer bytes, List<Palette> palettes) {
+        super(bytes);
+        this.HEADER_SIZE = 0x4;
+        this.paletteCount = palettes.size();
+        this.palettes = palettes;
+    }
+
     public void init() {
         String header = this.readString(9, true);
         this.seek(0, true);
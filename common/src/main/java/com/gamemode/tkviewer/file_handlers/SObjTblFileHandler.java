@@ -29,6 +29,16 @@ public class SObjTblFileHandler extends FileHandler {
         init();
     }
 
+    /**
+     * Static Objects parsed ahead of time (see BundleFileHandler).
+     */
+    public SObjTblFileHandler(ByteBuffer bytes, ByteBuffer unknownBytes, List<SObject> objects) {
+        super(bytes);
+        this.objectCount = objects.size();
+        this.unknownBytes = unknownBytes;
+        this.objects = objects;
+    }
+
     public void init() {
         this.objectCount = this.readInt(true, true);
 
@@ -49,6 +49,15 @@ public class TileTblFileHandler extends FileHandler {
         init(decode);
     }
 
+    /**
+     * Palette indices parsed (and decoded) ahead of time (see BundleFileHandler).
+     */
+    public TileTblFileHandler(ByteBuffer tblBytes, List<TblIndex> paletteIndices) {
+        super(tblBytes);
+        this.tileCount = paletteIndices.size();
+        this.paletteIndices = paletteIndices;
+    }
+
     public void init(boolean decode) {
         this.decoded = decode;
 
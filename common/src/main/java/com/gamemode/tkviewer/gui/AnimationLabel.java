@@ -0,0 +1,196 @@
+package com.gamemode.tkviewer.gui;
+
+import com.gamemode.tkviewer.EffectImage;
+import com.gamemode.tkviewer.render.EffectTimeline;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Plays a List of EffectImages in memory, each frame shown for its own delay, or an EffectTimeline whose frames are
+ * rendered on renderExecutor (the thread its renderer is used from) as playback reaches them. One timeline frame is
+ * rendered at a time, so the canvas shown is never the one being rendered into; when rendering falls behind, frames
+ * are skipped rather than queued.
+ *
+ * Every AnimationLabel on screen is advanced by one shared Swing Timer, which only runs while at least one label is
+ * showing (labels register in addNotify and unregister in removeNotify).
+ */
+public class AnimationLabel extends JLabel {
+
+    // GIF delays have 10ms granularity
+    public static final int TICK_MS = 10;
+
+    // Used when a frame has no delay (browsers do the same for GIFs)
+    public static final int DEFAULT_DELAY_MS = 100;
+
+    private static final List<AnimationLabel> activeLabels = new ArrayList<AnimationLabel>();
+    private static final Timer sharedTimer = new Timer(TICK_MS, new ActionListener() {
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            tick();
+        }
+    });
+
+    List<EffectImage> images;
+    ImageIcon[] icons;
+    int frameCount;
+    int currentFrame = 0;
+    long frameStartTime;
+
+    EffectTimeline timeline;
+    Executor renderExecutor;
+    boolean rendering = false;
+
+    Runnable firstPaintListener;
+    boolean painted = false;
+
+    public AnimationLabel(List<EffectImage> images) {
+        this(images, null);
+    }
+
+    public AnimationLabel(List<EffectImage> images, Runnable firstPaintListener) {
+        this.images = images;
+        this.firstPaintListener = firstPaintListener;
+
+        this.icons = new ImageIcon[images.size()];
+        for (int i = 0; i < images.size(); i++) {
+            this.icons[i] = new ImageIcon(images.get(i).getImage());
+        }
+        this.frameCount = this.icons.length;
+        if (this.icons.length > 0) {
+            this.setIcon(this.icons[0]);
+        }
+    }
+
+    public AnimationLabel(EffectTimeline timeline, Executor renderExecutor, Runnable firstPaintListener) {
+        this.timeline = timeline;
+        this.renderExecutor = renderExecutor;
+        this.firstPaintListener = firstPaintListener;
+        this.frameCount = timeline.getFrameCount();
+        this.setPreferredSize(new Dimension(timeline.getWidth(), timeline.getHeight()));
+
+        if (this.frameCount > 0) {
+            this.requestFrame();
+        }
+    }
+
+    public List<EffectImage> getImages() {
+        return this.images;
+    }
+
+    public EffectTimeline getTimeline() {
+        return this.timeline;
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+
+        if (this.frameCount > 1) {
+            this.frameStartTime = System.currentTimeMillis();
+            activeLabels.add(this);
+            if (!sharedTimer.isRunning()) {
+                sharedTimer.start();
+            }
+        }
+    }
+
+    @Override
+    public void removeNotify() {
+        activeLabels.remove(this);
+        if (activeLabels.isEmpty()) {
+            sharedTimer.stop();
+        }
+
+        super.removeNotify();
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+
+        if (!this.painted && this.getIcon() != null) {
+            this.painted = true;
+            if (this.firstPaintListener != null) {
+                this.firstPaintListener.run();
+            }
+        }
+    }
+
+    private void advance(long now) {
+        // Catch up on every frame whose delay has elapsed
+        boolean changed = false;
+        while (now - this.frameStartTime >= getDelay(this.currentFrame)) {
+            this.frameStartTime += getDelay(this.currentFrame);
+            this.currentFrame = (this.currentFrame + 1) % this.frameCount;
+            changed = true;
+        }
+
+        if (changed) {
+            if (this.timeline == null) {
+                this.setIcon(this.icons[this.currentFrame]);
+            } else {
+                this.requestFrame();
+            }
+        }
+    }
+
+    private void requestFrame() {
+        if (this.rendering) {
+            // The current frame is requested once the one in progress is shown
+            return;
+        }
+
+        this.rendering = true;
+        int frame = this.currentFrame;
+        try {
+            this.renderExecutor.execute(() -> {
+                BufferedImage image;
+                try {
+                    image = this.timeline.renderFrame(frame);
+                } catch (RuntimeException re) {
+                    System.out.println("Unable to render effect frame " + frame + ": " + re);
+                    image = null;
+                }
+                BufferedImage renderedImage = image;
+                SwingUtilities.invokeLater(() -> this.frameRendered(frame, renderedImage));
+            });
+        } catch (RejectedExecutionException ree) {
+            // Window closed
+            this.rendering = false;
+        }
+    }
+
+    private void frameRendered(int frame, BufferedImage image) {
+        this.rendering = false;
+        if (image == null) {
+            return;
+        }
+
+        // The canvas is drawn as is, a new icon makes the label repaint
+        this.setIcon(new ImageIcon(image));
+        if (frame != this.currentFrame && this.isDisplayable()) {
+            this.requestFrame();
+        }
+    }
+
+    private int getDelay(int frame) {
+        int delay = this.timeline == null ? this.images.get(frame).getDelay() : this.timeline.getDelay(frame);
+
+        return delay > 0 ? delay : DEFAULT_DELAY_MS;
+    }
+
+    private static void tick() {
+        long now = System.currentTimeMillis();
+        for (AnimationLabel label : new ArrayList<AnimationLabel>(activeLabels)) {
+            label.advance(now);
+        }
+    }
+}
@@ -2,11 +2,16 @@ package com.gamemode.tkviewer.gui;
 
 import com.gamemode.tkviewer.EffectImage;
 import com.gamemode.tkviewer.Mob;
+import com.gamemode.tkviewer.Palette;
 import com.gamemode.tkviewer.Part;
+import com.gamemode.tkviewer.file_handlers.FileHandler;
+import com.gamemode.tkviewer.management.FlightEvents;
 import com.gamemode.tkviewer.render.*;
 import com.gamemode.tkviewer.render.Renderer;
 import com.gamemode.tkviewer.resources.Resources;
+import com.gamemode.tkviewer.utilities.DiskCache;
 import com.gamemode.tkviewer.utilities.FileUtils;
+import com.gamemode.tkviewer.utilities.IndexedGifWriter;
 import org.apache.commons.io.FilenameUtils;
 
 import javax.swing.*;
@@ -20,10 +25,23 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 //import javax.swing.*;
 
@@ -38,6 +56,36 @@ public class ViewFrame extends JFrame implements ActionListener {
     JList list;
     Integer itemCount;
 
+    // Animations currently shown (keyed by GIF file name), only encoded on export
+    Map<String, List<EffectImage>> animations = new LinkedHashMap<String, List<EffectImage>>();
+    Map<String, EffectTimeline> timelines = new LinkedHashMap<String, EffectTimeline>();
+    Palette animationPalette;
+    List<FileHandler> animationArchives;
+
+    public static final int PREFETCH_DISTANCE = 3;
+    public static final int RENDER_CACHE_SIZE = 32;
+
+    // Renderers aren't thread safe, so all rendering happens on this one thread (holding the renderer's lock, as archive
+    // reloads do) and the EDT only builds components
+    ExecutorService renderExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ViewFrame-Render");
+        thread.setDaemon(true);
+        return thread;
+    });
+    Future<?> selectionFuture;
+    List<Future<?>> prefetchFutures = new ArrayList<Future<?>>();
+    volatile int selectionGeneration = 0;
+    Map<String, RenderedSelection> renderCache = Collections.synchronizedMap(
+            new LinkedHashMap<String, RenderedSelection>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, RenderedSelection> eldest) {
+                    return size() > RENDER_CACHE_SIZE;
+                }
+            });
+
+    // Entries rendered from a reloaded archive are dropped from the render cache
+    Consumer<File> archiveListener = file -> this.renderExecutor.execute(this::dropStaleSelections);
+
     JButton exportButton;
     JRadioButton framesButton;
     JRadioButton animationsButton;
@@ -54,6 +102,11 @@ public class ViewFrame extends JFrame implements ActionListener {
         this.setSize(800, 600);
         this.setResizable(true);
         this.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+
+        ArchiveWatcher archiveWatcher = RendererRegistry.getInstance().getArchiveWatcher();
+        if (archiveWatcher != null) {
+            archiveWatcher.addListener(this.archiveListener);
+        }
     }
 
     public ViewFrame(String title, String singular, String plural, EffectRenderer effectRenderer) {
@@ -99,7 +152,9 @@ public class ViewFrame extends JFrame implements ActionListener {
 
         itemCount = 0;
         for (Renderer renderer : this.renderers) {
-            itemCount += renderer.getCount(useEpfCount);
+            synchronized (renderer) {
+                itemCount += renderer.getCount(useEpfCount);
+            }
         }
         String[] items = new String[itemCount];
         for (int i = 0; i < itemCount; i++) {
@@ -113,16 +168,7 @@ public class ViewFrame extends JFrame implements ActionListener {
             @Override
             public void valueChanged(ListSelectionEvent e) {
                 if (!e.getValueIsAdjusting()) {
-                    int idx = list.getSelectedIndex();
-                    if (renderers.get(0) instanceof MobRenderer && !framesButton.isSelected()) {
-                        renderMobAnimations(idx);
-                    } else if (renderers.get(0) instanceof EffectRenderer && !framesButton.isSelected()) {
-                        renderEffectAnimations(idx);
-                    } else if (renderers.get(0) instanceof PartRenderer && !framesButton.isSelected()) {
-                        renderPartAnimations(idx);
-                    } else {
-                        renderFrames(idx);
-                    }
+                    select(list.getSelectedIndex());
                 }
             }
         });
@@ -134,7 +180,7 @@ public class ViewFrame extends JFrame implements ActionListener {
         statusPanel.setBorder(new LineBorder(Color.BLACK));
         statusPanel.setPreferredSize(new Dimension(this.getWidth(), 36));
 
-        exportButton = new JButton("Export Frames");
+        exportButton = new JButton("Export");
         exportButton.addActionListener(this);
 
         framesButton = new JRadioButton("Frames");
@@ -179,6 +225,8 @@ public class ViewFrame extends JFrame implements ActionListener {
     }
 
     private void clearImagePanel() {
+        animations.clear();
+        timelines.clear();
         imagePanel.removeAll();
         imagePanel.revalidate();
         imagePanel.repaint();
@@ -188,8 +236,9 @@ public class ViewFrame extends JFrame implements ActionListener {
         int currentIndex = index;
         int currentRendererIndex = 0;
         while (true) {
-            if (currentIndex >= this.renderers.get(currentRendererIndex).getCount()) {
-                currentIndex -= this.renderers.get(currentRendererIndex).getCount();
+            int count = this.getCount(currentRendererIndex);
+            if (currentIndex >= count) {
+                currentIndex -= count;
                 currentRendererIndex++;
             } else {
                 break;
@@ -199,12 +248,20 @@ public class ViewFrame extends JFrame implements ActionListener {
         return currentIndex;
     }
 
+    private int getCount(int rendererIndex) {
+        Renderer renderer = this.renderers.get(rendererIndex);
+        synchronized (renderer) {
+            return renderer.getCount();
+        }
+    }
+
     public int determineRendererIndex(int index) {
         int currentIndex = index;
         int currentRendererIndex = 0;
         while (true) {
-            if (currentIndex >= this.renderers.get(currentRendererIndex).getCount()) {
-                currentIndex -= this.renderers.get(currentRendererIndex).getCount();
+            int count = this.getCount(currentRendererIndex);
+            if (currentIndex >= count) {
+                currentIndex -= count;
                 currentRendererIndex++;
             } else {
                 break;
@@ -214,132 +271,312 @@ public class ViewFrame extends JFrame implements ActionListener {
         return currentRendererIndex;
     }
 
-    public void renderEffectAnimations(int index) {
-        this.renderEffectAnimations(determineEpfIndex(index), determineRendererIndex(index));
+    /**
+     * Renders a list entry (or returns it from the render cache), must run on the render thread.
+     */
+    RenderedSelection getRenderedSelection(int listIndex, boolean animated) {
+        String cacheKey = (animated ? "animations-" : "frames-") + listIndex;
+        RenderedSelection selection = this.renderCache.get(cacheKey);
+        if (selection == null) {
+            try {
+                selection = this.renderSelection(listIndex, animated);
+            } catch (RuntimeException re) {
+                System.out.println("Unable to render " + singular + " " + listIndex + ": " + re);
+                return null;
+            }
+            this.renderCache.put(cacheKey, selection);
+        }
+
+        return selection;
     }
 
-    public void renderEffectAnimations(int index, int rendererIndex) {
-        clearImagePanel();
+    RenderedSelection renderSelection(int listIndex, boolean animated) {
+        RenderedSelection selection = new RenderedSelection();
+        selection.animated = animated;
+        selection.index = determineEpfIndex(listIndex);
+        selection.rendererIndex = determineRendererIndex(listIndex);
+
+        int index = selection.index;
+        int rendererIndex = selection.rendererIndex;
+        Renderer renderer = this.renderers.get(rendererIndex);
+        // Archive reloads swap the renderer's handlers under its lock
+        synchronized (renderer) {
+            if (!animated) {
+                selection.frames = renderer.getFrames(index);
+                selection.frameIndices = new int[selection.frames.length];
+                for (int i = 0; i < selection.frames.length; i++) {
+                    selection.frameIndices[i] = renderer.getFrameIndex(index, i);
+                }
+            } else if (renderer instanceof EffectRenderer) {
+                EffectRenderer effectRenderer = (EffectRenderer) renderer;
+
+                // Only the first frame is rendered now, the rest as the effect plays. Effects mix palettes, GIF tables
+                // are rebuilt from the frames on export
+                EffectTimeline timeline = effectRenderer.createTimeline(index);
+                if (timeline.getFrameCount() > 0) {
+                    timeline.renderFrame(0);
+                }
+                selection.timelines.put("effect-" + index + "-" + rendererIndex + ".gif", timeline);
+            } else if (renderer instanceof MobRenderer) {
+                MobRenderer mobRenderer = (MobRenderer) renderer;
+
+                Mob mob = mobRenderer.mobDna.mobs.get(index);
+                for (int i = 0; i < mob.getChunks().size(); i++) {
+                    List<EffectImage> chunkImages = mobRenderer.renderAnimation(index, i);
+                    if (chunkImages.size() != 0) {
+                        selection.animations.put(singular + "-" + index + "-" + i + "-" + rendererIndex + ".gif", chunkImages);
+                        selection.chunkIndices.add(i);
+                    }
+                }
+                selection.palette = mobRenderer.getPalette(index);
+            } else if (renderer instanceof PartRenderer) {
+                PartRenderer partRenderer = (PartRenderer) renderer;
+
+                Part part = partRenderer.partDsc.parts.get(index);
+                for (int i = 0; i < part.getChunks().size(); i++) {
+                    List<EffectImage> chunkImages = partRenderer.renderAnimation(index, i);
+                    if (chunkImages.size() != 0) {
+                        selection.animations.put(singular + "-" + index + "-" + i + "-" + rendererIndex + ".gif", chunkImages);
+                        selection.chunkIndices.add(i);
+                    }
+                }
+                selection.palette = partRenderer.getPalette(index);
+            }
+            selection.archives = getSourceArchives(renderer);
+        }
 
-        // Get Effect Images
-        List<EffectImage> images = ((EffectRenderer) renderers.get(rendererIndex)).renderEffect(index);
+        return selection;
+    }
 
-        // Create GIF in Temp Directory
-        if (!new File(Resources.EFFECT_ANIMATION_DIRECTORY).exists()) {
-            new File(Resources.EFFECT_ANIMATION_DIRECTORY).mkdirs();
-        }
-        String gifPath = (Resources.EFFECT_ANIMATION_DIRECTORY + File.separator + "effect-" + index + "-" + rendererIndex + ".gif");
-        if (!new File(gifPath).exists()) {
-            FileUtils.exportGifFromImages(images, gifPath);
+    static List<FileHandler> getSourceArchives(Renderer renderer) {
+        if (renderer instanceof EffectRenderer) {
+            return ((EffectRenderer) renderer).getSourceArchives();
+        } else if (renderer instanceof MobRenderer) {
+            return ((MobRenderer) renderer).getSourceArchives();
+        } else if (renderer instanceof PartRenderer) {
+            return ((PartRenderer) renderer).getSourceArchives();
+        } else if (renderer instanceof TileRenderer) {
+            return ((TileRenderer) renderer).getSourceArchives();
         }
 
-        // Add GIF to imagePanel
-        if (new File(gifPath).exists()) {
-            Icon gifIcon = new ImageIcon(gifPath);
-            JLabel jLabel = new JLabel(gifIcon);
-            imagePanel.add(jLabel);
-        } else {
-            System.err.println("Couldn't find file: " + gifPath);
+        return Collections.emptyList();
+    }
+
+    /**
+     * Drops the cached entries rendered from handlers an archive reload has since replaced, and shows the selection
+     * again. Runs on the render thread, after the watcher swapped the new handlers in.
+     */
+    void dropStaleSelections() {
+        List<List<FileHandler>> currentArchives = new ArrayList<List<FileHandler>>();
+        for (Renderer renderer : this.renderers) {
+            synchronized (renderer) {
+                currentArchives.add(getSourceArchives(renderer));
+            }
         }
 
-        revalidate();
+        boolean dropped;
+        synchronized (this.renderCache) {
+            dropped = this.renderCache.values().removeIf(
+                    selection -> !currentArchives.get(selection.rendererIndex).equals(selection.archives));
+        }
+        if (dropped) {
+            SwingUtilities.invokeLater(() -> this.select(this.list.getSelectedIndex()));
+        }
     }
 
-    public void renderMobAnimations(int index) {
-        this.renderMobAnimations(determineEpfIndex(index), determineRendererIndex(index));
-    }
+    /**
+     * Renders the list entry in the background, only the latest selection is shown.
+     *
+     * Up to PREFETCH_DISTANCE entries either side are rendered into the render cache afterwards, so stepping through
+     * the list with the arrow keys is served from memory.
+     */
+    public void select(int listIndex) {
+        if (listIndex < 0) {
+            return;
+        }
 
-    public void renderMobAnimations(int index, int rendererIndex) {
-        clearImagePanel();
+        final boolean animated = this.isAnimated();
+        final int generation = ++this.selectionGeneration;
+        // First-frame latency, recorded as a JFR event when a recording enables it
+        final Object firstFrameEvent = FlightEvents.beginFirstFrame();
 
-        // Create Part Animations in Temp Directory
-        File outputDirectory = new File(Resources.MOB_ANIMATION_DIRECTORY + File.separator + index);
-        if (!outputDirectory.exists()) {
-            outputDirectory.mkdirs();
-        }
+        // Stale work that hasn't started yet is dropped, a render in progress finishes but is never shown
+        this.cancelRendering();
 
-        MobRenderer mobRenderer = ((MobRenderer) renderers.get(rendererIndex));
+        RenderedSelection cachedSelection = this.renderCache.get((animated ? "animations-" : "frames-") + listIndex);
+        if (cachedSelection != null) {
+            this.showSelection(cachedSelection, firstFrameListener(firstFrameEvent, listIndex, true));
+        } else {
+            clearImagePanel();
+            imagePanel.add(new JLabel("Loading..."));
+            revalidate();
 
-        List<String> gifPaths = new ArrayList<String>();
-        Mob mob = mobRenderer.mobDna.mobs.get(index);
-        for (int i = 0; i < mob.getChunks().size(); i++) {
-            List<EffectImage> chunkImages = mobRenderer.renderAnimation(index, i);
-            if (chunkImages.size() != 0) {
-                String gifPath = outputDirectory + File.separator + singular + "-" + index + "-" + i + "-" + rendererIndex + ".gif";
-                FileUtils.exportGifFromImages(chunkImages, gifPath);
-                gifPaths.add(gifPath);
-            }
+            this.selectionFuture = this.renderExecutor.submit(() -> {
+                if (generation != this.selectionGeneration) {
+                    return;
+                }
+                RenderedSelection selection = this.getRenderedSelection(listIndex, animated);
+                SwingUtilities.invokeLater(() -> {
+                    if (generation == this.selectionGeneration && selection != null) {
+                        this.showSelection(selection, firstFrameListener(firstFrameEvent, listIndex, false));
+                    }
+                });
+            });
         }
 
-        for (int i = 0; i < gifPaths.size(); i++) {
-            // Add GIF to imagePanel
-            String gifPath = gifPaths.get(i);
-            if (new File(gifPath).exists()) {
-                Icon gifIcon = new ImageIcon(gifPath);
-                JLabel jLabel = new JLabel(gifIcon);
-                jLabel.setToolTipText(String.valueOf(i));
-                imagePanel.add(jLabel);
-            } else {
-                System.err.println("Couldn't find file: " + gifPath);
+        // Neighbours, nearest first
+        for (int distance = 1; distance <= PREFETCH_DISTANCE; distance++) {
+            for (int neighbour : new int[]{listIndex + distance, listIndex - distance}) {
+                if (neighbour >= 0 && neighbour < this.itemCount) {
+                    this.prefetchFutures.add(this.renderExecutor.submit(() -> {
+                        if (generation == this.selectionGeneration) {
+                            this.getRenderedSelection(neighbour, animated);
+                        }
+                    }));
+                }
             }
         }
+    }
 
-        revalidate();
+    private void cancelRendering() {
+        if (this.selectionFuture != null) {
+            this.selectionFuture.cancel(false);
+        }
+        for (Future<?> prefetchFuture : this.prefetchFutures) {
+            prefetchFuture.cancel(false);
+        }
+        this.prefetchFutures.clear();
     }
 
-    public void renderPartAnimations(int index) {
-        this.renderPartAnimations(determineEpfIndex(index), determineRendererIndex(index));
+    private boolean isAnimated() {
+        Renderer renderer = this.renderers.get(0);
+
+        return !this.framesButton.isSelected()
+                && (renderer instanceof EffectRenderer || renderer instanceof MobRenderer || renderer instanceof PartRenderer);
     }
 
-    public void renderPartAnimations(int index, int rendererIndex) {
-        clearImagePanel();
+    private <T> T onRenderThread(Callable<T> callable) {
+        try {
+            return this.renderExecutor.submit(callable).get();
+        } catch (InterruptedException | ExecutionException e) {
+            System.out.println("Unable to render: " + e);
+            return null;
+        }
+    }
 
-        // Create Part Animations in Temp Directory
-        File outputDirectory = new File(Resources.PART_ANIMATION_DIRECTORY + File.separator + plural);
-        if (!outputDirectory.exists()) {
-            outputDirectory.mkdirs();
+    private void showSelection(RenderedSelection selection, Runnable firstFrameListener) {
+        if (selection.animated) {
+            showAnimations(selection, firstFrameListener);
+        } else {
+            showFrames(selection);
         }
+    }
 
-        PartRenderer partRenderer = ((PartRenderer) renderers.get(rendererIndex));
+    private void showAnimations(RenderedSelection selection, Runnable firstFrameListener) {
+        clearImagePanel();
 
-        List<String> gifPaths = new ArrayList<String>();
-        Part part = partRenderer.partDsc.parts.get(index);
-        for (int i = 0; i < part.getChunks().size(); i++) {
-            List<EffectImage> chunkImages = partRenderer.renderAnimation(index, i);
-            if (chunkImages.size() != 0) {
-                String gifPath = outputDirectory + File.separator + singular + "-" + index + "-" + i + "-" + rendererIndex + ".gif";
-                FileUtils.exportGifFromImages(chunkImages, gifPath);
-                gifPaths.add(gifPath);
+        this.animations.putAll(selection.animations);
+        this.timelines.putAll(selection.timelines);
+        this.animationPalette = selection.palette;
+        this.animationArchives = selection.archives;
+
+        int i = 0;
+        for (List<EffectImage> images : selection.animations.values()) {
+            // Only the first chunk reports latency
+            AnimationLabel animationLabel = new AnimationLabel(images, i == 0 ? firstFrameListener : null);
+            Integer chunkIndex = selection.chunkIndices.get(i);
+            if (chunkIndex != null) {
+                animationLabel.setToolTipText(String.valueOf(chunkIndex));
             }
+            imagePanel.add(animationLabel);
+            i++;
+        }
+        for (EffectTimeline timeline : selection.timelines.values()) {
+            imagePanel.add(new AnimationLabel(timeline, this.renderExecutor, i == 0 ? firstFrameListener : null));
+            i++;
         }
 
-        for (int i = 0; i < gifPaths.size(); i++) {
-            // Add GIF to imagePanel
-            String gifPath = gifPaths.get(i);
-            if (new File(gifPath).exists()) {
-                Icon gifIcon = new ImageIcon(gifPath);
-                JLabel jLabel = new JLabel(gifIcon);
-                jLabel.setToolTipText(String.valueOf(i));
-                imagePanel.add(jLabel);
-            } else {
-                System.err.println("Couldn't find file: " + gifPath);
+        revalidate();
+        repaint();
+    }
+
+    private static Runnable firstFrameListener(Object firstFrameEvent, int listIndex, boolean cached) {
+        if (firstFrameEvent == null) {
+            return null;
+        }
+        return new Runnable() {
+            @Override
+            public void run() {
+                FlightEvents.commitFirstFrame(firstFrameEvent, listIndex, cached);
             }
+        };
+    }
+
+    public void exportAnimations() {
+        if (this.animations.isEmpty() && this.timelines.isEmpty()) {
+            return;
         }
 
-        revalidate();
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        fileChooser.setDialogTitle("Choose export directory");
+        int result = fileChooser.showSaveDialog(this);
+        if (result == JFileChooser.APPROVE_OPTION) {
+            // Reuse GIFs encoded by earlier exports of the same (unchanged) archives
+            String archiveIdentity = DiskCache.archiveIdentity(this.animationArchives);
+            String paletteIdentity = DiskCache.paletteIdentity(this.animationPalette);
+            File directory = fileChooser.getSelectedFile();
+            this.animations.entrySet().parallelStream().forEach(animation ->
+                    exportAnimation(directory, animation.getKey(), DiskCache.key(archiveIdentity, paletteIdentity, animation.getKey()),
+                            temporaryFile -> IndexedGifWriter.exportGif(animation.getValue(), this.animationPalette, temporaryFile.getPath())));
+
+            if (!this.timelines.isEmpty()) {
+                // Effects are rendered while encoding, on the render thread with canvases of their own
+                this.cancelRendering();
+                Map<String, EffectTimeline> exportedTimelines = new LinkedHashMap<String, EffectTimeline>(this.timelines);
+                onRenderThread(() -> {
+                    for (Map.Entry<String, EffectTimeline> timeline : exportedTimelines.entrySet()) {
+                        exportAnimation(directory, timeline.getKey(), DiskCache.key(archiveIdentity, paletteIdentity, timeline.getKey()),
+                                temporaryFile -> IndexedGifWriter.exportGif(timeline.getValue().copy(EffectTimeline.DEFAULT_RING_SIZE),
+                                        this.animationPalette, temporaryFile.getPath()));
+                    }
+                    return null;
+                });
+            }
+
+            JOptionPane.showMessageDialog(this, "Animations exported successfully!", "TKViewer", JOptionPane.INFORMATION_MESSAGE);
+        }
     }
 
-    public void renderFrames(int index) {
-        this.renderFrames(determineEpfIndex(index), determineRendererIndex(index));
+    private void exportAnimation(File directory, String fileName, String key, Consumer<File> writer) {
+        DiskCache diskCache = DiskCache.getInstance();
+        File outputFile = Paths.get(directory.toString(), fileName).toFile();
+        for (int attempt = 0; attempt < 2; attempt++) {
+            File cachedFile = diskCache.getOrCreate(key, writer);
+            if (cachedFile == null) {
+                break;
+            }
+            try {
+                Files.copy(cachedFile.toPath(), outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                break;
+            } catch (NoSuchFileException nsfe) {
+                // Deleted behind the index's back, encode again
+                diskCache.remove(key);
+            } catch (IOException ioe) {
+                System.out.println("Unable to export animation: " + ioe);
+                break;
+            }
+        }
     }
 
-    public void renderFrames(int index, int rendererIndex) {
+    private void showFrames(RenderedSelection selection) {
         clearImagePanel();
 
-        Image[] images = renderers.get(rendererIndex).getFrames(index);
-        for (int i = 0; i < images.length; i++) {
-            final int frameIndex = renderers.get(rendererIndex).getFrameIndex(index, i);
-            JLabel jLabel = new JLabel(new ImageIcon(images[i]));
+        int index = selection.index;
+        Renderer renderer = renderers.get(selection.rendererIndex);
+        for (int i = 0; i < selection.frames.length; i++) {
+            final int frameIndex = selection.frameIndices[i];
+            JLabel jLabel = new JLabel(new ImageIcon(selection.frames[i]));
             jLabel.setToolTipText(String.valueOf(i));
             jLabel.addMouseListener(new MouseAdapter() {
                 @Override
@@ -350,7 +587,11 @@ public class ViewFrame extends JFrame implements ActionListener {
                         loadingNotification.setIconImage(clientIcon);
                         JTextPane info = new JTextPane();
                         info.setContentType("text/html");
-                        info.setText(renderers.get(rendererIndex).getInfo(frameIndex));
+                        info.setText(onRenderThread(() -> {
+                            synchronized (renderer) {
+                                return renderer.getInfo(frameIndex);
+                            }
+                        }));
                         info.setEditable(false);
                         info.setFont(new Font("Consolas", Font.BOLD, 12));
                         loadingNotification.add(info);
@@ -366,28 +607,41 @@ public class ViewFrame extends JFrame implements ActionListener {
         }
 
         revalidate();
+        repaint();
     }
 
-    public void exportFrames(int index) {
-        this.exportFrames(determineEpfIndex(index), determineRendererIndex(index));
-    }
-
-    public void exportFrames(int index, int rendererIndex) {
+    public void exportFrames(int listIndex) {
         JFileChooser fileChooser = new JFileChooser();
         fileChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
         fileChooser.setDialogTitle("Choose export directory");
         int result = fileChooser.showSaveDialog(this);
         if (result == JFileChooser.APPROVE_OPTION) {
-            Image[] images = renderers.get(rendererIndex).getFrames(index);
-            for (int i = 0; i < images.length; i++) {
-                final int frameIndex = renderers.get(rendererIndex).getFrameIndex(index, i);
-                FileUtils.writeBufferedImageToFile(((BufferedImage) images[i]), Paths.get(fileChooser.getSelectedFile().toString(), singular + "-" + index + "-" + frameIndex + ".png").toString());
+            // Don't wait behind speculative renders
+            this.cancelRendering();
+            RenderedSelection selection = onRenderThread(() -> getRenderedSelection(listIndex, false));
+            if (selection == null) {
+                return;
+            }
+
+            for (int i = 0; i < selection.frames.length; i++) {
+                final int frameIndex = selection.frameIndices[i];
+                FileUtils.writeBufferedImageToFile(((BufferedImage) selection.frames[i]), Paths.get(fileChooser.getSelectedFile().toString(), singular + "-" + selection.index + "-" + frameIndex + ".png").toString());
             }
 
             JOptionPane.showMessageDialog(this, "Frames exported successfully!", "TKViewer", JOptionPane.INFORMATION_MESSAGE);
         }
     }
 
+    @Override
+    public void dispose() {
+        ArchiveWatcher archiveWatcher = RendererRegistry.getInstance().getArchiveWatcher();
+        if (archiveWatcher != null) {
+            archiveWatcher.removeListener(this.archiveListener);
+        }
+        this.renderExecutor.shutdownNow();
+        super.dispose();
+    }
+
     @Override
     public void actionPerformed(ActionEvent ae) {
         int listIndex = list.getSelectedIndex();
@@ -397,16 +651,33 @@ public class ViewFrame extends JFrame implements ActionListener {
             return;
         }
 
-        if (ae.getSource() == this.framesButton) {
-            this.renderFrames(listIndex);
-        } else if (ae.getSource() == this.animationsButton) {
-            if (renderers.get(0) instanceof EffectRenderer) {
-                this.renderEffectAnimations(listIndex);
-            } else if (renderers.get(0) instanceof PartRenderer) {
-                this.renderPartAnimations(listIndex);
-            }
+        if (ae.getSource() == this.framesButton || ae.getSource() == this.animationsButton) {
+            this.select(listIndex);
         } else if (ae.getSource() == this.exportButton) {
-            this.exportFrames(listIndex);
+            if (!this.framesButton.isSelected() && (!this.animations.isEmpty() || !this.timelines.isEmpty())) {
+                this.exportAnimations();
+            } else {
+                this.exportFrames(listIndex);
+            }
         }
     }
+
+    /**
+     * Everything needed to show one list entry, produced on the render thread.
+     */
+    static class RenderedSelection {
+        boolean animated;
+        int index;
+        int rendererIndex;
+
+        Image[] frames;
+        int[] frameIndices;
+
+        // Keyed by GIF file name, chunk index per animation
+        Map<String, List<EffectImage>> animations = new LinkedHashMap<String, List<EffectImage>>();
+        List<Integer> chunkIndices = new ArrayList<Integer>();
+        Map<String, EffectTimeline> timelines = new LinkedHashMap<String, EffectTimeline>();
+        Palette palette;
+        List<FileHandler> archives;
+    }
 }
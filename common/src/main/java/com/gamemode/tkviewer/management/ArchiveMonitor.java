@@ -0,0 +1,51 @@
+package com.gamemode.tkviewer.management;
+
+import com.gamemode.tkviewer.file_handlers.DatFileHandler;
+import com.gamemode.tkviewer.render.RendererRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ArchiveMonitor implements ArchivesMXBean {
+
+    RendererRegistry registry;
+
+    public ArchiveMonitor(RendererRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public int getArchiveCount() {
+        return this.registry.getOpenArchives().size();
+    }
+
+    @Override
+    public long getHeapBytes() {
+        long heapBytes = 0;
+        for (DatFileHandler archive : this.registry.getOpenArchives()) {
+            heapBytes += archive.getHeapBytes();
+        }
+
+        return heapBytes;
+    }
+
+    @Override
+    public long getMappedBytes() {
+        long mappedBytes = 0;
+        for (DatFileHandler archive : this.registry.getOpenArchives()) {
+            mappedBytes += archive.getMappedBytes();
+        }
+
+        return mappedBytes;
+    }
+
+    @Override
+    public List<ArchiveStats> getArchives() {
+        List<ArchiveStats> archives = new ArrayList<ArchiveStats>();
+        for (DatFileHandler archive : this.registry.getOpenArchives()) {
+            archives.add(new ArchiveStats(archive.filePath, archive.fileCount, archive.getHeapBytes(), archive.getMappedBytes()));
+        }
+
+        return archives;
+    }
+}
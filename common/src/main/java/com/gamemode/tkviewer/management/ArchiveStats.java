@@ -0,0 +1,38 @@
+package com.gamemode.tkviewer.management;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * One open DatFileHandler (an MXBean composite).
+ */
+public class ArchiveStats {
+
+    String path;
+    long fileCount;
+    long heapBytes;
+    long mappedBytes;
+
+    @ConstructorProperties({"path", "fileCount", "heapBytes", "mappedBytes"})
+    public ArchiveStats(String path, long fileCount, long heapBytes, long mappedBytes) {
+        this.path = path;
+        this.fileCount = fileCount;
+        this.heapBytes = heapBytes;
+        this.mappedBytes = mappedBytes;
+    }
+
+    public String getPath() {
+        return this.path;
+    }
+
+    public long getFileCount() {
+        return this.fileCount;
+    }
+
+    public long getHeapBytes() {
+        return this.heapBytes;
+    }
+
+    public long getMappedBytes() {
+        return this.mappedBytes;
+    }
+}
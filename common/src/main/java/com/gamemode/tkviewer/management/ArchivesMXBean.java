@@ -0,0 +1,17 @@
+package com.gamemode.tkviewer.management;
+
+import java.util.List;
+
+/**
+ * Archives open in the RendererRegistry, registered as com.gamemode.tkviewer:type=Archives
+ */
+public interface ArchivesMXBean {
+
+    int getArchiveCount();
+
+    long getHeapBytes();
+
+    long getMappedBytes();
+
+    List<ArchiveStats> getArchives();
+}
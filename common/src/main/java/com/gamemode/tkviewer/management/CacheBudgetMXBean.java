@@ -0,0 +1,38 @@
+package com.gamemode.tkviewer.management;
+
+import java.util.List;
+
+/**
+ * Byte budget shared by every renderer cache, registered as com.gamemode.tkviewer:type=CacheBudget.
+ */
+public interface CacheBudgetMXBean {
+
+    /**
+     * 0 for no limit, lowering it evicts right away.
+     */
+    long getBudgetBytes();
+
+    void setBudgetBytes(long budgetBytes);
+
+    long getUsedBytes();
+
+    boolean isSoftEviction();
+
+    void setSoftEviction(boolean softEviction);
+
+    long getEvictions();
+
+    long getDemotions();
+
+    /**
+     * Times a heap pool was still over the pressure threshold after a collection.
+     */
+    long getPressureEvictions();
+
+    List<CacheUsage> getCaches();
+
+    /**
+     * Evicts every cached image (demoted to soft references with soft eviction).
+     */
+    void evictAll();
+}
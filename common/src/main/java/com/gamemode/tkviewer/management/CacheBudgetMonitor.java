@@ -0,0 +1,78 @@
+package com.gamemode.tkviewer.management;
+
+import com.gamemode.tkviewer.render.CacheBudget;
+import com.gamemode.tkviewer.render.FrameCache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CacheBudgetMXBean over the CacheBudget, caches not registered as renderer MBeans are named FrameCache-n.
+ */
+public class CacheBudgetMonitor implements CacheBudgetMXBean {
+
+    CacheBudget budget;
+
+    public CacheBudgetMonitor(CacheBudget budget) {
+        this.budget = budget;
+    }
+
+    @Override
+    public long getBudgetBytes() {
+        return this.budget.budgetBytes;
+    }
+
+    @Override
+    public void setBudgetBytes(long budgetBytes) {
+        this.budget.budgetBytes = budgetBytes;
+        this.budget.enforce();
+    }
+
+    @Override
+    public long getUsedBytes() {
+        return this.budget.getUsedBytes();
+    }
+
+    @Override
+    public boolean isSoftEviction() {
+        return this.budget.softEviction;
+    }
+
+    @Override
+    public void setSoftEviction(boolean softEviction) {
+        this.budget.softEviction = softEviction;
+    }
+
+    @Override
+    public long getEvictions() {
+        return this.budget.getEvictions();
+    }
+
+    @Override
+    public long getDemotions() {
+        return this.budget.getDemotions();
+    }
+
+    @Override
+    public long getPressureEvictions() {
+        return this.budget.getPressureEvictions();
+    }
+
+    @Override
+    public List<CacheUsage> getCaches() {
+        List<CacheUsage> cacheUsages = new ArrayList<CacheUsage>();
+        List<FrameCache> caches = this.budget.getCaches();
+        for (int i = 0; i < caches.size(); i++) {
+            FrameCache cache = caches.get(i);
+            cacheUsages.add(new CacheUsage(cache.name == null ? "FrameCache-" + i : cache.name, cache.size(),
+                    cache.getImageBytes(), cache.weight, cache.getDemotedCount(), cache.getEvictions()));
+        }
+
+        return cacheUsages;
+    }
+
+    @Override
+    public void evictAll() {
+        this.budget.shrink(0);
+    }
+}
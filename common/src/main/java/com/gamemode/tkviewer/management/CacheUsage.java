@@ -0,0 +1,50 @@
+package com.gamemode.tkviewer.management;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Images one FrameCache holds against the cache budget (an MXBean composite).
+ */
+public class CacheUsage {
+
+    String name;
+    int entries;
+    long bytes;
+    double weight;
+    int demotedEntries;
+    long evictions;
+
+    @ConstructorProperties({"name", "entries", "bytes", "weight", "demotedEntries", "evictions"})
+    public CacheUsage(String name, int entries, long bytes, double weight, int demotedEntries, long evictions) {
+        this.name = name;
+        this.entries = entries;
+        this.bytes = bytes;
+        this.weight = weight;
+        this.demotedEntries = demotedEntries;
+        this.evictions = evictions;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public int getEntries() {
+        return this.entries;
+    }
+
+    public long getBytes() {
+        return this.bytes;
+    }
+
+    public double getWeight() {
+        return this.weight;
+    }
+
+    public int getDemotedEntries() {
+        return this.demotedEntries;
+    }
+
+    public long getEvictions() {
+        return this.evictions;
+    }
+}
@@ -0,0 +1,44 @@
+package com.gamemode.tkviewer.management;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Decoded frames of one EpfFileHandler (an MXBean composite).
+ */
+public class EpfStats {
+
+    String name;
+    int frameCount;
+    int decodedFrames;
+    long decodedBytes;
+    long offHeapBytes;
+
+    @ConstructorProperties({"name", "frameCount", "decodedFrames", "decodedBytes", "offHeapBytes"})
+    public EpfStats(String name, int frameCount, int decodedFrames, long decodedBytes, long offHeapBytes) {
+        this.name = name;
+        this.frameCount = frameCount;
+        this.decodedFrames = decodedFrames;
+        this.decodedBytes = decodedBytes;
+        this.offHeapBytes = offHeapBytes;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public int getFrameCount() {
+        return this.frameCount;
+    }
+
+    public int getDecodedFrames() {
+        return this.decodedFrames;
+    }
+
+    public long getDecodedBytes() {
+        return this.decodedBytes;
+    }
+
+    public long getOffHeapBytes() {
+        return this.offHeapBytes;
+    }
+}
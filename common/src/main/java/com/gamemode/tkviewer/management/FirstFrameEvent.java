@@ -0,0 +1,20 @@
+package com.gamemode.tkviewer.management;
+
+import jdk.jfr.*;
+
+/**
+ * ViewFrame.select until the first animation frame of the selection is painted (render, or render cache hit, plus
+ * Swing layout and paint).
+ */
+@Name("com.gamemode.tkviewer.FirstFrame")
+@Label("First Frame Latency")
+@Category({"TKViewer", "GUI"})
+@StackTrace(false)
+public class FirstFrameEvent extends Event {
+
+    @Label("List Index")
+    public int listIndex;
+
+    @Label("Render Cache Hit")
+    public boolean cached;
+}
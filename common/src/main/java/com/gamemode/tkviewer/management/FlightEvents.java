@@ -0,0 +1,100 @@
+package com.gamemode.tkviewer.management;
+
+/**
+ * Emits the TKViewer JFR events (FrameDecodeEvent, TileRenderEvent...) without linking parse and render classes
+ * against jdk.jfr, which Java 8 runtimes before 8u262 don't have: there every begin method returns null and the
+ * event classes are never loaded.
+ *
+ * begin methods return null too while no recording enables the event type, so nothing is allocated per call unless
+ * the event is being recorded. Callers keep the returned event as an Object and hand it back to the matching commit
+ * method, which ignores null.
+ */
+public class FlightEvents {
+
+    public static final boolean AVAILABLE = isAvailable();
+
+    static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            JfrEvents.init();
+            return true;
+        } catch (ClassNotFoundException | LinkageError | RuntimeException e) {
+            return false;
+        }
+    }
+
+    public static Object beginFrameDecode() {
+        return AVAILABLE ? JfrEvents.beginFrameDecode() : null;
+    }
+
+    public static void commitFrameDecode(Object event, String epf, int frameIndex, int width, int height,
+                                         int pixelBytes, int stencilBytes) {
+        if (event != null) {
+            JfrEvents.commitFrameDecode(event, epf, frameIndex, width, height, pixelBytes, stencilBytes);
+        }
+    }
+
+    public static Object beginStencilDecode() {
+        return AVAILABLE ? JfrEvents.beginStencilDecode() : null;
+    }
+
+    public static void commitStencilDecode(Object event, String epf, long stencilOffset, int width, int height,
+                                           int stencilBytes) {
+        if (event != null) {
+            JfrEvents.commitStencilDecode(event, epf, stencilOffset, width, height, stencilBytes);
+        }
+    }
+
+    public static Object beginMapLoad() {
+        return AVAILABLE ? JfrEvents.beginMapLoad() : null;
+    }
+
+    public static void commitMapLoad(Object event, String file, String format, int mapWidth, int mapHeight,
+                                     long fileBytes, long tileBytes) {
+        if (event != null) {
+            JfrEvents.commitMapLoad(event, file, format, mapWidth, mapHeight, fileBytes, tileBytes);
+        }
+    }
+
+    public static Object beginMapRender() {
+        return AVAILABLE ? JfrEvents.beginMapRender() : null;
+    }
+
+    public static void commitMapRender(Object event, String file, int x, int y, int width, int height, int sObjCount,
+                                       long imageBytes) {
+        if (event != null) {
+            JfrEvents.commitMapRender(event, file, x, y, width, height, sObjCount, imageBytes);
+        }
+    }
+
+    public static Object beginSObjRender() {
+        return AVAILABLE ? JfrEvents.beginSObjRender() : null;
+    }
+
+    public static void commitSObjRender(Object event, int sObjIndex, int height, long imageBytes) {
+        if (event != null) {
+            JfrEvents.commitSObjRender(event, sObjIndex, height, imageBytes);
+        }
+    }
+
+    public static Object beginTileRender() {
+        return AVAILABLE ? JfrEvents.beginTileRender() : null;
+    }
+
+    public static void commitTileRender(Object event, String epf, int tileIndex, int paletteIndex, int animationOffset,
+                                        int pixelBytes) {
+        if (event != null) {
+            JfrEvents.commitTileRender(event, epf, tileIndex, paletteIndex, animationOffset, pixelBytes);
+        }
+    }
+
+    public static Object beginFirstFrame() {
+        return AVAILABLE ? JfrEvents.beginFirstFrame() : null;
+    }
+
+    public static void commitFirstFrame(Object event, int listIndex, boolean cached) {
+        if (event != null) {
+            JfrEvents.commitFirstFrame(event, listIndex, cached);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.gamemode.tkviewer.management;
+
+import jdk.jfr.*;
+
+/**
+ * EpfFileHandler.getFrame decoding a frame that wasn't in frames_map (stencil decode included).
+ */
+@Name("com.gamemode.tkviewer.FrameDecode")
+@Label("EPF Frame Decode")
+@Category({"TKViewer", "Parse"})
+@StackTrace(false)
+public class FrameDecodeEvent extends Event {
+
+    @Label("EPF")
+    public String epf;
+
+    @Label("Frame Index")
+    public int frameIndex;
+
+    @Label("Width")
+    public int width;
+
+    @Label("Height")
+    public int height;
+
+    @Label("Pixel Bytes")
+    @DataAmount
+    public int pixelBytes;
+
+    @Label("Stencil Bytes")
+    @DataAmount
+    public int stencilBytes;
+}
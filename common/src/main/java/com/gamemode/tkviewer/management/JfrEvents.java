@@ -0,0 +1,173 @@
+package com.gamemode.tkviewer.management;
+
+import jdk.jfr.EventType;
+
+/**
+ * The only class touching the JFR event classes, loaded by FlightEvents once it knows jdk.jfr is there.
+ */
+class JfrEvents {
+
+    // Cached so an event is only allocated while a recording enables its type
+    static final EventType FRAME_DECODE = EventType.getEventType(FrameDecodeEvent.class);
+    static final EventType STENCIL_DECODE = EventType.getEventType(StencilDecodeEvent.class);
+    static final EventType MAP_LOAD = EventType.getEventType(MapLoadEvent.class);
+    static final EventType MAP_RENDER = EventType.getEventType(MapRenderEvent.class);
+    static final EventType SOBJ_RENDER = EventType.getEventType(SObjRenderEvent.class);
+    static final EventType TILE_RENDER = EventType.getEventType(TileRenderEvent.class);
+    static final EventType FIRST_FRAME = EventType.getEventType(FirstFrameEvent.class);
+
+    static void init() {
+        // Registers the event types
+    }
+
+    static Object beginFrameDecode() {
+        if (!FRAME_DECODE.isEnabled()) {
+            return null;
+        }
+        FrameDecodeEvent event = new FrameDecodeEvent();
+        event.begin();
+        return event;
+    }
+
+    static void commitFrameDecode(Object begunEvent, String epf, int frameIndex, int width, int height,
+                                  int pixelBytes, int stencilBytes) {
+        FrameDecodeEvent event = (FrameDecodeEvent) begunEvent;
+        if (event.shouldCommit()) {
+            event.epf = epf;
+            event.frameIndex = frameIndex;
+            event.width = width;
+            event.height = height;
+            event.pixelBytes = pixelBytes;
+            event.stencilBytes = stencilBytes;
+            event.commit();
+        }
+    }
+
+    static Object beginStencilDecode() {
+        if (!STENCIL_DECODE.isEnabled()) {
+            return null;
+        }
+        StencilDecodeEvent event = new StencilDecodeEvent();
+        event.begin();
+        return event;
+    }
+
+    static void commitStencilDecode(Object begunEvent, String epf, long stencilOffset, int width, int height,
+                                    int stencilBytes) {
+        StencilDecodeEvent event = (StencilDecodeEvent) begunEvent;
+        if (event.shouldCommit()) {
+            event.epf = epf;
+            event.stencilOffset = stencilOffset;
+            event.width = width;
+            event.height = height;
+            event.stencilBytes = stencilBytes;
+            event.commit();
+        }
+    }
+
+    static Object beginMapLoad() {
+        if (!MAP_LOAD.isEnabled()) {
+            return null;
+        }
+        MapLoadEvent event = new MapLoadEvent();
+        event.begin();
+        return event;
+    }
+
+    static void commitMapLoad(Object begunEvent, String file, String format, int mapWidth, int mapHeight,
+                              long fileBytes, long tileBytes) {
+        MapLoadEvent event = (MapLoadEvent) begunEvent;
+        if (event.shouldCommit()) {
+            event.file = file;
+            event.format = format;
+            event.mapWidth = mapWidth;
+            event.mapHeight = mapHeight;
+            event.fileBytes = fileBytes;
+            event.tileBytes = tileBytes;
+            event.commit();
+        }
+    }
+
+    static Object beginMapRender() {
+        if (!MAP_RENDER.isEnabled()) {
+            return null;
+        }
+        MapRenderEvent event = new MapRenderEvent();
+        event.begin();
+        return event;
+    }
+
+    static void commitMapRender(Object begunEvent, String file, int x, int y, int width, int height, int sObjCount,
+                                long imageBytes) {
+        MapRenderEvent event = (MapRenderEvent) begunEvent;
+        if (event.shouldCommit()) {
+            event.file = file;
+            event.x = x;
+            event.y = y;
+            event.width = width;
+            event.height = height;
+            event.sObjCount = sObjCount;
+            event.imageBytes = imageBytes;
+            event.commit();
+        }
+    }
+
+    static Object beginSObjRender() {
+        if (!SOBJ_RENDER.isEnabled()) {
+            return null;
+        }
+        SObjRenderEvent event = new SObjRenderEvent();
+        event.begin();
+        return event;
+    }
+
+    static void commitSObjRender(Object begunEvent, int sObjIndex, int height, long imageBytes) {
+        SObjRenderEvent event = (SObjRenderEvent) begunEvent;
+        if (event.shouldCommit()) {
+            event.sObjIndex = sObjIndex;
+            event.height = height;
+            event.imageBytes = imageBytes;
+            event.commit();
+        }
+    }
+
+    static Object beginTileRender() {
+        if (!TILE_RENDER.isEnabled()) {
+            return null;
+        }
+        TileRenderEvent event = new TileRenderEvent();
+        event.begin();
+        return event;
+    }
+
+    static void commitTileRender(Object begunEvent, String epf, int tileIndex, int paletteIndex, int animationOffset,
+                                 int pixelBytes) {
+        TileRenderEvent event = (TileRenderEvent) begunEvent;
+        if (event.shouldCommit()) {
+            event.epf = epf;
+            event.tileIndex = tileIndex;
+            event.paletteIndex = paletteIndex;
+            event.animationOffset = animationOffset;
+            event.pixelBytes = pixelBytes;
+            event.commit();
+        }
+    }
+
+    static Object beginFirstFrame() {
+        if (!FIRST_FRAME.isEnabled()) {
+            return null;
+        }
+        FirstFrameEvent event = new FirstFrameEvent();
+        event.begin();
+        return event;
+    }
+
+    static void commitFirstFrame(Object begunEvent, int listIndex, boolean cached) {
+        FirstFrameEvent event = (FirstFrameEvent) begunEvent;
+        if (event.shouldCommit()) {
+            event.listIndex = listIndex;
+            event.cached = cached;
+            event.commit();
+        }
+    }
+}
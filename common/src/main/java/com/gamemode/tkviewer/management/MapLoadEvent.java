@@ -0,0 +1,34 @@
+package com.gamemode.tkviewer.management;
+
+import jdk.jfr.*;
+
+/**
+ * CmpFileHandler/MapFileHandler load (for CMP mostly the zlib inflate).
+ */
+@Name("com.gamemode.tkviewer.MapLoad")
+@Label("Map Load")
+@Category({"TKViewer", "Parse"})
+@StackTrace(false)
+public class MapLoadEvent extends Event {
+
+    @Label("Map File")
+    public String file;
+
+    @Label("Format")
+    public String format;
+
+    @Label("Map Width")
+    public int mapWidth;
+
+    @Label("Map Height")
+    public int mapHeight;
+
+    @Label("File Bytes")
+    @DataAmount
+    public long fileBytes;
+
+    @Label("Tile Bytes")
+    @Description("Tile data after inflating")
+    @DataAmount
+    public long tileBytes;
+}
@@ -0,0 +1,38 @@
+package com.gamemode.tkviewer.management;
+
+import jdk.jfr.*;
+
+/**
+ * MapRenderer.renderMap/renderCropped, the time not covered by nested Tile/Static Object Render events is Java2D
+ * compositing.
+ */
+@Name("com.gamemode.tkviewer.MapRender")
+@Label("Map Render")
+@Category({"TKViewer", "Render"})
+@StackTrace(false)
+public class MapRenderEvent extends Event {
+
+    @Label("Map File")
+    public String file;
+
+    @Label("X")
+    public int x;
+
+    @Label("Y")
+    public int y;
+
+    @Label("Width")
+    @Description("Rendered width in tiles")
+    public int width;
+
+    @Label("Height")
+    @Description("Rendered height in tiles")
+    public int height;
+
+    @Label("Static Objects")
+    public int sObjCount;
+
+    @Label("Image Bytes")
+    @DataAmount
+    public long imageBytes;
+}
@@ -0,0 +1,54 @@
+package com.gamemode.tkviewer.management;
+
+import java.util.List;
+
+/**
+ * Cache, timing and decoded EPF frame statistics of one renderer, registered as
+ * com.gamemode.tkviewer:type=Renderer,name=...
+ */
+public interface RendererMXBean {
+
+    String getRendererClass();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    double getCacheHitRatio();
+
+    int getCacheSize();
+
+    /**
+     * Pixel bytes of the cached images, counted against the CacheBudget.
+     */
+    long getCacheBytes();
+
+    long getRenders();
+
+    long getDecodeNanos();
+
+    long getRenderNanos();
+
+    long getDecodedFrames();
+
+    long getDecodedBytes();
+
+    /**
+     * Direct bytes reserved for decoded frame data with -Dtkviewer.offheap=true, the rest of getDecodedBytes() is heap.
+     */
+    long getOffHeapBytes();
+
+    List<EpfStats> getEpfs();
+
+    /**
+     * Drops every rendered image, they are rendered again on next use.
+     */
+    void flushCache();
+
+    /**
+     * Drops every decoded EPF frame, they are decoded again on next use.
+     */
+    void flushDecodedFrames();
+
+    void resetStatistics();
+}
@@ -0,0 +1,141 @@
+package com.gamemode.tkviewer.management;
+
+import com.gamemode.tkviewer.file_handlers.EpfFileHandler;
+import com.gamemode.tkviewer.render.FrameCache;
+import com.gamemode.tkviewer.render.RenderStats;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * RendererMXBean over one renderer's cache, stats and EPFs.
+ *
+ * Attributes are read without locking (renderers aren't thread-safe, the counters may lag), operations lock the
+ * renderer the way its other callers do (e.g. SpriteServer) before touching the caches.
+ */
+public class RendererMonitor implements RendererMXBean {
+
+    Object lock;
+    FrameCache cache;
+    RenderStats stats;
+    List<EpfFileHandler> epfs;
+
+    public RendererMonitor(Object lock, FrameCache cache, RenderStats stats, List<EpfFileHandler> epfs) {
+        this.lock = lock;
+        this.cache = cache;
+        this.stats = stats;
+        this.epfs = epfs;
+    }
+
+    @Override
+    public String getRendererClass() {
+        return this.lock.getClass().getSimpleName();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return this.cache.getHits();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return this.cache.getMisses();
+    }
+
+    @Override
+    public double getCacheHitRatio() {
+        long lookups = this.cache.getHits() + this.cache.getMisses();
+
+        return lookups == 0 ? 0 : (double) this.cache.getHits() / lookups;
+    }
+
+    @Override
+    public int getCacheSize() {
+        return this.cache.size();
+    }
+
+    @Override
+    public long getCacheBytes() {
+        return this.cache.getImageBytes();
+    }
+
+    @Override
+    public long getRenders() {
+        return this.stats.getRenders();
+    }
+
+    @Override
+    public long getDecodeNanos() {
+        return this.stats.getDecodeNanos();
+    }
+
+    @Override
+    public long getRenderNanos() {
+        return this.stats.getRenderNanos();
+    }
+
+    @Override
+    public long getDecodedFrames() {
+        long decodedFrames = 0;
+        for (EpfFileHandler epf : this.epfs) {
+            decodedFrames += epf.getDecodedFrameCount();
+        }
+
+        return decodedFrames;
+    }
+
+    @Override
+    public long getDecodedBytes() {
+        long decodedBytes = 0;
+        for (EpfFileHandler epf : this.epfs) {
+            decodedBytes += epf.decodedBytes;
+        }
+
+        return decodedBytes;
+    }
+
+    @Override
+    public long getOffHeapBytes() {
+        long offHeapBytes = 0;
+        for (EpfFileHandler epf : this.epfs) {
+            offHeapBytes += epf.getOffHeapBytes();
+        }
+
+        return offHeapBytes;
+    }
+
+    @Override
+    public List<EpfStats> getEpfs() {
+        List<EpfStats> epfStats = new ArrayList<EpfStats>();
+        for (EpfFileHandler epf : this.epfs) {
+            epfStats.add(new EpfStats(epf.filePath, epf.frameCount, epf.getDecodedFrameCount(), epf.decodedBytes,
+                    epf.getOffHeapBytes()));
+        }
+
+        return epfStats;
+    }
+
+    @Override
+    public void flushCache() {
+        synchronized (this.lock) {
+            this.cache.clear();
+        }
+    }
+
+    @Override
+    public void flushDecodedFrames() {
+        synchronized (this.lock) {
+            for (EpfFileHandler epf : this.epfs) {
+                epf.clearFrames();
+            }
+        }
+    }
+
+    @Override
+    public void resetStatistics() {
+        synchronized (this.lock) {
+            this.cache.resetStatistics();
+            this.stats.reset();
+        }
+    }
+}
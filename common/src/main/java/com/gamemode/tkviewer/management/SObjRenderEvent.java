@@ -0,0 +1,24 @@
+package com.gamemode.tkviewer.management;
+
+import jdk.jfr.*;
+
+/**
+ * SObjRenderer.renderSObject cache miss (its tiles' TileRender events are nested inside).
+ */
+@Name("com.gamemode.tkviewer.SObjRender")
+@Label("Static Object Render")
+@Category({"TKViewer", "Render"})
+@StackTrace(false)
+public class SObjRenderEvent extends Event {
+
+    @Label("Static Object Index")
+    public int sObjIndex;
+
+    @Label("Height")
+    @Description("Stacked tiles")
+    public int height;
+
+    @Label("Image Bytes")
+    @DataAmount
+    public long imageBytes;
+}
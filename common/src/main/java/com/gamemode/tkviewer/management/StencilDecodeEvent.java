@@ -0,0 +1,29 @@
+package com.gamemode.tkviewer.management;
+
+import jdk.jfr.*;
+
+/**
+ * Stencil construction (run-length rows to per-pixel masks).
+ */
+@Name("com.gamemode.tkviewer.StencilDecode")
+@Label("Stencil Decode")
+@Category({"TKViewer", "Parse"})
+@StackTrace(false)
+public class StencilDecodeEvent extends Event {
+
+    @Label("EPF")
+    public String epf;
+
+    @Label("Stencil Offset")
+    public long stencilOffset;
+
+    @Label("Width")
+    public int width;
+
+    @Label("Height")
+    public int height;
+
+    @Label("Stencil Bytes")
+    @DataAmount
+    public int stencilBytes;
+}
@@ -0,0 +1,112 @@
+package com.gamemode.tkviewer.management;
+
+import com.gamemode.tkviewer.file_handlers.EpfFileHandler;
+import com.gamemode.tkviewer.render.*;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Registers the archive and renderer MXBeans with the platform MBean server (disable with -Dtkviewer.jmx=false).
+ *
+ * Composite renderers get one bean per cache: MAPS.tiles, MAPS.sobjs and MAPS.sobjs.tiles for a MapRenderer. The
+ * CacheBudget bean lists the usage of every cache under the same names.
+ */
+public class TKViewerMBeans {
+
+    public static final String DOMAIN = "com.gamemode.tkviewer";
+    public static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("tkviewer.jmx", "true"));
+
+    /**
+     * Private constructor to prevent instantiation of static utility class
+     */
+    private TKViewerMBeans() {}
+
+    public static void registerArchives(RendererRegistry registry) {
+        register(DOMAIN + ":type=Archives", new ArchiveMonitor(registry));
+    }
+
+    public static void registerCacheBudget(CacheBudget budget) {
+        register(DOMAIN + ":type=CacheBudget", new CacheBudgetMonitor(budget));
+    }
+
+    /**
+     * Registers renderer (a PartRenderer, MobRenderer, TileRenderer, SObjRenderer, MapRenderer or a List of them)
+     * under name, operations lock renderer.
+     */
+    public static void registerRenderer(String name, Object renderer) {
+        registerRenderer(name, renderer, renderer);
+    }
+
+    static void registerRenderer(String name, Object renderer, Object lock) {
+        if (renderer instanceof MapRenderer) {
+            MapRenderer mapRenderer = (MapRenderer) renderer;
+            registerRenderer(name + ".tiles", mapRenderer.tileRenderer, lock);
+            registerRenderer(name + ".sobjs", mapRenderer.sObjRenderer, lock);
+        } else if (renderer instanceof SObjRenderer) {
+            SObjRenderer sObjRenderer = (SObjRenderer) renderer;
+            registerRenderer(name, lock, sObjRenderer.getFrameCache(), sObjRenderer.getRenderStats(),
+                    Collections.<EpfFileHandler>emptyList());
+            registerRenderer(name + ".tiles", sObjRenderer.getTileRenderer(), lock);
+        } else if (renderer instanceof TileRenderer) {
+            TileRenderer tileRenderer = (TileRenderer) renderer;
+            registerRenderer(name, lock, tileRenderer.getFrameCache(), tileRenderer.getRenderStats(), tileRenderer.tileEpfs);
+        } else if (renderer instanceof PartRenderer) {
+            PartRenderer partRenderer = (PartRenderer) renderer;
+            registerRenderer(name, lock, partRenderer.getFrameCache(), partRenderer.getRenderStats(), partRenderer.partEpfs);
+        } else if (renderer instanceof MobRenderer) {
+            MobRenderer mobRenderer = (MobRenderer) renderer;
+            registerRenderer(name, lock, mobRenderer.getFrameCache(), mobRenderer.getRenderStats(), mobRenderer.mobEpfs);
+        } else if (renderer instanceof List) {
+            List<?> renderers = (List<?>) renderer;
+            for (int i = 0; i < renderers.size(); i++) {
+                registerRenderer(name + "." + i, renderers.get(i), renderers.get(i));
+            }
+        }
+    }
+
+    static void registerRenderer(String name, Object lock, FrameCache cache, RenderStats stats, List<EpfFileHandler> epfs) {
+        // Names the cache in CacheBudget usage too
+        cache.name = name;
+        register(DOMAIN + ":type=Renderer,name=" + name, new RendererMonitor(lock, cache, stats, epfs));
+    }
+
+    /**
+     * Unregisters every renderer bean (the archive bean stays registered).
+     */
+    public static void unregisterRenderers() {
+        if (!ENABLED) {
+            return;
+        }
+
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (ObjectName objectName : mBeanServer.queryNames(new ObjectName(DOMAIN + ":type=Renderer,*"), null)) {
+                mBeanServer.unregisterMBean(objectName);
+            }
+        } catch (JMException jme) {
+            System.out.println("Unable to unregister renderer MBeans: " + jme);
+        }
+    }
+
+    static void register(String name, Object mBean) {
+        if (!ENABLED) {
+            return;
+        }
+
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName objectName = new ObjectName(name);
+            if (mBeanServer.isRegistered(objectName)) {
+                mBeanServer.unregisterMBean(objectName);
+            }
+            mBeanServer.registerMBean(mBean, objectName);
+        } catch (JMException jme) {
+            System.out.println("Unable to register MBean " + name + ": " + jme);
+        }
+    }
+}
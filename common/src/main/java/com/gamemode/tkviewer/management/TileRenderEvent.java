@@ -0,0 +1,29 @@
+package com.gamemode.tkviewer.management;
+
+import jdk.jfr.*;
+
+/**
+ * TileRenderer.renderTile cache miss: frame lookup/decode, palette setup and stencil masking.
+ */
+@Name("com.gamemode.tkviewer.TileRender")
+@Label("Tile Render")
+@Category({"TKViewer", "Render"})
+@StackTrace(false)
+public class TileRenderEvent extends Event {
+
+    @Label("EPF")
+    public String epf;
+
+    @Label("Tile Index")
+    public int tileIndex;
+
+    @Label("Palette Index")
+    public int paletteIndex;
+
+    @Label("Animation Offset")
+    public int animationOffset;
+
+    @Label("Pixel Bytes")
+    @DataAmount
+    public int pixelBytes;
+}
@@ -0,0 +1,271 @@
+package com.gamemode.tkviewer.render;
+
+import com.gamemode.tkviewer.file_handlers.*;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Swaps the handlers a renderer read from entries that changed in an archive for handlers reopened from its new
+ * version, in place, and drops exactly the cached images derived from them: the frames of a replaced EPF, every image
+ * of a replaced palette, every static object when its tiles or SObj.tbl change. DSC, DNA, TBL and FRM replacements
+ * keep cached frames, they are keyed by frame and palette. Handlers whose entry didn't change are kept as they are.
+ *
+ * Handlers are matched either by the .dat their EPF was read from (tile3.dat, Body0.dat...) or, for shared archives
+ * (char.dat, tile.dat...), by content against the old archive's entries. Callers must synchronize on the renderer, and
+ * close() the reloader once every renderer has been reloaded.
+ */
+public class ArchiveReloader {
+
+    // Changed .dat of EPF archives, or old/new version of a shared archive
+    File changedFile;
+    DatFileHandler oldArchive;
+    DatFileHandler newArchive;
+
+    // Old -> new handler, so handlers shared by several renderers (an EffectRenderer and its TileRenderer) are reopened
+    // once; null for handlers not derived from the changed archive
+    Map<FileHandler, FileHandler> reopened = new IdentityHashMap<FileHandler, FileHandler>();
+    public int replacedCount = 0;
+
+    /**
+     * Reloads the EPFs read from changedFile (a tile3.dat, Body0.dat... archive).
+     */
+    public ArchiveReloader(File changedFile) {
+        this.changedFile = changedFile.getAbsoluteFile();
+    }
+
+    /**
+     * Reloads the handlers read from a shared archive, newArchive being its new version.
+     */
+    public ArchiveReloader(DatFileHandler oldArchive, DatFileHandler newArchive) {
+        this.changedFile = newArchive.file.getAbsoluteFile();
+        this.oldArchive = oldArchive;
+        this.newArchive = newArchive;
+    }
+
+    /**
+     * Reloads a PartRenderer, MobRenderer, TileRenderer, SObjRenderer, MapRenderer, EffectRenderer or a List of them,
+     * returns whether anything was replaced.
+     */
+    public boolean reload(Object renderer) {
+        int previousCount = this.replacedCount;
+        if (renderer instanceof MapRenderer) {
+            MapRenderer mapRenderer = (MapRenderer) renderer;
+            this.reload(mapRenderer.tileRenderer);
+            this.reload(mapRenderer.sObjRenderer);
+        } else if (renderer instanceof SObjRenderer) {
+            SObjRenderer sObjRenderer = (SObjRenderer) renderer;
+            boolean tilesChanged = this.reload(sObjRenderer.tileRenderer);
+            SObjTblFileHandler sObjTbl = this.reopen(sObjRenderer.tileSObjTbl);
+            if (sObjTbl != null) {
+                sObjRenderer.tileSObjTbl = sObjTbl;
+            }
+            if (tilesChanged || sObjTbl != null) {
+                sObjRenderer.sObjs.clear();
+                if (sObjRenderer.sObjAtlas != null) {
+                    sObjRenderer.sObjAtlas = null;
+                    sObjRenderer.prebake();
+                }
+            }
+        } else if (renderer instanceof TileRenderer) {
+            TileRenderer tileRenderer = (TileRenderer) renderer;
+            this.reloadEpfs(tileRenderer.tileEpfs, tileRenderer.tiles);
+            PalFileHandler tilePal = this.reopen(tileRenderer.tilePal);
+            if (tilePal != null) {
+                tileRenderer.tilePal = tilePal;
+                tileRenderer.tiles.clear();
+            }
+            TileTblFileHandler tileTbl = this.reopen(tileRenderer.tileTbl);
+            if (tileTbl != null) {
+                tileRenderer.tileTbl = tileTbl;
+            }
+            FrmFileHandler tileFrm = this.reopen(tileRenderer.tileFrm);
+            if (tileFrm != null) {
+                tileRenderer.tileFrm = tileFrm;
+            }
+        } else if (renderer instanceof PartRenderer) {
+            PartRenderer partRenderer = (PartRenderer) renderer;
+            this.reloadEpfs(partRenderer.partEpfs, partRenderer.parts);
+            PalFileHandler partPal = this.reopen(partRenderer.partPal);
+            if (partPal != null) {
+                partRenderer.partPal = partPal;
+                partRenderer.parts.clear();
+            }
+            DscFileHandler partDsc = this.reopen(partRenderer.partDsc);
+            if (partDsc != null) {
+                partRenderer.partDsc = partDsc;
+            }
+        } else if (renderer instanceof MobRenderer) {
+            MobRenderer mobRenderer = (MobRenderer) renderer;
+            this.reloadEpfs(mobRenderer.mobEpfs, mobRenderer.mobs);
+            PalFileHandler mobPal = this.reopen(mobRenderer.mobPal);
+            if (mobPal != null) {
+                mobRenderer.mobPal = mobPal;
+                mobRenderer.mobs.clear();
+            }
+            DnaFileHandler mobDna = this.reopen(mobRenderer.mobDna);
+            if (mobDna != null) {
+                mobRenderer.mobDna = mobDna;
+            }
+        } else if (renderer instanceof EffectRenderer) {
+            EffectRenderer effectRenderer = (EffectRenderer) renderer;
+            // Its TileRenderer shares the EPF list and handlers, so they are reopened (and its cache invalidated) first
+            if (effectRenderer.tileRenderer != null) {
+                this.reload(effectRenderer.tileRenderer);
+            }
+            this.reloadEpfs(effectRenderer.effectEpfs, null);
+            PalFileHandler effectPal = this.reopen(effectRenderer.effectPal);
+            if (effectPal != null) {
+                effectRenderer.effectPal = effectPal;
+            }
+            EfxTblFileHandler effectEfxTbl = this.reopen(effectRenderer.effectEfxTbl);
+            if (effectEfxTbl != null) {
+                effectRenderer.effectEfxTbl = effectEfxTbl;
+            }
+            FrmFileHandler effectFrm = this.reopen(effectRenderer.effectFrm);
+            if (effectFrm != null) {
+                effectRenderer.effectFrm = effectFrm;
+            }
+        } else if (renderer instanceof List) {
+            for (Object listedRenderer : (List<?>) renderer) {
+                this.reload(listedRenderer);
+            }
+        }
+
+        return this.replacedCount > previousCount;
+    }
+
+    /**
+     * Closes every handler replaced by reload() (an EPF's decoded frames and arena with it) and the old version of a
+     * shared archive. Call it once every renderer sharing those handlers has been reloaded.
+     */
+    public void close() {
+        for (Map.Entry<FileHandler, FileHandler> entry : this.reopened.entrySet()) {
+            if (entry.getValue() == null) {
+                continue;
+            }
+
+            FileHandler replacedHandler = entry.getKey();
+            if (replacedHandler instanceof EpfFileHandler) {
+                ((EpfFileHandler) replacedHandler).releaseFrames();
+            }
+            replacedHandler.close();
+        }
+        if (this.oldArchive != null) {
+            this.oldArchive.close();
+        }
+    }
+
+    /**
+     * Replaces the changed EPFs of a list and drops their frames from cache (and every frame after them when their
+     * frame count changed, as later frame indices shift).
+     */
+    void reloadEpfs(List<EpfFileHandler> epfs, FrameCache cache) {
+        int firstFrame = 0;
+        for (int i = 0; i < epfs.size(); i++) {
+            EpfFileHandler epf = epfs.get(i);
+            EpfFileHandler reopenedEpf = this.reopen(epf);
+            if (reopenedEpf != null) {
+                epfs.set(i, reopenedEpf);
+                if (cache != null) {
+                    boolean framesShifted = reopenedEpf.frameCount != epf.frameCount;
+                    cache.removeFrames(firstFrame, framesShifted ? Integer.MAX_VALUE : firstFrame + epf.frameCount - 1);
+                }
+            }
+            firstFrame += epfs.get(i).frameCount;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    <T extends FileHandler> T reopen(T handler) {
+        if (handler == null) {
+            return null;
+        }
+        if (this.reopened.containsKey(handler)) {
+            return (T) this.reopened.get(handler);
+        }
+
+        FileHandler reopenedHandler = this.oldArchive == null ? this.reopenEpf(handler) : this.reopenEntry(handler);
+        this.reopened.put(handler, reopenedHandler);
+        if (reopenedHandler != null) {
+            this.reopened.put(reopenedHandler, null);
+            this.replacedCount++;
+        }
+
+        return (T) reopenedHandler;
+    }
+
+    FileHandler reopenEpf(FileHandler handler) {
+        if (!(handler instanceof EpfFileHandler)) {
+            return null;
+        }
+
+        EpfFileHandler epf = (EpfFileHandler) handler;
+        if (epf.archive == null || epf.archive.file == null || !epf.archive.file.getAbsoluteFile().equals(this.changedFile)) {
+            return null;
+        }
+        if (this.newArchive == null) {
+            this.newArchive = new DatFileHandler(this.changedFile, epf.archive.isBaram());
+        }
+
+        ByteBuffer epfBytes = this.newArchive.getFile(epf.filePath);
+        if (epfBytes == null) {
+            System.out.println("Unable to reload " + epf.filePath + ": no longer in " + this.changedFile);
+            return null;
+        }
+        if (epf.bytes != null && epfBytes.duplicate().clear().equals(epf.bytes.duplicate().clear())) {
+            // Untouched by the patch, keeps its decoded frames
+            return null;
+        }
+        EpfFileHandler reopenedEpf = new EpfFileHandler(epfBytes, epf.filePath);
+        reopenedEpf.archive = this.newArchive;
+
+        return reopenedEpf;
+    }
+
+    FileHandler reopenEntry(FileHandler handler) {
+        if (handler.bytes == null) {
+            return null;
+        }
+
+        // The handler holds a view of the entry it was read from
+        ByteBuffer handlerBytes = (ByteBuffer) handler.bytes.duplicate().clear();
+        for (Map.Entry<String, ByteBuffer> entry : this.oldArchive.files.entrySet()) {
+            if (!handlerBytes.equals(entry.getValue().duplicate().clear())) {
+                continue;
+            }
+
+            ByteBuffer entryBytes = this.newArchive.getFile(entry.getKey());
+            if (entryBytes == null) {
+                System.out.println("Unable to reload " + entry.getKey() + ": no longer in " + this.changedFile);
+                return null;
+            }
+            if (entryBytes.duplicate().clear().equals(handlerBytes)) {
+                return null;
+            }
+            if (handler instanceof EpfFileHandler) {
+                return new EpfFileHandler(entryBytes, ((EpfFileHandler) handler).filePath);
+            } else if (handler instanceof PalFileHandler) {
+                return new PalFileHandler(entryBytes);
+            } else if (handler instanceof DscFileHandler) {
+                return new DscFileHandler(entryBytes, this.newArchive.isBaram());
+            } else if (handler instanceof DnaFileHandler) {
+                return new DnaFileHandler(entryBytes);
+            } else if (handler instanceof EfxTblFileHandler) {
+                return new EfxTblFileHandler(entryBytes);
+            } else if (handler instanceof FrmFileHandler) {
+                return new FrmFileHandler(entryBytes);
+            } else if (handler instanceof SObjTblFileHandler) {
+                return new SObjTblFileHandler(entryBytes);
+            } else if (handler instanceof TileTblFileHandler) {
+                return new TileTblFileHandler(entryBytes);
+            }
+            return null;
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,136 @@
+package com.gamemode.tkviewer.render;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Watches the data and maps directories on a daemon thread. Once a changed file has been quiet for a moment (patchers
+ * write archives in several passes), a .dat of the data directory is reloaded into the registry's renderers and every
+ * listener is notified of the file, so servers can drop what they built from a changed map.
+ */
+public class ArchiveWatcher {
+
+    public static final long DEFAULT_QUIET_MILLIS = 500;
+
+    RendererRegistry registry;
+    Path dataDirectory;
+    Path mapDirectory;
+    WatchService watchService;
+    Thread thread;
+    long quietMillis = Long.getLong("tkviewer.watch.quiet", DEFAULT_QUIET_MILLIS);
+
+    List<Consumer<File>> listeners = new CopyOnWriteArrayList<Consumer<File>>();
+    // Changed file -> time of its last event, until it has been quiet for quietMillis
+    Map<Path, Long> pending = new LinkedHashMap<Path, Long>();
+
+    public ArchiveWatcher(RendererRegistry registry, String dataDirectory, String mapDirectory) throws IOException {
+        this.registry = registry;
+        this.dataDirectory = Paths.get(dataDirectory).toAbsolutePath();
+        this.mapDirectory = mapDirectory == null ? null : Paths.get(mapDirectory).toAbsolutePath();
+        this.watchService = FileSystems.getDefault().newWatchService();
+
+        this.dataDirectory.register(this.watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        if (this.mapDirectory != null && Files.isDirectory(this.mapDirectory) && !this.mapDirectory.equals(this.dataDirectory)) {
+            this.mapDirectory.register(this.watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        }
+    }
+
+    public void addListener(Consumer<File> listener) {
+        this.listeners.add(listener);
+    }
+
+    public void removeListener(Consumer<File> listener) {
+        this.listeners.remove(listener);
+    }
+
+    public synchronized void start() {
+        if (this.thread != null) {
+            return;
+        }
+
+        this.thread = new Thread(this::watch, "ArchiveWatcher");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    public synchronized void stop() {
+        if (this.thread != null) {
+            this.thread.interrupt();
+            this.thread = null;
+        }
+        try {
+            this.watchService.close();
+        } catch (IOException ioe) {
+            System.out.println("Unable to close watch service: " + ioe);
+        }
+    }
+
+    void watch() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = this.pending.isEmpty() ? this.watchService.take()
+                        : this.watchService.poll(this.quietMillis, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    Path directory = (Path) key.watchable();
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() != StandardWatchEventKinds.OVERFLOW) {
+                            this.pending.put(directory.resolve((Path) event.context()), System.currentTimeMillis());
+                        }
+                    }
+                    key.reset();
+                }
+
+                this.fireQuietChanges();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Stopped
+        }
+    }
+
+    void fireQuietChanges() {
+        long now = System.currentTimeMillis();
+        List<Path> quietPaths = new ArrayList<Path>();
+        for (Map.Entry<Path, Long> entry : this.pending.entrySet()) {
+            if (now - entry.getValue() >= this.quietMillis) {
+                quietPaths.add(entry.getKey());
+            }
+        }
+
+        for (Path path : quietPaths) {
+            this.pending.remove(path);
+            File file = path.toFile();
+            if (!file.isFile()) {
+                continue;
+            }
+
+            if (path.getParent().equals(this.dataDirectory) && file.getName().toLowerCase().endsWith(".dat")) {
+                try {
+                    long startTime = System.nanoTime();
+                    int replacedCount = this.registry.reloadArchive(file);
+                    if (replacedCount > 0) {
+                        System.out.println(String.format("Reloaded %d handlers from %s in %.1fms", replacedCount, file,
+                                (System.nanoTime() - startTime) / 1_000_000.0));
+                    }
+                } catch (RuntimeException re) {
+                    System.out.println("Unable to reload " + file + ": " + re);
+                }
+            }
+
+            for (Consumer<File> listener : this.listeners) {
+                try {
+                    listener.accept(file);
+                } catch (RuntimeException re) {
+                    System.out.println("Unable to notify listener of " + file + ": " + re);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package com.gamemode.tkviewer.render;
+
+import com.gamemode.tkviewer.management.TKViewerMBeans;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One byte budget for every FrameCache of the process (they register themselves when created).
+ *
+ * Caches account the pixel bytes of their images here. Once the total goes over the budget
+ * (-Dtkviewer.cache.budget, in megabytes, a quarter of the max heap by default, 0 for no limit), the least recently
+ * used images of all caches are evicted until it is back under LOW_WATERMARK of the budget. An image's age is divided
+ * by its cache's weight, so images that are expensive to render again (static objects, composited from tiles) stay
+ * longer than plain frames used as long ago.
+ *
+ * When a heap pool is still over -Dtkviewer.cache.pressure of its max after a collection, half of the cached bytes
+ * are evicted. With -Dtkviewer.cache.soft=true evicted images are demoted to soft references rather than dropped:
+ * they are no longer counted and the GC may reclaim them, but a cache gets them back if asked first.
+ */
+public class CacheBudget {
+
+    public static final double LOW_WATERMARK = 0.9;
+    public static final double DEFAULT_PRESSURE_RATIO = 0.85;
+    // Images evicted per pass of shrink()
+    public static final int EVICTION_BATCH = 512;
+
+    private static CacheBudget instance;
+
+    public volatile long budgetBytes;
+    public volatile boolean softEviction;
+
+    final AtomicLong usedBytes = new AtomicLong();
+    final AtomicLong clock = new AtomicLong();
+    final AtomicLong evictions = new AtomicLong();
+    final AtomicLong demotions = new AtomicLong();
+    final AtomicLong pressureEvictions = new AtomicLong();
+
+    // Registrations outlive their cache: the bytes of a collected cache are given back when it is polled from the queue
+    final Set<Registration> registrations = new LinkedHashSet<Registration>();
+    final ReferenceQueue<FrameCache> collectedCaches = new ReferenceQueue<FrameCache>();
+
+    public CacheBudget(long budgetBytes, boolean softEviction) {
+        this.budgetBytes = budgetBytes;
+        this.softEviction = softEviction;
+    }
+
+    public static synchronized CacheBudget getInstance() {
+        if (instance == null) {
+            long budgetMegabytes = Long.getLong("tkviewer.cache.budget", Runtime.getRuntime().maxMemory() / 4 / (1024 * 1024));
+            instance = new CacheBudget(budgetMegabytes * 1024 * 1024, Boolean.getBoolean("tkviewer.cache.soft"));
+            instance.watchMemoryPressure(Double.parseDouble(System.getProperty("tkviewer.cache.pressure",
+                    String.valueOf(DEFAULT_PRESSURE_RATIO))));
+            TKViewerMBeans.registerCacheBudget(instance);
+        }
+
+        return instance;
+    }
+
+    /**
+     * Cache accounted in a budget, tracks its bytes so they can be given back once the cache is collected.
+     */
+    static class Registration extends WeakReference<FrameCache> {
+
+        long bytes = 0;
+
+        Registration(FrameCache cache, ReferenceQueue<FrameCache> queue) {
+            super(cache, queue);
+        }
+    }
+
+    synchronized Registration register(FrameCache cache) {
+        this.expungeCollectedCaches();
+        Registration registration = new Registration(cache, this.collectedCaches);
+        this.registrations.add(registration);
+
+        return registration;
+    }
+
+    /**
+     * Adds (or removes, when negative) bytes of a cache.
+     */
+    void account(Registration registration, long bytes) {
+        synchronized (registration) {
+            registration.bytes += bytes;
+        }
+        this.usedBytes.addAndGet(bytes);
+    }
+
+    long tick() {
+        return this.clock.incrementAndGet();
+    }
+
+    long now() {
+        return this.clock.get();
+    }
+
+    /**
+     * Evicts down to the low watermark when over budget. Callers must not hold a cache's lock.
+     */
+    public void enforce() {
+        long budget = this.budgetBytes;
+        if (budget > 0 && this.usedBytes.get() > budget) {
+            this.shrink((long) (budget * LOW_WATERMARK));
+        }
+    }
+
+    /**
+     * Evicts the images with the greatest weighted age until at most targetBytes are cached, returns the bytes freed.
+     *
+     * Each pass snapshots every cache's stamps and keeps only the EVICTION_BATCH oldest images in a bounded heap, so
+     * evicting a few images doesn't sort every cached one. Passes repeat until under target or nothing is left to evict.
+     */
+    public synchronized long shrink(long targetBytes) {
+        this.expungeCollectedCaches();
+        long startBytes = this.usedBytes.get();
+        if (startBytes <= targetBytes) {
+            return 0;
+        }
+
+        boolean soft = this.softEviction;
+        OldestEntries oldest = new OldestEntries(EVICTION_BATCH);
+        while (this.usedBytes.get() > targetBytes) {
+            List<FrameCache> caches = this.getCaches();
+            long[][] keys = new long[caches.size()][];
+            long[][] stamps = new long[caches.size()][];
+            long now = this.now();
+            oldest.clear();
+            for (int i = 0; i < caches.size(); i++) {
+                long[][] entries = caches.get(i).getEntries();
+                keys[i] = entries[0];
+                stamps[i] = entries[1];
+                double weight = Math.max(caches.get(i).weight, Double.MIN_VALUE);
+                for (int j = 0; j < stamps[i].length; j++) {
+                    oldest.offer((now - stamps[i][j]) / weight, i, j);
+                }
+            }
+            if (oldest.size == 0) {
+                break;
+            }
+
+            int evictedCount = 0;
+            oldest.sortOldestFirst();
+            for (int i = 0; i < oldest.size && this.usedBytes.get() > targetBytes; i++) {
+                int cacheIndex = oldest.cacheIndices[i];
+                int entryIndex = oldest.entryIndices[i];
+                // Images used again since the snapshot are kept
+                if (caches.get(cacheIndex).evict(keys[cacheIndex][entryIndex], stamps[cacheIndex][entryIndex], soft)) {
+                    evictedCount++;
+                    this.evictions.incrementAndGet();
+                    if (soft) {
+                        this.demotions.incrementAndGet();
+                    }
+                }
+            }
+            if (evictedCount == 0) {
+                break;
+            }
+        }
+
+        return startBytes - this.usedBytes.get();
+    }
+
+    /**
+     * The capacity entries with the greatest age offered, in a min-heap on age (its root is the youngest kept).
+     */
+    static class OldestEntries {
+
+        double[] ages;
+        int[] cacheIndices;
+        int[] entryIndices;
+        int size = 0;
+
+        OldestEntries(int capacity) {
+            this.ages = new double[capacity];
+            this.cacheIndices = new int[capacity];
+            this.entryIndices = new int[capacity];
+        }
+
+        void clear() {
+            this.size = 0;
+        }
+
+        void offer(double age, int cacheIndex, int entryIndex) {
+            if (this.size < this.ages.length) {
+                this.set(this.size, age, cacheIndex, entryIndex);
+                this.size++;
+                for (int i = this.size - 1; i > 0 && this.ages[(i - 1) / 2] > this.ages[i]; i = (i - 1) / 2) {
+                    this.swap(i, (i - 1) / 2);
+                }
+            } else if (age > this.ages[0]) {
+                this.set(0, age, cacheIndex, entryIndex);
+                this.siftDown(0, this.size);
+            }
+        }
+
+        /**
+         * Orders the kept entries oldest first (heap sort, the heap is no longer valid afterwards).
+         */
+        void sortOldestFirst() {
+            for (int end = this.size - 1; end > 0; end--) {
+                this.swap(0, end);
+                this.siftDown(0, end);
+            }
+        }
+
+        void siftDown(int i, int end) {
+            while (true) {
+                int youngest = i;
+                int left = (2 * i) + 1;
+                int right = left + 1;
+                if (left < end && this.ages[left] < this.ages[youngest]) {
+                    youngest = left;
+                }
+                if (right < end && this.ages[right] < this.ages[youngest]) {
+                    youngest = right;
+                }
+                if (youngest == i) {
+                    return;
+                }
+                this.swap(i, youngest);
+                i = youngest;
+            }
+        }
+
+        void set(int i, double age, int cacheIndex, int entryIndex) {
+            this.ages[i] = age;
+            this.cacheIndices[i] = cacheIndex;
+            this.entryIndices[i] = entryIndex;
+        }
+
+        void swap(int i, int j) {
+            double age = this.ages[i];
+            int cacheIndex = this.cacheIndices[i];
+            int entryIndex = this.entryIndices[i];
+            this.set(i, this.ages[j], this.cacheIndices[j], this.entryIndices[j]);
+            this.set(j, age, cacheIndex, entryIndex);
+        }
+    }
+
+    /**
+     * Every live cache, in registration order.
+     */
+    public synchronized List<FrameCache> getCaches() {
+        this.expungeCollectedCaches();
+        List<FrameCache> caches = new ArrayList<FrameCache>();
+        for (Registration registration : this.registrations) {
+            FrameCache cache = registration.get();
+            if (cache != null) {
+                caches.add(cache);
+            }
+        }
+
+        return caches;
+    }
+
+    public long getUsedBytes() {
+        return this.usedBytes.get();
+    }
+
+    public long getEvictions() {
+        return this.evictions.get();
+    }
+
+    public long getDemotions() {
+        return this.demotions.get();
+    }
+
+    public long getPressureEvictions() {
+        return this.pressureEvictions.get();
+    }
+
+    void expungeCollectedCaches() {
+        Registration registration;
+        while ((registration = (Registration) this.collectedCaches.poll()) != null) {
+            this.registrations.remove(registration);
+            this.account(registration, -registration.bytes);
+        }
+    }
+
+    /**
+     * Sets a collection usage threshold of ratio (of their max) on the heap pools that support one, unless one is
+     * already set, and halves the cached bytes whenever a pool is still over it after a collection.
+     */
+    void watchMemoryPressure(double ratio) {
+        if (ratio <= 0) {
+            return;
+        }
+
+        boolean watching = false;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP || !pool.isCollectionUsageThresholdSupported()) {
+                continue;
+            }
+            long max = pool.getUsage().getMax();
+            if (max > 0 && pool.getCollectionUsageThreshold() == 0) {
+                pool.setCollectionUsageThreshold((long) (max * ratio));
+                watching = true;
+            }
+        }
+
+        if (watching) {
+            ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).addNotificationListener(
+                    (Notification notification, Object handback) -> {
+                        if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType())) {
+                            this.pressureEvictions.incrementAndGet();
+                            this.shrink(this.usedBytes.get() / 2);
+                        }
+                    }, null, null);
+        }
+    }
+}
@@ -1,17 +1,15 @@
 package com.gamemode.tkviewer.render;
 
-import com.gamemode.tkviewer.EffectFrame;
 import com.gamemode.tkviewer.EffectImage;
 import com.gamemode.tkviewer.Frame;
-import com.gamemode.tkviewer.Palette;
 import com.gamemode.tkviewer.resources.Resources;
 import com.gamemode.tkviewer.utilities.FileUtils;
 import com.gamemode.tkviewer.file_handlers.*;
 
 import java.awt.*;
 import java.awt.image.*;
-import java.io.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
@@ -28,7 +26,7 @@ public class EffectRenderer implements Renderer {
     FrmFileHandler effectFrm;
 
     public EffectRenderer() {
-        DatFileHandler efxDat = new DatFileHandler(Resources.getNtkDataDirectory() + File.separator + "efx.dat");
+        DatFileHandler efxDat = RendererRegistry.getInstance().getArchive("efx.dat");
 
         this.effectEpfs = FileUtils.createEpfsFromDats("EFFECT", "efx", false);
         this.effectPal = new PalFileHandler(efxDat.getFile("EFFECT.PAL"));
@@ -45,62 +43,41 @@ public class EffectRenderer implements Renderer {
         this.tileRenderer = new TileRenderer(effectEpfs, effectPal, effectFrm);
     }
 
-    public List<EffectImage> renderEffect(int effectIndex) {
-        // Determine Frame Range for Effect
-        List<EffectFrame> effectFrames = this.effectEfxTbl.effects.get(effectIndex).getEffectFrames();
-        int effectFrameCount = effectFrames.size();
-
-        // Determine Canvas Size
-        int l, t, r, b;
-        l = t = r = b = 0;
-        for (int i = 0; i < effectFrameCount; i++) {
-            EffectFrame effectFrame = effectFrames.get(i);
-            Frame frame = FileUtils.getFrameFromEpfs(effectFrame.getFrameIndex(), this.effectEpfs);
-            if (frame == null) {
-                continue;
-            }
-//            if (frame)
-            if (frame.getLeft() < l) {
-                l = frame.getLeft();
-            }
-            if (frame.getTop() < t) {
-                t = frame.getTop();
-            }
-            if (frame.getRight() > r) {
-                r = frame.getRight();
-            }
-            if (frame.getBottom() > b) {
-                b = frame.getBottom();
+    /**
+     * Archives this renderer reads from (for cache keys).
+     */
+    public List<FileHandler> getSourceArchives() {
+        List<FileHandler> archives = new ArrayList<FileHandler>(this.effectEpfs);
+        for (FileHandler archive : Arrays.asList(this.effectPal, this.effectEfxTbl, this.effectFrm)) {
+            if (archive != null) {
+                archives.add(archive);
             }
         }
 
-        int effectWidth = r-l;
-        int effectHeight = b-t;
-
-        List<EffectImage> images = new ArrayList<EffectImage>();
-        for (int i = 0; i < effectFrameCount; i++) {
-            BufferedImage frameImage = new BufferedImage(effectWidth, effectHeight, BufferedImage.TYPE_INT_ARGB);
-            Graphics2D graphicsObject = frameImage.createGraphics();
-            EffectFrame effectFrame = effectFrames.get(i);
-
-            BufferedImage tile = this.renderEffectImage(effectFrame.getFrameIndex(), this.effectFrm.paletteIndices.get(effectFrame.getFrameIndex()));
-            Frame frame = FileUtils.getFrameFromEpfs(effectFrame.getFrameIndex(), effectEpfs);
-            if (frame == null) {
-                continue;
-            }
+        return archives;
+    }
 
-            graphicsObject.drawImage(
-                    tile,
-                    null,
-                    (frame.getLeft() - l),
-                    (frame.getTop() - t));
+    /**
+     * Every frame of an effect, each on its own canvas (see createTimeline to render them as they are shown).
+     */
+    public List<EffectImage> renderEffect(int effectIndex) {
+        EffectTimeline timeline = new EffectTimeline(this, effectIndex, Integer.MAX_VALUE);
 
-            images.add(new EffectImage(frameImage, effectFrame.getFrameDelay(), null, null));
+        List<EffectImage> images = new ArrayList<EffectImage>();
+        for (int i = 0; i < timeline.getFrameCount(); i++) {
+            images.add(new EffectImage(timeline.renderFrame(i), timeline.getDelay(i), null, null));
         }
 
         return images;
     }
 
+    /**
+     * Timeline of an effect: bounds and delays only, frames are rendered into a few reused canvases when asked for.
+     */
+    public EffectTimeline createTimeline(int effectIndex) {
+        return new EffectTimeline(this, effectIndex);
+    }
+
     public BufferedImage renderEffectImage(int tileIndex, int paletteIndex) {
         int epfIndex = 0;
 
@@ -134,26 +111,9 @@ public class EffectRenderer implements Renderer {
         if (paletteIndex < 0 || paletteIndex > (this.effectPal.paletteCount - 1)) {
                 paletteIndex = 0;
         }
-        Palette palette = this.effectPal.palettes.get(paletteIndex);
-        IndexColorModel icm = new IndexColorModel(
-                8,
-                256,
-                palette.getRedBytes(),
-                palette.getGreenBytes(),
-                palette.getBlueBytes(),
-                Transparency.TRANSLUCENT);
-
-        DataBufferByte buffer = new DataBufferByte(frame.getRawPixelData().array(), frame.getRawPixelData().capacity());
-        WritableRaster raster = Raster.createPackedRaster(buffer, width, height, 8, null);
-
-        image = new BufferedImage(icm, raster, icm.isAlphaPremultiplied(), null);
-        for (int y = 0; y < image.getHeight(); ++y) {
-            for (int x = 0; x < image.getWidth(); ++x) {
-                if (!frame.getStencil().rows.get(y)[x]) {
-                    image.setRGB(x, y, ALPHA);
-                }
-            }
-        }
+        IndexColorModel icm = IndexedImages.getColorModel(this.effectPal.palettes.get(paletteIndex));
+
+        image = IndexedImages.create(frame, icm, 0);
 
         return image;
     }
@@ -205,6 +165,7 @@ public class EffectRenderer implements Renderer {
     @Override
     public void dispose() {
         for (EpfFileHandler epf : effectEpfs) {
+            epf.releaseFrames();
             epf.close();
         }
         if (effectPal != null) {
@@ -0,0 +1,214 @@
+package com.gamemode.tkviewer.render;
+
+import com.gamemode.tkviewer.EffectFrame;
+import com.gamemode.tkviewer.utilities.FileUtils;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An effect's frames, rendered on demand as playback or export reaches them.
+ *
+ * Only the frame bounds (from the EPF frame tables, nothing is decoded) and delays are read up front. Frames are
+ * rendered into a ring of ringSize reusable canvases, each the size of the whole effect, so playing a long effect
+ * keeps a few canvases instead of one image per frame: an image returned by renderFrame is overwritten once ringSize
+ * other frames have been rendered, copy it to keep it. Effect frames missing from the EPFs are left out, as in
+ * EffectRenderer.renderEffect. Not thread-safe, but renderFrame holds the renderer's lock while reading its archives, so
+ * playback can't see them half swapped by a reload (see RendererRegistry.reloadArchive).
+ */
+public class EffectTimeline {
+
+    public static final int DEFAULT_RING_SIZE = 3;
+
+    EffectRenderer renderer;
+    int effectIndex;
+
+    // Per timeline frame: EPF frame, palette, delay and position on the canvas
+    int[] frameIndices;
+    int[] paletteIndices;
+    int[] delays;
+    Rectangle[] bounds;
+    int width;
+    int height;
+
+    BufferedImage[] canvases;
+    // Frame held by each canvas (-1 if none), canvases are reused round robin
+    int[] canvasFrames;
+    int nextCanvas = 0;
+
+    public EffectTimeline(EffectRenderer renderer, int effectIndex) {
+        this(renderer, effectIndex, DEFAULT_RING_SIZE);
+    }
+
+    public EffectTimeline(EffectRenderer renderer, int effectIndex, int ringSize) {
+        this.renderer = renderer;
+        this.effectIndex = effectIndex;
+
+        List<EffectFrame> effectFrames = renderer.effectEfxTbl.effects.get(effectIndex).getEffectFrames();
+        this.frameIndices = new int[effectFrames.size()];
+        this.paletteIndices = new int[effectFrames.size()];
+        this.delays = new int[effectFrames.size()];
+        this.bounds = new Rectangle[effectFrames.size()];
+
+        // Canvas spans every frame and the origin
+        int l, t, r, b;
+        l = t = r = b = 0;
+        int frameCount = 0;
+        for (EffectFrame effectFrame : effectFrames) {
+            Rectangle frameBounds = FileUtils.getFrameBoundsFromEpfs(effectFrame.getFrameIndex(), renderer.effectEpfs);
+            if (frameBounds == null) {
+                continue;
+            }
+            l = Math.min(l, frameBounds.x);
+            t = Math.min(t, frameBounds.y);
+            r = Math.max(r, frameBounds.x + frameBounds.width);
+            b = Math.max(b, frameBounds.y + frameBounds.height);
+
+            this.frameIndices[frameCount] = effectFrame.getFrameIndex();
+            this.paletteIndices[frameCount] = renderer.effectFrm.paletteIndices.get(effectFrame.getFrameIndex());
+            this.delays[frameCount] = effectFrame.getFrameDelay();
+            this.bounds[frameCount] = frameBounds;
+            frameCount++;
+        }
+        for (int i = 0; i < frameCount; i++) {
+            this.bounds[i].translate(-l, -t);
+        }
+
+        this.frameIndices = Arrays.copyOf(this.frameIndices, frameCount);
+        this.paletteIndices = Arrays.copyOf(this.paletteIndices, frameCount);
+        this.delays = Arrays.copyOf(this.delays, frameCount);
+        this.bounds = Arrays.copyOf(this.bounds, frameCount);
+        this.width = r - l;
+        this.height = b - t;
+
+        this.setRingSize(ringSize);
+    }
+
+    /**
+     * Same timeline with its own canvases (e.g. to export an effect while it plays).
+     */
+    public EffectTimeline copy(int ringSize) {
+        EffectTimeline timeline = new EffectTimeline(this);
+        timeline.setRingSize(ringSize);
+
+        return timeline;
+    }
+
+    EffectTimeline(EffectTimeline timeline) {
+        this.renderer = timeline.renderer;
+        this.effectIndex = timeline.effectIndex;
+        this.frameIndices = timeline.frameIndices;
+        this.paletteIndices = timeline.paletteIndices;
+        this.delays = timeline.delays;
+        this.bounds = timeline.bounds;
+        this.width = timeline.width;
+        this.height = timeline.height;
+    }
+
+    void setRingSize(int ringSize) {
+        // Canvases are allocated when first rendered into
+        int canvasCount = Math.max(1, Math.min(ringSize, this.frameIndices.length));
+        this.canvases = new BufferedImage[canvasCount];
+        this.canvasFrames = new int[canvasCount];
+        Arrays.fill(this.canvasFrames, -1);
+        this.nextCanvas = 0;
+    }
+
+    public int getEffectIndex() {
+        return this.effectIndex;
+    }
+
+    public int getFrameCount() {
+        return this.frameIndices.length;
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+
+    public int getHeight() {
+        return this.height;
+    }
+
+    public int getDelay(int frame) {
+        return this.delays[frame];
+    }
+
+    /**
+     * EPF frame index shown by a timeline frame.
+     */
+    public int getFrameIndex(int frame) {
+        return this.frameIndices[frame];
+    }
+
+    public long getDuration() {
+        long duration = 0;
+        for (int delay : this.delays) {
+            duration += delay;
+        }
+
+        return duration;
+    }
+
+    /**
+     * Frame shown elapsedMillis after playback started, looping.
+     */
+    public int getFrameAt(long elapsedMillis) {
+        long duration = this.getDuration();
+        if (duration <= 0) {
+            return 0;
+        }
+
+        long time = elapsedMillis % duration;
+        for (int i = 0; i < this.delays.length; i++) {
+            if (time < this.delays[i]) {
+                return i;
+            }
+            time -= this.delays[i];
+        }
+
+        return this.delays.length - 1;
+    }
+
+    /**
+     * Renders a frame into the next canvas of the ring (or returns the canvas still holding it).
+     */
+    public BufferedImage renderFrame(int frame) {
+        for (int i = 0; i < this.canvases.length; i++) {
+            if (this.canvasFrames[i] == frame) {
+                return this.canvases[i];
+            }
+        }
+
+        int canvasIndex = this.nextCanvas;
+        this.nextCanvas = (this.nextCanvas + 1) % this.canvases.length;
+
+        BufferedImage canvas = this.canvases[canvasIndex];
+        if (canvas == null) {
+            canvas = new BufferedImage(Math.max(1, this.width), Math.max(1, this.height), BufferedImage.TYPE_INT_ARGB);
+            this.canvases[canvasIndex] = canvas;
+        }
+        this.canvasFrames[canvasIndex] = -1;
+
+        Graphics2D graphicsObject = canvas.createGraphics();
+        graphicsObject.setComposite(AlphaComposite.Clear);
+        graphicsObject.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        graphicsObject.setComposite(AlphaComposite.SrcOver);
+
+        // Empty frames render as a transparent square, nothing to draw
+        Rectangle frameBounds = this.bounds[frame];
+        if (frameBounds.width != 0 && frameBounds.height != 0) {
+            BufferedImage image;
+            synchronized (this.renderer) {
+                image = this.renderer.renderEffectImage(this.frameIndices[frame], this.paletteIndices[frame]);
+            }
+            graphicsObject.drawImage(image, null, frameBounds.x, frameBounds.y);
+        }
+        graphicsObject.dispose();
+        this.canvasFrames[canvasIndex] = frame;
+
+        return canvas;
+    }
+}
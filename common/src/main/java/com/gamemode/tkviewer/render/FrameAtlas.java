@@ -0,0 +1,350 @@
+package com.gamemode.tkviewer.render;
+
+import com.gamemode.tkviewer.Frame;
+import com.gamemode.tkviewer.Mob;
+import com.gamemode.tkviewer.MobBlock;
+import com.gamemode.tkviewer.MobChunk;
+import com.gamemode.tkviewer.Part;
+import com.gamemode.tkviewer.file_handlers.EpfFileHandler;
+import com.gamemode.tkviewer.file_handlers.PalFileHandler;
+import com.gamemode.tkviewer.utilities.FileUtils;
+import com.gamemode.tkviewer.utilities.MaxRectsPacker;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Every frame of a Part (DSC), Mob (DNA) or raw EPF set trimmed to its stencil bounds and packed onto a few pages with
+ * MaxRects, plus a JSON index of each frame's page rectangle and original Frame pivot.
+ *
+ * A frame drawn at (x, y) by the renderers is drawn from the atlas at (x + left + trimX, y + top + trimY). Frames
+ * shared by several parts (same frame and palette) are packed once, and so are identical frames when the renderer's
+ * cache is keyed by canonical frame (see FrameDedupIndex).
+ */
+public class FrameAtlas {
+
+    public static final int DEFAULT_PAGE_SIZE = 2048;
+    // Transparent gap between packed frames so filtered sampling doesn't bleed into neighbours
+    public static final int PADDING = 1;
+
+    public static class AtlasFrame {
+        // Part/Mob index and frame offset within it, -1 and 0 for raw EPF frames
+        public int index;
+        public int offset;
+        public int frameIndex;
+        public int paletteIndex;
+
+        // Original Frame
+        public int left;
+        public int top;
+        public int width;
+        public int height;
+
+        // Page rectangle, page -1 and null bounds when the stencil is empty
+        public int page = -1;
+        public Rectangle bounds;
+        public int trimX;
+        public int trimY;
+
+        BufferedImage image;
+        AtlasFrame duplicateOf;
+    }
+
+    public String name;
+    public int pageSize;
+
+    public List<AtlasFrame> frames = new ArrayList<AtlasFrame>();
+    public List<BufferedImage> pages = new ArrayList<BufferedImage>();
+
+    // Frame index -> canonical frame ID, null to key frames by index
+    public int[] canonicalFrames;
+
+    Map<Long, AtlasFrame> uniqueFrames = new LinkedHashMap<Long, AtlasFrame>();
+    List<MaxRectsPacker> packers = new ArrayList<MaxRectsPacker>();
+
+    public FrameAtlas(String name, int pageSize) {
+        this.name = name;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Every frame of every Part in the renderer's DSC, with the Part's palette.
+     */
+    public static FrameAtlas fromParts(String name, PartRenderer partRenderer, int pageSize) {
+        FrameAtlas atlas = new FrameAtlas(name, pageSize);
+        atlas.canonicalFrames = partRenderer.getFrameCache().getCanonicalFrames();
+        for (int i = 0; i < partRenderer.partDsc.parts.size(); i++) {
+            Part part = partRenderer.partDsc.parts.get(i);
+            int frameIndex = (int) part.getFrameIndex();
+            int paletteIndex = (int) part.getPaletteId();
+            if (paletteIndex < 0 || paletteIndex > (partRenderer.partPal.paletteCount - 1)) {
+                paletteIndex = 0;
+            }
+
+            for (int j = 0; j < part.getFrameCount(); j++) {
+                Frame frame = FileUtils.getFrameFromEpfs(frameIndex + j, partRenderer.partEpfs);
+                if (frame != null) {
+                    atlas.add(i, j, frameIndex + j, paletteIndex, frame,
+                            partRenderer.renderPart(i, frameIndex, j, paletteIndex));
+                }
+            }
+        }
+        atlas.pack();
+
+        return atlas;
+    }
+
+    /**
+     * Every frame of every Mob in the renderer's DNA (frame offsets 0 to the highest one its chunks use).
+     */
+    public static FrameAtlas fromMobs(String name, MobRenderer mobRenderer, int pageSize) {
+        FrameAtlas atlas = new FrameAtlas(name, pageSize);
+        atlas.canonicalFrames = mobRenderer.getFrameCache().getCanonicalFrames();
+        for (int i = 0; i < mobRenderer.mobDna.mobs.size(); i++) {
+            Mob mob = mobRenderer.mobDna.mobs.get(i);
+            int frameIndex = (int) mob.getFrameIndex();
+            int paletteIndex = mob.getPaletteId();
+            if (paletteIndex < 0 || paletteIndex > (mobRenderer.mobPal.paletteCount - 1)) {
+                paletteIndex = 0;
+            }
+
+            int maxFrameOffset = 0;
+            for (MobChunk chunk : mob.getChunks()) {
+                for (MobBlock block : chunk.getBlocks()) {
+                    maxFrameOffset = Math.max(maxFrameOffset, block.getFrameOffset());
+                }
+            }
+            for (int j = 0; j <= maxFrameOffset; j++) {
+                Frame frame = FileUtils.getFrameFromEpfs(frameIndex + j, mobRenderer.mobEpfs);
+                if (frame != null) {
+                    atlas.add(i, j, frameIndex + j, paletteIndex, frame,
+                            mobRenderer.renderMob(frameIndex + j, paletteIndex));
+                }
+            }
+        }
+        atlas.pack();
+
+        return atlas;
+    }
+
+    /**
+     * Every frame of an EPF set rendered with a single palette (for EPFs without a DSC/DNA).
+     */
+    public static FrameAtlas fromEpfs(String name, List<EpfFileHandler> epfs, PalFileHandler pal, int paletteIndex,
+                                      int pageSize) {
+        FrameAtlas atlas = new FrameAtlas(name, pageSize);
+        PartRenderer partRenderer = new PartRenderer(epfs, pal, paletteIndex);
+        for (int i = 0; i < partRenderer.getCount(true); i++) {
+            Frame frame = FileUtils.getFrameFromEpfs(i, epfs);
+            if (frame != null) {
+                atlas.add(-1, 0, i, paletteIndex, frame, partRenderer.renderPart(-1, i, 0, paletteIndex));
+            }
+        }
+        atlas.pack();
+
+        return atlas;
+    }
+
+    public void add(int index, int offset, int frameIndex, int paletteIndex, Frame frame, BufferedImage image) {
+        AtlasFrame atlasFrame = new AtlasFrame();
+        atlasFrame.index = index;
+        atlasFrame.offset = offset;
+        atlasFrame.frameIndex = frameIndex;
+        atlasFrame.paletteIndex = paletteIndex;
+        atlasFrame.left = frame.getLeft();
+        atlasFrame.top = frame.getTop();
+        atlasFrame.width = frame.getWidth();
+        atlasFrame.height = frame.getHeight();
+        this.frames.add(atlasFrame);
+
+        int keyFrame = frameIndex;
+        if (this.canonicalFrames != null) {
+            keyFrame = frameIndex >= 0 && frameIndex < this.canonicalFrames.length ? this.canonicalFrames[frameIndex] : -1 - frameIndex;
+        }
+        long key = FrameCache.key(keyFrame, paletteIndex);
+        AtlasFrame original = this.uniqueFrames.get(key);
+        if (original != null) {
+            atlasFrame.duplicateOf = original;
+            return;
+        }
+        this.uniqueFrames.put(key, atlasFrame);
+
+        // Trim to the stencil's bounding box
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxX = -1;
+        int maxY = -1;
+        boolean[] scratch = new boolean[Math.max(0, frame.getWidth())];
+        for (int y = 0; y < frame.getHeight(); y++) {
+            boolean[] row = frame.getStencil().getRow(y, scratch);
+            for (int x = 0; x < row.length; x++) {
+                if (row[x]) {
+                    minX = Math.min(minX, x);
+                    maxX = Math.max(maxX, x);
+                    minY = Math.min(minY, y);
+                    maxY = y;
+                }
+            }
+        }
+        if (maxX < 0) {
+            return;
+        }
+
+        atlasFrame.trimX = minX;
+        atlasFrame.trimY = minY;
+        atlasFrame.bounds = new Rectangle(0, 0, maxX - minX + 1, maxY - minY + 1);
+        atlasFrame.image = image.getSubimage(minX, minY, atlasFrame.bounds.width, atlasFrame.bounds.height);
+    }
+
+    /**
+     * Packs the added frames largest side first, opening a page when a frame fits on none, then composites each page
+     * on its own thread and crops it to its used area.
+     */
+    public void pack() {
+        List<AtlasFrame> packed = new ArrayList<AtlasFrame>();
+        for (AtlasFrame atlasFrame : this.uniqueFrames.values()) {
+            if (atlasFrame.bounds != null) {
+                packed.add(atlasFrame);
+            }
+        }
+        packed.sort(Comparator
+                .comparingInt((AtlasFrame f) -> Math.max(f.bounds.width, f.bounds.height))
+                .thenComparingInt(f -> f.bounds.width * f.bounds.height)
+                .thenComparingInt(f -> -f.frameIndex)
+                .reversed());
+
+        for (AtlasFrame atlasFrame : packed) {
+            int width = atlasFrame.bounds.width + PADDING;
+            int height = atlasFrame.bounds.height + PADDING;
+            Rectangle rectangle = null;
+            for (int i = 0; i < this.packers.size() && rectangle == null; i++) {
+                rectangle = this.packers.get(i).insert(width, height);
+                atlasFrame.page = i;
+            }
+            if (rectangle == null) {
+                // Oversized frames get a page of their own size
+                MaxRectsPacker packer = new MaxRectsPacker(Math.max(this.pageSize, width), Math.max(this.pageSize, height));
+                this.packers.add(packer);
+                rectangle = packer.insert(width, height);
+                atlasFrame.page = this.packers.size() - 1;
+            }
+            atlasFrame.bounds = new Rectangle(rectangle.x, rectangle.y, atlasFrame.bounds.width, atlasFrame.bounds.height);
+        }
+
+        for (AtlasFrame atlasFrame : this.frames) {
+            AtlasFrame original = atlasFrame.duplicateOf;
+            if (original != null) {
+                atlasFrame.page = original.page;
+                atlasFrame.bounds = original.bounds;
+                atlasFrame.trimX = original.trimX;
+                atlasFrame.trimY = original.trimY;
+            }
+        }
+
+        // Crop pages to the area actually used
+        int[] pageWidths = new int[this.packers.size()];
+        int[] pageHeights = new int[this.packers.size()];
+        for (AtlasFrame atlasFrame : packed) {
+            Rectangle bounds = atlasFrame.bounds;
+            pageWidths[atlasFrame.page] = Math.max(pageWidths[atlasFrame.page], bounds.x + bounds.width);
+            pageHeights[atlasFrame.page] = Math.max(pageHeights[atlasFrame.page], bounds.y + bounds.height);
+        }
+        for (int i = 0; i < this.packers.size(); i++) {
+            this.pages.add(new BufferedImage(pageWidths[i], pageHeights[i], BufferedImage.TYPE_INT_ARGB));
+        }
+
+        IntStream.range(0, this.pages.size()).parallel().forEach(page -> {
+            Graphics2D graphicsObject = this.pages.get(page).createGraphics();
+            for (AtlasFrame atlasFrame : packed) {
+                if (atlasFrame.page == page) {
+                    graphicsObject.drawImage(atlasFrame.image, null, atlasFrame.bounds.x, atlasFrame.bounds.y);
+                }
+            }
+            graphicsObject.dispose();
+        });
+
+        for (AtlasFrame atlasFrame : packed) {
+            atlasFrame.image = null;
+        }
+    }
+
+    /**
+     * Packed pixels over the pages' cropped area.
+     */
+    public double getOccupancy() {
+        long usedArea = 0;
+        for (AtlasFrame atlasFrame : this.uniqueFrames.values()) {
+            if (atlasFrame.bounds != null) {
+                usedArea += (long) atlasFrame.bounds.width * atlasFrame.bounds.height;
+            }
+        }
+        long pageArea = 0;
+        for (BufferedImage page : this.pages) {
+            pageArea += (long) page.getWidth() * page.getHeight();
+        }
+
+        return pageArea == 0 ? 0 : (double) usedArea / pageArea;
+    }
+
+    /**
+     * Writes name-0.png, name-1.png... and name.json to the directory.
+     */
+    public void write(File directory) throws IOException {
+        directory.mkdirs();
+
+        List<String> pageNames = new ArrayList<String>();
+        for (int i = 0; i < this.pages.size(); i++) {
+            String pageName = this.name + "-" + i + ".png";
+            ImageIO.write(this.pages.get(i), "png", new File(directory, pageName));
+            pageNames.add(pageName);
+        }
+
+        Files.write(new File(directory, this.name + ".json").toPath(),
+                this.toJson(pageNames).getBytes(StandardCharsets.UTF_8));
+    }
+
+    String toJson(List<String> pageNames) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"name\": \"").append(this.name).append("\",\n");
+        json.append("  \"pages\": [");
+        for (int i = 0; i < pageNames.size(); i++) {
+            json.append(i > 0 ? ", " : "").append('"').append(pageNames.get(i)).append('"');
+        }
+        json.append("],\n");
+        json.append("  \"frames\": [");
+        for (int i = 0; i < this.frames.size(); i++) {
+            AtlasFrame atlasFrame = this.frames.get(i);
+            Rectangle bounds = atlasFrame.bounds != null ? atlasFrame.bounds : new Rectangle();
+            json.append(i > 0 ? "," : "").append("\n    {");
+            json.append("\"index\": ").append(atlasFrame.index);
+            json.append(", \"offset\": ").append(atlasFrame.offset);
+            json.append(", \"frameIndex\": ").append(atlasFrame.frameIndex);
+            json.append(", \"palette\": ").append(atlasFrame.paletteIndex);
+            json.append(", \"page\": ").append(atlasFrame.page);
+            json.append(", \"x\": ").append(bounds.x);
+            json.append(", \"y\": ").append(bounds.y);
+            json.append(", \"w\": ").append(bounds.width);
+            json.append(", \"h\": ").append(bounds.height);
+            json.append(", \"trimX\": ").append(atlasFrame.trimX);
+            json.append(", \"trimY\": ").append(atlasFrame.trimY);
+            json.append(", \"left\": ").append(atlasFrame.left);
+            json.append(", \"top\": ").append(atlasFrame.top);
+            json.append(", \"width\": ").append(atlasFrame.width);
+            json.append(", \"height\": ").append(atlasFrame.height);
+            json.append('}');
+        }
+        json.append("\n  ]\n");
+        json.append("}\n");
+
+        return json.toString();
+    }
+}
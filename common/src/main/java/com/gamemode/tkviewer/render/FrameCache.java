@@ -0,0 +1,386 @@
+package com.gamemode.tkviewer.render;
+
+import java.awt.image.BufferedImage;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Rendered frames keyed by (frame index, palette index), shared by PartRenderer, MobRenderer, TileRenderer and
+ * SObjRenderer.
+ *
+ * Both indices are packed into one long and looked up in an open-addressing table (linear probing), so a lookup
+ * neither boxes a key nor allocates an entry. A slot is empty when its image is null. With canonical frames set (see
+ * FrameDedupIndex), frame indices are mapped to canonical frame IDs first, so identical frames share one image.
+ *
+ * Every cache accounts its bytes in the process-wide CacheBudget, which may evict its least recently used images (or
+ * demote them to soft references) from another thread, so the table is locked; renderers still need their callers to
+ * synchronize on them. Hits and misses are plain counters, monitoring reads them without locking.
+ *
+ * Frames are stored as the renderers build them, TYPE_BYTE_INDEXED (see IndexedImages), or converted to TYPE_INT_ARGB
+ * with -Dtkviewer.cache.images=argb: four times the memory, but no conversion each time they are drawn.
+ */
+public class FrameCache {
+
+    public enum ImageMode { INDEXED, ARGB }
+
+    public static final int DEFAULT_CAPACITY = 64;
+    public static final ImageMode DEFAULT_IMAGE_MODE = parseImageMode(System.getProperty("tkviewer.cache.images", "indexed"));
+
+    public ImageMode imageMode = DEFAULT_IMAGE_MODE;
+    // Name in usage reports (set when registered as an MBean), and how much longer than others its images are kept
+    public String name;
+    public double weight = 1;
+
+    long[] keys;
+    BufferedImage[] images;
+    // Budget clock of each image's last use
+    long[] stamps;
+    int size = 0;
+    int mask;
+    long imageBytes = 0;
+
+    long hits = 0;
+    long misses = 0;
+    long evictions = 0;
+
+    int[] canonicalFrames;
+
+    CacheBudget budget;
+    CacheBudget.Registration registration;
+    // Images evicted with soft eviction, until the GC clears them (their entries are purged on get and put)
+    Map<Long, DemotedImage> demoted;
+    final ReferenceQueue<BufferedImage> clearedImages = new ReferenceQueue<BufferedImage>();
+
+    public FrameCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public FrameCache(int expectedSize) {
+        this(expectedSize, CacheBudget.getInstance());
+    }
+
+    public FrameCache(int expectedSize, CacheBudget budget) {
+        // Power of two, kept at most half full
+        int capacity = Integer.highestOneBit(Math.max(expectedSize * 2 - 1, 1)) << 1;
+        this.keys = new long[capacity];
+        this.images = new BufferedImage[capacity];
+        this.stamps = new long[capacity];
+        this.mask = capacity - 1;
+
+        this.budget = budget;
+        this.registration = budget.register(this);
+    }
+
+    /**
+     * Soft reference to a demoted image, queued with its key once the GC clears it.
+     */
+    static class DemotedImage extends SoftReference<BufferedImage> {
+
+        final long key;
+
+        DemotedImage(long key, BufferedImage image, ReferenceQueue<BufferedImage> queue) {
+            super(image, queue);
+            this.key = key;
+        }
+    }
+
+    public static long key(int frameIndex, int paletteIndex) {
+        return ((long) frameIndex << 32) | (paletteIndex & 0xFFFFFFFFL);
+    }
+
+    public BufferedImage get(int frameIndex, int paletteIndex) {
+        BufferedImage image;
+        synchronized (this) {
+            long key = key(this.canonicalFrame(frameIndex), paletteIndex);
+            for (int slot = slot(key); this.images[slot] != null; slot = (slot + 1) & this.mask) {
+                if (this.keys[slot] == key) {
+                    this.hits++;
+                    this.stamps[slot] = this.budget.now();
+                    return this.images[slot];
+                }
+            }
+
+            this.purgeClearedImages();
+            DemotedImage reference = this.demoted == null ? null : this.demoted.remove(key);
+            image = reference == null ? null : reference.get();
+            if (image == null) {
+                this.misses++;
+                return null;
+            }
+
+            // Not reclaimed yet, counted again
+            this.hits++;
+            this.store(key, image);
+        }
+        this.budget.enforce();
+
+        return image;
+    }
+
+    /**
+     * Caches an image and returns the one stored (converted to ARGB in ARGB mode).
+     */
+    public BufferedImage put(int frameIndex, int paletteIndex, BufferedImage image) {
+        if (image == null) {
+            throw new IllegalArgumentException("Cannot cache a null image");
+        }
+        if (this.imageMode == ImageMode.ARGB) {
+            image = IndexedImages.toArgb(image);
+        }
+
+        synchronized (this) {
+            long key = key(this.canonicalFrame(frameIndex), paletteIndex);
+            this.purgeClearedImages();
+            if (this.demoted != null) {
+                this.demoted.remove(key);
+            }
+            this.store(key, image);
+        }
+        // Outside the lock, the budget locks every cache it evicts from
+        this.budget.enforce();
+
+        return image;
+    }
+
+    void store(long key, BufferedImage image) {
+        long bytes = IndexedImages.getImageBytes(image);
+        int slot = slot(key);
+        while (this.images[slot] != null) {
+            if (this.keys[slot] == key) {
+                bytes -= IndexedImages.getImageBytes(this.images[slot]);
+                this.images[slot] = image;
+                this.stamps[slot] = this.budget.tick();
+                this.addBytes(bytes);
+                return;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+
+        this.keys[slot] = key;
+        this.images[slot] = image;
+        this.stamps[slot] = this.budget.tick();
+        this.size++;
+        this.addBytes(bytes);
+
+        if (this.size * 2 > this.keys.length) {
+            this.resize(this.keys.length * 2);
+        }
+    }
+
+    /**
+     * Maps frame indices to canonical frame IDs (null to key by frame index again), clears the cache.
+     */
+    public synchronized void setCanonicalFrames(int[] canonicalFrames) {
+        this.canonicalFrames = canonicalFrames;
+        this.clear();
+    }
+
+    public int[] getCanonicalFrames() {
+        return this.canonicalFrames;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Pixel data bytes of every cached image (demoted images aren't counted).
+     */
+    public long getImageBytes() {
+        return this.imageBytes;
+    }
+
+    public synchronized int getDemotedCount() {
+        return this.demoted == null ? 0 : this.demoted.size();
+    }
+
+    public long getHits() {
+        return this.hits;
+    }
+
+    public long getMisses() {
+        return this.misses;
+    }
+
+    public long getEvictions() {
+        return this.evictions;
+    }
+
+    public void resetStatistics() {
+        this.hits = 0;
+        this.misses = 0;
+        this.evictions = 0;
+    }
+
+    /**
+     * Drops the images of frames firstFrame to lastFrame (inclusive), every image when keyed by canonical frame.
+     */
+    public synchronized void removeFrames(int firstFrame, int lastFrame) {
+        if (this.canonicalFrames != null) {
+            this.clear();
+            return;
+        }
+
+        long[] oldKeys = this.keys;
+        BufferedImage[] oldImages = this.images;
+        long[] oldStamps = this.stamps;
+        this.keys = new long[oldKeys.length];
+        this.images = new BufferedImage[oldImages.length];
+        this.stamps = new long[oldStamps.length];
+        this.size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldImages[i] == null) {
+                continue;
+            }
+            int frameIndex = (int) (oldKeys[i] >> 32);
+            if (frameIndex < firstFrame || frameIndex > lastFrame) {
+                this.insert(oldKeys[i], oldImages[i], oldStamps[i]);
+                this.size++;
+            } else {
+                this.addBytes(-IndexedImages.getImageBytes(oldImages[i]));
+            }
+        }
+        if (this.demoted != null) {
+            this.demoted.keySet().removeIf(key -> (int) (key >> 32) >= firstFrame && (int) (key >> 32) <= lastFrame);
+        }
+    }
+
+    public synchronized void clear() {
+        Arrays.fill(this.images, null);
+        this.size = 0;
+        this.addBytes(-this.imageBytes);
+        this.demoted = null;
+    }
+
+    /**
+     * Keys and budget stamps of every cached image, as two arrays.
+     */
+    synchronized long[][] getEntries() {
+        long[][] entries = new long[2][this.size];
+        int entry = 0;
+        for (int slot = 0; slot < this.images.length; slot++) {
+            if (this.images[slot] != null) {
+                entries[0][entry] = this.keys[slot];
+                entries[1][entry] = this.stamps[slot];
+                entry++;
+            }
+        }
+
+        return entries;
+    }
+
+    /**
+     * Evicts an image unless it was used since stamp, keeping a soft reference to it when soft.
+     */
+    synchronized boolean evict(long key, long stamp, boolean soft) {
+        for (int slot = slot(key); this.images[slot] != null; slot = (slot + 1) & this.mask) {
+            if (this.keys[slot] == key) {
+                if (this.stamps[slot] != stamp) {
+                    return false;
+                }
+                if (soft) {
+                    if (this.demoted == null) {
+                        this.demoted = new HashMap<Long, DemotedImage>();
+                    }
+                    this.demoted.put(key, new DemotedImage(key, this.images[slot], this.clearedImages));
+                }
+                this.removeSlot(slot);
+                this.evictions++;
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Drops the entries of demoted images the GC has cleared since.
+     */
+    void purgeClearedImages() {
+        DemotedImage reference;
+        while ((reference = (DemotedImage) this.clearedImages.poll()) != null) {
+            // The key may have been demoted again since
+            if (this.demoted != null && this.demoted.get(reference.key) == reference) {
+                this.demoted.remove(reference.key);
+            }
+        }
+    }
+
+    static ImageMode parseImageMode(String imageMode) {
+        try {
+            return ImageMode.valueOf(imageMode.trim().toUpperCase());
+        } catch (IllegalArgumentException iae) {
+            System.out.println("Unknown cache image mode " + imageMode + ", using indexed");
+            return ImageMode.INDEXED;
+        }
+    }
+
+    int canonicalFrame(int frameIndex) {
+        if (this.canonicalFrames == null) {
+            return frameIndex;
+        }
+
+        // Frames outside the index get negative keys, which no canonical ID uses
+        return frameIndex >= 0 && frameIndex < this.canonicalFrames.length ? this.canonicalFrames[frameIndex] : -1 - frameIndex;
+    }
+
+    int slot(long key) {
+        // Fibonacci hashing spreads the packed (frame, palette) bits over the table
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & this.mask;
+    }
+
+    void resize(int capacity) {
+        long[] oldKeys = this.keys;
+        BufferedImage[] oldImages = this.images;
+        long[] oldStamps = this.stamps;
+
+        this.keys = new long[capacity];
+        this.images = new BufferedImage[capacity];
+        this.stamps = new long[capacity];
+        this.mask = capacity - 1;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldImages[i] != null) {
+                this.insert(oldKeys[i], oldImages[i], oldStamps[i]);
+            }
+        }
+    }
+
+    void insert(long key, BufferedImage image, long stamp) {
+        int slot = slot(key);
+        while (this.images[slot] != null) {
+            slot = (slot + 1) & this.mask;
+        }
+        this.keys[slot] = key;
+        this.images[slot] = image;
+        this.stamps[slot] = stamp;
+    }
+
+    void removeSlot(int slot) {
+        this.addBytes(-IndexedImages.getImageBytes(this.images[slot]));
+        this.images[slot] = null;
+        this.size--;
+
+        // Backward shift: moves later entries of the probe run into the hole unless it would put them before their slot
+        int hole = slot;
+        for (int next = (slot + 1) & this.mask; this.images[next] != null; next = (next + 1) & this.mask) {
+            int home = slot(this.keys[next]);
+            if (((next - home) & this.mask) >= ((next - hole) & this.mask)) {
+                this.keys[hole] = this.keys[next];
+                this.images[hole] = this.images[next];
+                this.stamps[hole] = this.stamps[next];
+                this.images[next] = null;
+                hole = next;
+            }
+        }
+    }
+
+    void addBytes(long bytes) {
+        this.imageBytes += bytes;
+        this.budget.account(this.registration, bytes);
+    }
+}
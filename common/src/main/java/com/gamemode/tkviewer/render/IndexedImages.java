@@ -0,0 +1,144 @@
+package com.gamemode.tkviewer.render;
+
+import com.gamemode.tkviewer.Frame;
+import com.gamemode.tkviewer.Palette;
+import com.gamemode.tkviewer.resources.Stencil;
+
+import java.awt.*;
+import java.awt.image.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * TYPE_BYTE_INDEXED frame images (one byte per pixel) sharing one IndexColorModel per palette.
+ *
+ * Pixels outside the stencil are set to TRANSPARENT_INDEX, the index the renderers' color models have always treated
+ * as transparent, so images look the same as the ones built pixel by pixel with setRGB. They are converted to ARGB
+ * when drawn onto a canvas, or up front with toArgb() (FrameCache.ImageMode.ARGB).
+ */
+public class IndexedImages {
+
+    // Transparency.TRANSLUCENT has always been passed as the transparent pixel of the renderers' color models
+    public static final int TRANSPARENT_INDEX = Transparency.TRANSLUCENT;
+
+    static final Map<Palette, IndexColorModel> COLOR_MODELS = Collections.synchronizedMap(new WeakHashMap<Palette, IndexColorModel>());
+
+    public static IndexColorModel getColorModel(Palette palette) {
+        IndexColorModel icm = COLOR_MODELS.get(palette);
+        if (icm == null) {
+            icm = new IndexColorModel(8, 256, palette.getRedBytes(), palette.getGreenBytes(), palette.getBlueBytes(),
+                    TRANSPARENT_INDEX);
+            COLOR_MODELS.put(palette, icm);
+        }
+
+        return icm;
+    }
+
+    /**
+     * Image of a frame, its palette indices shifted by animationOffset. Heap frames are wrapped as by
+     * create(byte[], ...), off-heap and mapped ones (stencil kept as spans) are read in place: only their drawn runs
+     * are copied into the image.
+     */
+    public static BufferedImage create(Frame frame, IndexColorModel icm, int animationOffset) {
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        ByteBuffer rawPixelData = frame.getRawPixelData();
+        Stencil stencil = frame.getStencil();
+
+        if (stencil.spans == null) {
+            byte[] pixels = rawPixelData.array();
+            if (animationOffset != 0) {
+                for (int i = 0; i < pixels.length; i++) {
+                    pixels[i] += animationOffset;
+                }
+            }
+
+            return create(pixels, width, height, stencil, icm);
+        }
+
+        byte[] pixels = new byte[width * height];
+        Arrays.fill(pixels, (byte) TRANSPARENT_INDEX);
+        ByteBuffer source = rawPixelData.duplicate();
+        for (int y = 0; y < height; y++) {
+            for (int span = stencil.getSpanStart(y); span < stencil.getSpanStart(y + 1); span++) {
+                int start = (y * width) + stencil.getSpanX(span);
+                int length = stencil.getSpanLength(span);
+                source.position(start);
+                source.get(pixels, start, length);
+                for (int i = start; animationOffset != 0 && i < start + length; i++) {
+                    pixels[i] += animationOffset;
+                }
+            }
+        }
+
+        return wrap(pixels, width, height, icm);
+    }
+
+    /**
+     * Wraps width * height palette indices (the array is written to: pixels outside the stencil become transparent).
+     */
+    public static BufferedImage create(byte[] pixels, int width, int height, Stencil stencil, IndexColorModel icm) {
+        boolean[] scratch = stencil.rows == null ? new boolean[width] : null;
+        for (int y = 0; y < height; y++) {
+            boolean[] row = stencil.getRow(y, scratch);
+            int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                if (!row[x]) {
+                    pixels[offset + x] = (byte) TRANSPARENT_INDEX;
+                }
+            }
+        }
+
+        return wrap(pixels, width, height, icm);
+    }
+
+    /**
+     * Fully transparent image.
+     */
+    public static BufferedImage createTransparent(int width, int height, IndexColorModel icm) {
+        byte[] pixels = new byte[width * height];
+        Arrays.fill(pixels, (byte) TRANSPARENT_INDEX);
+
+        return wrap(pixels, width, height, icm);
+    }
+
+    static BufferedImage wrap(byte[] pixels, int width, int height, IndexColorModel icm) {
+        DataBufferByte buffer = new DataBufferByte(pixels, width * height);
+        WritableRaster raster = Raster.createInterleavedRaster(buffer, width, height, width, 1, new int[]{0}, null);
+
+        return new BufferedImage(icm, raster, false, null);
+    }
+
+    /**
+     * Palette indices of an indexed image (its own array, not a copy).
+     */
+    public static byte[] getPixels(BufferedImage image) {
+        return ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+    }
+
+    public static BufferedImage toArgb(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_INT_ARGB) {
+            return image;
+        }
+
+        // Same colors as getRGB on the source, transparent pixels included
+        int width = image.getWidth();
+        int height = image.getHeight();
+        BufferedImage argbImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        argbImage.setRGB(0, 0, width, height, image.getRGB(0, 0, width, height, null, 0, width), 0, width);
+
+        return argbImage;
+    }
+
+    /**
+     * Bytes held by an image's pixel data (color models are shared and not counted).
+     */
+    public static long getImageBytes(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+
+        return (long) buffer.getSize() * buffer.getNumBanks() * (DataBuffer.getDataTypeSize(buffer.getDataType()) / 8);
+    }
+}
@@ -0,0 +1,143 @@
+package com.gamemode.tkviewer.render;
+
+import com.gamemode.tkviewer.file_handlers.CmpFileHandler;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Connected walkable regions of a map, labelled once so "can A reach B" is a single array lookup.
+ *
+ * Uses the movement rules of MapRenderer.renderMapStencil: a tile is walkable if its stencil node is open, and two
+ * neighbouring tiles are connected if the stencil node between them is open.
+ */
+public class MapRegions {
+
+    public static final int BLOCKED = -1;
+
+    public int mapWidth;
+    public int mapHeight;
+    public int regionCount;
+
+    // Region label per tile (row-major), BLOCKED for tiles that can't be stood on
+    public int[] labels;
+
+    public MapRegions(CmpFileHandler cmpFileHandler, MapRenderer mapRenderer) {
+        this(cmpFileHandler.mapWidth, cmpFileHandler.mapHeight, mapRenderer.renderMapStencilNodes(cmpFileHandler));
+    }
+
+    public MapRegions(int mapWidth, int mapHeight, boolean[] stencilNodes) {
+        this.mapWidth = mapWidth;
+        this.mapHeight = mapHeight;
+
+        int stencilWidth = mapWidth * 2 + 1;
+        int tileCount = mapWidth * mapHeight;
+
+        // Union-Find over tiles, joining each tile with its Left and Top neighbour in a single pass
+        int[] parent = new int[tileCount];
+        for (int y = 0; y < mapHeight; y++) {
+            for (int x = 0; x < mapWidth; x++) {
+                int tile = (y * mapWidth) + x;
+                int node = ((2 * y + 1) * stencilWidth) + (2 * x + 1);
+
+                if (stencilNodes[node]) {
+                    parent[tile] = BLOCKED;
+                    continue;
+                }
+                parent[tile] = tile;
+
+                // Left
+                if (x > 0 && !stencilNodes[node - 1] && parent[tile - 1] != BLOCKED) {
+                    union(parent, tile - 1, tile);
+                }
+                // Top
+                if (y > 0 && !stencilNodes[node - stencilWidth] && parent[tile - mapWidth] != BLOCKED) {
+                    union(parent, tile - mapWidth, tile);
+                }
+            }
+        }
+
+        // Flatten roots into dense labels (0 .. regionCount - 1)
+        this.labels = new int[tileCount];
+        int[] rootLabels = new int[tileCount];
+        Arrays.fill(rootLabels, BLOCKED);
+        for (int i = 0; i < tileCount; i++) {
+            if (parent[i] == BLOCKED) {
+                this.labels[i] = BLOCKED;
+                continue;
+            }
+
+            int root = find(parent, i);
+            if (rootLabels[root] == BLOCKED) {
+                rootLabels[root] = this.regionCount++;
+            }
+            this.labels[i] = rootLabels[root];
+        }
+    }
+
+    public int getRegion(int x, int y) {
+        if (x < 0 || y < 0 || x >= this.mapWidth || y >= this.mapHeight) {
+            return BLOCKED;
+        }
+
+        return this.labels[(y * this.mapWidth) + x];
+    }
+
+    public boolean isReachable(int x1, int y1, int x2, int y2) {
+        int region = getRegion(x1, y1);
+
+        return region != BLOCKED && region == getRegion(x2, y2);
+    }
+
+    /**
+     * Labels every TK*.cmp map in mapDirectory in parallel, keyed by map file name.
+     */
+    public static Map<String, MapRegions> labelMaps(Path mapDirectory, MapRenderer mapRenderer) {
+        File[] mapFiles = mapDirectory.toFile().listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.matches("[Tt][Kk]\\d+\\.[Cc][Mm][Pp]");
+            }
+        });
+        if (mapFiles == null) {
+            return new LinkedHashMap<String, MapRegions>();
+        }
+        Arrays.sort(mapFiles);
+
+        MapRegions[] regions = new MapRegions[mapFiles.length];
+        IntStream.range(0, mapFiles.length).parallel().forEach(i ->
+                regions[i] = new MapRegions(new CmpFileHandler(mapFiles[i]), mapRenderer));
+
+        Map<String, MapRegions> mapRegions = new LinkedHashMap<String, MapRegions>();
+        for (int i = 0; i < mapFiles.length; i++) {
+            mapRegions.put(mapFiles[i].getName(), regions[i]);
+        }
+
+        return mapRegions;
+    }
+
+    private static int find(int[] parent, int tile) {
+        while (parent[tile] != tile) {
+            // Path halving
+            parent[tile] = parent[parent[tile]];
+            tile = parent[tile];
+        }
+
+        return tile;
+    }
+
+    private static void union(int[] parent, int a, int b) {
+        int rootA = find(parent, a);
+        int rootB = find(parent, b);
+        if (rootA < rootB) {
+            parent[rootB] = rootA;
+        } else if (rootB < rootA) {
+            parent[rootA] = rootB;
+        }
+    }
+}
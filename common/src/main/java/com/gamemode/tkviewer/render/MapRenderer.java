@@ -1,7 +1,9 @@
 package com.gamemode.tkviewer.render;
 
 import com.gamemode.tkviewer.file_handlers.CmpFileHandler;
+import com.gamemode.tkviewer.file_handlers.FileHandler;
 import com.gamemode.tkviewer.file_handlers.MapFileHandler;
+import com.gamemode.tkviewer.management.FlightEvents;
 import com.gamemode.tkviewer.resources.Resources;
 import com.gamemode.tkviewer.utilities.Utils;
 
@@ -33,6 +35,8 @@ public class MapRenderer {
 
     // Overrenders downwards to get all static objects
     public BufferedImage renderCropped(CmpFileHandler cmpFileHandler, int x, int y, int width, int height) {
+        Object event = FlightEvents.beginMapRender();
+        int sObjCount = 0;
         BufferedImage image = new BufferedImage((width * Resources.TILE_DIM), (height * Resources.TILE_DIM), BufferedImage.TYPE_INT_ARGB);
         Graphics2D graphicsObject = image.createGraphics();
         graphicsObject.setColor(Color.BLACK);
@@ -66,16 +70,18 @@ public class MapRenderer {
                 if (sObjIndex > 0) {
                     int sObjHeight = this.sObjRenderer.tileSObjTbl.objects.get(sObjIndex).getHeight();
                     if (sObjHeight > 0) {
-                        graphicsObject.drawImage(
-                                this.sObjRenderer.renderSObject(sObjIndex),
-                                null,
+                        this.sObjRenderer.drawSObject(
+                                graphicsObject,
+                                sObjIndex,
                                 (i - x) * Resources.TILE_DIM,
                                 (j - y - sObjHeight + 1) * Resources.TILE_DIM);
+                        sObjCount++;
                     }
                 }
             }
         }
 
+        this.commitRenderEvent(event, cmpFileHandler, x, y, width, originalHeight, sObjCount, image);
         return image.getSubimage(0, 0, width * Resources.TILE_DIM, originalHeight * Resources.TILE_DIM);
     }
 
@@ -86,6 +92,8 @@ public class MapRenderer {
     }
 
     public BufferedImage renderMap(CmpFileHandler cmpFileHandler) {
+        Object event = FlightEvents.beginMapRender();
+        int sObjCount = 0;
         int width = cmpFileHandler.mapWidth;
         int height = cmpFileHandler.mapHeight;
 
@@ -115,11 +123,12 @@ public class MapRenderer {
             if (sObjIndex > 0) {
                 int sObjHeight = this.sObjRenderer.tileSObjTbl.objects.get(sObjIndex).getHeight();
                 if (sObjHeight > 0) {
-                    graphicsObject.drawImage(
-                            this.sObjRenderer.renderSObject(sObjIndex),
-                            null,
+                    this.sObjRenderer.drawSObject(
+                            graphicsObject,
+                            sObjIndex,
                             (length * Resources.TILE_DIM),
                             (depth - sObjHeight + 1) * Resources.TILE_DIM);
+                    sObjCount++;
                 }
             }
 
@@ -131,10 +140,13 @@ public class MapRenderer {
             }
         }
 
+        this.commitRenderEvent(event, cmpFileHandler, 0, 0, width, height, sObjCount, image);
         return image;
     }
 
     public BufferedImage renderMap(MapFileHandler mapFileHandler) {
+        Object event = FlightEvents.beginMapRender();
+        int sObjCount = 0;
         int width = mapFileHandler.mapWidth;
         int height = mapFileHandler.mapHeight;
 
@@ -164,11 +176,12 @@ public class MapRenderer {
             if (sObjIndex > 0) {
                 int sObjHeight = this.sObjRenderer.tileSObjTbl.objects.get(sObjIndex).getHeight();
                 if (sObjHeight > 0) {
-                    graphicsObject.drawImage(
-                            this.sObjRenderer.renderSObject(sObjIndex),
-                            null,
+                    this.sObjRenderer.drawSObject(
+                            graphicsObject,
+                            sObjIndex,
                             (length * Resources.TILE_DIM),
                             (depth - sObjHeight + 1) * Resources.TILE_DIM);
+                    sObjCount++;
                 }
             }
 
@@ -180,33 +193,57 @@ public class MapRenderer {
             }
         }
 
+        this.commitRenderEvent(event, mapFileHandler, 0, 0, width, height, sObjCount, image);
         return image;
     }
 
+    private void commitRenderEvent(Object event, FileHandler mapFileHandler, int x, int y, int width, int height,
+                                   int sObjCount, BufferedImage image) {
+        if (event != null) {
+            FlightEvents.commitMapRender(event, mapFileHandler.file != null ? mapFileHandler.file.getPath() : null,
+                    x, y, width, height, sObjCount, (long) image.getWidth() * image.getHeight() * 4);
+        }
+    }
+
     public Boolean[][] renderMapStencil(CmpFileHandler cmpFileHandler) {
         int width = cmpFileHandler.mapWidth * 2 + 1;
         int height = cmpFileHandler.mapHeight * 2 + 1;
 
+        boolean[] stencilNodes = renderMapStencilNodes(cmpFileHandler);
+
         Boolean[][] gridNodes = new Boolean[width][height];
         for (int i = 0; i < width; i++) {
             for (int j = 0; j < height; j++) {
-                gridNodes[i][j] = false;
+                gridNodes[i][j] = stencilNodes[(j * width) + i];
             }
         }
+
+        return gridNodes;
+    }
+
+    /**
+     * Same grid as renderMapStencil, flattened row-major ((mapWidth * 2 + 1) nodes per row) into a primitive array.
+     * Tile (x, y) sits on node (2x + 1, 2y + 1), the nodes between tiles are the edges that can be blocked.
+     */
+    public boolean[] renderMapStencilNodes(CmpFileHandler cmpFileHandler) {
+        int width = cmpFileHandler.mapWidth * 2 + 1;
+        int height = cmpFileHandler.mapHeight * 2 + 1;
+
+        boolean[] gridNodes = new boolean[width * height];
         // Left and Right borders
         for (int i = 0; i < height; i++) {
-            gridNodes[0][i] = true;
-            gridNodes[width-1][i] = true;
+            gridNodes[i * width] = true;
+            gridNodes[(i * width) + width - 1] = true;
         }
         // Top and Bottom borders
         for (int i = 0; i < width; i++) {
-            gridNodes[i][0] = true;
-            gridNodes[i][height-1] = true;
+            gridNodes[i] = true;
+            gridNodes[((height - 1) * width) + i] = true;
         }
         // Diagonal borders
         for(int i = 2; i < width-3; i+=2) {
             for (int j = 2; j < height-3; j+=2) {
-                gridNodes[i][j] = true;
+                gridNodes[(j * width) + i] = true;
             }
         }
 
@@ -214,36 +251,38 @@ public class MapRenderer {
 
         for (int j = 1; j < height-1; j+=2) {
             for (int i = 1; i < width-1; i+=2) {
+                int node = (j * width) + i;
+
                 // Render Static Object (C Tile)
                 int sObjIndex = cmpFileHandler.mapTiles.get(mapIndex).getSObjTile();
                 int passableTile = cmpFileHandler.mapTiles.get(mapIndex++).getPassableTile();
                 if (passableTile == 1) {
                     // Block out adjacent nodes
                     // Left, Right, Top, Bottom
-                    gridNodes[i - 1][j] = true;
-                    gridNodes[i + 1][j] = true;
-                    gridNodes[i][j - 1] = true;
-                    gridNodes[i][j + 1] = true;
-                    gridNodes[i][j] = true;
+                    gridNodes[node - 1] = true;
+                    gridNodes[node + 1] = true;
+                    gridNodes[node - width] = true;
+                    gridNodes[node + width] = true;
+                    gridNodes[node] = true;
                 }
                 if (sObjIndex > 0) {
                     byte movementDirection = this.sObjRenderer.tileSObjTbl.objects.get(sObjIndex).getMovementDirection();
                     if (movementDirection == 0xF) {         // Full
                         // Block out adjacent nodes
                         // Left, Right, Top, Bottom
-                        gridNodes[i - 1][j] = true;
-                        gridNodes[i + 1][j] = true;
-                        gridNodes[i][j - 1] = true;
-                        gridNodes[i][j + 1] = true;
-                        gridNodes[i][j] = true;
+                        gridNodes[node - 1] = true;
+                        gridNodes[node + 1] = true;
+                        gridNodes[node - width] = true;
+                        gridNodes[node + width] = true;
+                        gridNodes[node] = true;
                     } else if (movementDirection == 0x8) {  // Right
-                        gridNodes[i + 1][j] = true;
+                        gridNodes[node + 1] = true;
                     } else if (movementDirection == 0x4) {  // Left
-                        gridNodes[i - 1][j] = true;
+                        gridNodes[node - 1] = true;
                     } else if (movementDirection == 0x2) {  // Top
-                        gridNodes[i][j - 1] = true;
+                        gridNodes[node - width] = true;
                     } else if (movementDirection == 0x1) {  // Bottom
-                        gridNodes[i][j + 1] = true;
+                        gridNodes[node + width] = true;
                     }
                 }
             }
@@ -252,6 +291,10 @@ public class MapRenderer {
         return gridNodes;
     }
 
+    public MapRegions renderMapRegions(CmpFileHandler cmpFileHandler) {
+        return new MapRegions(cmpFileHandler, this);
+    }
+
     public void dispose() {
         tileRenderer.dispose();
         sObjRenderer.dispose();
@@ -5,17 +5,16 @@ import com.gamemode.tkviewer.Frame;
 import com.gamemode.tkviewer.file_handlers.DatFileHandler;
 import com.gamemode.tkviewer.file_handlers.DnaFileHandler;
 import com.gamemode.tkviewer.file_handlers.EpfFileHandler;
+import com.gamemode.tkviewer.file_handlers.FileHandler;
 import com.gamemode.tkviewer.file_handlers.PalFileHandler;
 import com.gamemode.tkviewer.resources.Resources;
 import com.gamemode.tkviewer.utilities.FileUtils;
 
 import java.awt.*;
 import java.awt.image.*;
-import java.io.File;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
 public class MobRenderer implements Renderer {
 
@@ -41,7 +40,8 @@ public class MobRenderer implements Renderer {
         ATTACK_LEFT
     }
 
-    Map<Integer, BufferedImage> mobs;
+    FrameCache mobs;
+    RenderStats stats = new RenderStats();
 
     public List<EpfFileHandler> mobEpfs;
     public PalFileHandler mobPal;
@@ -49,9 +49,9 @@ public class MobRenderer implements Renderer {
     public int manualPaletteIndex = 0;
 
     public MobRenderer() {
-        DatFileHandler monDat = new DatFileHandler(Resources.getNtkDataDirectory() + File.separator + "mon.dat");
+        DatFileHandler monDat = RendererRegistry.getInstance().getArchive("mon.dat");
 
-        mobs = new HashMap<Integer, BufferedImage>();
+        mobs = new FrameCache();
 
         this.mobEpfs = FileUtils.createEpfsFromDats("mon", false);
         this.mobPal = new PalFileHandler(monDat.getFile("monster.pal"));
@@ -59,7 +59,7 @@ public class MobRenderer implements Renderer {
     }
 
     public MobRenderer(List<EpfFileHandler> mobEpfs, PalFileHandler mobPal, DnaFileHandler mobDna) {
-        mobs = new HashMap<Integer, BufferedImage>();
+        mobs = new FrameCache();
 
         this.mobEpfs = mobEpfs;
         this.mobPal = mobPal;
@@ -67,7 +67,7 @@ public class MobRenderer implements Renderer {
     }
 
     public MobRenderer(List<EpfFileHandler> mobEpfs, PalFileHandler mobPal, int manualPaletteIndex) {
-        mobs = new HashMap<Integer, BufferedImage>();
+        mobs = new FrameCache();
 
         this.mobEpfs = mobEpfs;
         this.mobPal = mobPal;
@@ -75,6 +75,16 @@ public class MobRenderer implements Renderer {
     }
 
     public BufferedImage renderMob(int tileIndex, int paletteIndex) {
+        if (paletteIndex < 0 || paletteIndex > (this.mobPal.paletteCount - 1)) {
+            paletteIndex = 0;
+        }
+        // Return Mob if cached.
+        BufferedImage cachedMob = this.mobs.get(tileIndex, paletteIndex);
+        if (cachedMob != null) {
+            return cachedMob;
+        }
+
+        long startTime = System.nanoTime();
         int epfIndex = 0;
 
         int frameCount = 0;
@@ -87,7 +97,9 @@ public class MobRenderer implements Renderer {
             frameCount += this.mobEpfs.get(i).frameCount;
         }
 
+        long decodeStartTime = System.nanoTime();
         Frame frame = this.mobEpfs.get(epfIndex).getFrame(tileIndex - frameCount);
+        this.stats.addDecode(decodeStartTime);
         int width = frame.getWidth();
         int height = frame.getHeight();
 
@@ -101,34 +113,54 @@ public class MobRenderer implements Renderer {
             }
 
             image.setRGB(0, 0, Resources.TILE_DIM, Resources.TILE_DIM, pixels, 0, Resources.TILE_DIM);
+            this.stats.addRender(startTime);
             return image;
         }
         // Else
+        IndexColorModel icm = IndexedImages.getColorModel(this.mobPal.palettes.get(paletteIndex));
+
+        image = IndexedImages.create(frame, icm, 0);
+
+        image = this.mobs.put(tileIndex, paletteIndex, image);
+        this.stats.addRender(startTime);
+        return image;
+    }
+
+    /**
+     * Cache of rendered mob frames and its hit/miss counters.
+     */
+    public FrameCache getFrameCache() {
+        return this.mobs;
+    }
+
+    public RenderStats getRenderStats() {
+        return this.stats;
+    }
+
+    /**
+     * Palette renderAnimation uses for the Mob (falls back to the first palette like renderMob).
+     */
+    public Palette getPalette(int mobIndex) {
+        int paletteIndex = this.mobDna.mobs.get(mobIndex).getPaletteId();
         if (paletteIndex < 0 || paletteIndex > (this.mobPal.paletteCount - 1)) {
             paletteIndex = 0;
         }
-        Palette palette = this.mobPal.palettes.get(paletteIndex);
-        IndexColorModel icm = new IndexColorModel(
-                8,
-                256,
-                palette.getRedBytes(),
-                palette.getGreenBytes(),
-                palette.getBlueBytes(),
-                Transparency.TRANSLUCENT);
-
-        DataBufferByte buffer = new DataBufferByte(frame.getRawPixelData().array(), frame.getRawPixelData().capacity());
-        WritableRaster raster = Raster.createPackedRaster(buffer, width, height, 8, null);
-
-        image = new BufferedImage(icm, raster, icm.isAlphaPremultiplied(), null);
-        for (int y = 0; y < image.getHeight(); ++y) {
-            for (int x = 0; x < image.getWidth(); ++x) {
-                if (!frame.getStencil().rows.get(y)[x]) {
-                    image.setRGB(x, y, ALPHA);
-                }
+
+        return this.mobPal.palettes.get(paletteIndex);
+    }
+
+    /**
+     * Archives this renderer reads from (for cache keys).
+     */
+    public List<FileHandler> getSourceArchives() {
+        List<FileHandler> archives = new ArrayList<FileHandler>(this.mobEpfs);
+        for (FileHandler archive : Arrays.asList(this.mobPal, this.mobDna)) {
+            if (archive != null) {
+                archives.add(archive);
             }
         }
 
-        return image;
+        return archives;
     }
 
     public int[] getGlobalCanvasSize(int mobIndex) {
@@ -278,7 +310,9 @@ public class MobRenderer implements Renderer {
 
     @Override
     public void dispose() {
+        mobs.clear();
         for (EpfFileHandler epf : mobEpfs) {
+            epf.releaseFrames();
             epf.close();
         }
         if (mobPal != null) {
@@ -5,6 +5,7 @@ import com.gamemode.tkviewer.Frame;
 import com.gamemode.tkviewer.file_handlers.DatFileHandler;
 import com.gamemode.tkviewer.file_handlers.DscFileHandler;
 import com.gamemode.tkviewer.file_handlers.EpfFileHandler;
+import com.gamemode.tkviewer.file_handlers.FileHandler;
 import com.gamemode.tkviewer.file_handlers.PalFileHandler;
 import com.gamemode.tkviewer.resources.Resources;
 import com.gamemode.tkviewer.utilities.FileUtils;
@@ -106,7 +107,8 @@ public class PartRenderer implements Renderer {
         SWING_LEFT_1H_2             // 66
     }
 
-    Map<Integer, BufferedImage> parts;
+    FrameCache parts;
+    RenderStats stats = new RenderStats();
 
     public List<EpfFileHandler> partEpfs;
     public PalFileHandler partPal;
@@ -114,7 +116,7 @@ public class PartRenderer implements Renderer {
     public int manualPaletteIndex = 0;
 
     public PartRenderer(String partName) {
-        this(partName, new DatFileHandler(Resources.getNtkDataDirectory() + File.separator + "char.dat"), false);
+        this(partName, RendererRegistry.getInstance().getArchive("char.dat"), false);
     }
 
     public PartRenderer(String partName, String dataDirectory) {
@@ -122,7 +124,7 @@ public class PartRenderer implements Renderer {
     }
 
     public PartRenderer(String partName, DatFileHandler charDat, boolean isBaram) {
-        parts = new HashMap<Integer, BufferedImage>();
+        parts = new FrameCache();
 
         this.partEpfs = FileUtils.createEpfsFromDats(partName, isBaram);
         this.partPal = new PalFileHandler(charDat.getFile(partName + ".pal"));
@@ -130,7 +132,7 @@ public class PartRenderer implements Renderer {
     }
 
     public PartRenderer(List<EpfFileHandler> partEpfs, PalFileHandler partPal, DscFileHandler partDsc) {
-        parts = new HashMap<Integer, BufferedImage>();
+        parts = new FrameCache();
 
         this.partEpfs = partEpfs;
         this.partPal = partPal;
@@ -138,7 +140,7 @@ public class PartRenderer implements Renderer {
     }
 
     public PartRenderer(String tkDataDirectory, PART_RENDERER_TYPE rendererType) {
-        parts = new HashMap<Integer, BufferedImage>();
+        parts = new FrameCache();
 
         String epfPrefix = null;
         String palName = null;
@@ -225,7 +227,7 @@ public class PartRenderer implements Renderer {
     }
 
     public PartRenderer(List<EpfFileHandler> partEpfs, PalFileHandler partPal, int manualPaletteIndex) {
-        parts = new HashMap<Integer, BufferedImage>();
+        parts = new FrameCache();
 
         this.partEpfs = partEpfs;
         this.partPal = partPal;
@@ -269,11 +271,14 @@ public class PartRenderer implements Renderer {
 
     public BufferedImage renderPart(int partIndex, int frameIndex, int frameOffset, int paletteIndex) {
         // Return Part if cached.
-        if (parts.containsKey(frameIndex + frameOffset)) {
-            return parts.get(frameIndex + frameOffset);
+        BufferedImage cachedPart = parts.get(frameIndex + frameOffset, paletteIndex);
+        if (cachedPart != null) {
+            return cachedPart;
         }
 
+        long startTime = System.nanoTime();
         Frame frame = getFrame(frameIndex, frameOffset);
+        this.stats.addDecode(startTime);
 
         int width = frame.getWidth();
         int height = frame.getHeight();
@@ -288,34 +293,30 @@ public class PartRenderer implements Renderer {
             }
 
             image.setRGB(0, 0, Resources.TILE_DIM, Resources.TILE_DIM, pixels, 0, Resources.TILE_DIM);
+            this.stats.addRender(startTime);
             return image;
         }
 
-        Palette palette = this.partPal.palettes.get(paletteIndex);
-        IndexColorModel icm = new IndexColorModel(
-                8,
-                256,
-                palette.getRedBytes(),
-                palette.getGreenBytes(),
-                palette.getBlueBytes(),
-                Transparency.TRANSLUCENT);
-
-        DataBufferByte buffer = new DataBufferByte(frame.getRawPixelData().array(), frame.getRawPixelData().capacity());
-        WritableRaster raster = Raster.createPackedRaster(buffer, width, height, 8, null);
-
-        image = new BufferedImage(icm, raster, icm.isAlphaPremultiplied(), null);
-        for (int y = 0; y < image.getHeight(); ++y) {
-            for (int x = 0; x < image.getWidth(); ++x) {
-                if (!frame.getStencil().rows.get(y)[x]) {
-                    image.setRGB(x, y, ALPHA);
-                }
-            }
-        }
+        IndexColorModel icm = IndexedImages.getColorModel(this.partPal.palettes.get(paletteIndex));
 
-        this.parts.put(frameIndex + frameOffset, image);
+        image = IndexedImages.create(frame, icm, 0);
+
+        image = this.parts.put(frameIndex + frameOffset, paletteIndex, image);
+        this.stats.addRender(startTime);
         return image;
     }
 
+    /**
+     * Cache of rendered part frames and its hit/miss counters.
+     */
+    public FrameCache getFrameCache() {
+        return this.parts;
+    }
+
+    public RenderStats getRenderStats() {
+        return this.stats;
+    }
+
     public List<EffectImage> renderAnimation(int partIndex, BODY_ANIMATIONS animation) {
         return renderAnimation(partIndex, animation.ordinal());
     }
@@ -371,6 +372,32 @@ public class PartRenderer implements Renderer {
         return images;
     }
 
+    /**
+     * Palette renderAnimation uses for the Part, or null if the palette id is out of range.
+     */
+    public Palette getPalette(int partIndex) {
+        int paletteIndex = (int) this.partDsc.parts.get(partIndex).getPaletteId();
+        if (paletteIndex < 0 || paletteIndex > (this.partPal.paletteCount - 1)) {
+            return null;
+        }
+
+        return this.partPal.palettes.get(paletteIndex);
+    }
+
+    /**
+     * Archives this renderer reads from (for cache keys).
+     */
+    public List<FileHandler> getSourceArchives() {
+        List<FileHandler> archives = new ArrayList<FileHandler>(this.partEpfs);
+        for (FileHandler archive : Arrays.asList(this.partPal, this.partDsc)) {
+            if (archive != null) {
+                archives.add(archive);
+            }
+        }
+
+        return archives;
+    }
+
     public Dimension getMaxDimensions(int frameOffset) {
         Dimension returnDim = new Dimension(0, 0);
 
@@ -467,7 +494,9 @@ public class PartRenderer implements Renderer {
 
     @Override
     public void dispose() {
+        parts.clear();
         for (EpfFileHandler epf : partEpfs) {
+            epf.releaseFrames();
             epf.close();
         }
         if (partPal != null) {
@@ -0,0 +1,42 @@
+package com.gamemode.tkviewer.render;
+
+/**
+ * Cumulative cost of a renderer's cache misses: time spent in EpfFileHandler.getFrame (decode) and time spent building
+ * the image, decode included (render).
+ *
+ * Updated by the renderer that owns it (so under the same locking), monitoring reads the plain counters without
+ * locking and may see slightly stale values.
+ */
+public class RenderStats {
+
+    long renders = 0;
+    long decodeNanos = 0;
+    long renderNanos = 0;
+
+    public void addDecode(long startNanos) {
+        this.decodeNanos += System.nanoTime() - startNanos;
+    }
+
+    public void addRender(long startNanos) {
+        this.renders++;
+        this.renderNanos += System.nanoTime() - startNanos;
+    }
+
+    public long getRenders() {
+        return this.renders;
+    }
+
+    public long getDecodeNanos() {
+        return this.decodeNanos;
+    }
+
+    public long getRenderNanos() {
+        return this.renderNanos;
+    }
+
+    public void reset() {
+        this.renders = 0;
+        this.decodeNanos = 0;
+        this.renderNanos = 0;
+    }
+}
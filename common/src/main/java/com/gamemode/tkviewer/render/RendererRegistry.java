@@ -0,0 +1,467 @@
+package com.gamemode.tkviewer.render;
+
+import com.gamemode.tkviewer.file_handlers.BundleFileHandler;
+import com.gamemode.tkviewer.file_handlers.DatFileHandler;
+import com.gamemode.tkviewer.management.TKViewerMBeans;
+import com.gamemode.tkviewer.resources.Resources;
+import com.gamemode.tkviewer.utilities.FrameDedupIndex;
+import com.gamemode.tkviewer.utilities.RenderUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+
+/**
+ * Owns a single instance of every shared archive (char.dat, tile.dat...) and of every renderer the GUIs open.
+ *
+ * Renderers can be warmed up in parallel in the background, callers get Futures so nothing has to block until the
+ * renderer is actually needed. Archives and renderers are FutureTasks: whoever asks first builds them (a pool thread
+ * or the caller itself), everyone else waits on the same task, so a pool thread can never deadlock waiting on work
+ * queued behind it.
+ *
+ * With -Dtkviewer.bundle=file (see TKBundleCompiler), renderers are built from the memory-mapped asset bundle instead,
+ * falling back to the archives for anything the bundle doesn't contain. A bundle older than any archive of the data
+ * directory isn't used, and once an archive changes the renderers built from it are rebuilt from the archives. With
+ * -Dtkviewer.dedup=true, every renderer's cache is keyed by a shared FrameDedupIndex, so identical frames across
+ * archives are rendered and cached once.
+ *
+ * Archives and loaded renderers are exposed over JMX (see TKViewerMBeans). startWatching() reloads changed archives
+ * into the loaded renderers as the data directory is patched (see ArchiveWatcher).
+ */
+public class RendererRegistry {
+
+    private static RendererRegistry instance;
+
+    static final Map<Resources.GUI_LOADING_FUNCTION, String> BUNDLED_PARTS = new EnumMap<Resources.GUI_LOADING_FUNCTION, String>(Resources.GUI_LOADING_FUNCTION.class);
+    static {
+        BUNDLED_PARTS.put(Resources.GUI_LOADING_FUNCTION.BODIES, "Body");
+        BUNDLED_PARTS.put(Resources.GUI_LOADING_FUNCTION.BOWS, "Bow");
+        BUNDLED_PARTS.put(Resources.GUI_LOADING_FUNCTION.COATS, "Coat");
+        BUNDLED_PARTS.put(Resources.GUI_LOADING_FUNCTION.FACES, "Face");
+        BUNDLED_PARTS.put(Resources.GUI_LOADING_FUNCTION.FACE_DEC, "FaceDec");
+        BUNDLED_PARTS.put(Resources.GUI_LOADING_FUNCTION.FANS, "Fan");
+        BUNDLED_PARTS.put(Resources.GUI_LOADING_FUNCTION.HAIR, "Hair");
+        BUNDLED_PARTS.put(Resources.GUI_LOADING_FUNCTION.HELMETS, "Helmet");
+        BUNDLED_PARTS.put(Resources.GUI_LOADING_FUNCTION.MANTLES, "Mantle");
+        BUNDLED_PARTS.put(Resources.GUI_LOADING_FUNCTION.SPEARS, "Spear");
+        BUNDLED_PARTS.put(Resources.GUI_LOADING_FUNCTION.SHIELDS, "Shield");
+        BUNDLED_PARTS.put(Resources.GUI_LOADING_FUNCTION.SHOES, "Shoes");
+        BUNDLED_PARTS.put(Resources.GUI_LOADING_FUNCTION.SWORDS, "Sword");
+    }
+
+    ExecutorService warmUpExecutor;
+
+    Map<String, FutureTask<DatFileHandler>> archives = new ConcurrentHashMap<String, FutureTask<DatFileHandler>>();
+    Map<Resources.GUI_LOADING_FUNCTION, FutureTask<Object>> renderers = new ConcurrentHashMap<Resources.GUI_LOADING_FUNCTION, FutureTask<Object>>();
+    // Null unless -Dtkviewer.dedup=true
+    FrameDedupIndex frameDedupIndex = Boolean.getBoolean("tkviewer.dedup") ? new FrameDedupIndex() : null;
+    ArchiveWatcher archiveWatcher;
+    volatile FutureTask<BundleFileHandler> bundle = new FutureTask<BundleFileHandler>(
+            () -> openBundle(System.getProperty("tkviewer.bundle"), Resources.getNtkDataDirectory()));
+    // Renderers built from the bundle, rebuilt from the archives once one of them changes
+    Set<Resources.GUI_LOADING_FUNCTION> bundledRenderers = ConcurrentHashMap.newKeySet();
+
+    public RendererRegistry(int threadCount) {
+        this.warmUpExecutor = Executors.newFixedThreadPool(threadCount, runnable -> {
+            Thread thread = new Thread(runnable, "RendererRegistry-WarmUp");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    public static synchronized RendererRegistry getInstance() {
+        if (instance == null) {
+            instance = new RendererRegistry(Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1)));
+            TKViewerMBeans.registerArchives(instance);
+        }
+
+        return instance;
+    }
+
+    /**
+     * Shared archive from the NexusTK data directory (e.g. "char.dat"), loaded on first use.
+     */
+    public DatFileHandler getArchive(String fileName) {
+        return this.getArchive(Resources.getNtkDataDirectory(), fileName);
+    }
+
+    public DatFileHandler getArchive(String dataDirectory, String fileName) {
+        String filePath = dataDirectory + File.separator + fileName;
+        FutureTask<DatFileHandler> archiveTask = this.archives.computeIfAbsent(filePath,
+                key -> new FutureTask<DatFileHandler>(() -> new DatFileHandler(key)));
+
+        return await(archiveTask);
+    }
+
+    /**
+     * Asset bundle named by -Dtkviewer.bundle, opened on first use, or null if there is none (or it can't be opened).
+     */
+    public BundleFileHandler getBundle() {
+        try {
+            return await(this.bundle);
+        } catch (IllegalStateException ise) {
+            System.out.println("Unable to open asset bundle, using archives: " + ise.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Bundle at bundlePath, or null if there is none or an archive of dataDirectory was modified after it was compiled.
+     */
+    static BundleFileHandler openBundle(String bundlePath, String dataDirectory) {
+        if (bundlePath == null) {
+            return null;
+        }
+
+        File bundleFile = new File(bundlePath);
+        File[] datFiles = new File(dataDirectory).listFiles((directory, name) -> name.toLowerCase().endsWith(".dat"));
+        if (bundleFile.exists() && datFiles != null) {
+            for (File datFile : datFiles) {
+                if (datFile.lastModified() > bundleFile.lastModified()) {
+                    System.out.println("Asset bundle " + bundlePath + " is older than " + datFile + ", using archives");
+                    return null;
+                }
+            }
+        }
+
+        return new BundleFileHandler(bundleFile);
+    }
+
+    /**
+     * Frame index shared by every renderer, or null unless -Dtkviewer.dedup=true.
+     */
+    public FrameDedupIndex getFrameDedupIndex() {
+        return this.frameDedupIndex;
+    }
+
+    /**
+     * Future renderer for a GUI function, creation is queued on the warm-up pool if it hasn't started yet.
+     */
+    public Future<Object> getRenderer(Resources.GUI_LOADING_FUNCTION loadingFunction) {
+        boolean[] created = new boolean[1];
+        FutureTask<Object> rendererTask = this.renderers.computeIfAbsent(loadingFunction, key -> {
+            created[0] = true;
+            return new FutureTask<Object>(() -> {
+                Object renderer = createRenderer(key);
+                if (this.frameDedupIndex != null) {
+                    this.frameDedupIndex.dedup(renderer);
+                }
+                TKViewerMBeans.registerRenderer(key.name(), renderer);
+                return renderer;
+            });
+        });
+        if (created[0]) {
+            this.warmUpExecutor.execute(rendererTask);
+        }
+
+        return rendererTask;
+    }
+
+    /**
+     * Renderer for a GUI function, built on the calling thread if no one else has started it.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T awaitRenderer(Resources.GUI_LOADING_FUNCTION loadingFunction) {
+        return (T) await((FutureTask<Object>) this.getRenderer(loadingFunction));
+    }
+
+    /**
+     * Archives that finished loading.
+     */
+    public List<DatFileHandler> getOpenArchives() {
+        List<DatFileHandler> openArchives = new ArrayList<DatFileHandler>();
+        for (FutureTask<DatFileHandler> archiveTask : this.archives.values()) {
+            if (archiveTask.isDone()) {
+                try {
+                    openArchives.add(archiveTask.get());
+                } catch (InterruptedException | ExecutionException e) {
+                    // Failed archives aren't open
+                }
+            }
+        }
+
+        return openArchives;
+    }
+
+    /**
+     * Renderers that finished loading, by GUI function.
+     */
+    public Map<Resources.GUI_LOADING_FUNCTION, Object> getLoadedRenderers() {
+        Map<Resources.GUI_LOADING_FUNCTION, Object> loadedRenderers = new EnumMap<Resources.GUI_LOADING_FUNCTION, Object>(Resources.GUI_LOADING_FUNCTION.class);
+        for (Map.Entry<Resources.GUI_LOADING_FUNCTION, FutureTask<Object>> entry : this.renderers.entrySet()) {
+            if (entry.getValue().isDone()) {
+                try {
+                    loadedRenderers.put(entry.getKey(), entry.getValue().get());
+                } catch (InterruptedException | ExecutionException e) {
+                    // Failed renderers aren't loaded
+                }
+            }
+        }
+
+        return loadedRenderers;
+    }
+
+    public boolean isReady(Resources.GUI_LOADING_FUNCTION loadingFunction) {
+        FutureTask<Object> rendererTask = this.renderers.get(loadingFunction);
+
+        return rendererTask != null && rendererTask.isDone();
+    }
+
+    /**
+     * Starts building every given renderer in the background and returns immediately.
+     */
+    public List<Future<Object>> warmUp(Resources.GUI_LOADING_FUNCTION... loadingFunctions) {
+        List<Future<Object>> futures = new ArrayList<Future<Object>>();
+        for (Resources.GUI_LOADING_FUNCTION loadingFunction : loadingFunctions) {
+            futures.add(this.getRenderer(loadingFunction));
+        }
+
+        return futures;
+    }
+
+    /**
+     * Disposes every loaded renderer and closes every open archive, then forgets them all. Renderers handed out before
+     * must no longer be used.
+     */
+    public void clear() {
+        TKViewerMBeans.unregisterRenderers();
+        for (Object renderer : this.getLoadedRenderers().values()) {
+            dispose(renderer);
+        }
+        for (DatFileHandler archive : this.getOpenArchives()) {
+            archive.close();
+        }
+        this.renderers.clear();
+        this.bundledRenderers.clear();
+        this.archives.clear();
+        if (this.frameDedupIndex != null) {
+            this.frameDedupIndex.clear();
+        }
+    }
+
+    static void dispose(Object renderer) {
+        if (renderer instanceof List) {
+            for (Object listedRenderer : (List<?>) renderer) {
+                dispose(listedRenderer);
+            }
+            return;
+        }
+
+        synchronized (renderer) {
+            if (renderer instanceof Renderer) {
+                ((Renderer) renderer).dispose();
+            } else if (renderer instanceof MapRenderer) {
+                ((MapRenderer) renderer).dispose();
+            }
+        }
+    }
+
+    /**
+     * Reopens a changed archive of the data directory and swaps it into every loaded renderer that read from it, only
+     * invalidating the images derived from it (see ArchiveReloader). Returns how many handlers were replaced.
+     */
+    public int reloadArchive(File datFile) {
+        ArchiveReloader reloader;
+        DatFileHandler oldArchive = null;
+        String filePath = Resources.getNtkDataDirectory() + File.separator + datFile.getName();
+        FutureTask<DatFileHandler> archiveTask = this.archives.get(filePath);
+        if (archiveTask != null && archiveTask.isDone()) {
+            // Shared archive (char.dat, tile.dat...): renderers created from now on get the new one too
+            oldArchive = await(archiveTask);
+            FutureTask<DatFileHandler> reloadedTask = new FutureTask<DatFileHandler>(() -> new DatFileHandler(datFile));
+            DatFileHandler newArchive = await(reloadedTask);
+            this.archives.put(filePath, reloadedTask);
+            reloader = new ArchiveReloader(oldArchive, newArchive);
+        } else {
+            reloader = new ArchiveReloader(datFile);
+        }
+        this.dropBundle(datFile);
+
+        // Renderers aren't thread-safe, callers render holding the renderer's lock (each one of a list)
+        for (Object loaded : this.getLoadedRenderers().values()) {
+            List<?> renderers = loaded instanceof List ? (List<?>) loaded : Collections.singletonList(loaded);
+            for (Object renderer : renderers) {
+                synchronized (renderer) {
+                    if (reloader.reload(renderer) && this.frameDedupIndex != null) {
+                        this.frameDedupIndex.dedup(renderer);
+                    }
+                }
+            }
+        }
+        // No loaded renderer reads from the replaced handlers any more
+        reloader.close();
+
+        return reloader.replacedCount;
+    }
+
+    /**
+     * Stops using the bundle once an archive it was compiled from changed: renderers built from it are disposed and
+     * rebuilt from the archives (callers holding one have to ask the registry again), and the bundle is closed.
+     */
+    void dropBundle(File datFile) {
+        FutureTask<BundleFileHandler> bundleTask = this.bundle;
+        BundleFileHandler oldBundle = bundleTask.isDone() ? this.getBundle() : null;
+        if (oldBundle == null) {
+            return;
+        }
+
+        System.out.println("Asset bundle is older than " + datFile + ", rebuilding its renderers from archives");
+        FutureTask<BundleFileHandler> noBundle = new FutureTask<BundleFileHandler>(() -> null);
+        noBundle.run();
+        this.bundle = noBundle;
+        for (Resources.GUI_LOADING_FUNCTION loadingFunction : this.bundledRenderers) {
+            this.bundledRenderers.remove(loadingFunction);
+            FutureTask<Object> bundledTask = this.renderers.remove(loadingFunction);
+            this.getRenderer(loadingFunction);
+            if (bundledTask != null && bundledTask.isDone()) {
+                try {
+                    dispose(bundledTask.get());
+                } catch (InterruptedException | ExecutionException e) {
+                    // Failed renderers have nothing to dispose
+                }
+            }
+        }
+        oldBundle.close();
+    }
+
+    /**
+     * Starts reloading changed archives of the data directory (and notifying listeners of changed maps), unless
+     * -Dtkviewer.watch=false. Returns the watcher, or null if watching is disabled or unavailable.
+     */
+    public synchronized ArchiveWatcher startWatching() {
+        if (this.archiveWatcher == null && !"false".equals(System.getProperty("tkviewer.watch"))) {
+            try {
+                this.archiveWatcher = new ArchiveWatcher(this, Resources.getNtkDataDirectory(), Resources.NTK_MAP_DIRECTORY);
+                this.archiveWatcher.start();
+            } catch (IOException ioe) {
+                System.out.println("Unable to watch " + Resources.getNtkDataDirectory() + ": " + ioe);
+            }
+        }
+
+        return this.archiveWatcher;
+    }
+
+    /**
+     * Watcher started by startWatching(), or null if archives aren't being watched.
+     */
+    public synchronized ArchiveWatcher getArchiveWatcher() {
+        return this.archiveWatcher;
+    }
+
+    Object createRenderer(Resources.GUI_LOADING_FUNCTION loadingFunction) {
+        BundleFileHandler bundle = this.getBundle();
+        if (bundle != null) {
+            Object renderer = createBundledRenderer(bundle, loadingFunction);
+            if (renderer != null) {
+                this.bundledRenderers.add(loadingFunction);
+                return renderer;
+            }
+        }
+
+        switch (loadingFunction) {
+            case BODIES:
+                return RenderUtils.createBodyRenderer();
+            case BOWS:
+                return RenderUtils.createBowRenderer();
+            case COATS:
+                return RenderUtils.createCoatRenderer();
+            case EFFECTS:
+                return RenderUtils.createEffectRenderer();
+            case FACES:
+                return RenderUtils.createFaceRenderer();
+            case FACE_DEC:
+                return RenderUtils.createFaceDecRenderer();
+            case FANS:
+                return RenderUtils.createFanRenderer();
+            case HAIR:
+                return RenderUtils.createHairRenderer();
+            case HELMETS:
+                return RenderUtils.createHelmetRenderer();
+            case ITEMS:
+                return RenderUtils.createItemRenderer();
+            case LEGEND_RESOURCES:
+                return RenderUtils.createLegendResourceRenderer();
+            case SAN_RESOURCES:
+                return RenderUtils.createSanResourceRenderer();
+            case MANTLES:
+                return RenderUtils.createMantleRenderer();
+            case MAPS:
+                return RenderUtils.createMapRenderer();
+            case MOBS:
+                return RenderUtils.createMobRenderer();
+            case MINI_MAP_RESOURCES:
+                return RenderUtils.createMiniMapResourceRenderers();
+            case SPEARS:
+                return RenderUtils.createSpearRenderer();
+            case SHIELDS:
+                return RenderUtils.createShieldRenderer();
+            case SHOES:
+                return RenderUtils.createShoeRenderer();
+            case SWORDS:
+                return RenderUtils.createSwordRenderer();
+            case WORLD_MAPS:
+                return RenderUtils.createWorldMapRenderers();
+            default:
+                throw new IllegalArgumentException("No renderer for " + loadingFunction);
+        }
+    }
+
+    /**
+     * Renderer for a GUI function built from the bundle, or null if the bundle doesn't have everything it needs.
+     */
+    static Object createBundledRenderer(BundleFileHandler bundle, Resources.GUI_LOADING_FUNCTION loadingFunction) {
+        String partName = BUNDLED_PARTS.get(loadingFunction);
+        if (partName != null) {
+            if (!bundle.contains(partName + "0.epf") || !bundle.contains(partName + ".pal") || !bundle.contains(partName + ".dsc")) {
+                return null;
+            }
+            return new PartRenderer(bundle.getEpfs(partName), bundle.getPal(partName + ".pal"), bundle.getDsc(partName + ".dsc"));
+        }
+
+        switch (loadingFunction) {
+            case MOBS:
+                if (!bundle.contains("mon0.epf") || !bundle.contains("monster.pal") || !bundle.contains("monster.dna")) {
+                    return null;
+                }
+                return new MobRenderer(bundle.getEpfs("mon"), bundle.getPal("monster.pal"), bundle.getDna("monster.dna"));
+            case MAPS:
+                if (!bundle.contains("tile0.epf") || !bundle.contains("tile.pal") || !bundle.contains("tile.tbl")
+                        || !bundle.contains("tilec0.epf") || !bundle.contains("TileC.pal") || !bundle.contains("TILEC.TBL")
+                        || !bundle.contains("SObj.tbl")) {
+                    return null;
+                }
+                TileRenderer tileRenderer = new TileRenderer(bundle.getEpfs("tile"), bundle.getPal("tile.pal"), bundle.getTileTbl("tile.tbl"));
+                TileRenderer sObjTileRenderer = new TileRenderer(bundle.getEpfs("tilec"), bundle.getPal("TileC.pal"), bundle.getTileTbl("TILEC.TBL"));
+                return new MapRenderer(tileRenderer, new SObjRenderer(sObjTileRenderer, bundle.getSObjTbl("SObj.tbl")));
+            case EFFECTS:
+                if (!bundle.contains("EFFECT0.epf") || !bundle.contains("EFFECT.PAL") || !bundle.contains("effect.tbl")
+                        || !bundle.contains("EFFECT.FRM")) {
+                    return null;
+                }
+                return new EffectRenderer(bundle.getEpfs("EFFECT"), bundle.getPal("EFFECT.PAL"),
+                        bundle.getEfxTbl("effect.tbl"), bundle.getFrm("EFFECT.FRM"));
+            default:
+                return null;
+        }
+    }
+
+    private static <T> T await(FutureTask<T> task) {
+        // No-op if another thread already ran (or is running) it
+        task.run();
+        try {
+            return task.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while loading", ie);
+        } catch (ExecutionException ee) {
+            throw new IllegalStateException("Unable to load: " + ee.getCause(), ee.getCause());
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.gamemode.tkviewer.render;
+
+import com.gamemode.tkviewer.Frame;
+import com.gamemode.tkviewer.SObject;
+import com.gamemode.tkviewer.resources.Resources;
+import com.gamemode.tkviewer.utilities.FileUtils;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Every Static Object in SObj.tbl pre-composited onto a few large pages, with a rectangle index per object.
+ *
+ * Objects are TILE_DIM wide, so pages are packed as TILE_DIM wide columns filled top to bottom.
+ */
+public class SObjAtlas {
+
+    public static final int PAGE_SIZE = 2048;
+
+    public List<BufferedImage> pages;
+
+    // Per SObj index, null when the object has no tiles (or does not fit on a page)
+    public Rectangle[] bounds;
+    public int[] pageIndices;
+
+    public SObjAtlas(SObjRenderer sObjRenderer) {
+        List<SObject> objects = sObjRenderer.tileSObjTbl.objects;
+        TileRenderer tileRenderer = sObjRenderer.tileRenderer;
+
+        this.bounds = new Rectangle[objects.size()];
+        this.pageIndices = new int[objects.size()];
+        this.pages = new ArrayList<BufferedImage>();
+
+        // Layout (columns of TILE_DIM, top to bottom)
+        int pageCount = 0;
+        int columnX = 0;
+        int columnY = 0;
+        for (int i = 0; i < objects.size(); i++) {
+            int sObjHeight = objects.get(i).getHeight() * Resources.TILE_DIM;
+            if (sObjHeight <= 0 || sObjHeight > PAGE_SIZE) {
+                this.pageIndices[i] = -1;
+                continue;
+            }
+
+            if (columnY + sObjHeight > PAGE_SIZE) {
+                columnX += Resources.TILE_DIM;
+                columnY = 0;
+            }
+            if (columnX + Resources.TILE_DIM > PAGE_SIZE || pageCount == 0) {
+                pageCount++;
+                columnX = 0;
+                columnY = 0;
+            }
+
+            this.bounds[i] = new Rectangle(columnX, columnY, Resources.TILE_DIM, sObjHeight);
+            this.pageIndices[i] = pageCount - 1;
+            columnY += sObjHeight;
+        }
+
+        // Decode tiles up front, EPFs share a read position so they can't be decoded concurrently
+        Map<Integer, BufferedImage> tileImages = new HashMap<Integer, BufferedImage>();
+        Map<Integer, Frame> tileFrames = new HashMap<Integer, Frame>();
+        for (int i = 0; i < objects.size(); i++) {
+            if (this.bounds[i] == null) {
+                continue;
+            }
+            for (int tileIndex : objects.get(i).getTileIndices()) {
+                if (tileIndex > -1 && !tileImages.containsKey(tileIndex)) {
+                    tileImages.put(tileIndex, tileRenderer.renderTile(tileIndex));
+                    tileFrames.put(tileIndex, FileUtils.getFrameFromEpfs(tileIndex, tileRenderer.tileEpfs));
+                }
+            }
+        }
+
+        // Composite each page on its own thread
+        for (int i = 0; i < pageCount; i++) {
+            this.pages.add(new BufferedImage(PAGE_SIZE, PAGE_SIZE, BufferedImage.TYPE_INT_ARGB));
+        }
+        IntStream.range(0, pageCount).parallel().forEach(page -> {
+            Graphics2D graphicsObject = this.pages.get(page).createGraphics();
+            for (int i = 0; i < objects.size(); i++) {
+                if (this.bounds[i] == null || this.pageIndices[i] != page) {
+                    continue;
+                }
+
+                Rectangle rectangle = this.bounds[i];
+                SObject sObj = objects.get(i);
+                int sObjHeight = sObj.getHeight();
+                graphicsObject.setClip(rectangle);
+                for (int j = 0; j < sObjHeight; j++) {
+                    int tileIndex = sObj.getTileIndices().get(j);
+                    if (tileIndex > -1) {
+                        Frame frame = tileFrames.get(tileIndex);
+                        graphicsObject.drawImage(
+                                tileImages.get(tileIndex),
+                                null,
+                                rectangle.x + frame.getLeft(),
+                                rectangle.y + (sObjHeight - j - 1) * Resources.TILE_DIM + frame.getTop());
+                    }
+                }
+            }
+            graphicsObject.dispose();
+        });
+    }
+
+    public boolean contains(int sObjIndex) {
+        return sObjIndex >= 0 && sObjIndex < this.bounds.length && this.bounds[sObjIndex] != null;
+    }
+
+    /**
+     * Blits the Static Object's rectangle from its page with (x, y) as the top-left corner.
+     */
+    public void drawSObject(Graphics2D graphicsObject, int sObjIndex, int x, int y) {
+        Rectangle rectangle = this.bounds[sObjIndex];
+        graphicsObject.drawImage(this.pages.get(this.pageIndices[sObjIndex]),
+                x, y, x + rectangle.width, y + rectangle.height,
+                rectangle.x, rectangle.y, rectangle.x + rectangle.width, rectangle.y + rectangle.height,
+                null);
+    }
+
+    public BufferedImage getSObject(int sObjIndex) {
+        Rectangle rectangle = this.bounds[sObjIndex];
+
+        return this.pages.get(this.pageIndices[sObjIndex])
+                .getSubimage(rectangle.x, rectangle.y, rectangle.width, rectangle.height);
+    }
+}
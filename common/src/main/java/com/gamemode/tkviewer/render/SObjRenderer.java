@@ -3,54 +3,86 @@ package com.gamemode.tkviewer.render;
 import com.gamemode.tkviewer.Frame;
 import com.gamemode.tkviewer.file_handlers.DatFileHandler;
 import com.gamemode.tkviewer.file_handlers.SObjTblFileHandler;
+import com.gamemode.tkviewer.management.FlightEvents;
 import com.gamemode.tkviewer.resources.Resources;
 import com.gamemode.tkviewer.SObject;
 import com.gamemode.tkviewer.utilities.FileUtils;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.io.File;
-import java.util.HashMap;
-import java.util.Map;
+import java.awt.image.IndexColorModel;
 
 public class SObjRenderer {
 
-    Map<Integer, BufferedImage> sObjs;
+    // Static objects are composited from several tiles, the cache budget keeps them longer than tiles
+    public static final double COMPOSITE_WEIGHT = 4;
+
+    FrameCache sObjs;
+    RenderStats stats = new RenderStats();
 
     SObjTblFileHandler tileSObjTbl;
     TileRenderer tileRenderer;
+    SObjAtlas sObjAtlas;
 
     public SObjRenderer() {
-        DatFileHandler tileDat = new DatFileHandler(Resources.getNtkDataDirectory() + File.separator + "tile.dat");
+        DatFileHandler tileDat = RendererRegistry.getInstance().getArchive("tile.dat");
 
-        sObjs = new HashMap<Integer, BufferedImage>();
+        sObjs = new FrameCache();
+        sObjs.weight = COMPOSITE_WEIGHT;
 
         this.tileRenderer = new TileRenderer("tilec", "TileC.pal", "TILEC.TBL");
         this.tileSObjTbl = new SObjTblFileHandler(tileDat.getFile("SObj.tbl"));
     }
 
     public SObjRenderer(TileRenderer tileRenderer, SObjTblFileHandler tileSObjTbl) {
-        sObjs = new HashMap<Integer, BufferedImage>();
+        sObjs = new FrameCache();
+        sObjs.weight = COMPOSITE_WEIGHT;
 
         this.tileRenderer = tileRenderer;
         this.tileSObjTbl = tileSObjTbl;
     }
 
     public BufferedImage renderSObject(int sObjIndex) {
-        // Return Tile if cached.
-        if (sObjs.containsKey(sObjIndex)) {
-            return sObjs.get(sObjIndex);
+        return this.renderSObject(sObjIndex, true);
+    }
+
+    public BufferedImage renderSObject(int sObjIndex, boolean useCache) {
+        // Return Tile if cached (keyed by object index alone).
+        if (useCache) {
+            BufferedImage cachedSObj = sObjs.get(sObjIndex, 0);
+            if (cachedSObj != null) {
+                return cachedSObj;
+            }
         }
 
+        long startTime = System.nanoTime();
+        Object event = FlightEvents.beginSObjRender();
         SObject sObj = this.tileSObjTbl.objects.get(sObjIndex);
         int sObjHeight = sObj.getHeight();
 
+        BufferedImage image = this.sObjs.imageMode == FrameCache.ImageMode.INDEXED ? this.renderIndexedSObject(sObj, useCache) : null;
+        if (image == null) {
+            image = this.renderArgbSObject(sObj, useCache);
+        }
+
+        if (useCache) {
+            image = this.sObjs.put(sObjIndex, 0, image);
+        }
+        this.stats.addRender(startTime);
+        if (event != null) {
+            FlightEvents.commitSObjRender(event, sObjIndex, sObjHeight, IndexedImages.getImageBytes(image));
+        }
+        return image;
+    }
+
+    BufferedImage renderArgbSObject(SObject sObj, boolean useCache) {
+        int sObjHeight = sObj.getHeight();
         BufferedImage image = new BufferedImage(Resources.TILE_DIM, sObjHeight * Resources.TILE_DIM, BufferedImage.TYPE_INT_ARGB);
         Graphics2D graphicsObject = image.createGraphics();
         for (int i = 0; i < sObjHeight; i++) {
             int tileIndex = sObj.getTileIndices().get(i);
 
-            BufferedImage tile = this.tileRenderer.renderTile(tileIndex);
+            BufferedImage tile = this.tileRenderer.renderTile(tileIndex, 0, useCache);
             Frame frame = FileUtils.getFrameFromEpfs(tileIndex, this.tileRenderer.tileEpfs);
 
             if (tileIndex > -1) {
@@ -63,10 +95,98 @@ public class SObjRenderer {
             }
         }
 
-        this.sObjs.put(sObjIndex, image);
         return image;
     }
 
+    /**
+     * Static object composited in palette index space, or null if its tiles don't all use the same palette.
+     */
+    BufferedImage renderIndexedSObject(SObject sObj, boolean useCache) {
+        int sObjHeight = sObj.getHeight();
+        int paletteIndex = -1;
+        for (int i = 0; i < sObjHeight; i++) {
+            int tileIndex = sObj.getTileIndices().get(i);
+            if (tileIndex > -1) {
+                int tilePaletteIndex = this.tileRenderer.getPaletteIndex(tileIndex);
+                if (paletteIndex != -1 && tilePaletteIndex != paletteIndex) {
+                    return null;
+                }
+                paletteIndex = tilePaletteIndex;
+            }
+        }
+        if (paletteIndex == -1) {
+            return null;
+        }
+
+        int canvasHeight = sObjHeight * Resources.TILE_DIM;
+        IndexColorModel icm = IndexedImages.getColorModel(this.tileRenderer.tilePal.palettes.get(paletteIndex));
+        BufferedImage image = IndexedImages.createTransparent(Resources.TILE_DIM, canvasHeight, icm);
+        byte[] pixels = IndexedImages.getPixels(image);
+        for (int i = 0; i < sObjHeight; i++) {
+            int tileIndex = sObj.getTileIndices().get(i);
+            if (tileIndex <= -1) {
+                continue;
+            }
+
+            BufferedImage tile = this.tileRenderer.renderTile(tileIndex, 0, useCache);
+            if (tile.getType() != BufferedImage.TYPE_BYTE_INDEXED) {
+                return null;
+            }
+            Frame frame = FileUtils.getFrameFromEpfs(tileIndex, this.tileRenderer.tileEpfs);
+            byte[] tilePixels = IndexedImages.getPixels(tile);
+            int left = frame.getLeft();
+            int top = (sObjHeight - i - 1) * Resources.TILE_DIM + frame.getTop();
+
+            // Opaque tile pixels over what's below, clipped to the canvas
+            for (int y = Math.max(0, -top); y < tile.getHeight() && top + y < canvasHeight; y++) {
+                int tileOffset = y * tile.getWidth();
+                int canvasOffset = (top + y) * Resources.TILE_DIM + left;
+                for (int x = Math.max(0, -left); x < tile.getWidth() && left + x < Resources.TILE_DIM; x++) {
+                    byte pixel = tilePixels[tileOffset + x];
+                    if (pixel != (byte) IndexedImages.TRANSPARENT_INDEX) {
+                        pixels[canvasOffset + x] = pixel;
+                    }
+                }
+            }
+        }
+
+        return image;
+    }
+
+    /**
+     * Pre-bakes every Static Object into atlas pages, drawSObject will blit from the atlas afterwards.
+     */
+    public SObjAtlas prebake() {
+        if (this.sObjAtlas == null) {
+            this.sObjAtlas = new SObjAtlas(this);
+        }
+
+        return this.sObjAtlas;
+    }
+
+    public void drawSObject(Graphics2D graphicsObject, int sObjIndex, int x, int y) {
+        if (this.sObjAtlas != null && this.sObjAtlas.contains(sObjIndex)) {
+            this.sObjAtlas.drawSObject(graphicsObject, sObjIndex, x, y);
+        } else {
+            graphicsObject.drawImage(this.renderSObject(sObjIndex), null, x, y);
+        }
+    }
+
+    public SObjAtlas getSObjAtlas() {
+        return this.sObjAtlas;
+    }
+
+    /**
+     * Cache of rendered static objects and its hit/miss counters.
+     */
+    public FrameCache getFrameCache() {
+        return this.sObjs;
+    }
+
+    public RenderStats getRenderStats() {
+        return this.stats;
+    }
+
     public SObjTblFileHandler getTileSObjTbl() {
         return this.tileSObjTbl;
     }
@@ -76,6 +196,8 @@ public class SObjRenderer {
     }
 
     public void dispose() {
+        sObjAtlas = null;
+        sObjs.clear();
         tileRenderer.dispose();
         tileSObjTbl.close();
     }
@@ -1,27 +1,28 @@
 package com.gamemode.tkviewer.render;
 
 import com.gamemode.tkviewer.Frame;
-import com.gamemode.tkviewer.Palette;
 import com.gamemode.tkviewer.file_handlers.DatFileHandler;
 import com.gamemode.tkviewer.file_handlers.EpfFileHandler;
+import com.gamemode.tkviewer.file_handlers.FileHandler;
 import com.gamemode.tkviewer.file_handlers.FrmFileHandler;
 import com.gamemode.tkviewer.file_handlers.PalFileHandler;
 import com.gamemode.tkviewer.file_handlers.TileTblFileHandler;
+import com.gamemode.tkviewer.management.FlightEvents;
 import com.gamemode.tkviewer.resources.Resources;
 import com.gamemode.tkviewer.utilities.FileUtils;
 
 import java.awt.*;
 import java.awt.image.*;
-import java.io.File;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
 public class TileRenderer implements Renderer {
 
     public static int ALPHA = 0x0;
 
-    Map<Integer, BufferedImage> tiles;
+    FrameCache tiles;
+    RenderStats stats = new RenderStats();
 
     public List<EpfFileHandler> tileEpfs;
     public PalFileHandler tilePal;
@@ -33,9 +34,9 @@ public class TileRenderer implements Renderer {
     public TileRenderer(String epfPrefix) { this(epfPrefix, epfPrefix + ".pal", epfPrefix + ".tbl"); }
 
     public TileRenderer(String epfPrefix, String palName, String tblName) {
-        DatFileHandler tileDat = new DatFileHandler(Resources.getNtkDataDirectory() + File.separator + "tile.dat");
+        DatFileHandler tileDat = RendererRegistry.getInstance().getArchive("tile.dat");
 
-        tiles = new HashMap<Integer, BufferedImage>();
+        tiles = new FrameCache();
 
         this.tileEpfs = FileUtils.createEpfsFromDats(epfPrefix, false);
         this.tilePal = new PalFileHandler(tileDat.getFile(palName));
@@ -43,9 +44,9 @@ public class TileRenderer implements Renderer {
     }
 
     public TileRenderer(String epfPrefix, String palName, int manualPaletteIndex) {
-        DatFileHandler tileDat = new DatFileHandler(Resources.getNtkDataDirectory() + File.separator + "tile.dat");
+        DatFileHandler tileDat = RendererRegistry.getInstance().getArchive("tile.dat");
 
-        tiles = new HashMap<Integer, BufferedImage>();
+        tiles = new FrameCache();
 
         this.tileEpfs = FileUtils.createEpfsFromDats(epfPrefix, false);
         this.tilePal = new PalFileHandler(tileDat.getFile(palName));
@@ -53,7 +54,7 @@ public class TileRenderer implements Renderer {
     }
 
     public TileRenderer(List<EpfFileHandler> tileEpfs, PalFileHandler tilePal, TileTblFileHandler tileTbl) {
-        tiles = new HashMap<Integer, BufferedImage>();
+        tiles = new FrameCache();
 
         this.tileEpfs = tileEpfs;
         this.tilePal = tilePal;
@@ -61,7 +62,7 @@ public class TileRenderer implements Renderer {
     }
 
     public TileRenderer(List<EpfFileHandler> tileEpfs, PalFileHandler tilePal, FrmFileHandler tileFrm) {
-        tiles = new HashMap<Integer, BufferedImage>();
+        tiles = new FrameCache();
 
         this.tileEpfs = tileEpfs;
         this.tilePal = tilePal;
@@ -69,13 +70,27 @@ public class TileRenderer implements Renderer {
     }
 
     public TileRenderer(List<EpfFileHandler> tileEpfs, PalFileHandler tilePal, int manualPaletteIndex) {
-        tiles = new HashMap<Integer, BufferedImage>();
+        tiles = new FrameCache();
 
         this.tileEpfs = tileEpfs;
         this.tilePal = tilePal;
         this.manualPaletteIndex = manualPaletteIndex;
     }
 
+    /**
+     * Archives this renderer reads from (for cache keys).
+     */
+    public List<FileHandler> getSourceArchives() {
+        List<FileHandler> archives = new ArrayList<FileHandler>(this.tileEpfs);
+        for (FileHandler archive : Arrays.asList(this.tilePal, this.tileTbl, this.tileFrm)) {
+            if (archive != null) {
+                archives.add(archive);
+            }
+        }
+
+        return archives;
+    }
+
     public BufferedImage renderTile(int tileIndex) {
         return this.renderTile(tileIndex, 0);
     }
@@ -85,11 +100,19 @@ public class TileRenderer implements Renderer {
     }
 
     public BufferedImage renderTile(int tileIndex, int animationOffset, boolean useCache) {
-        // Return Tile if cached.
-        if (useCache && tiles.containsKey(tileIndex)) {
-            return tiles.get(tileIndex);
+        int paletteIndex = this.getPaletteIndex(tileIndex);
+
+        // Return Tile if cached (palette-cycled frames are never cached)
+        useCache = useCache && animationOffset == 0;
+        if (useCache) {
+            BufferedImage cachedTile = this.tiles.get(tileIndex, paletteIndex);
+            if (cachedTile != null) {
+                return cachedTile;
+            }
         }
 
+        long startTime = System.nanoTime();
+        Object event = FlightEvents.beginTileRender();
         int epfIndex = 0;
 
         int frameCount = 0;
@@ -102,7 +125,9 @@ public class TileRenderer implements Renderer {
             frameCount += this.tileEpfs.get(i).frameCount;
         }
 
+        long decodeStartTime = System.nanoTime();
         Frame frame = this.tileEpfs.get(epfIndex).getFrame(tileIndex - frameCount);
+        this.stats.addDecode(decodeStartTime);
         int width = frame.getWidth();
         int height = frame.getHeight();
 
@@ -116,9 +141,32 @@ public class TileRenderer implements Renderer {
             }
 
             image.setRGB(0, 0, Resources.TILE_DIM, Resources.TILE_DIM, pixels, 0, Resources.TILE_DIM);
+            this.stats.addRender(startTime);
+            this.commitRenderEvent(event, epfIndex, tileIndex, paletteIndex, animationOffset, 0);
             return image;
         }
         // Else
+        IndexColorModel icm = IndexedImages.getColorModel(this.tilePal.palettes.get(paletteIndex));
+
+        image = IndexedImages.create(frame, icm, animationOffset);
+
+        if (useCache) {
+            image = this.tiles.put(tileIndex, paletteIndex, image);
+        }
+        this.stats.addRender(startTime);
+        this.commitRenderEvent(event, epfIndex, tileIndex, paletteIndex, animationOffset, width * height);
+        return image;
+    }
+
+    private void commitRenderEvent(Object event, int epfIndex, int tileIndex, int paletteIndex, int animationOffset,
+                                   int pixelBytes) {
+        if (event != null) {
+            FlightEvents.commitTileRender(event, this.tileEpfs.get(epfIndex).filePath, tileIndex, paletteIndex,
+                    animationOffset, pixelBytes);
+        }
+    }
+
+    int getPaletteIndex(int tileIndex) {
         int paletteIndex = this.manualPaletteIndex;
         if (this.isFrmHandled()) {
             paletteIndex = this.tileFrm.paletteIndices.get(tileIndex);
@@ -128,40 +176,8 @@ public class TileRenderer implements Renderer {
         if (paletteIndex > this.tilePal.paletteCount) {
             paletteIndex = 0;
         }
-        Palette palette = this.tilePal.palettes.get(paletteIndex);
-        IndexColorModel icm = new IndexColorModel(
-                8,
-                256,
-                palette.getRedBytes(),
-                palette.getGreenBytes(),
-                palette.getBlueBytes(),
-                Transparency.TRANSLUCENT);
-
-        byte[] dataBuffer = frame.getRawPixelData().array();
-        if (animationOffset != 0) {
-            for (int i = 0; i < dataBuffer.length; i++) {
-                byte b = dataBuffer[i];
-                b += animationOffset;
-                dataBuffer[i] = b;
-            }
-        }
-
-        DataBufferByte buffer = new DataBufferByte(dataBuffer, dataBuffer.length);
-        WritableRaster raster = Raster.createPackedRaster(buffer, width, height, 8, null);
-
-        image = new BufferedImage(icm, raster, icm.isAlphaPremultiplied(), null);
-        for (int y = 0; y < image.getHeight(); ++y) {
-            for (int x = 0; x < image.getWidth(); ++x) {
-                if (!frame.getStencil().rows.get(y)[x]) {
-                    image.setRGB(x, y, ALPHA);
-                }
-            }
-        }
 
-        if (useCache) {
-            this.tiles.put(tileIndex, image);
-        }
-        return image;
+        return paletteIndex;
     }
 
     private boolean isFrmHandled() {
@@ -170,6 +186,17 @@ public class TileRenderer implements Renderer {
 
     private boolean isTblHandled() { return (this.tileTbl != null); }
 
+    /**
+     * Cache of rendered tiles and its hit/miss counters.
+     */
+    public FrameCache getFrameCache() {
+        return this.tiles;
+    }
+
+    public RenderStats getRenderStats() {
+        return this.stats;
+    }
+
     public TileTblFileHandler getTblFileHandler() {
         return this.tileTbl;
     }
@@ -230,7 +257,9 @@ public class TileRenderer implements Renderer {
 
     @Override
     public void dispose() {
+        tiles.clear();
         for (EpfFileHandler epf : tileEpfs) {
+            epf.releaseFrames();
             epf.close();
         }
         if (tilePal != null) {
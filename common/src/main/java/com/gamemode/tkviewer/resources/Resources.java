@@ -69,16 +69,19 @@ public class Resources {
 
     public static final String NTK_DATA_DIRECTORY = PROGRAM_FILES_X86 + File.separator + "KRU" + File.separator + "NexusTK" + File.separator + "Data";
     public static final String NTK_LINUX_DATA_DIRECTORY = System.getProperty("user.home") + File.separator + "NexusTK" + File.separator + "Data";
+    // -Dtkviewer.data / -Dtkviewer.maps point at another client (e.g. one written by TKAssetGenerator)
     public static String getNtkDataDirectory() {
-        return System.getProperty("os.name").contains("Windows") ? Resources.NTK_DATA_DIRECTORY : Resources.NTK_LINUX_DATA_DIRECTORY;
+        return System.getProperty("tkviewer.data",
+                System.getProperty("os.name").contains("Windows") ? Resources.NTK_DATA_DIRECTORY : Resources.NTK_LINUX_DATA_DIRECTORY);
     }
     public static final String BARAM_DATA_DIRECTORY = C + File.separator + "Nexon\\Kingdom of the Winds\\Data";
-    public static final String NTK_MAP_DIRECTORY = System.getProperty("user.home") + File.separator + "Documents" + File.separator +  "NexusTK"  + File.separator + "Maps";
+    public static final String NTK_MAP_DIRECTORY = System.getProperty("tkviewer.maps", System.getProperty("user.home") + File.separator + "Documents" + File.separator +  "NexusTK"  + File.separator + "Maps");
     public static final String TKVIEWER_DIRECTORY = System.getProperty("java.io.tmpdir") + File.separator + "TKViewer";
     public static final String DATA_DIRECTORY = TKVIEWER_DIRECTORY + File.separator + "Data";
     public static final String EFFECT_ANIMATION_DIRECTORY = TKVIEWER_DIRECTORY + File.separator + "Effect-Animations";
     public static final String MOB_ANIMATION_DIRECTORY = TKVIEWER_DIRECTORY + File.separator + "Mob-Animations";
     public static final String PART_ANIMATION_DIRECTORY = TKVIEWER_DIRECTORY + File.separator + "Part-Animations";
+    public static final String CACHE_DIRECTORY = TKVIEWER_DIRECTORY + File.separator + "Cache";
 
     public static final String CLIENT_ICON = "client_icon.png";
 
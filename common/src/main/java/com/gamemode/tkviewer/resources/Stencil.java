@@ -1,10 +1,12 @@
 package com.gamemode.tkviewer.resources;
 
 import com.gamemode.tkviewer.file_handlers.EpfFileHandler;
+import com.gamemode.tkviewer.management.FlightEvents;
 
 import java.awt.*;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class Stencil {
@@ -12,9 +14,32 @@ public class Stencil {
     public static final int MASK = 0x80; // Hex representation of binary: 10000000
 
     public ByteBuffer rawStencilData;
+    // Decoded rows, null when the stencil is kept as spans
     public List<boolean[]> rows;
+    // Drawn runs, little-endian: (height + 1) int row starts then a (short x, short length) per run, null with rows
+    public ByteBuffer spans;
+    int spanTable;
+
+    /**
+     * Already decoded rows, with the encoded stencil they came from.
+     */
+    public Stencil(List<boolean[]> rows, ByteBuffer rawStencilData) {
+        this.rows = rows;
+        this.rawStencilData = rawStencilData;
+    }
+
+    /**
+     * Drawn runs (off-heap or mapped, see FrameArena and BundleEpfFileHandler), with the encoded stencil.
+     */
+    public Stencil(ByteBuffer spans, ByteBuffer rawStencilData, int height) {
+        this.spans = spans;
+        this.spanTable = (height + 1) * 4;
+        this.rawStencilData = rawStencilData;
+    }
 
     public Stencil(EpfFileHandler epfFileHandler, Long stencilDataOffset, Dimension dimensions) {
+        Object event = FlightEvents.beginStencilDecode();
+
         // Seek to Stencil Data
         epfFileHandler.seek(EpfFileHandler.HEADER_SIZE + stencilDataOffset, true);
 
@@ -72,6 +97,41 @@ public class Stencil {
         for (Byte b : rawStencilDataArray) {
             rawStencilData.put(b);
         }
+
+        FlightEvents.commitStencilDecode(event, epfFileHandler.filePath, stencilDataOffset, (int) dimensions.getWidth(),
+                (int) dimensions.getHeight(), rawStencilData.capacity());
+    }
+
+    /**
+     * Row y: the decoded row itself, or row (width long) filled from the spans.
+     */
+    public boolean[] getRow(int y, boolean[] row) {
+        if (this.rows != null) {
+            return this.rows.get(y);
+        }
+
+        Arrays.fill(row, false);
+        for (int span = this.getSpanStart(y); span < this.getSpanStart(y + 1); span++) {
+            int x = this.getSpanX(span);
+            Arrays.fill(row, x, x + this.getSpanLength(span), true);
+        }
+
+        return row;
+    }
+
+    /**
+     * First run of row y (runs of row y end at getSpanStart(y + 1)), spans only.
+     */
+    public int getSpanStart(int y) {
+        return this.spans.getInt(y * 4);
+    }
+
+    public int getSpanX(int span) {
+        return this.spans.getShort(this.spanTable + (span * 4)) & 0xFFFF;
+    }
+
+    public int getSpanLength(int span) {
+        return this.spans.getShort(this.spanTable + (span * 4) + 2) & 0xFFFF;
     }
 
     public ByteBuffer toByteBuffer() {
@@ -0,0 +1,266 @@
+package com.gamemode.tkviewer.utilities;
+
+import com.gamemode.tkviewer.Palette;
+import com.gamemode.tkviewer.file_handlers.FileHandler;
+import com.gamemode.tkviewer.resources.Resources;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Size-bounded, content-addressed disk cache for rendered output (e.g. animation GIFs).
+ *
+ * Entries are keyed by a hash of the source archive identity plus the render parameters, so changed data never hits
+ * a stale entry. The index file is read once, after which lookups never touch the file system; least recently used
+ * entries are evicted on a background thread once the byte budget is exceeded.
+ */
+public class DiskCache {
+
+    public static final long DEFAULT_BUDGET_BYTES = 256L * 1024 * 1024;
+    public static final String INDEX_FILE = "index";
+
+    private static DiskCache instance;
+
+    public File directory;
+    public long budgetBytes;
+    public long usedBytes = 0;
+
+    // Key -> Size (access ordered, eldest first)
+    LinkedHashMap<String, Long> entries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+
+    ExecutorService evictionExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "DiskCache-Eviction");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Archive identities are expensive for in-memory archives, compute once per handler
+    private static final Map<FileHandler, String> archiveIdentities = new WeakHashMap<FileHandler, String>();
+
+    public DiskCache(File directory, long budgetBytes) {
+        this.directory = directory;
+        this.budgetBytes = budgetBytes;
+
+        this.loadIndex();
+    }
+
+    public static synchronized DiskCache getInstance() {
+        if (instance == null) {
+            instance = new DiskCache(new File(Resources.CACHE_DIRECTORY), DEFAULT_BUDGET_BYTES);
+        }
+
+        return instance;
+    }
+
+    /**
+     * Hashes every part (archive identities, indices, palettes...) into a single cache key.
+     */
+    public static String key(Object... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            for (Object part : parts) {
+                digest.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+
+            StringBuilder stringBuilder = new StringBuilder();
+            for (byte b : digest.digest()) {
+                stringBuilder.append(String.format("%02x", b));
+            }
+            return stringBuilder.toString();
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new IllegalStateException("SHA-1 not available", nsae);
+        }
+    }
+
+    /**
+     * Identifies the archives' contents: path, size and modification time for files, a CRC of the bytes otherwise.
+     */
+    public static String archiveIdentity(List<? extends FileHandler> fileHandlers) {
+        StringBuilder stringBuilder = new StringBuilder();
+        for (FileHandler fileHandler : fileHandlers) {
+            stringBuilder.append(archiveIdentity(fileHandler)).append(';');
+        }
+
+        return stringBuilder.toString();
+    }
+
+    public static String archiveIdentity(FileHandler fileHandler) {
+        if (fileHandler.file != null) {
+            return fileHandler.file.getAbsolutePath() + ":" + fileHandler.file.length() + ":" + fileHandler.file.lastModified();
+        }
+
+        synchronized (archiveIdentities) {
+            String identity = archiveIdentities.get(fileHandler);
+            if (identity == null) {
+                CRC32 crc = new CRC32();
+                ByteBuffer bytes = fileHandler.bytes.duplicate();
+                bytes.clear();
+                crc.update(bytes);
+                identity = fileHandler.bytes.capacity() + ":" + Long.toHexString(crc.getValue());
+                archiveIdentities.put(fileHandler, identity);
+            }
+
+            return identity;
+        }
+    }
+
+    public static String paletteIdentity(Palette palette) {
+        if (palette == null) {
+            return "null";
+        }
+
+        return Arrays.toString(palette.getRedBytes()) + Arrays.toString(palette.getGreenBytes()) + Arrays.toString(palette.getBlueBytes());
+    }
+
+    /**
+     * Cached file for key, or null. Only the in-memory index is consulted.
+     */
+    public synchronized File get(String key) {
+        if (this.entries.get(key) == null) {
+            return null;
+        }
+
+        return new File(this.directory, key);
+    }
+
+    /**
+     * Cached file for key, creating it with writer (given an empty temporary file to fill) on a miss.
+     */
+    public File getOrCreate(String key, Consumer<File> writer) {
+        File cachedFile = this.get(key);
+        if (cachedFile != null) {
+            return cachedFile;
+        }
+
+        return this.put(key, writer);
+    }
+
+    public File put(String key, Consumer<File> writer) {
+        if (!this.directory.exists()) {
+            this.directory.mkdirs();
+        }
+
+        File cachedFile = new File(this.directory, key);
+        File temporaryFile;
+        try {
+            // One per writer, so concurrent writers of a key never write the same file
+            temporaryFile = File.createTempFile(key, ".tmp", this.directory);
+        } catch (IOException ioe) {
+            System.out.println("Unable to create cache file: " + ioe);
+            return null;
+        }
+        writer.accept(temporaryFile);
+        if (temporaryFile.length() == 0) {
+            // Nothing written
+            temporaryFile.delete();
+            return null;
+        }
+
+        try {
+            // A plain rename: REPLACE_EXISTING deletes the target first, which fails when another writer just did
+            Files.move(temporaryFile.toPath(), cachedFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ioe) {
+            System.out.println("Unable to move cache file: " + ioe);
+            temporaryFile.delete();
+            return null;
+        }
+
+        synchronized (this) {
+            Long previousSize = this.entries.put(key, cachedFile.length());
+            if (previousSize != null) {
+                this.usedBytes -= previousSize;
+            }
+            this.usedBytes += cachedFile.length();
+        }
+        this.evictionExecutor.submit(this::evictAndSave);
+
+        return cachedFile;
+    }
+
+    /**
+     * Drops an entry whose file has gone missing (e.g. deleted outside of TKViewer).
+     */
+    public synchronized void remove(String key) {
+        Long size = this.entries.remove(key);
+        if (size != null) {
+            this.usedBytes -= size;
+            new File(this.directory, key).delete();
+        }
+    }
+
+    public synchronized void clear() {
+        for (String key : this.entries.keySet()) {
+            new File(this.directory, key).delete();
+        }
+        this.entries.clear();
+        this.usedBytes = 0;
+        new File(this.directory, INDEX_FILE).delete();
+    }
+
+    void evictAndSave() {
+        List<String> evictedKeys = new ArrayList<String>();
+        List<String> indexLines = new ArrayList<String>();
+        synchronized (this) {
+            Iterator<Map.Entry<String, Long>> iterator = this.entries.entrySet().iterator();
+            while (this.usedBytes > this.budgetBytes && iterator.hasNext()) {
+                Map.Entry<String, Long> eldest = iterator.next();
+                this.usedBytes -= eldest.getValue();
+                evictedKeys.add(eldest.getKey());
+                iterator.remove();
+            }
+
+            for (Map.Entry<String, Long> entry : this.entries.entrySet()) {
+                indexLines.add(entry.getKey() + " " + entry.getValue());
+            }
+        }
+
+        // File I/O happens outside the lock
+        for (String key : evictedKeys) {
+            new File(this.directory, key).delete();
+        }
+
+        File indexFile = new File(this.directory, INDEX_FILE);
+        File temporaryIndexFile = new File(this.directory, INDEX_FILE + ".tmp");
+        try {
+            Files.write(temporaryIndexFile.toPath(), indexLines, StandardCharsets.UTF_8);
+            Files.move(temporaryIndexFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ioe) {
+            System.out.println("Unable to write cache index: " + ioe);
+        }
+    }
+
+    void loadIndex() {
+        File indexFile = new File(this.directory, INDEX_FILE);
+        if (!indexFile.exists()) {
+            return;
+        }
+
+        try {
+            for (String line : Files.readAllLines(indexFile.toPath(), StandardCharsets.UTF_8)) {
+                String[] fields = line.split(" ");
+                if (fields.length != 2) {
+                    continue;
+                }
+
+                long size = Long.parseLong(fields[1]);
+                this.entries.put(fields[0], size);
+                this.usedBytes += size;
+            }
+        } catch (IOException | NumberFormatException e) {
+            System.out.println("Unable to read cache index: " + e);
+            this.entries.clear();
+            this.usedBytes = 0;
+        }
+    }
+}
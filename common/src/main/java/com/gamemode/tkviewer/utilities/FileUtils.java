@@ -13,6 +13,7 @@ import com.gamemode.tkviewer.third_party.GifSequenceWriter;
 
 import javax.imageio.*;
 import javax.imageio.stream.*;
+import java.awt.Rectangle;
 import java.awt.image.*;
 import java.io.FileWriter;
 import java.io.*;
@@ -46,6 +47,7 @@ public class FileUtils {
         for (int i = 0; i < datFileHandlers.size(); i++) {
             ByteBuffer b = datFileHandlers.get(i).getFile(epfPrefix + i + "." + extension);
             EpfFileHandler epf = new EpfFileHandler(b, epfPrefix + i + "." + extension);
+            epf.archive = datFileHandlers.get(i);
             epfFileHandlers.add(epf);
         }
 
@@ -190,6 +192,26 @@ public class FileUtils {
         return getEpfs(dataDirectory, "tilec");
     }
 
+    /**
+     * Bounds of a frame from the EPFs' frame tables (see EpfFileHandler.getFrameBounds), null if out of range.
+     */
+    public static Rectangle getFrameBoundsFromEpfs(int index, List<EpfFileHandler> epfFiles) {
+        if (index < 0) {
+            return null;
+        }
+
+        int frameCount = 0;
+        for (EpfFileHandler epfFile : epfFiles) {
+            if (index < (frameCount + epfFile.frameCount)) {
+                return epfFile.getFrameBounds(index - frameCount);
+            }
+
+            frameCount += epfFile.frameCount;
+        }
+
+        return null;
+    }
+
     public static Frame getFrameFromEpfs(int index, List<EpfFileHandler> epfFiles) {
         int epfIndex = -1;
 
@@ -0,0 +1,324 @@
+package com.gamemode.tkviewer.utilities;
+
+import com.gamemode.tkviewer.Frame;
+import com.gamemode.tkviewer.file_handlers.EpfFileHandler;
+import com.gamemode.tkviewer.render.MapRenderer;
+import com.gamemode.tkviewer.render.MobRenderer;
+import com.gamemode.tkviewer.render.PartRenderer;
+import com.gamemode.tkviewer.render.SObjRenderer;
+import com.gamemode.tkviewer.render.TileRenderer;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * Content-hash index of EPF frames: maps every frame of every added EPF set (tile, tilec, Body...) to a canonical
+ * frame ID shared by all byte-identical frames, across sets.
+ *
+ * Two frames are identical when they have the same size, the same stencil and the same pixels under the stencil (the
+ * only ones the renderers draw), so their rendered images only differ by palette. The left/top pivot is not part of
+ * the content. Canonical IDs are assigned in the order sets and frames were added, so they don't depend on thread
+ * timing.
+ *
+ * Each set's EPFs are hashed in parallel, one EPF per task. EPFs are decoded while hashing, frames of EPFs that had
+ * none decoded before are dropped again; callers must not use the EPFs concurrently (synchronize on their renderer).
+ *
+ * dedup(renderer) adds a renderer's EPFs and keys its FrameCache by canonical ID, so each unique frame (per palette)
+ * is rendered and cached once. The index keeps no EPF handler: a set is recognized by the identity of its EPF list
+ * and of the EPFs in it, and adding a list again after some of its EPFs were replaced (an archive reload) replaces
+ * its set. IDs only used by a replaced set are dropped and never reused.
+ */
+public class FrameDedupIndex {
+
+    public static class SetStats {
+        public String name;
+        public int frameCount;
+        // Frames whose content was first seen in this set
+        public int uniqueCount;
+        // Pixel, stencil and stencil row bytes of the set's frames, and of its frames seen before (in any set)
+        public long frameBytes;
+        public long duplicateBytes;
+    }
+
+    public int frameCount = 0;
+    public int uniqueCount = 0;
+    public long frameBytes = 0;
+    public long duplicateBytes = 0;
+
+    public Map<String, int[]> canonicalFrames = new LinkedHashMap<String, int[]>();
+    public Map<String, SetStats> stats = new LinkedHashMap<String, SetStats>();
+
+    Map<ByteBuffer, Integer> canonicalIds = new HashMap<ByteBuffer, Integer>();
+    // Digest and number of set frames of each canonical ID, null once no set uses it
+    List<CanonicalFrame> idFrames = new ArrayList<CanonicalFrame>();
+    Map<String, SetIdentity> sets = new HashMap<String, SetIdentity>();
+
+    static class CanonicalFrame {
+        ByteBuffer digest;
+        int references;
+    }
+
+    /**
+     * Identity hashes of a set's EPF list and EPFs, so the index doesn't keep the handlers reachable.
+     */
+    static class SetIdentity {
+        int list;
+        int[] epfs;
+
+        SetIdentity(List<EpfFileHandler> epfs) {
+            this.list = System.identityHashCode(epfs);
+            this.epfs = new int[epfs.size()];
+            for (int i = 0; i < epfs.size(); i++) {
+                this.epfs[i] = System.identityHashCode(epfs.get(i));
+            }
+        }
+    }
+
+    static class EpfHashes {
+        byte[][] digests;
+        long[] sizes;
+    }
+
+    /**
+     * Hashes every frame of an EPF set and returns its canonical IDs, indexed by frame index across the set's EPFs
+     * (the renderers' frame index). Adding the same EPFs twice returns the IDs computed the first time, and the same
+     * list with other EPFs in it replaces its set. Other EPFs under a name already used are added as name#2, name#3...
+     */
+    public synchronized int[] add(String name, List<EpfFileHandler> epfs) {
+        SetIdentity identity = new SetIdentity(epfs);
+        boolean replacing = false;
+        String setName = name;
+        for (int i = 2; this.sets.containsKey(setName); i++) {
+            SetIdentity setIdentity = this.sets.get(setName);
+            if (setIdentity.list == identity.list) {
+                if (Arrays.equals(setIdentity.epfs, identity.epfs)) {
+                    return this.canonicalFrames.get(setName);
+                }
+                replacing = true;
+                break;
+            }
+            setName = name + "#" + i;
+        }
+        name = setName;
+
+        EpfHashes[] epfHashes = IntStream.range(0, epfs.size()).parallel()
+                .mapToObj(i -> hashEpf(epfs.get(i)))
+                .toArray(EpfHashes[]::new);
+
+        SetStats setStats = new SetStats();
+        setStats.name = name;
+        int setFrameCount = 0;
+        for (EpfHashes hashes : epfHashes) {
+            setFrameCount += hashes.digests.length;
+        }
+
+        int[] ids = new int[setFrameCount];
+        int frameIndex = 0;
+        for (EpfHashes hashes : epfHashes) {
+            for (int j = 0; j < hashes.digests.length; j++) {
+                ByteBuffer digest = ByteBuffer.wrap(hashes.digests[j]);
+                long bytes = hashes.sizes[j];
+                Integer id = this.canonicalIds.get(digest);
+                if (id == null) {
+                    id = this.idFrames.size();
+                    CanonicalFrame canonicalFrame = new CanonicalFrame();
+                    canonicalFrame.digest = digest;
+                    this.idFrames.add(canonicalFrame);
+                    this.canonicalIds.put(digest, id);
+                    this.uniqueCount++;
+                    setStats.uniqueCount++;
+                } else {
+                    setStats.duplicateBytes += bytes;
+                }
+                this.idFrames.get(id).references++;
+                setStats.frameBytes += bytes;
+                ids[frameIndex++] = id;
+            }
+        }
+        setStats.frameCount = setFrameCount;
+
+        // After the new set took its references, so IDs of the EPFs it kept aren't dropped
+        if (replacing) {
+            this.remove(name);
+        }
+        this.frameCount += setStats.frameCount;
+        this.frameBytes += setStats.frameBytes;
+        this.duplicateBytes += setStats.duplicateBytes;
+        this.canonicalFrames.put(name, ids);
+        this.sets.put(name, identity);
+        this.stats.put(name, setStats);
+
+        return ids;
+    }
+
+    /**
+     * Drops every set, e.g. once the renderers they were added for are disposed.
+     */
+    public synchronized void clear() {
+        this.frameCount = 0;
+        this.uniqueCount = 0;
+        this.frameBytes = 0;
+        this.duplicateBytes = 0;
+        this.canonicalFrames.clear();
+        this.stats.clear();
+        this.canonicalIds.clear();
+        this.idFrames.clear();
+        this.sets.clear();
+    }
+
+    /**
+     * Drops a set, and the canonical IDs no other set uses.
+     */
+    synchronized void remove(String name) {
+        int[] ids = this.canonicalFrames.remove(name);
+        SetStats setStats = this.stats.remove(name);
+        this.sets.remove(name);
+        if (ids == null) {
+            return;
+        }
+
+        for (int id : ids) {
+            CanonicalFrame canonicalFrame = this.idFrames.get(id);
+            if (--canonicalFrame.references == 0) {
+                this.canonicalIds.remove(canonicalFrame.digest);
+                this.idFrames.set(id, null);
+                this.uniqueCount--;
+            }
+        }
+        this.frameCount -= setStats.frameCount;
+        this.frameBytes -= setStats.frameBytes;
+        this.duplicateBytes -= setStats.duplicateBytes;
+    }
+
+    /**
+     * Adds an EPF set named after its EPFs (tile0.epf, tile1.epf... is "tile").
+     */
+    public int[] add(List<EpfFileHandler> epfs) {
+        return this.add(getSetName(epfs), epfs);
+    }
+
+    /**
+     * Keys the FrameCache of a TileRenderer, PartRenderer or MobRenderer (or the tile renderers of a MapRenderer,
+     * SObjRenderer or List of renderers) by canonical frame ID, returns false for other renderers.
+     */
+    public boolean dedup(Object renderer) {
+        if (renderer instanceof MapRenderer) {
+            MapRenderer mapRenderer = (MapRenderer) renderer;
+            return this.dedup(mapRenderer.tileRenderer) & this.dedup(mapRenderer.sObjRenderer);
+        } else if (renderer instanceof SObjRenderer) {
+            return this.dedup(((SObjRenderer) renderer).getTileRenderer());
+        } else if (renderer instanceof TileRenderer) {
+            TileRenderer tileRenderer = (TileRenderer) renderer;
+            tileRenderer.getFrameCache().setCanonicalFrames(this.add(tileRenderer.tileEpfs));
+        } else if (renderer instanceof PartRenderer) {
+            PartRenderer partRenderer = (PartRenderer) renderer;
+            partRenderer.getFrameCache().setCanonicalFrames(this.add(partRenderer.partEpfs));
+        } else if (renderer instanceof MobRenderer) {
+            MobRenderer mobRenderer = (MobRenderer) renderer;
+            mobRenderer.getFrameCache().setCanonicalFrames(this.add(mobRenderer.mobEpfs));
+        } else if (renderer instanceof List) {
+            boolean deduped = true;
+            for (Object listedRenderer : (List<?>) renderer) {
+                deduped &= this.dedup(listedRenderer);
+            }
+            return deduped;
+        } else {
+            return false;
+        }
+
+        return true;
+    }
+
+    public synchronized int[] getCanonicalFrames(String name) {
+        return this.canonicalFrames.get(name);
+    }
+
+    /**
+     * One line per set plus the total: frames, unique frames and decoded frame bytes saved by storing each once.
+     */
+    public synchronized String getReport() {
+        StringBuilder report = new StringBuilder();
+        for (SetStats setStats : this.stats.values()) {
+            report.append(String.format("%-12s %7d frames, %7d new unique, %5.1f%% duplicates, %8.1f KB of %8.1f KB saved%n",
+                    setStats.name, setStats.frameCount, setStats.uniqueCount,
+                    percent(setStats.frameCount - setStats.uniqueCount, setStats.frameCount),
+                    setStats.duplicateBytes / 1024.0, setStats.frameBytes / 1024.0));
+        }
+        report.append(String.format("%-12s %7d frames, %7d unique,     %5.1f%% duplicates, %8.1f KB of %8.1f KB saved%n",
+                "Total", this.frameCount, this.uniqueCount, percent(this.frameCount - this.uniqueCount, this.frameCount),
+                this.duplicateBytes / 1024.0, this.frameBytes / 1024.0));
+
+        return report.toString();
+    }
+
+    static String getSetName(List<EpfFileHandler> epfs) {
+        String filePath = epfs.isEmpty() ? null : epfs.get(0).filePath;
+        if (filePath == null) {
+            return "epfs@" + Integer.toHexString(System.identityHashCode(epfs));
+        }
+
+        String name = new File(filePath).getName().replaceFirst("(?i)\\.epf$", "");
+        return name.replaceFirst("\\d+$", "");
+    }
+
+    static double percent(long part, long total) {
+        return total == 0 ? 0 : (part * 100.0) / total;
+    }
+
+    /**
+     * SHA-1 digest and decoded size of every frame of an EPF.
+     */
+    static EpfHashes hashEpf(EpfFileHandler epf) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new IllegalStateException("SHA-1 unavailable", nsae);
+        }
+
+        boolean wasDecoded = epf.getDecodedFrameCount() > 0;
+        EpfHashes hashes = new EpfHashes();
+        hashes.digests = new byte[epf.frameCount][];
+        hashes.sizes = new long[epf.frameCount];
+        for (int i = 0; i < epf.frameCount; i++) {
+            Frame frame = epf.getFrame(i);
+            int width = frame.getWidth();
+            int height = frame.getHeight();
+
+            digest.update(ByteBuffer.allocate(8).putInt(width).putInt(height).array());
+            if (width > 0 && height > 0) {
+                // Stencil as a bit mask, then only the pixels it keeps (the renderers overwrite the others in place)
+                ByteBuffer pixels = frame.getRawPixelData();
+                byte[] mask = new byte[(width + 7) / 8];
+                byte[] visible = new byte[width];
+                boolean[] scratch = new boolean[width];
+                for (int y = 0; y < height; y++) {
+                    boolean[] row = frame.getStencil().getRow(y, scratch);
+                    Arrays.fill(mask, (byte) 0);
+                    int visibleCount = 0;
+                    for (int x = 0; x < width; x++) {
+                        if (row[x]) {
+                            mask[x >> 3] |= (byte) (0x80 >>> (x & 7));
+                            visible[visibleCount++] = pixels.get((y * width) + x);
+                        }
+                    }
+                    digest.update(mask);
+                    digest.update(visible, 0, visibleCount);
+                }
+            }
+
+            hashes.digests[i] = digest.digest();
+            hashes.sizes[i] = frame.getRawPixelData().capacity() + frame.getRawStencilData().capacity() + ((long) width * height);
+        }
+
+        if (!wasDecoded) {
+            epf.clearFrames();
+        }
+
+        return hashes;
+    }
+}
@@ -0,0 +1,400 @@
+package com.gamemode.tkviewer.utilities;
+
+import com.gamemode.tkviewer.EffectImage;
+import com.gamemode.tkviewer.Palette;
+import com.gamemode.tkviewer.render.EffectTimeline;
+import com.gamemode.tkviewer.third_party.GifSequenceWriter;
+
+import javax.imageio.*;
+import javax.imageio.metadata.IIOInvalidTreeException;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.FileImageOutputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Writes animations as 8-bit indexed GIFs using the source palette, so ImageIO never has to quantize ARGB frames.
+ *
+ * When the frames came from a single Palette it becomes the (global) color table with the palette indices unchanged,
+ * and one unused index is reserved for transparency (the least used one, remapped to its nearest color, if the frames
+ * use all 256). Without a Palette the table is rebuilt from the frames' own colors, globally if they fit in 255
+ * entries, else per frame.
+ */
+public class IndexedGifWriter {
+
+    private static final int COLOR_COUNT = 256;
+
+    /**
+     * Private constructor to prevent instantiation of static utility class
+     */
+    private IndexedGifWriter() {}
+
+    /**
+     * Exports each animation (keyed by output path) concurrently.
+     */
+    public static void exportGifs(Map<String, List<EffectImage>> animations, Palette palette) {
+        animations.entrySet().parallelStream().forEach(animation ->
+                exportGif(animation.getValue(), palette, animation.getKey()));
+    }
+
+    public static void exportGif(List<EffectImage> images, Palette palette, String outputFilePath) {
+        if (images.isEmpty()) {
+            return;
+        }
+
+        try (ImageOutputStream output = new FileImageOutputStream(new File(outputFilePath))) {
+            writeGif(images, palette, output);
+        } catch (IOException ioe) {
+            System.out.println("Unable to export " + outputFilePath + ": " + ioe);
+        }
+    }
+
+    /**
+     * Encodes the animation in memory (e.g. to serve it without touching the disk).
+     */
+    public static byte[] encodeGif(List<EffectImage> images, Palette palette) throws IOException {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        try (ImageOutputStream output = new MemoryCacheImageOutputStream(byteArrayOutputStream)) {
+            writeGif(images, palette, output);
+        }
+
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    public static void writeGif(List<EffectImage> images, Palette palette, ImageOutputStream output) throws IOException {
+        writeGif(images.size(), i -> images.get(i).getImage(), i -> images.get(i).getDelay(), palette, output);
+    }
+
+    public static void exportGif(EffectTimeline timeline, Palette palette, String outputFilePath) {
+        if (timeline.getFrameCount() == 0) {
+            return;
+        }
+
+        try (ImageOutputStream output = new FileImageOutputStream(new File(outputFilePath))) {
+            writeGif(timeline, palette, output);
+        } catch (IOException ioe) {
+            System.out.println("Unable to export effect " + timeline.getEffectIndex() + ": " + ioe);
+        }
+    }
+
+    /**
+     * Streams an effect: frames are rendered as they are written (and once before to build the color tables), so only
+     * the timeline's canvases are held at any time.
+     */
+    public static void writeGif(EffectTimeline timeline, Palette palette, ImageOutputStream output) throws IOException {
+        writeGif(timeline.getFrameCount(), timeline::renderFrame, timeline::getDelay, palette, output);
+    }
+
+    static void writeGif(int frameCount, IntFunction<BufferedImage> frames, IntUnaryOperator delays, Palette palette,
+                         ImageOutputStream output) throws IOException {
+        if (frameCount == 0) {
+            return;
+        }
+
+        IndexColorModel[] colorModels = createColorModels(frameCount, frames, palette);
+        if (colorModels == null) {
+            // More colors than a GIF color table can hold, let ImageIO quantize
+            GifSequenceWriter sequenceWriter = new GifSequenceWriter(output, BufferedImage.TYPE_INT_ARGB, delays.applyAsInt(0), true);
+            for (int i = 0; i < frameCount; i++) {
+                sequenceWriter.writeToSequence(frames.apply(i), delays.applyAsInt(i));
+            }
+            sequenceWriter.close();
+            return;
+        }
+
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("gif");
+        if (!writers.hasNext()) {
+            System.out.println("No GIF Image Writers Exist");
+            return;
+        }
+        ImageWriter gifWriter = writers.next();
+
+        try {
+            gifWriter.setOutput(output);
+            gifWriter.prepareWriteSequence(null);
+
+            ImageWriteParam imageWriteParam = gifWriter.getDefaultWriteParam();
+            for (int i = 0; i < frameCount; i++) {
+                BufferedImage indexedImage = toIndexedImage(frames.apply(i), colorModels[i]);
+                IIOMetadata imageMetaData = gifWriter.getDefaultImageMetadata(
+                        ImageTypeSpecifier.createFromRenderedImage(indexedImage), imageWriteParam);
+                configureMetadata(imageMetaData, delays.applyAsInt(i), colorModels[i], i == 0);
+
+                gifWriter.writeToSequence(new IIOImage(indexedImage, null, imageMetaData), imageWriteParam);
+            }
+
+            gifWriter.endWriteSequence();
+        } finally {
+            gifWriter.dispose();
+        }
+    }
+
+    /**
+     * Converts ARGB frames to TYPE_BYTE_INDEXED frames, or null if the colors can't be represented without quantizing.
+     */
+    public static BufferedImage[] toIndexedImages(List<EffectImage> images, Palette palette) {
+        IndexColorModel[] colorModels = createColorModels(images.size(), i -> images.get(i).getImage(), palette);
+        if (colorModels == null) {
+            return null;
+        }
+
+        BufferedImage[] indexedImages = new BufferedImage[images.size()];
+        for (int i = 0; i < images.size(); i++) {
+            indexedImages[i] = toIndexedImage(images.get(i).getImage(), colorModels[i]);
+        }
+
+        return indexedImages;
+    }
+
+    /**
+     * Color model of each frame, or null if the colors can't be represented without quantizing.
+     */
+    private static IndexColorModel[] createColorModels(int frameCount, IntFunction<BufferedImage> frames, Palette palette) {
+        IndexColorModel[] colorModels = new IndexColorModel[frameCount];
+
+        if (palette != null) {
+            Arrays.fill(colorModels, createColorModel(palette, frameCount, frames));
+
+            return colorModels;
+        }
+
+        // No palette, build a global table from every frame if it fits
+        TreeSet<Integer> globalColors = new TreeSet<Integer>();
+        for (int i = 0; i < frameCount && globalColors.size() < COLOR_COUNT; i++) {
+            addColors(frames.apply(i), globalColors);
+        }
+        if (globalColors.size() < COLOR_COUNT) {
+            Arrays.fill(colorModels, createColorModel(globalColors));
+
+            return colorModels;
+        }
+
+        // Else a local table per frame
+        for (int i = 0; i < frameCount; i++) {
+            TreeSet<Integer> localColors = new TreeSet<Integer>();
+            addColors(frames.apply(i), localColors);
+            if (localColors.size() >= COLOR_COUNT) {
+                return null;
+            }
+            colorModels[i] = createColorModel(localColors);
+        }
+
+        return colorModels;
+    }
+
+    private static IndexColorModel createColorModel(Palette palette, int frameCount, IntFunction<BufferedImage> frames) {
+        byte[] red = Arrays.copyOf(palette.getRedBytes(), COLOR_COUNT);
+        byte[] green = Arrays.copyOf(palette.getGreenBytes(), COLOR_COUNT);
+        byte[] blue = Arrays.copyOf(palette.getBlueBytes(), COLOR_COUNT);
+
+        // Reserve the first palette index no opaque pixel maps to. When the frames use all of them, the least used one
+        // is reserved and toIndexedImage maps its pixels to the nearest remaining color
+        IndexColorModel opaque = new IndexColorModel(8, COLOR_COUNT, red, green, blue);
+        ColorLookup lookup = new ColorLookup(opaque, -1);
+        long[] uses = new long[COLOR_COUNT];
+        for (int i = 0; i < frameCount; i++) {
+            BufferedImage image = frames.apply(i);
+            int[] pixels = image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+            for (int pixel : pixels) {
+                if ((pixel >>> 24) != 0) {
+                    uses[lookup.indexOf(pixel)]++;
+                }
+            }
+        }
+        int transparentIndex = 0;
+        for (int i = 1; i < COLOR_COUNT && uses[transparentIndex] > 0; i++) {
+            if (uses[i] < uses[transparentIndex]) {
+                transparentIndex = i;
+            }
+        }
+
+        return new IndexColorModel(8, COLOR_COUNT, red, green, blue, transparentIndex);
+    }
+
+    private static IndexColorModel createColorModel(TreeSet<Integer> colors) {
+        // Index 0 is reserved for transparency
+        byte[] red = new byte[colors.size() + 1];
+        byte[] green = new byte[colors.size() + 1];
+        byte[] blue = new byte[colors.size() + 1];
+        int index = 1;
+        for (int rgb : colors) {
+            red[index] = (byte) (rgb >> 16);
+            green[index] = (byte) (rgb >> 8);
+            blue[index] = (byte) rgb;
+            index++;
+        }
+
+        return new IndexColorModel(8, red.length, red, green, blue, 0);
+    }
+
+    private static void addColors(BufferedImage image, TreeSet<Integer> colors) {
+        int[] pixels = image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+        for (int pixel : pixels) {
+            if ((pixel >>> 24) != 0) {
+                colors.add(pixel & 0xFFFFFF);
+                if (colors.size() >= COLOR_COUNT) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private static BufferedImage toIndexedImage(BufferedImage image, IndexColorModel icm) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int transparentIndex = icm.getTransparentPixel();
+
+        BufferedImage indexedImage = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED, icm);
+        byte[] indices = ((DataBufferByte) indexedImage.getRaster().getDataBuffer()).getData();
+        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+
+        ColorLookup lookup = new ColorLookup(icm, transparentIndex);
+        for (int i = 0; i < pixels.length; i++) {
+            int pixel = pixels[i];
+            indices[i] = (byte) (((pixel >>> 24) == 0) ? transparentIndex : lookup.indexOf(pixel));
+        }
+
+        return indexedImage;
+    }
+
+    private static void configureMetadata(IIOMetadata imageMetaData, int delay, IndexColorModel icm, boolean firstFrame)
+            throws IIOInvalidTreeException {
+        String metaFormatName = imageMetaData.getNativeMetadataFormatName();
+        IIOMetadataNode root = (IIOMetadataNode) imageMetaData.getAsTree(metaFormatName);
+        int transparentIndex = icm.getTransparentPixel();
+
+        IIOMetadataNode graphicsControlExtensionNode = getNode(root, "GraphicControlExtension");
+        graphicsControlExtensionNode.setAttribute("disposalMethod", "restoreToBackgroundColor");
+        graphicsControlExtensionNode.setAttribute("userInputFlag", "FALSE");
+        graphicsControlExtensionNode.setAttribute("transparentColorFlag", "TRUE");
+        graphicsControlExtensionNode.setAttribute("delayTime", Integer.toString(delay / 10));
+        graphicsControlExtensionNode.setAttribute("transparentColorIndex", Integer.toString(transparentIndex));
+
+        if (firstFrame) {
+            // Loop continuously
+            IIOMetadataNode appExtensionsNode = getNode(root, "ApplicationExtensions");
+            IIOMetadataNode child = new IIOMetadataNode("ApplicationExtension");
+            child.setAttribute("applicationID", "NETSCAPE");
+            child.setAttribute("authenticationCode", "2.0");
+            child.setUserObject(new byte[]{0x1, 0x0, 0x0});
+            appExtensionsNode.appendChild(child);
+        }
+
+        // Write the frame's own table, ImageIO otherwise reuses the first frame's table for the whole sequence
+        IIOMetadataNode localColorTableNode = getNode(root, "LocalColorTable");
+        while (localColorTableNode.hasChildNodes()) {
+            localColorTableNode.removeChild(localColorTableNode.getFirstChild());
+        }
+        int tableSize = 2;
+        while (tableSize < icm.getMapSize()) {
+            tableSize <<= 1;
+        }
+        localColorTableNode.setAttribute("sizeOfLocalColorTable", Integer.toString(tableSize));
+        localColorTableNode.setAttribute("sortFlag", "FALSE");
+        for (int i = 0; i < tableSize; i++) {
+            IIOMetadataNode entry = new IIOMetadataNode("ColorTableEntry");
+            int rgb = (i < icm.getMapSize()) ? icm.getRGB(i) : 0;
+            entry.setAttribute("index", Integer.toString(i));
+            entry.setAttribute("red", Integer.toString((rgb >> 16) & 0xFF));
+            entry.setAttribute("green", Integer.toString((rgb >> 8) & 0xFF));
+            entry.setAttribute("blue", Integer.toString(rgb & 0xFF));
+            localColorTableNode.appendChild(entry);
+        }
+
+        imageMetaData.setFromTree(metaFormatName, root);
+    }
+
+    private static IIOMetadataNode getNode(IIOMetadataNode rootNode, String nodeName) {
+        for (int i = 0; i < rootNode.getLength(); i++) {
+            if (rootNode.item(i).getNodeName().equalsIgnoreCase(nodeName)) {
+                return (IIOMetadataNode) rootNode.item(i);
+            }
+        }
+        IIOMetadataNode node = new IIOMetadataNode(nodeName);
+        rootNode.appendChild(node);
+
+        return node;
+    }
+
+    /**
+     * RGB to color table index, exact matches by binary search with a nearest-color fallback.
+     */
+    private static class ColorLookup {
+        int[] colors;
+        int[] indices;
+        int[] table;
+        int skipIndex;
+
+        ColorLookup(IndexColorModel icm, int skipIndex) {
+            this.skipIndex = skipIndex;
+            this.table = new int[icm.getMapSize()];
+            icm.getRGBs(this.table);
+
+            // First index wins for duplicate colors
+            long[] sorted = new long[this.table.length];
+            int count = 0;
+            for (int i = 0; i < this.table.length; i++) {
+                if (i != skipIndex) {
+                    sorted[count++] = ((long) (this.table[i] & 0xFFFFFF) << 32) | i;
+                }
+            }
+            sorted = Arrays.copyOf(sorted, count);
+            Arrays.sort(sorted);
+
+            this.colors = new int[count];
+            this.indices = new int[count];
+            int unique = 0;
+            for (int i = 0; i < count; i++) {
+                int rgb = (int) (sorted[i] >>> 32);
+                if (unique > 0 && this.colors[unique - 1] == rgb) {
+                    continue;
+                }
+                this.colors[unique] = rgb;
+                this.indices[unique] = (int) sorted[i];
+                unique++;
+            }
+            this.colors = Arrays.copyOf(this.colors, unique);
+            this.indices = Arrays.copyOf(this.indices, unique);
+        }
+
+        int indexOf(int argb) {
+            int rgb = argb & 0xFFFFFF;
+            int position = Arrays.binarySearch(this.colors, rgb);
+            if (position >= 0) {
+                return this.indices[position];
+            }
+
+            int nearestIndex = 0;
+            int nearestDistance = Integer.MAX_VALUE;
+            for (int i = 0; i < this.table.length; i++) {
+                if (i == this.skipIndex) {
+                    continue;
+                }
+                int dr = ((this.table[i] >> 16) & 0xFF) - ((rgb >> 16) & 0xFF);
+                int dg = ((this.table[i] >> 8) & 0xFF) - ((rgb >> 8) & 0xFF);
+                int db = (this.table[i] & 0xFF) - (rgb & 0xFF);
+                int distance = (dr * dr) + (dg * dg) + (db * db);
+                if (distance < nearestDistance) {
+                    nearestDistance = distance;
+                    nearestIndex = i;
+                }
+            }
+
+            return nearestIndex;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.gamemode.tkviewer.utilities;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * MaxRects bin packer for a single fixed size page (Best Short Side Fit).
+ *
+ * Keeps the maximal free rectangles of the page, each placement splits every free rectangle it overlaps and free
+ * rectangles contained in another are pruned. Insert larger rectangles first for the tightest packing.
+ */
+public class MaxRectsPacker {
+
+    public int width;
+    public int height;
+
+    List<Rectangle> freeRectangles = new ArrayList<Rectangle>();
+    long usedArea = 0;
+
+    public MaxRectsPacker(int width, int height) {
+        this.width = width;
+        this.height = height;
+
+        this.freeRectangles.add(new Rectangle(0, 0, width, height));
+    }
+
+    /**
+     * Places a width x height rectangle, or returns null if it no longer fits on the page.
+     */
+    public Rectangle insert(int width, int height) {
+        Rectangle best = null;
+        int bestShortSide = Integer.MAX_VALUE;
+        int bestLongSide = Integer.MAX_VALUE;
+        for (Rectangle free : this.freeRectangles) {
+            if (free.width < width || free.height < height) {
+                continue;
+            }
+
+            int leftoverX = free.width - width;
+            int leftoverY = free.height - height;
+            int shortSide = Math.min(leftoverX, leftoverY);
+            int longSide = Math.max(leftoverX, leftoverY);
+            if (shortSide < bestShortSide || (shortSide == bestShortSide && longSide < bestLongSide)) {
+                best = new Rectangle(free.x, free.y, width, height);
+                bestShortSide = shortSide;
+                bestLongSide = longSide;
+            }
+        }
+
+        if (best == null) {
+            return null;
+        }
+
+        this.place(best);
+        return best;
+    }
+
+    /**
+     * Fraction of the page covered by placed rectangles.
+     */
+    public double getOccupancy() {
+        return (double) this.usedArea / ((long) this.width * this.height);
+    }
+
+    void place(Rectangle used) {
+        List<Rectangle> split = new ArrayList<Rectangle>();
+        for (int i = this.freeRectangles.size() - 1; i >= 0; i--) {
+            Rectangle free = this.freeRectangles.get(i);
+            if (!free.intersects(used)) {
+                continue;
+            }
+
+            this.freeRectangles.remove(i);
+            // Up to four maximal rectangles around the placed one
+            if (used.x > free.x) {
+                split.add(new Rectangle(free.x, free.y, used.x - free.x, free.height));
+            }
+            if (used.x + used.width < free.x + free.width) {
+                split.add(new Rectangle(used.x + used.width, free.y,
+                        free.x + free.width - (used.x + used.width), free.height));
+            }
+            if (used.y > free.y) {
+                split.add(new Rectangle(free.x, free.y, free.width, used.y - free.y));
+            }
+            if (used.y + used.height < free.y + free.height) {
+                split.add(new Rectangle(free.x, used.y + used.height,
+                        free.width, free.y + free.height - (used.y + used.height)));
+            }
+        }
+
+        this.freeRectangles.addAll(split);
+        this.prune();
+        this.usedArea += (long) used.width * used.height;
+    }
+
+    void prune() {
+        for (int i = 0; i < this.freeRectangles.size(); i++) {
+            for (int j = i + 1; j < this.freeRectangles.size(); j++) {
+                Rectangle a = this.freeRectangles.get(i);
+                Rectangle b = this.freeRectangles.get(j);
+                if (b.contains(a)) {
+                    this.freeRectangles.remove(i);
+                    i--;
+                    break;
+                }
+                if (a.contains(b)) {
+                    this.freeRectangles.remove(j);
+                    j--;
+                }
+            }
+        }
+    }
+}
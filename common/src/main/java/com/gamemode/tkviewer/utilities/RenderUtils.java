@@ -11,20 +11,25 @@ import com.gamemode.tkviewer.resources.Resources;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class RenderUtils {
-    public static DatFileHandler CHAR_DAT = new DatFileHandler(Resources.getNtkDataDirectory() + File.separator + "char.dat");
-
     /**
      * Private constructor to prevent instantiation of static utility class
      */
     private RenderUtils() {}
 
+    /**
+     * Shared char.dat, loaded on first use rather than when RenderUtils is first touched.
+     */
+    public static DatFileHandler getCharDat() {
+        return RendererRegistry.getInstance().getArchive("char.dat");
+    }
+
     public static PivotData getPivotData(BufferedImage image) {
         int width = image.getWidth();
         int height = image.getHeight();
@@ -65,64 +70,95 @@ public class RenderUtils {
         return new PivotData(Math.abs(left), Math.abs(top), width, height);
     }
 
+    /**
+     * Composites every layer into one animation (layers are drawn in list order, shorter layers loop).
+     */
     public static List<EffectImage> aggregateAnimations (List < List <EffectImage>> effImages){
+        return compositeAnimations(effImages);
+    }
+
+    /**
+     * Union pivot and canvas of every frame in every layer, so the layers line up when drawn together.
+     */
+    public static PivotData getAnimationPivotData(List<List<EffectImage>> layers) {
         List<Frame> allFrames = new ArrayList<>();
-        for (List<EffectImage> subListImages : effImages) {
-            allFrames.addAll(subListImages.stream().map(EffectImage::getFrame).collect(Collectors.toList()));
-        }
-        PivotData pivotData = RenderUtils.getPivotData(allFrames);
-        int maxWidth = pivotData.getCanvasWidth();
-        int maxHeight = pivotData.getCanvasHeight();
-
-        // Correct Images according to maxWidth and maxHeight
-        for (int i = 0; i < effImages.size(); i++) {
-            for (int j = 0; j < effImages.get(i).size(); j++) {
-                EffectImage effImage = effImages.get(i).get(j);
-                effImage.setImage(resizeImage(effImage.getImage(), maxWidth, maxHeight, pivotData,
-                        effImage.getFrame(), effImage.getPivotData()));
+        for (List<EffectImage> layer : layers) {
+            for (EffectImage effectImage : layer) {
+                allFrames.add(effectImage.getFrame());
             }
         }
 
-        List<EffectImage> mergedImages = effImages.get(0);
-        for (int i = 1; i < effImages.size(); i++) {
-            mergedImages = mergeEffectImages(mergedImages, effImages.get(i));
+        return RenderUtils.getPivotData(allFrames);
+    }
+
+    public static int getAnimationFrameCount(List<List<EffectImage>> layers) {
+        int frameCount = 0;
+        for (List<EffectImage> layer : layers) {
+            frameCount = Math.max(frameCount, layer.size());
         }
 
-        return mergedImages;
+        return frameCount;
     }
 
     /**
-     * Draws images2 on top of images1 - images all must be equal size!
+     * Draws the tick'th frame of every layer, in z-order, with the canvas' top-left corner at (left, top).
      */
-    public static List<EffectImage> mergeEffectImages(List<EffectImage> images1, List<EffectImage> images2) {
-        List<EffectImage> returnEffectImages = new ArrayList<EffectImage>();
-
-        int count = Math.max(images1.size(), images2.size());
-        int width = Math.max(images1.get(0).getImage().getWidth(), images2.get(0).getImage().getWidth());
-        int height = Math.max(images1.get(0).getImage().getHeight(), images2.get(0).getImage().getHeight());
-        for (int i = 0; i < count; i++) {
-            BufferedImage newImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    public static void drawAnimationFrame(Graphics2D graphicsObject, List<List<EffectImage>> layers, PivotData pivotData,
+                                          int tick, int left, int top) {
+        for (List<EffectImage> layer : layers) {
+            if (layer.isEmpty()) {
+                continue;
+            }
 
-            Graphics2D graphicsObject = newImage.createGraphics();
-            graphicsObject.drawImage(images1.get(i % images1.size()).getImage(),null,0,0);
-            graphicsObject.drawImage(images2.get(i % images2.size()).getImage(),null,0,0);
+            EffectImage effectImage = layer.get(tick % layer.size());
+            PivotData framePivotData = effectImage.getPivotData();
+            graphicsObject.drawImage(effectImage.getImage(), null,
+                    left + pivotData.getPivotX() - framePivotData.getPivotX(),
+                    top + pivotData.getPivotY() - framePivotData.getPivotY());
+        }
+    }
 
-            returnEffectImages.add(new EffectImage(newImage, images1.get(i % images1.size()).getDelay(), null, null));
+    /**
+     * Composites the tick'th frame into output, which is cleared and reused if it has the canvas size (a new image is
+     * allocated otherwise).
+     */
+    public static BufferedImage compositeAnimationFrame(List<List<EffectImage>> layers, PivotData pivotData, int tick,
+                                                        BufferedImage output) {
+        int width = pivotData.getCanvasWidth();
+        int height = pivotData.getCanvasHeight();
+        if (output == null || output.getWidth() != width || output.getHeight() != height) {
+            output = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
         }
 
-        return returnEffectImages;
+        Graphics2D graphicsObject = output.createGraphics();
+        graphicsObject.setComposite(AlphaComposite.Clear);
+        graphicsObject.fillRect(0, 0, width, height);
+        graphicsObject.setComposite(AlphaComposite.SrcOver);
+        drawAnimationFrame(graphicsObject, layers, pivotData, tick, 0, 0);
+        graphicsObject.dispose();
+
+        return output;
     }
 
-    public static BufferedImage resizeImage(BufferedImage image, int newWidth, int newHeight, PivotData pivotData,
-                                            Frame frame, PivotData framePivotData) {
-        BufferedImage newImage = new BufferedImage(newWidth, newHeight, BufferedImage.TYPE_INT_ARGB);
+    /**
+     * Composites every tick of the layers, one canvas per tick drawn in a single pass (ticks render in parallel). The
+     * layers' images are drawn in place around their shared pivot, never resized or copied.
+     */
+    public static List<EffectImage> compositeAnimations(List<List<EffectImage>> layers) {
+        PivotData pivotData = getAnimationPivotData(layers);
+        int frameCount = getAnimationFrameCount(layers);
+        if (frameCount == 0) {
+            return new ArrayList<EffectImage>();
+        }
 
-        Graphics2D graphicsObject = newImage.createGraphics();
-        int frameLeft = (pivotData.getPivotX() - framePivotData.getPivotX());
-        int frameTop = (pivotData.getPivotY() - framePivotData.getPivotY());
-        graphicsObject.drawImage(image, null, frameLeft, frameTop);
+        // Delays follow the bottom layer
+        List<EffectImage> baseLayer = layers.get(0).isEmpty() ? null : layers.get(0);
 
-        return newImage;
+        return IntStream.range(0, frameCount).parallel().mapToObj(tick -> {
+            BufferedImage image = compositeAnimationFrame(layers, pivotData, tick, null);
+            int delay = baseLayer == null ? 0 : baseLayer.get(tick % baseLayer.size()).getDelay();
+            return new EffectImage(image, delay, pivotData, null);
+        }).collect(Collectors.toList());
     }
 
     public static PartRenderer createRenderer(String fileSubstring, String dataDirectory){
@@ -156,9 +192,8 @@ public class RenderUtils {
         return new PartRenderer("Helmet");
     }
     public static TileRenderer createItemRenderer () {
-        String ntkDataDirectory = Resources.getNtkDataDirectory();
-        DatFileHandler charDat = new DatFileHandler(ntkDataDirectory + File.separator + "char.dat");
-        DatFileHandler miscDat = new DatFileHandler(ntkDataDirectory + File.separator + "misc.dat");
+        DatFileHandler charDat = RendererRegistry.getInstance().getArchive("char.dat");
+        DatFileHandler miscDat = RendererRegistry.getInstance().getArchive("misc.dat");
 
         EpfFileHandler itemEpf = new EpfFileHandler(miscDat.getFile("ITEM.EPF"),"ITEM.EPF");
         PalFileHandler itemPal = new PalFileHandler(charDat.getFile("ITEM.PAL"));
@@ -166,9 +201,8 @@ public class RenderUtils {
         return new TileRenderer(new ArrayList<EpfFileHandler>(Arrays.asList(itemEpf)), itemPal, 0);
     }
     public static TileRenderer createLegendResourceRenderer () {
-        String ntkDataDirectory = Resources.getNtkDataDirectory();
-        DatFileHandler charDat = new DatFileHandler(ntkDataDirectory + File.separator + "char.dat");
-        DatFileHandler miscDat = new DatFileHandler(ntkDataDirectory + File.separator + "misc.dat");
+        DatFileHandler charDat = RendererRegistry.getInstance().getArchive("char.dat");
+        DatFileHandler miscDat = RendererRegistry.getInstance().getArchive("misc.dat");
 
         EpfFileHandler epf = new EpfFileHandler(miscDat.getFile("SYMBOLS.EPF"),"SYMBOLS.EPF");
         PalFileHandler pal = new PalFileHandler(charDat.getFile("ITEM.PAL"));
@@ -176,9 +210,8 @@ public class RenderUtils {
         return new TileRenderer(new ArrayList<EpfFileHandler>(Arrays.asList(epf)), pal, 0);
     }
     public static TileRenderer createSanResourceRenderer () {
-        String ntkDataDirectory = Resources.getNtkDataDirectory();
-        DatFileHandler charDat = new DatFileHandler(ntkDataDirectory + File.separator + "char.dat");
-        DatFileHandler bintDat = new DatFileHandler(ntkDataDirectory + File.separator + "bint2.dat");
+        DatFileHandler charDat = RendererRegistry.getInstance().getArchive("char.dat");
+        DatFileHandler bintDat = RendererRegistry.getInstance().getArchive("bint2.dat");
 
         EpfFileHandler epf = new EpfFileHandler(bintDat.getFile("STAR.EPF"),"STAR.EPF");
         PalFileHandler pal = new PalFileHandler(charDat.getFile("ITEM.PAL"));
@@ -192,7 +225,7 @@ public class RenderUtils {
     public static ArrayList<TileRenderer> createMiniMapResourceRenderers () {
         ArrayList<TileRenderer> miniMapResourceRenderers = new ArrayList<TileRenderer>();
         String[] mmrExts = {"PLAYER", "SYMBOL", "TITLE"};
-        DatFileHandler mnmDat = new DatFileHandler(Resources.getNtkDataDirectory() + File.separator + "mnm.dat");
+        DatFileHandler mnmDat = RendererRegistry.getInstance().getArchive("mnm.dat");
         for (String mmrExt : mmrExts) {
             EpfFileHandler epf = new EpfFileHandler(mnmDat.getFile("MN" + mmrExt + ".epf"),"MN" + mmrExt + ".epf");
             PalFileHandler pal = new PalFileHandler(mnmDat.getFile("MN" + mmrExt + ".pal"));
@@ -218,7 +251,7 @@ public class RenderUtils {
     public static ArrayList<TileRenderer> createWorldMapRenderers () {
         ArrayList<TileRenderer> worldMapRenderers = new ArrayList<TileRenderer>();
         String[] wmExts = {"", "2", "3", "4", "kru"};
-        DatFileHandler wmDat = new DatFileHandler(Resources.getNtkDataDirectory() + File.separator + "wm.dat");
+        DatFileHandler wmDat = RendererRegistry.getInstance().getArchive("wm.dat");
         for (String wmExt : wmExts) {
             EpfFileHandler epf = new EpfFileHandler(wmDat.getFile("WM" + wmExt + ".epf"),"WM" + wmExt + ".epf");
             PalFileHandler pal = new PalFileHandler(wmDat.getFile("WM" + wmExt + ".pal"));
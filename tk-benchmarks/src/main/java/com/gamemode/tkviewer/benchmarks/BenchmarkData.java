@@ -0,0 +1,88 @@
+package com.gamemode.tkviewer.benchmarks;
+
+import com.gamemode.tkviewer.file_handlers.*;
+import com.gamemode.tkviewer.render.MapRenderer;
+import com.gamemode.tkviewer.render.PartRenderer;
+import com.gamemode.tkviewer.render.SObjRenderer;
+import com.gamemode.tkviewer.render.TileRenderer;
+import com.gamemode.tkviewer.resources.Resources;
+import com.gamemode.tkviewer.utilities.FileUtils;
+import com.gamemode.tkviewer.utilities.Utils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads benchmark inputs from an explicit data directory, so runs never depend on the RendererRegistry singletons.
+ *
+ * -Dtkbench.data (default: the NexusTK data directory) and -Dtkbench.map (default: TK000041.cmp in the map directory)
+ * point the benchmarks at another install.
+ */
+public class BenchmarkData {
+
+    public static final String DATA_DIRECTORY_PROPERTY = "tkbench.data";
+    public static final String MAP_FILE_PROPERTY = "tkbench.map";
+    public static final int DEFAULT_MAP_ID = 41;
+
+    /**
+     * Private constructor to prevent instantiation of static utility class
+     */
+    private BenchmarkData() {}
+
+    public static String getDataDirectory() {
+        return System.getProperty(DATA_DIRECTORY_PROPERTY, Resources.getNtkDataDirectory());
+    }
+
+    public static File getMapFile() {
+        return new File(System.getProperty(MAP_FILE_PROPERTY,
+                Resources.NTK_MAP_DIRECTORY + File.separator + "TK" + Utils.pad(DEFAULT_MAP_ID, 6) + ".cmp"));
+    }
+
+    public static File getDatFile(String datName) {
+        return new File(getDataDirectory(), datName);
+    }
+
+    public static DatFileHandler openDat(String datName) {
+        return new DatFileHandler(getDatFile(datName));
+    }
+
+    /**
+     * EPFs prefix0.epf, prefix1.epf... from the matching prefix0.dat, prefix1.dat...
+     */
+    public static List<EpfFileHandler> openEpfs(String epfPrefix) {
+        List<EpfFileHandler> epfFileHandlers = new ArrayList<EpfFileHandler>();
+        File[] datFiles = FileUtils.getDats(getDataDirectory(), epfPrefix);
+        for (int i = 0; i < datFiles.length; i++) {
+            DatFileHandler datFileHandler = new DatFileHandler(datFiles[i]);
+            epfFileHandlers.add(new EpfFileHandler(datFileHandler.getFile(epfPrefix + i + ".epf"), epfPrefix + i + ".epf"));
+        }
+
+        return epfFileHandlers;
+    }
+
+    public static TileRenderer createTileRenderer(String epfPrefix, String palName, String tblName) {
+        DatFileHandler tileDat = openDat("tile.dat");
+
+        return new TileRenderer(openEpfs(epfPrefix), new PalFileHandler(tileDat.getFile(palName)),
+                new TileTblFileHandler(tileDat.getFile(tblName)));
+    }
+
+    public static SObjRenderer createSObjRenderer() {
+        DatFileHandler tileDat = openDat("tile.dat");
+
+        return new SObjRenderer(createTileRenderer("tilec", "TileC.pal", "TILEC.TBL"),
+                new SObjTblFileHandler(tileDat.getFile("SObj.tbl")));
+    }
+
+    public static MapRenderer createMapRenderer() {
+        return new MapRenderer(createTileRenderer("tile", "tile.pal", "tile.tbl"), createSObjRenderer());
+    }
+
+    public static PartRenderer createPartRenderer(String partName) {
+        DatFileHandler charDat = openDat("char.dat");
+
+        return new PartRenderer(openEpfs(partName), new PalFileHandler(charDat.getFile(partName + ".pal")),
+                new DscFileHandler(charDat.getFile(partName + ".dsc"), false));
+    }
+}
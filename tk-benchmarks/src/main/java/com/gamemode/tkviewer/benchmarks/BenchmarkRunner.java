@@ -0,0 +1,46 @@
+package com.gamemode.tkviewer.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the benchmarks (all of them, or those matching the usual JMH command line) with the GC profiler attached, so
+ * every result also reports allocation rate and bytes allocated per operation (gc.alloc.rate.norm).
+ *
+ * Results are written to jmh-result.json for comparing releases.
+ */
+public class BenchmarkRunner {
+
+    public static final String RESULT_FILE = "jmh-result.json";
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+
+        OptionsBuilder optionsBuilder = new OptionsBuilder();
+        optionsBuilder.parent(commandLineOptions)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(RESULT_FILE);
+        // Benchmarks run in forked JVMs, pass the data locations on to them
+        List<String> jvmArgs = new ArrayList<String>();
+        for (String property : new String[]{BenchmarkData.DATA_DIRECTORY_PROPERTY, BenchmarkData.MAP_FILE_PROPERTY}) {
+            if (System.getProperty(property) != null) {
+                jvmArgs.add("-D" + property + "=" + System.getProperty(property));
+            }
+        }
+        optionsBuilder.jvmArgsAppend(jvmArgs.toArray(new String[0]));
+        if (commandLineOptions.getIncludes().isEmpty()) {
+            optionsBuilder.include(BenchmarkRunner.class.getPackage().getName() + ".*");
+        }
+
+        new Runner(optionsBuilder.build()).run();
+    }
+}
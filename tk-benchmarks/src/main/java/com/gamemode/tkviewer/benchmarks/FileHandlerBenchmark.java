@@ -0,0 +1,59 @@
+package com.gamemode.tkviewer.benchmarks;
+
+import com.gamemode.tkviewer.Frame;
+import com.gamemode.tkviewer.file_handlers.DatFileHandler;
+import com.gamemode.tkviewer.file_handlers.EpfFileHandler;
+import com.gamemode.tkviewer.file_handlers.TileTblFileHandler;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing hot paths: opening a DAT, decoding an EPF frame (pixels + stencil) and decoding a tile TBL.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileHandlerBenchmark {
+
+    File tileDatFile;
+    DatFileHandler tileDat;
+    EpfFileHandler tileEpf;
+    int frameIndex = 0;
+
+    @Setup
+    public void setup() {
+        this.tileDatFile = BenchmarkData.getDatFile("tile.dat");
+        this.tileDat = new DatFileHandler(this.tileDatFile);
+
+        List<EpfFileHandler> tileEpfs = BenchmarkData.openEpfs("tile");
+        this.tileEpf = tileEpfs.get(0);
+    }
+
+    @Benchmark
+    public DatFileHandler openDat() {
+        DatFileHandler datFileHandler = new DatFileHandler(this.tileDatFile);
+        datFileHandler.close();
+
+        return datFileHandler;
+    }
+
+    @Benchmark
+    public Frame decodeEpfFrame() {
+        // getFrame caches every frame it decodes, drop it so every call decodes pixels and stencil again
+        this.tileEpf.clearFrames();
+        this.frameIndex = (this.frameIndex + 1) % this.tileEpf.frameCount;
+
+        return this.tileEpf.getFrame(this.frameIndex);
+    }
+
+    @Benchmark
+    public TileTblFileHandler decodeTileTbl() {
+        return new TileTblFileHandler(this.tileDat.getFile("tile.tbl"));
+    }
+}
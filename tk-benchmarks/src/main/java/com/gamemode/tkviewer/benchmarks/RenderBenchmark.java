@@ -0,0 +1,93 @@
+package com.gamemode.tkviewer.benchmarks;
+
+import com.gamemode.tkviewer.EffectImage;
+import com.gamemode.tkviewer.file_handlers.CmpFileHandler;
+import com.gamemode.tkviewer.render.MapRenderer;
+import com.gamemode.tkviewer.render.PartRenderer;
+import com.gamemode.tkviewer.render.SObjRenderer;
+import com.gamemode.tkviewer.render.TileRenderer;
+import com.gamemode.tkviewer.utilities.RenderUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering hot paths. Tiles and static objects bypass the renderer caches, maps render with warm tile caches like
+ * they do in the viewer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RenderBenchmark {
+
+    // Crop size (in tiles) used by renderCropped
+    public static final int CROP_SIZE = 15;
+
+    TileRenderer tileRenderer;
+    SObjRenderer sObjRenderer;
+    MapRenderer mapRenderer;
+    CmpFileHandler cmpFileHandler;
+    List<List<EffectImage>> layers;
+
+    int tileIndex = 0;
+    int sObjIndex = 0;
+
+    @Setup
+    public void setup() {
+        this.tileRenderer = BenchmarkData.createTileRenderer("tile", "tile.pal", "tile.tbl");
+        this.sObjRenderer = BenchmarkData.createSObjRenderer();
+        this.mapRenderer = BenchmarkData.createMapRenderer();
+        this.cmpFileHandler = new CmpFileHandler(BenchmarkData.getMapFile());
+
+        // Body + Coat + Hair, walking down
+        this.layers = new ArrayList<List<EffectImage>>();
+        for (String partName : new String[]{"Body", "Coat", "Hair"}) {
+            PartRenderer partRenderer = BenchmarkData.createPartRenderer(partName);
+            this.layers.add(partRenderer.renderAnimation(0, PartRenderer.BODY_ANIMATIONS.WALK_DOWN));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.tileRenderer.dispose();
+        this.sObjRenderer.dispose();
+        this.mapRenderer.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage renderTile() {
+        this.tileIndex = (this.tileIndex + 1) % this.tileRenderer.getCount(true);
+
+        return this.tileRenderer.renderTile(this.tileIndex, 0, false);
+    }
+
+    @Benchmark
+    public BufferedImage renderSObject() {
+        this.sObjIndex = (this.sObjIndex + 1) % this.sObjRenderer.getTileSObjTbl().objects.size();
+
+        return this.sObjRenderer.renderSObject(this.sObjIndex, false);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public BufferedImage renderMap() {
+        return this.mapRenderer.renderMap(this.cmpFileHandler);
+    }
+
+    @Benchmark
+    public BufferedImage renderCropped() {
+        return this.mapRenderer.renderCropped(this.cmpFileHandler, 0, 0,
+                Math.min(CROP_SIZE, this.cmpFileHandler.mapWidth), Math.min(CROP_SIZE, this.cmpFileHandler.mapHeight));
+    }
+
+    @Benchmark
+    public List<EffectImage> aggregateAnimations() {
+        return RenderUtils.aggregateAnimations(this.layers);
+    }
+}
@@ -0,0 +1,113 @@
+package com.gamemode.tkviewer.gui;
+
+import com.gamemode.tkviewer.EffectImage;
+import com.gamemode.tkviewer.PartInfo;
+import com.gamemode.tkviewer.PivotData;
+import com.gamemode.tkviewer.render.MapRenderer;
+import com.gamemode.tkviewer.render.PartRenderer;
+import com.gamemode.tkviewer.render.RendererRegistry;
+import com.gamemode.tkviewer.resources.Resources;
+import com.gamemode.tkviewer.utilities.RenderUtils;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Composites the character shown by TKPartPickerGUI from cached layers.
+ *
+ * The map background is rendered once per map position and each part's animation once per (part, animation,
+ * palette), so a tick only blits the current frame of every visible layer onto the background.
+ */
+public class CharacterCompositor {
+
+    public static final int BACKGROUND_TILES = 5;
+    public static final int MAX_CACHED_LAYERS = 64;
+
+    String backgroundKey;
+    BufferedImage background;
+
+    Map<String, List<EffectImage>> layers = new LinkedHashMap<String, List<EffectImage>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, List<EffectImage>> eldest) {
+            return size() > MAX_CACHED_LAYERS;
+        }
+    };
+
+    public synchronized BufferedImage getBackground(int mapId, int x, int y) {
+        String key = mapId + ":" + x + ":" + y;
+        if (!key.equals(this.backgroundKey)) {
+            MapRenderer mapRenderer = RendererRegistry.getInstance().awaitRenderer(Resources.GUI_LOADING_FUNCTION.MAPS);
+            synchronized (mapRenderer) {
+                this.background = mapRenderer.renderCropped(mapId, x, y, BACKGROUND_TILES, BACKGROUND_TILES);
+            }
+            this.backgroundKey = key;
+        }
+
+        return this.background;
+    }
+
+    public synchronized List<EffectImage> getLayer(String partKey, PartInfo partInfo) {
+        int partIndex = partInfo.getPartIndex();
+        int animationIndex = partInfo.getAnimationIndex();
+        int paletteIndex = partInfo.getPaletteIndex();
+
+        String key = partKey + ":" + partIndex + ":" + animationIndex + ":" + paletteIndex;
+        List<EffectImage> layer = this.layers.get(key);
+        if (layer == null) {
+            PartRenderer partRenderer = partInfo.getPartRenderer();
+            synchronized (partRenderer) {
+                if (paletteIndex < 0) {
+                    layer = partRenderer.renderAnimation(partIndex, animationIndex);
+                } else {
+                    layer = partRenderer.renderAnimation(partIndex, animationIndex, paletteIndex);
+                }
+            }
+            this.layers.put(key, layer);
+        }
+
+        return layer;
+    }
+
+    /**
+     * Background with the tick'th frame of every visible part drawn on top, in characterPartInfo order.
+     */
+    public BufferedImage render(Map<String, PartInfo> characterPartInfo, int mapId, int x, int y, int tick) {
+        List<List<EffectImage>> visibleLayers = new ArrayList<List<EffectImage>>();
+        for (Map.Entry<String, PartInfo> entry : characterPartInfo.entrySet()) {
+            if (entry.getValue().getShouldRender()) {
+                List<EffectImage> layer = this.getLayer(entry.getKey(), entry.getValue());
+                if (!layer.isEmpty()) {
+                    visibleLayers.add(layer);
+                }
+            }
+        }
+
+        BufferedImage background = this.getBackground(mapId, x, y);
+        BufferedImage characterImage = new BufferedImage(background.getWidth(), background.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphicsObject = characterImage.createGraphics();
+        graphicsObject.drawImage(background, null, 0, 0);
+
+        if (!visibleLayers.isEmpty()) {
+            // Layers share one pivot so the parts line up, shorter layers loop within the longest one
+            PivotData pivotData = RenderUtils.getAnimationPivotData(visibleLayers);
+            int left = (background.getWidth() / 2) - (pivotData.getCanvasWidth() / 2);
+            int top = (background.getHeight() / 2) - (pivotData.getCanvasHeight() / 2);
+            int frame = tick % RenderUtils.getAnimationFrameCount(visibleLayers);
+
+            RenderUtils.drawAnimationFrame(graphicsObject, visibleLayers, pivotData, frame, left, top);
+        }
+        graphicsObject.dispose();
+
+        return characterImage;
+    }
+
+    public synchronized void clear() {
+        this.layers.clear();
+        this.background = null;
+        this.backgroundKey = null;
+    }
+}
@@ -2,8 +2,9 @@ package com.gamemode.tkviewer.gui;
 
 import com.gamemode.tkviewer.PartInfo;
 import com.gamemode.tkviewer.file_handlers.CmpFileHandler;
+import com.gamemode.tkviewer.render.MapRenderer;
 import com.gamemode.tkviewer.render.PartRenderer;
-import com.gamemode.tkviewer.EffectImage;
+import com.gamemode.tkviewer.render.RendererRegistry;
 import com.gamemode.tkviewer.Part;
 import com.gamemode.tkviewer.resources.Resources;
 import com.gamemode.tkviewer.utilities.RenderUtils;
@@ -46,6 +47,7 @@ public class TKPartPickerGUI extends JFrame implements ActionListener {
     JComboBox partPicker;
     JComboBox palettePicker;
     ImageIcon viewerIcon;
+    JLabel viewerLabel;
     JButton changeMapButton = new JButton("Change Map");
     int mapId = 41;
 
@@ -59,6 +61,7 @@ public class TKPartPickerGUI extends JFrame implements ActionListener {
     Integer tickValue = 0;
 
     LinkedHashMap<String, PartInfo> characterPartInfo;
+    CharacterCompositor characterCompositor = new CharacterCompositor();
 
     int partValue = 0;
 
@@ -95,11 +98,9 @@ public class TKPartPickerGUI extends JFrame implements ActionListener {
                     Thread.sleep(250);
                     tickValue++;
 
-                    viewerPanel.remove(0);
-                    viewerPanel.add(new JLabel(new ImageIcon(renderCharacter())), 0);
-
-                    viewerPanel.revalidate();
-                    viewerPanel.repaint();
+                    // Only the current frames are blitted, the icon is swapped on the EDT
+                    BufferedImage characterImage = renderCharacter();
+                    SwingUtilities.invokeLater(() -> viewerLabel.setIcon(new ImageIcon(characterImage)));
                 }
             }
 
@@ -178,8 +179,9 @@ public class TKPartPickerGUI extends JFrame implements ActionListener {
 
         //   Add Character
         viewerIcon = new ImageIcon(renderCharacter());
+        viewerLabel = new JLabel(viewerIcon);
 
-        viewerPanel.add(new JLabel(viewerIcon));
+        viewerPanel.add(viewerLabel);
         viewerPanel.add(optionsPanel);
 
         // Add Part Panel
@@ -211,7 +213,10 @@ public class TKPartPickerGUI extends JFrame implements ActionListener {
             } else {
                 paletteId = paletteIndex;
             }
-            BufferedImage partImage = partRenderer.renderPart(i, (int)part.getFrameIndex(), partInfo.getIconFrameIndex(), paletteId);
+            BufferedImage partImage;
+            synchronized (partRenderer) {
+                partImage = partRenderer.renderPart(i, (int)part.getFrameIndex(), partInfo.getIconFrameIndex(), paletteId);
+            }
 
             JLabel jLabel = new JLabel(new ImageIcon(partImage));
             final int partIndex = i;
@@ -327,49 +332,18 @@ public class TKPartPickerGUI extends JFrame implements ActionListener {
     }
 
     public BufferedImage createBackground(int mapId, int x, int y, int width) {
-        BufferedImage background;
-
-        background = RenderUtils.createMapRenderer().renderCropped(mapId, x, y, width, width);
+        if (width == CharacterCompositor.BACKGROUND_TILES) {
+            return this.characterCompositor.getBackground(mapId, x, y);
+        }
 
-        return background;
+        MapRenderer mapRenderer = RendererRegistry.getInstance().awaitRenderer(Resources.GUI_LOADING_FUNCTION.MAPS);
+        synchronized (mapRenderer) {
+            return mapRenderer.renderCropped(mapId, x, y, width, width);
+        }
     }
 
     public BufferedImage renderCharacter() {
-        BufferedImage characterImage = createBackground(mapId, (int)xSpinner.getValue(), (int)ySpinner.getValue() , 5);
-        Graphics2D graphicsObject = characterImage.createGraphics();
-
-        List<List<EffectImage>> effImages = new ArrayList<List<EffectImage>>();
-        for (Map.Entry<String, PartInfo> characterPartInfo : this.characterPartInfo.entrySet()) {
-            String partKey = characterPartInfo.getKey();
-            PartInfo partInfo = characterPartInfo.getValue();
-
-            if (partInfo.getShouldRender()) {
-
-                int partIndex = partInfo.getPartIndex();
-                int animationIndex = partInfo.getAnimationIndex();
-                int paletteIndex = partInfo.getPaletteIndex();
-
-                List<EffectImage> effectImages;
-                if (paletteIndex < 0) {
-                    effectImages = partInfo.getPartRenderer().renderAnimation(partIndex, animationIndex);
-                } else {
-                    effectImages = partInfo.getPartRenderer().renderAnimation(partIndex, animationIndex, paletteIndex);
-                }
-
-                effImages.add(effectImages);
-            }
-        }
-
-        List<EffectImage> effectImages = RenderUtils.aggregateAnimations(effImages);
-
-        BufferedImage drawing = effectImages.get(tickValue % effectImages.size()).getImage();
-        int backgroundWidth = characterImage.getWidth();
-        int backgroundHeight = characterImage.getHeight();
-        int width = drawing.getWidth();
-        int height = drawing.getHeight();
-        graphicsObject.drawImage(drawing, null, (backgroundWidth / 2) - (width / 2), (backgroundHeight / 2) - (height / 2));
-
-        return characterImage;
+        return this.characterCompositor.render(this.characterPartInfo, mapId, (int) xSpinner.getValue(), (int) ySpinner.getValue(), tickValue);
     }
 
     @Override
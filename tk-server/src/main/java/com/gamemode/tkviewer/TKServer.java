@@ -0,0 +1,22 @@
+package com.gamemode.tkviewer;
+
+import com.gamemode.tkviewer.server.SpriteServer;
+
+import java.io.IOException;
+
+public class TKServer {
+
+    public static final String TKSERVER_VERSION = "1.0";
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : Integer.getInteger("tkserver.port", SpriteServer.DEFAULT_PORT);
+        int threadCount = Integer.getInteger("tkserver.threads", Runtime.getRuntime().availableProcessors());
+        int queueSize = Integer.getInteger("tkserver.queue", threadCount * 32);
+        long cacheBytes = Long.getLong("tkserver.cacheBytes", SpriteServer.DEFAULT_CACHE_BYTES);
+
+        SpriteServer spriteServer = new SpriteServer(port, threadCount, queueSize, cacheBytes);
+        spriteServer.start();
+        System.out.println("TKServer " + TKSERVER_VERSION + " listening on http://localhost:" + spriteServer.getPort()
+                + " (" + threadCount + " workers)");
+    }
+}
@@ -0,0 +1,83 @@
+package com.gamemode.tkviewer.server;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * In-memory LRU of encoded responses, bounded by the total size of their bodies.
+ */
+public class ResponseCache {
+
+    public static class Response {
+        public byte[] body;
+        public String contentType;
+        public String etag;
+
+        public Response(byte[] body, String contentType, String etag) {
+            this.body = body;
+            this.contentType = contentType;
+            this.etag = etag;
+        }
+    }
+
+    public long budgetBytes;
+    private long usedBytes = 0;
+
+    // Request path -> Response (access ordered, eldest first)
+    LinkedHashMap<String, Response> responses = new LinkedHashMap<String, Response>(64, 0.75f, true);
+
+    public ResponseCache(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    public synchronized Response get(String key) {
+        return this.responses.get(key);
+    }
+
+    public synchronized void put(String key, Response response) {
+        if (response.body.length > this.budgetBytes) {
+            return;
+        }
+
+        Response previous = this.responses.put(key, response);
+        if (previous != null) {
+            this.usedBytes -= previous.body.length;
+        }
+        this.usedBytes += response.body.length;
+
+        Iterator<Map.Entry<String, Response>> iterator = this.responses.entrySet().iterator();
+        while (this.usedBytes > this.budgetBytes && iterator.hasNext()) {
+            this.usedBytes -= iterator.next().getValue().body.length;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Removes every response whose key matches.
+     */
+    public synchronized void removeIf(Predicate<String> keyFilter) {
+        Iterator<Map.Entry<String, Response>> iterator = this.responses.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Response> entry = iterator.next();
+            if (keyFilter.test(entry.getKey())) {
+                this.usedBytes -= entry.getValue().body.length;
+                iterator.remove();
+            }
+        }
+    }
+
+    public synchronized long getUsedBytes() {
+        return this.usedBytes;
+    }
+
+    public synchronized int size() {
+        return this.responses.size();
+    }
+
+    public synchronized void clear() {
+        this.responses.clear();
+        this.usedBytes = 0;
+    }
+}
@@ -0,0 +1,122 @@
+package com.gamemode.tkviewer.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Minimal closed-loop load generator for a running SpriteServer.
+ *
+ * Usage: ServerLoadTest baseUrl threads seconds path [path...]
+ *   e.g. ServerLoadTest http://localhost:8080 16 30 /part/body/0/2.png /mob/1.gif /map/41/3/0/0.png
+ *
+ * Each thread requests the paths round robin (sending If-None-Match when -Dloadtest.revalidate=true) and the
+ * latencies of every request are summarized at the end.
+ */
+public class ServerLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 4) {
+            System.out.println("Usage: ServerLoadTest baseUrl threads seconds path [path...]");
+            return;
+        }
+
+        String baseUrl = args[0];
+        int threadCount = Integer.parseInt(args[1]);
+        long durationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(args[2]));
+        List<String> paths = Arrays.asList(args).subList(3, args.length);
+        boolean revalidate = Boolean.getBoolean("loadtest.revalidate");
+
+        AtomicLong bytes = new AtomicLong();
+        AtomicLong failures = new AtomicLong();
+        List<long[]> threadLatencies = new ArrayList<long[]>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        long startTime = System.nanoTime();
+        for (int t = 0; t < threadCount; t++) {
+            int offset = t;
+            List<Long> latencies = new ArrayList<Long>();
+            executor.execute(() -> {
+                String[] etags = new String[paths.size()];
+                for (int i = offset; System.nanoTime() - startTime < durationNanos; i++) {
+                    int pathIndex = i % paths.size();
+                    long requestStart = System.nanoTime();
+                    try {
+                        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + paths.get(pathIndex)).openConnection();
+                        if (revalidate && etags[pathIndex] != null) {
+                            connection.setRequestProperty("If-None-Match", etags[pathIndex]);
+                        }
+                        int status = connection.getResponseCode();
+                        if (status == 200) {
+                            etags[pathIndex] = connection.getHeaderField("ETag");
+                            bytes.addAndGet(drain(connection.getInputStream()));
+                        } else if (status != 304) {
+                            failures.incrementAndGet();
+                        }
+                    } catch (IOException ioe) {
+                        failures.incrementAndGet();
+                    }
+                    latencies.add(System.nanoTime() - requestStart);
+                }
+
+                long[] latencyArray = new long[latencies.size()];
+                for (int i = 0; i < latencyArray.length; i++) {
+                    latencyArray[i] = latencies.get(i);
+                }
+                synchronized (threadLatencies) {
+                    threadLatencies.add(latencyArray);
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(durationNanos + TimeUnit.MINUTES.toNanos(1), TimeUnit.NANOSECONDS);
+        double seconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
+
+        int count = 0;
+        for (long[] latencyArray : threadLatencies) {
+            count += latencyArray.length;
+        }
+        long[] allLatencies = new long[count];
+        int position = 0;
+        for (long[] latencyArray : threadLatencies) {
+            System.arraycopy(latencyArray, 0, allLatencies, position, latencyArray.length);
+            position += latencyArray.length;
+        }
+        Arrays.sort(allLatencies);
+
+        System.out.println(String.format("%d requests in %.1fs: %.1f req/s, %.1f MB/s, %d failed",
+                count, seconds, count / seconds, bytes.get() / (1024.0 * 1024.0) / seconds, failures.get()));
+        if (count > 0) {
+            System.out.println(String.format("Latency p50 %.2fms, p90 %.2fms, p99 %.2fms, max %.2fms",
+                    percentile(allLatencies, 0.50), percentile(allLatencies, 0.90),
+                    percentile(allLatencies, 0.99), allLatencies[count - 1] / 1_000_000.0));
+        }
+    }
+
+    static double percentile(long[] sortedLatencies, double percentile) {
+        int index = (int) Math.min(sortedLatencies.length - 1, Math.ceil(percentile * sortedLatencies.length) - 1);
+
+        return sortedLatencies[Math.max(0, index)] / 1_000_000.0;
+    }
+
+    static long drain(InputStream inputStream) throws IOException {
+        long total = 0;
+        byte[] buffer = new byte[8192];
+        try (InputStream input = inputStream) {
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                total += read;
+            }
+        }
+
+        return total;
+    }
+}
@@ -0,0 +1,436 @@
+package com.gamemode.tkviewer.server;
+
+import com.gamemode.tkviewer.EffectImage;
+import com.gamemode.tkviewer.Palette;
+import com.gamemode.tkviewer.file_handlers.CmpFileHandler;
+import com.gamemode.tkviewer.file_handlers.FrameArena;
+import com.gamemode.tkviewer.render.ArchiveWatcher;
+import com.gamemode.tkviewer.render.CacheBudget;
+import com.gamemode.tkviewer.render.MapRenderer;
+import com.gamemode.tkviewer.render.MobRenderer;
+import com.gamemode.tkviewer.render.PartRenderer;
+import com.gamemode.tkviewer.render.RendererRegistry;
+import com.gamemode.tkviewer.resources.Resources;
+import com.gamemode.tkviewer.utilities.DiskCache;
+import com.gamemode.tkviewer.utilities.IndexedGifWriter;
+import com.gamemode.tkviewer.utilities.RenderUtils;
+import com.gamemode.tkviewer.utilities.Utils;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Serves sprites and map tiles rendered on demand through the shared renderers.
+ *
+ *   /part/{type}/{index}/{anim}.png   animation as a horizontal strip of aligned frames (?palette=n to recolor)
+ *   /mob/{id}.gif                     mob animation (?anim=n, default 0)
+ *   /map/{id}/{z}/{x}/{y}.png         map tile, zoom 0 (whole 64x64 cell area per tile) to MAX_ZOOM (8x8 cells)
+ *   /stats                            request and cache counters
+ *
+ * Encoded responses are kept in an LRU; ETags hash the source archives' identity, so clients revalidate with
+ * If-None-Match and get a 304 without anything being rendered. Renderers aren't thread-safe, so rendering is
+ * serialized per renderer while encoding runs on the bounded worker pool.
+ */
+public class SpriteServer {
+
+    public static final int DEFAULT_PORT = 8080;
+    public static final long DEFAULT_CACHE_BYTES = 64L * 1024 * 1024;
+
+    // A map tile at MAX_ZOOM covers TILE_CELLS x TILE_CELLS cells, each zoom level out doubles that
+    public static final int TILE_CELLS = 8;
+    public static final int MAX_ZOOM = 3;
+    public static final int MAX_CACHED_MAPS = 16;
+
+    private static final Pattern PART_PATH = Pattern.compile("^/part/([A-Za-z_]+)/(\\d+)/(\\d+)\\.png$");
+    private static final Pattern MOB_PATH = Pattern.compile("^/mob/(\\d+)\\.gif$");
+    private static final Pattern MAP_FILE = Pattern.compile("^TK(\\d+)\\.cmp$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern MAP_PATH = Pattern.compile("^/map/(\\d+)/(\\d+)/(\\d+)/(\\d+)\\.png$");
+
+    private static final Map<String, Resources.GUI_LOADING_FUNCTION> PART_TYPES = new HashMap<String, Resources.GUI_LOADING_FUNCTION>();
+    static {
+        PART_TYPES.put("body", Resources.GUI_LOADING_FUNCTION.BODIES);
+        PART_TYPES.put("bow", Resources.GUI_LOADING_FUNCTION.BOWS);
+        PART_TYPES.put("coat", Resources.GUI_LOADING_FUNCTION.COATS);
+        PART_TYPES.put("face", Resources.GUI_LOADING_FUNCTION.FACES);
+        PART_TYPES.put("face_dec", Resources.GUI_LOADING_FUNCTION.FACE_DEC);
+        PART_TYPES.put("fan", Resources.GUI_LOADING_FUNCTION.FANS);
+        PART_TYPES.put("hair", Resources.GUI_LOADING_FUNCTION.HAIR);
+        PART_TYPES.put("helmet", Resources.GUI_LOADING_FUNCTION.HELMETS);
+        PART_TYPES.put("mantle", Resources.GUI_LOADING_FUNCTION.MANTLES);
+        PART_TYPES.put("shield", Resources.GUI_LOADING_FUNCTION.SHIELDS);
+        PART_TYPES.put("shoes", Resources.GUI_LOADING_FUNCTION.SHOES);
+        PART_TYPES.put("spear", Resources.GUI_LOADING_FUNCTION.SPEARS);
+        PART_TYPES.put("sword", Resources.GUI_LOADING_FUNCTION.SWORDS);
+    }
+
+    HttpServer httpServer;
+    ThreadPoolExecutor workers;
+    ResponseCache responseCache;
+
+    // Archive identities are hashed once per renderer / map
+    Map<Object, String> etagPrefixes = new ConcurrentHashMap<Object, String>();
+
+    Map<Integer, CmpFileHandler> maps = new LinkedHashMap<Integer, CmpFileHandler>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, CmpFileHandler> eldest) {
+            return size() > MAX_CACHED_MAPS;
+        }
+    };
+
+    public AtomicLong requests = new AtomicLong();
+    public AtomicLong cacheHits = new AtomicLong();
+    public AtomicLong notModified = new AtomicLong();
+    public AtomicLong rendered = new AtomicLong();
+    public AtomicLong renderNanos = new AtomicLong();
+    public AtomicLong errors = new AtomicLong();
+
+    static class NotFoundException extends RuntimeException {
+        NotFoundException(String message) {
+            super(message);
+        }
+    }
+
+    public SpriteServer(int port, int threadCount, int queueSize, long cacheBytes) throws IOException {
+        this.responseCache = new ResponseCache(cacheBytes);
+
+        // Once the queue is full the accepting thread runs the request itself, which stops it from accepting more
+        this.workers = new ThreadPoolExecutor(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize), runnable -> {
+                    Thread thread = new Thread(runnable, "SpriteServer-Worker");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+
+        // Headers and body are separate writes, without TCP_NODELAY every keep-alive response waits on a delayed ACK
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        this.httpServer = HttpServer.create(new InetSocketAddress(port), 0);
+        this.httpServer.setExecutor(this.workers);
+        this.httpServer.createContext("/part/", this::handle);
+        this.httpServer.createContext("/mob/", this::handle);
+        this.httpServer.createContext("/map/", this::handle);
+        this.httpServer.createContext("/stats", this::handleStats);
+    }
+
+    public void start() {
+        ArchiveWatcher archiveWatcher = RendererRegistry.getInstance().startWatching();
+        if (archiveWatcher != null) {
+            archiveWatcher.addListener(this::invalidate);
+        }
+        this.httpServer.start();
+    }
+
+    /**
+     * Drops the responses and ETags built from a changed map or archive (the registry reloads the renderers).
+     */
+    void invalidate(File changedFile) {
+        Matcher matcher = MAP_FILE.matcher(changedFile.getName());
+        if (matcher.matches()) {
+            int mapId = Integer.parseInt(matcher.group(1));
+            synchronized (this.maps) {
+                CmpFileHandler cmpFileHandler = this.maps.remove(mapId);
+                if (cmpFileHandler != null) {
+                    this.etagPrefixes.remove(cmpFileHandler);
+                }
+            }
+            this.responseCache.removeIf(key -> key.startsWith("/map/" + mapId + "/"));
+        } else if (changedFile.getName().toLowerCase().endsWith(".dat")) {
+            this.etagPrefixes.clear();
+            this.responseCache.clear();
+        }
+    }
+
+    public void stop() {
+        this.httpServer.stop(0);
+        this.workers.shutdown();
+    }
+
+    public int getPort() {
+        return this.httpServer.getAddress().getPort();
+    }
+
+    void handle(HttpExchange exchange) throws IOException {
+        this.requests.incrementAndGet();
+        try {
+            if (!"GET".equals(exchange.getRequestMethod()) && !"HEAD".equals(exchange.getRequestMethod())) {
+                this.sendError(exchange, 405, "Method not allowed");
+                return;
+            }
+
+            String path = exchange.getRequestURI().getPath();
+            Map<String, Integer> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            String cacheKey = path + "?" + query;
+
+            ResponseCache.Response response = this.responseCache.get(cacheKey);
+            if (response != null) {
+                this.cacheHits.incrementAndGet();
+            } else {
+                String etag = this.getEtag(path, query);
+                if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    this.sendNotModified(exchange, etag);
+                    return;
+                }
+
+                long startTime = System.nanoTime();
+                response = this.render(path, query, etag);
+                this.renderNanos.addAndGet(System.nanoTime() - startTime);
+                this.rendered.incrementAndGet();
+                this.responseCache.put(cacheKey, response);
+            }
+
+            if (response.etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                this.sendNotModified(exchange, response.etag);
+                return;
+            }
+            this.send(exchange, 200, response.contentType, response.etag, response.body);
+        } catch (NotFoundException | IndexOutOfBoundsException e) {
+            this.sendError(exchange, 404, "Not found: " + e.getMessage());
+        } catch (RuntimeException | IOException e) {
+            this.errors.incrementAndGet();
+            System.out.println("Unable to serve " + exchange.getRequestURI() + ": " + e);
+            this.sendError(exchange, 500, "Unable to render: " + e);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    void handleStats(HttpExchange exchange) throws IOException {
+        long renderedCount = this.rendered.get();
+        String stats = "requests " + this.requests.get() + "\n"
+                + "cache_hits " + this.cacheHits.get() + "\n"
+                + "not_modified " + this.notModified.get() + "\n"
+                + "rendered " + renderedCount + "\n"
+                + "render_ms_avg " + (renderedCount == 0 ? 0 : this.renderNanos.get() / renderedCount / 1_000_000.0) + "\n"
+                + "errors " + this.errors.get() + "\n"
+                + "cache_entries " + this.responseCache.size() + "\n"
+                + "cache_bytes " + this.responseCache.getUsedBytes() + "\n"
+                + "heap_used_bytes " + (Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory()) + "\n"
+                + "frame_offheap_bytes " + FrameArena.getTotalReservedBytes() + "\n"
+                + "frame_cache_bytes " + CacheBudget.getInstance().getUsedBytes() + "\n"
+                + "frame_cache_budget_bytes " + CacheBudget.getInstance().budgetBytes + "\n"
+                + "frame_cache_evictions " + CacheBudget.getInstance().getEvictions() + "\n"
+                + "queued " + this.workers.getQueue().size() + "\n";
+        try {
+            this.send(exchange, 200, "text/plain; charset=utf-8", null, stats.getBytes(StandardCharsets.UTF_8));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    String getEtag(String path, Map<String, Integer> query) {
+        Matcher matcher;
+        if ((matcher = PART_PATH.matcher(path)).matches()) {
+            PartRenderer partRenderer = this.getPartRenderer(matcher.group(1));
+            return this.etag(partRenderer, () -> DiskCache.archiveIdentity(partRenderer.getSourceArchives()), path, query);
+        } else if ((matcher = MOB_PATH.matcher(path)).matches()) {
+            MobRenderer mobRenderer = RendererRegistry.getInstance().awaitRenderer(Resources.GUI_LOADING_FUNCTION.MOBS);
+            return this.etag(mobRenderer, () -> DiskCache.archiveIdentity(mobRenderer.getSourceArchives()), path, query);
+        } else if ((matcher = MAP_PATH.matcher(path)).matches()) {
+            CmpFileHandler cmpFileHandler = this.getMap(Integer.parseInt(matcher.group(1)));
+            return this.etag(cmpFileHandler, () -> DiskCache.archiveIdentity(cmpFileHandler)
+                    + DiskCache.archiveIdentity(RendererRegistry.getInstance().getArchive("tile.dat")), path, query);
+        }
+
+        throw new NotFoundException(path);
+    }
+
+    String etag(Object source, Callable<String> archiveIdentity, String path, Map<String, Integer> query) {
+        String prefix = this.etagPrefixes.computeIfAbsent(source, key -> {
+            try {
+                return archiveIdentity.call();
+            } catch (Exception e) {
+                throw new IllegalStateException("Unable to identify archives: " + e, e);
+            }
+        });
+
+        return "\"" + DiskCache.key(prefix, path, query) + "\"";
+    }
+
+    ResponseCache.Response render(String path, Map<String, Integer> query, String etag) throws IOException {
+        Matcher matcher;
+        if ((matcher = PART_PATH.matcher(path)).matches()) {
+            PartRenderer partRenderer = this.getPartRenderer(matcher.group(1));
+            int partIndex = Integer.parseInt(matcher.group(2));
+            int animationIndex = Integer.parseInt(matcher.group(3));
+            int paletteIndex = query.getOrDefault("palette", -1);
+
+            List<EffectImage> images;
+            synchronized (partRenderer) {
+                images = partRenderer.renderAnimation(partIndex, animationIndex, paletteIndex);
+            }
+            return new ResponseCache.Response(encodePng(renderStrip(images)), "image/png", etag);
+        } else if ((matcher = MOB_PATH.matcher(path)).matches()) {
+            MobRenderer mobRenderer = RendererRegistry.getInstance().awaitRenderer(Resources.GUI_LOADING_FUNCTION.MOBS);
+            int mobIndex = Integer.parseInt(matcher.group(1));
+
+            List<EffectImage> images;
+            Palette palette;
+            synchronized (mobRenderer) {
+                images = mobRenderer.renderAnimation(mobIndex, query.getOrDefault("anim", 0));
+                palette = mobRenderer.getPalette(mobIndex);
+            }
+            if (images.isEmpty()) {
+                throw new NotFoundException(path);
+            }
+            return new ResponseCache.Response(IndexedGifWriter.encodeGif(images, palette), "image/gif", etag);
+        } else if ((matcher = MAP_PATH.matcher(path)).matches()) {
+            CmpFileHandler cmpFileHandler = this.getMap(Integer.parseInt(matcher.group(1)));
+            int zoom = Integer.parseInt(matcher.group(2));
+            if (zoom > MAX_ZOOM) {
+                throw new NotFoundException("zoom " + zoom);
+            }
+
+            return new ResponseCache.Response(encodePng(this.renderMapTile(cmpFileHandler, zoom,
+                    Integer.parseInt(matcher.group(3)), Integer.parseInt(matcher.group(4)))), "image/png", etag);
+        }
+
+        throw new NotFoundException(path);
+    }
+
+    BufferedImage renderMapTile(CmpFileHandler cmpFileHandler, int zoom, int tileX, int tileY) {
+        int cells = TILE_CELLS << (MAX_ZOOM - zoom);
+        int x = tileX * cells;
+        int y = tileY * cells;
+        if (x >= cmpFileHandler.mapWidth || y >= cmpFileHandler.mapHeight) {
+            throw new NotFoundException("tile " + tileX + "," + tileY);
+        }
+        int width = Math.min(cells, cmpFileHandler.mapWidth - x);
+        int height = Math.min(cells, cmpFileHandler.mapHeight - y);
+
+        MapRenderer mapRenderer = RendererRegistry.getInstance().awaitRenderer(Resources.GUI_LOADING_FUNCTION.MAPS);
+        BufferedImage crop;
+        synchronized (mapRenderer) {
+            crop = mapRenderer.renderCropped(cmpFileHandler, x, y, width, height);
+        }
+        if (cells == TILE_CELLS) {
+            return crop;
+        }
+
+        // Every zoom level serves tiles of the same pixel size
+        int scale = cells / TILE_CELLS;
+        BufferedImage tile = new BufferedImage(TILE_CELLS * Resources.TILE_DIM, TILE_CELLS * Resources.TILE_DIM, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphicsObject = tile.createGraphics();
+        graphicsObject.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphicsObject.drawImage(crop, 0, 0, crop.getWidth() / scale, crop.getHeight() / scale, null);
+        graphicsObject.dispose();
+
+        return tile;
+    }
+
+    PartRenderer getPartRenderer(String type) {
+        Resources.GUI_LOADING_FUNCTION loadingFunction = PART_TYPES.get(type.toLowerCase());
+        if (loadingFunction == null) {
+            throw new NotFoundException("part type " + type);
+        }
+
+        return RendererRegistry.getInstance().awaitRenderer(loadingFunction);
+    }
+
+    CmpFileHandler getMap(int mapId) {
+        synchronized (this.maps) {
+            CmpFileHandler cmpFileHandler = this.maps.get(mapId);
+            if (cmpFileHandler == null) {
+                File mapFile = new File(Resources.NTK_MAP_DIRECTORY + File.separator + "TK" + Utils.pad(mapId, 6) + ".cmp");
+                if (!mapFile.exists()) {
+                    throw new NotFoundException("map " + mapId);
+                }
+                cmpFileHandler = new CmpFileHandler(mapFile);
+                this.maps.put(mapId, cmpFileHandler);
+            }
+
+            return cmpFileHandler;
+        }
+    }
+
+    /**
+     * Frames composited onto one shared canvas and laid out left to right.
+     */
+    static BufferedImage renderStrip(List<EffectImage> images) {
+        List<EffectImage> frames = RenderUtils.compositeAnimations(Collections.singletonList(images));
+        if (frames.isEmpty()) {
+            throw new NotFoundException("empty animation");
+        }
+
+        int frameWidth = frames.get(0).getImage().getWidth();
+        int frameHeight = frames.get(0).getImage().getHeight();
+        BufferedImage strip = new BufferedImage(frameWidth * frames.size(), frameHeight, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphicsObject = strip.createGraphics();
+        for (int i = 0; i < frames.size(); i++) {
+            graphicsObject.drawImage(frames.get(i).getImage(), null, i * frameWidth, 0);
+        }
+        graphicsObject.dispose();
+
+        return strip;
+    }
+
+    static byte[] encodePng(BufferedImage image) throws IOException {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", byteArrayOutputStream);
+
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    static Map<String, Integer> parseQuery(String rawQuery) {
+        // Sorted so equivalent queries share a cache entry
+        Map<String, Integer> query = new TreeMap<String, Integer>();
+        if (rawQuery == null) {
+            return query;
+        }
+
+        for (String parameter : rawQuery.split("&")) {
+            String[] keyValue = parameter.split("=", 2);
+            if (keyValue.length == 2) {
+                try {
+                    query.put(keyValue[0], Integer.parseInt(keyValue[1]));
+                } catch (NumberFormatException nfe) {
+                    throw new NotFoundException("parameter " + parameter);
+                }
+            }
+        }
+
+        return query;
+    }
+
+    void send(HttpExchange exchange, int status, String contentType, String etag, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        if (etag != null) {
+            exchange.getResponseHeaders().set("ETag", etag);
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        }
+
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(body);
+        }
+    }
+
+    void sendNotModified(HttpExchange exchange, String etag) throws IOException {
+        this.notModified.incrementAndGet();
+        exchange.getResponseHeaders().set("ETag", etag);
+        exchange.sendResponseHeaders(304, -1);
+    }
+
+    void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        this.send(exchange, status, "text/plain; charset=utf-8", null, (message + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+}
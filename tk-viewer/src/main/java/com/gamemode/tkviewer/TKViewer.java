@@ -1,6 +1,7 @@
 package com.gamemode.tkviewer;
 
 import com.gamemode.tkviewer.gui.TKViewerGUI;
+import com.gamemode.tkviewer.render.RendererRegistry;
 
 import javax.swing.JFrame;
 
@@ -14,5 +15,8 @@ public class TKViewer {
         TKViewerGui.setSize(640, 480);
         TKViewerGui.setResizable(false);
         TKViewerGui.setVisible(true);
+        TKViewerGui.warmUp();
+        // Reload patched archives into the open renderers instead of requiring Clear Cache
+        RendererRegistry.getInstance().startWatching();
     }
 }
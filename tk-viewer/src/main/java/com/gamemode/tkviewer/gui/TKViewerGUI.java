@@ -4,8 +4,8 @@ import com.gamemode.tkviewer.file_handlers.CmpFileHandler;
 import com.gamemode.tkviewer.file_handlers.MapFileHandler;
 import com.gamemode.tkviewer.file_handlers.MnmFileHandler;
 import com.gamemode.tkviewer.render.*;
-import com.gamemode.tkviewer.render.Renderer;
 import com.gamemode.tkviewer.resources.Resources;
+import com.gamemode.tkviewer.utilities.DiskCache;
 import com.gamemode.tkviewer.utilities.FileUtils;
 import com.gamemode.tkviewer.utilities.RenderUtils;
 import org.apache.commons.io.FilenameUtils;
@@ -27,6 +27,7 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.List;
 
 public class TKViewerGUI extends JFrame implements ActionListener {
 
@@ -104,6 +105,10 @@ public class TKViewerGUI extends JFrame implements ActionListener {
 
     Dimension MAX_IMAGE_DIMENSIONS = new Dimension(800, 600);
 
+    // Renderers backed by char.dat plus Effects and Mobs, maps are left to load on demand
+    public static final String DEFAULT_WARM_UP = "BODIES,BOWS,COATS,FACES,FACE_DEC,FANS,HAIR,HELMETS,ITEMS,MANTLES,"
+            + "SPEARS,SHIELDS,SHOES,SWORDS,EFFECTS,MOBS";
+
     public TKViewerGUI(String title) {
         super(title);
         this.setPreferredSize(new Dimension(640, 480));
@@ -113,6 +118,33 @@ public class TKViewerGUI extends JFrame implements ActionListener {
         initMenu();
     }
 
+    /**
+     * Builds renderers in the background once the window is up, so their menus open without a loading dialog.
+     *
+     * Which ones is read from the tkviewer.warmup system property (comma separated GUI_LOADING_FUNCTION names, or
+     * "none"), defaulting to DEFAULT_WARM_UP.
+     */
+    public void warmUp() {
+        String warmUpProperty = System.getProperty("tkviewer.warmup", DEFAULT_WARM_UP);
+        if (warmUpProperty.trim().equalsIgnoreCase("none")) {
+            return;
+        }
+
+        List<Resources.GUI_LOADING_FUNCTION> loadingFunctions = new ArrayList<Resources.GUI_LOADING_FUNCTION>();
+        for (String name : warmUpProperty.split(",")) {
+            try {
+                Resources.GUI_LOADING_FUNCTION loadingFunction = Resources.GUI_LOADING_FUNCTION.valueOf(name.trim().toUpperCase());
+                if (loadingFunction != Resources.GUI_LOADING_FUNCTION.CLEAR_CACHE) {
+                    loadingFunctions.add(loadingFunction);
+                }
+            } catch (IllegalArgumentException iae) {
+                System.out.println("Unknown warm up resource: " + name);
+            }
+        }
+
+        RendererRegistry.getInstance().warmUp(loadingFunctions.toArray(new Resources.GUI_LOADING_FUNCTION[0]));
+    }
+
     public void initMenu() {
         // Add Menu
         menuBar = new JMenuBar();
@@ -307,7 +339,85 @@ public class TKViewerGUI extends JFrame implements ActionListener {
         }
     }
 
+    /**
+     * Takes the renderer for loadingFunction from the registry, blocking until it is built.
+     */
+    void assignRenderer(Resources.GUI_LOADING_FUNCTION loadingFunction) {
+        RendererRegistry rendererRegistry = RendererRegistry.getInstance();
+        switch (loadingFunction) {
+            case BODIES:
+                bodyRenderer = rendererRegistry.awaitRenderer(loadingFunction);
+                break;
+            case BOWS:
+                bowRenderer = rendererRegistry.awaitRenderer(loadingFunction);
+                break;
+            case COATS:
+                coatRenderer = rendererRegistry.awaitRenderer(loadingFunction);
+                break;
+            case EFFECTS:
+                effectRenderer = rendererRegistry.awaitRenderer(loadingFunction);
+                break;
+            case FACES:
+                faceRenderer = rendererRegistry.awaitRenderer(loadingFunction);
+                break;
+            case FACE_DEC:
+                faceDecRenderer = rendererRegistry.awaitRenderer(loadingFunction);
+                break;
+            case FANS:
+                fanRenderer = rendererRegistry.awaitRenderer(loadingFunction);
+                break;
+            case HAIR:
+                hairRenderer = rendererRegistry.awaitRenderer(loadingFunction);
+                break;
+            case HELMETS:
+                helmetRenderer = rendererRegistry.awaitRenderer(loadingFunction);
+                break;
+            case ITEMS:
+                itemRenderer = rendererRegistry.awaitRenderer(loadingFunction);
+                break;
+            case LEGEND_RESOURCES:
+                legendResourceRenderer = rendererRegistry.awaitRenderer(loadingFunction);
+                break;
+            case SAN_RESOURCES:
+                sanResourceRenderer = rendererRegistry.awaitRenderer(loadingFunction);
+                break;
+            case MANTLES:
+                mantleRenderer = rendererRegistry.awaitRenderer(loadingFunction);
+                break;
+            case MAPS:
+                mapRenderer = rendererRegistry.awaitRenderer(loadingFunction);
+                break;
+            case MOBS:
+                mobRenderer = rendererRegistry.awaitRenderer(loadingFunction);
+                break;
+            case MINI_MAP_RESOURCES:
+                miniMapResourceRenderers = rendererRegistry.awaitRenderer(loadingFunction);
+                break;
+            case SPEARS:
+                spearRenderer = rendererRegistry.awaitRenderer(loadingFunction);
+                break;
+            case SHIELDS:
+                shieldRenderer = rendererRegistry.awaitRenderer(loadingFunction);
+                break;
+            case SHOES:
+                shoeRenderer = rendererRegistry.awaitRenderer(loadingFunction);
+                break;
+            case SWORDS:
+                swordRenderer = rendererRegistry.awaitRenderer(loadingFunction);
+                break;
+            case WORLD_MAPS:
+                worldMapRenderers = rendererRegistry.awaitRenderer(loadingFunction);
+                break;
+        }
+    }
+
     public void showLoadingDialog(String message, Resources.GUI_LOADING_FUNCTION loadingFunction) {
+        // Already warmed up, no need for a dialog
+        if (loadingFunction != Resources.GUI_LOADING_FUNCTION.CLEAR_CACHE && RendererRegistry.getInstance().isReady(loadingFunction)) {
+            assignRenderer(loadingFunction);
+            return;
+        }
+
         JDialog loadingNotification = new JDialog(this, "TKViewer", true);
         loadingNotification.setTitle("TKViewer");
         loadingNotification.setIconImage(this.clientIcon);
@@ -319,115 +429,10 @@ public class TKViewerGUI extends JFrame implements ActionListener {
         SwingWorker loadingWorker = new SwingWorker<Boolean, Integer>() {
             @Override
             protected Boolean doInBackground() throws Exception {
-                switch(loadingFunction) {
-                    case CLEAR_CACHE:
-                        clearCache();
-                        break;
-                    case BODIES:
-                        if (bodyRenderer == null) {
-                            bodyRenderer = RenderUtils.createBodyRenderer();
-                        }
-                        break;
-                    case BOWS:
-                        if (bowRenderer == null) {
-                            bowRenderer = RenderUtils.createBowRenderer();
-                        }
-                        break;
-                    case COATS:
-                        if (coatRenderer == null) {
-                            coatRenderer = RenderUtils.createCoatRenderer();
-                        }
-                        break;
-                    case EFFECTS:
-                        if (effectRenderer == null) {
-                            effectRenderer = RenderUtils.createEffectRenderer();
-                        }
-                        break;
-                    case FACES:
-                        if (faceRenderer == null) {
-                            faceRenderer = RenderUtils.createFaceRenderer();
-                        }
-                        break;
-                    case FACE_DEC:
-                        if (faceDecRenderer == null) {
-                            faceDecRenderer = RenderUtils.createFaceDecRenderer();
-                        }
-                        break;
-                    case FANS:
-                        if (fanRenderer == null) {
-                            fanRenderer = RenderUtils.createFanRenderer();
-                        }
-                        break;
-                    case HAIR:
-                        if (hairRenderer == null) {
-                            hairRenderer = RenderUtils.createHairRenderer();
-                        }
-                        break;
-                    case HELMETS:
-                        if (helmetRenderer == null) {
-                            helmetRenderer = RenderUtils.createHelmetRenderer();
-                        }
-                        break;
-                    case ITEMS:
-                        if (itemRenderer == null) {
-                            itemRenderer = RenderUtils.createItemRenderer();
-                        }
-                        break;
-                    case LEGEND_RESOURCES:
-                        if (legendResourceRenderer == null) {
-                            legendResourceRenderer = RenderUtils.createLegendResourceRenderer();
-                        }
-                        break;
-                    case SAN_RESOURCES:
-                        if (sanResourceRenderer == null) {
-                            sanResourceRenderer = RenderUtils.createSanResourceRenderer();
-                        }
-                        break;
-                    case MANTLES:
-                        if (mantleRenderer == null) {
-                            mantleRenderer = RenderUtils.createMantleRenderer();
-                        }
-                        break;
-                    case MAPS:
-                        if (mapRenderer == null) {
-                            mapRenderer = RenderUtils.createMapRenderer();
-                        }
-                        break;
-                    case MOBS:
-                        if (mobRenderer == null) {
-                            mobRenderer = RenderUtils.createMobRenderer();
-                        }
-                        break;
-                    case MINI_MAP_RESOURCES:
-                        if (miniMapResourceRenderers == null) {
-                            miniMapResourceRenderers = RenderUtils.createMiniMapResourceRenderers();
-                        }
-                        break;
-                    case SPEARS:
-                        if (spearRenderer == null) {
-                            spearRenderer = RenderUtils.createSpearRenderer();
-                        }
-                        break;
-                    case SHIELDS:
-                        if (shieldRenderer == null) {
-                            shieldRenderer = RenderUtils.createShieldRenderer();
-                        }
-                        break;
-                    case SHOES:
-                        if (shoeRenderer == null) {
-                            shoeRenderer = RenderUtils.createShoeRenderer();
-                        }
-                        break;
-                    case SWORDS:
-                        if (swordRenderer == null) {
-                            swordRenderer = RenderUtils.createSwordRenderer();
-                        }
-                        break;
-                    case WORLD_MAPS:
-                        if (worldMapRenderers == null) {
-                            worldMapRenderers = RenderUtils.createWorldMapRenderers();
-                        }
-                        break;
+                if (loadingFunction == Resources.GUI_LOADING_FUNCTION.CLEAR_CACHE) {
+                    clearCache();
+                } else {
+                    assignRenderer(loadingFunction);
                 }
 
                 return true;
@@ -469,10 +474,12 @@ public class TKViewerGUI extends JFrame implements ActionListener {
                 @Override
                 protected Boolean doInBackground() throws Exception {
                     map = null;
-                    if (fileExtension.equals("cmp")) {
-                        map = mapRenderer.renderMap(new CmpFileHandler(mapFile));
-                    } else if (fileExtension.equals("map")) {
-                        map = mapRenderer.renderMap(new MapFileHandler(mapFile));
+                    synchronized (mapRenderer) {
+                        if (fileExtension.equals("cmp")) {
+                            map = mapRenderer.renderMap(new CmpFileHandler(mapFile));
+                        } else if (fileExtension.equals("map")) {
+                            map = mapRenderer.renderMap(new MapFileHandler(mapFile));
+                        }
                     }
 
                     return true;
@@ -775,63 +782,32 @@ public class TKViewerGUI extends JFrame implements ActionListener {
     }
 
     public void clearCache() {
-        // Garbage Collect Renderers
-        if (mapRenderer != null) {
-            mapRenderer.dispose();
-        }
-        if (bodyRenderer != null) {
-            bodyRenderer.dispose();
-        }
-        if (bowRenderer != null) {
-            bowRenderer.dispose();
-        }
-        if (coatRenderer != null) {
-            coatRenderer.dispose();
-        }
-        if (effectRenderer != null) {
-            effectRenderer.dispose();
-        }
-        if (faceRenderer != null) {
-            faceRenderer.dispose();
-        }
-        if (faceDecRenderer != null) {
-            faceDecRenderer.dispose();
-        }
-        if (fanRenderer != null) {
-            fanRenderer.dispose();
-        }
-        if (hairRenderer != null) {
-            hairRenderer.dispose();
-        }
-        if (helmetRenderer != null) {
-            helmetRenderer.dispose();
-        }
-        if (itemRenderer != null) {
-            itemRenderer.dispose();
-        }
-        if (mantleRenderer != null) {
-            mantleRenderer.dispose();
-        }
-        if (mobRenderer != null) {
-            mobRenderer.dispose();
-        }
-        if (spearRenderer != null) {
-            spearRenderer.dispose();
-        }
-        if (shoeRenderer != null) {
-            shoeRenderer.dispose();
-        }
-        if (shieldRenderer != null) {
-            shieldRenderer.dispose();
-        }
-        if (swordRenderer != null) {
-            swordRenderer.dispose();
-        }
-        if (worldMapRenderers != null) {
-            for (Renderer renderer : worldMapRenderers) {
-                renderer.dispose();
-            }
-        }
+        // Disposes every renderer, they are rebuilt from fresh archives on next use
+        RendererRegistry.getInstance().clear();
+        mapRenderer = null;
+        bodyRenderer = null;
+        bowRenderer = null;
+        coatRenderer = null;
+        effectRenderer = null;
+        faceRenderer = null;
+        faceDecRenderer = null;
+        fanRenderer = null;
+        hairRenderer = null;
+        helmetRenderer = null;
+        itemRenderer = null;
+        legendResourceRenderer = null;
+        sanResourceRenderer = null;
+        mantleRenderer = null;
+        miniMapResourceRenderers = null;
+        mobRenderer = null;
+        spearRenderer = null;
+        shoeRenderer = null;
+        shieldRenderer = null;
+        swordRenderer = null;
+        worldMapRenderers = null;
+
+        // Drop the disk cache index before its files go
+        DiskCache.getInstance().clear();
 
         File cacheDirectory = new File(Resources.TKVIEWER_DIRECTORY);
         if (cacheDirectory.exists()) {